@@ -1,15 +1,20 @@
 package adapter.controller;
 
 import application.service.RAGKnowledgeService;
+import com.navigation.system.infrastructure.sync.KnowledgeDelta;
+import com.navigation.system.infrastructure.sync.KnowledgeDeltaCodec;
 import domain.entity.KnowledgeBase;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
 /**
@@ -121,13 +126,13 @@ public class RAGKnowledgeController {
 
     /**
      * 备份知识库数据
-     * 创建知识库的完整备份，支持指定备份路径
+     * 创建知识库的内容寻址增量备份，与历史备份相同的分块不重复存储，支持指定备份路径
      *
      * @param backupPath 可选备份路径，如未指定则使用默认路径
      * @return ResponseEntity 包含备份结果信息
      */
     @PostMapping("/backup")
-    @ApiOperation(value = "备份知识库", notes = "创建知识库数据的完整备份")
+    @ApiOperation(value = "备份知识库", notes = "创建知识库数据的增量备份，返回备份ID")
     public ResponseEntity<Map<String, Object>> backupKnowledgeData(
             @RequestParam(value = "backupPath", required = false) String backupPath) {
         log.info("开始备份知识库数据，备份路径: {}", backupPath != null ? backupPath : "默认路径");
@@ -185,6 +190,82 @@ public class RAGKnowledgeController {
         }
     }
 
+    /**
+     * 按版本恢复知识库数据
+     * 将知识库恢复到指定版本最近一次备份时的内容
+     *
+     * @param knowledgeBaseId 知识库ID
+     * @param version 知识库版本号
+     * @return ResponseEntity 包含恢复操作结果
+     */
+    @PostMapping("/restore/{knowledgeBaseId}/versions/{version}")
+    @ApiOperation(value = "按版本恢复知识库", notes = "将知识库恢复到指定版本的备份")
+    public ResponseEntity<Map<String, Object>> restoreKnowledgeVersion(
+            @PathVariable Long knowledgeBaseId,
+            @PathVariable String version) {
+        log.info("开始按版本恢复知识库，知识库ID: {}，版本: {}", knowledgeBaseId, version);
+        
+        try {
+            ragKnowledgeService.restoreKnowledgeVersion(knowledgeBaseId, version);
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "knowledgeBaseId", knowledgeBaseId,
+                "version", version,
+                "message", "知识库恢复完成"
+            ));
+        } catch (Exception e) {
+            log.error("知识库按版本恢复失败，知识库ID: {}，版本: {}", knowledgeBaseId, version, e);
+            return ResponseEntity.internalServerError().body(Map.of(
+                "success", false,
+                "message", "知识库恢复失败: " + e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * 接收知识库增量同步
+     * 应用对端节点发送的变更分块向量与删除分块ID，版本向量不连续时返回409，由发送方改发全量增量
+     * 请求体为分段压缩的二进制增量，边读取边解压，校验失败时返回400
+     *
+     * @param body 二进制增量请求体
+     * @return ResponseEntity 包含应用后的版本向量
+     */
+    @PostMapping(value = "/sync/delta", consumes = KnowledgeDeltaCodec.CONTENT_TYPE)
+    @ApiOperation(value = "接收增量同步", notes = "应用对端节点发送的知识库增量")
+    public ResponseEntity<Map<String, Object>> applyKnowledgeDelta(InputStream body) {
+        KnowledgeDelta delta;
+        try {
+            delta = ragKnowledgeService.readKnowledgeDelta(body);
+        } catch (IOException e) {
+            log.warn("知识库增量解析失败: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "知识库增量解析失败: " + e.getMessage()
+            ));
+        }
+        log.info("接收知识库增量: {}", delta);
+        
+        try {
+            String version = ragKnowledgeService.applyKnowledgeDelta(delta);
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "version", version
+            ));
+        } catch (RAGKnowledgeService.KnowledgeVersionConflictException e) {
+            log.warn("知识库增量版本冲突: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                "success", false,
+                "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            log.error("知识库增量应用失败", e);
+            return ResponseEntity.internalServerError().body(Map.of(
+                "success", false,
+                "message", "知识库增量应用失败: " + e.getMessage()
+            ));
+        }
+    }
+
     /**
      * 获取知识库基本信息
      * 返回知识库的版本、大小、最后更新时间等元数据
@@ -28,19 +28,19 @@ import java.util.concurrent.ConcurrentHashMap;
 @Api(tags = "实时视频流导航管理")
 public class RealTimeNavigationController {
 
-    private static final int MAX_CONCURRENT_SESSIONS = 250;
     private static final double LATENCY_THRESHOLD = 0.8;
     private static final int LOW_BATTERY_THRESHOLD = 20;
     
-    // 线程安全的会话状态缓存
+    // 线程安全的会话状态缓存，会话名额与空闲超时由服务层会话注册表统一管理
     private final Map<String, SessionState> sessionStates = new ConcurrentHashMap<>();
-    private final Object sessionLock = new Object();
 
     private final RealTimeNavigationService realTimeNavigationService;
 
     @Autowired
     public RealTimeNavigationController(RealTimeNavigationService realTimeNavigationService) {
         this.realTimeNavigationService = realTimeNavigationService;
+        // 会话在服务层空闲超时后同步清理本地状态
+        realTimeNavigationService.addSessionExpiryListener(this::releaseSessionState);
     }
 
     /**
@@ -54,42 +54,42 @@ public class RealTimeNavigationController {
         
         log.info("开始建立视频流连接，用户ID: {}, 设备型号: {}", userId, deviceInfo.getDeviceModel());
         
-        // 原子性检查并发会话数量
-        synchronized (sessionLock) {
+        String sessionId = null;
+        try {
+            // 由服务层会话注册表准入，达到上限时抛出SessionLimitExceededException
+            sessionId = realTimeNavigationService.establishVideoConnection(userId, deviceInfo);
+            
+            // 创建会话状态记录
+            SessionState sessionState = new SessionState(sessionId, userId, deviceInfo);
+            
+            // 创建SSE emitter用于实时推送
+            SseEmitter emitter = new SseEmitter(30_000L); // 30秒超时
+            sessionState.setEmitter(emitter);
+            sessionStates.put(sessionId, sessionState);
+            
             int currentSessions = getActiveSessionCount();
-            if (currentSessions >= MAX_CONCURRENT_SESSIONS) {
-                log.warn("并发会话已达上限，当前会话数: {}, 最大限制: {}", currentSessions, MAX_CONCURRENT_SESSIONS);
-                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                        .body(Map.of("error", "系统繁忙，请稍后重试"));
-            }
+            Map<String, Object> response = Map.of(
+                "sessionId", sessionId, 
+                "status", "connected",
+                "concurrentSessions", currentSessions,
+                "batteryLevel", deviceInfo.getBatteryLevel(),
+                "powerSavingMode", shouldEnablePowerSaving(deviceInfo.getBatteryLevel())
+            );
             
-            try {
-                String sessionId = realTimeNavigationService.establishVideoConnection(userId, deviceInfo);
-                
-                // 创建会话状态记录
-                SessionState sessionState = new SessionState(sessionId, userId, deviceInfo);
-                sessionStates.put(sessionId, sessionState);
-                
-                // 创建SSE emitter用于实时推送
-                SseEmitter emitter = new SseEmitter(30_000L); // 30秒超时
-                sessionState.setEmitter(emitter);
-                
-                Map<String, Object> response = Map.of(
-                    "sessionId", sessionId, 
-                    "status", "connected",
-                    "concurrentSessions", currentSessions + 1,
-                    "batteryLevel", deviceInfo.getBatteryLevel(),
-                    "powerSavingMode", shouldEnablePowerSaving(deviceInfo.getBatteryLevel())
-                );
-                
-                log.info("视频流连接建立成功，会话ID: {}, 当前并发数: {}", sessionId, currentSessions + 1);
-                return ResponseEntity.ok(response);
-                
-            } catch (Exception e) {
-                log.error("建立视频流连接失败，用户ID: {}", userId, e);
-                return ResponseEntity.internalServerError()
-                        .body(Map.of("error", "连接建立失败: " + e.getMessage()));
+            log.info("视频流连接建立成功，会话ID: {}, 当前并发数: {}", sessionId, currentSessions);
+            return ResponseEntity.ok(response);
+            
+        } catch (RealTimeNavigationService.SessionLimitExceededException e) {
+            log.warn("并发会话已达上限，最大限制: {}", realTimeNavigationService.getMaxConcurrentSessions());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body(Map.of("error", "系统繁忙，请稍后重试"));
+        } catch (Exception e) {
+            if (sessionId != null) {
+                cleanupSession(sessionId);
             }
+            log.error("建立视频流连接失败，用户ID: {}", userId, e);
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "连接建立失败: " + e.getMessage()));
         }
     }
 
@@ -144,7 +144,7 @@ public class RealTimeNavigationController {
     @ApiOperation(value = "获取并发会话数量", notes = "返回当前活跃的实时导航会话数量")
     public ResponseEntity<Map<String, Object>> getConcurrentSessionStats() {
         int activeCount = getActiveSessionCount();
-        int maxSessions = MAX_CONCURRENT_SESSIONS;
+        int maxSessions = realTimeNavigationService.getMaxConcurrentSessions();
         double utilizationRate = (double) activeCount / maxSessions * 100;
         
         Map<String, Object> response = Map.of(
@@ -259,7 +259,7 @@ public class RealTimeNavigationController {
             }
 
             realTimeNavigationService.closeVideoConnection(sessionId);
-            cleanupSession(sessionId);
+            releaseSessionState(sessionId);
             
             Map<String, Object> response = Map.of(
                 "sessionId", sessionId,
@@ -326,9 +326,7 @@ public class RealTimeNavigationController {
     // === 私有辅助方法 ===
     
     private int getActiveSessionCount() {
-        return (int) sessionStates.values().stream()
-                .filter(SessionState::isActive)
-                .count();
+        return realTimeNavigationService.getActiveSessionCount();
     }
     
     private boolean shouldEnablePowerSaving(int batteryLevel) {
@@ -354,8 +352,18 @@ public class RealTimeNavigationController {
     }
     
     private void cleanupSession(String sessionId) {
+        // 服务层会话不存在时为空操作，强制清理时也能释放名额
+        realTimeNavigationService.closeSession(sessionId);
+        releaseSessionState(sessionId);
+    }
+    
+    /**
+     * 移除本地会话状态并关闭SSE推送，会话名额由服务层释放
+     */
+    private void releaseSessionState(String sessionId) {
         SessionState sessionState = sessionStates.remove(sessionId);
         if (sessionState != null) {
+            sessionState.setActive(false);
             try {
                 sessionState.getEmitter().complete();
             } catch (Exception e) {
@@ -4,6 +4,13 @@ import com.navigation.domain.entity.KnowledgeBase;
 import com.navigation.domain.entity.NavigationPath;
 import com.navigation.domain.repository.KnowledgeBaseRepository;
 import com.navigation.domain.repository.NavigationPathRepository;
+import com.navigation.system.infrastructure.routing.VenueRoutingRegistry;
+import com.navigation.system.infrastructure.vector.EmbeddedChunks;
+import com.navigation.system.infrastructure.vector.KnowledgeEmbeddingPipeline;
+import com.navigation.system.infrastructure.vector.VectorIndex;
+import com.navigation.system.infrastructure.vector.VectorIndexFactory;
+import com.navigation.system.infrastructure.vector.VectorIndexStore;
+import com.navigation.system.infrastructure.vector.VenueIndexRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,6 +18,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -26,6 +34,11 @@ public class DynamicPathService {
     
     private final KnowledgeBaseRepository knowledgeBaseRepository;
     private final NavigationPathRepository navigationPathRepository;
+    private final VectorIndexFactory vectorIndexFactory;
+    private final KnowledgeEmbeddingPipeline embeddingPipeline;
+    private final VectorIndexStore vectorIndexStore;
+    private final VenueIndexRegistry venueIndexRegistry;
+    private final VenueRoutingRegistry venueRoutingRegistry;
     
     // Timeout for knowledge base update in minutes (10 minutes)
     private static final int KNOWLEDGE_UPDATE_TIMEOUT_MINUTES = 10;
@@ -35,12 +48,27 @@ public class DynamicPathService {
      *
      * @param knowledgeBaseRepository knowledge base repository interface
      * @param navigationPathRepository navigation path repository interface
+     * @param vectorIndexFactory in-process vector index factory
+     * @param embeddingPipeline chunking and batched embedding of venue map data
+     * @param vectorIndexStore file store for persisted vector indexes
+     * @param venueIndexRegistry resident per-venue indexes, hot-swapped after each rebuild
+     * @param venueRoutingRegistry preprocessed per-venue routing graphs, rebuilt with the knowledge base
      */
     @Autowired
     public DynamicPathService(KnowledgeBaseRepository knowledgeBaseRepository,
-                             NavigationPathRepository navigationPathRepository) {
+                             NavigationPathRepository navigationPathRepository,
+                             VectorIndexFactory vectorIndexFactory,
+                             KnowledgeEmbeddingPipeline embeddingPipeline,
+                             VectorIndexStore vectorIndexStore,
+                             VenueIndexRegistry venueIndexRegistry,
+                             VenueRoutingRegistry venueRoutingRegistry) {
         this.knowledgeBaseRepository = knowledgeBaseRepository;
         this.navigationPathRepository = navigationPathRepository;
+        this.vectorIndexFactory = vectorIndexFactory;
+        this.embeddingPipeline = embeddingPipeline;
+        this.vectorIndexStore = vectorIndexStore;
+        this.venueIndexRegistry = venueIndexRegistry;
+        this.venueRoutingRegistry = venueRoutingRegistry;
     }
 
     /**
@@ -110,9 +138,10 @@ public class DynamicPathService {
      */
     public boolean rebuildVectorIndex(KnowledgeBase knowledgeBase) {
         try {
-            String vectorIndex = buildFaissIndex(knowledgeBase.getVenueMapData());
+            String vectorIndex = buildFaissIndex(knowledgeBase);
             knowledgeBase.setVectorIndex(vectorIndex);
             knowledgeBaseRepository.saveKnowledgeData(knowledgeBase);
+            publishRoutingGraph(knowledgeBase);
             logger.debug("Vector index rebuilt successfully for knowledge base: {}", knowledgeBase.getId());
             return true;
         } catch (Exception e) {
@@ -247,17 +276,47 @@ public class DynamicPathService {
     }
 
     /**
-     * Build FAISS index.
-     * TODO: Integrate with actual FAISS service
+     * Build the in-process vector index over the chunked venue map data and rules and publish it for the venue.
      *
-     * @param venueMapData venue map data
-     * @return vector index
+     * @param knowledgeBase knowledge base row; its id prefixes the chunk vector ids
+     * @return vector index identifier
+     * @throws IOException if the index file cannot be written
      */
-    private String buildFaissIndex(String venueMapData) {
-        // Integration point for actual FAISS service
-        // Currently returns simulated index data
-        logger.debug("Building FAISS index for venue map data");
-        return "faiss_index_" + System.currentTimeMillis();
+    private String buildFaissIndex(KnowledgeBase knowledgeBase) throws IOException {
+        Long venueId = knowledgeBase.getVenueId();
+        logger.debug("Building vector index for venue map data, venue: {}", venueId);
+        long knowledgeBaseId = knowledgeBase.getId() != null ? knowledgeBase.getId() : 0L;
+        EmbeddedChunks chunks = embeddingPipeline.embed(knowledgeBaseId,
+                knowledgeBase.getVenueMapData(), knowledgeBase.getRuleText());
+        if (chunks.size() == 0) {
+            throw new IllegalArgumentException("Venue map data is empty, cannot build vector index");
+        }
+        VectorIndex index = vectorIndexFactory.buildIndex(chunks.getIds(), chunks.getVectors());
+        String indexId = vectorIndexFactory.generateIndexId(index);
+        vectorIndexStore.save(indexId, index);
+        if (venueId != null) {
+            venueIndexRegistry.publish(venueId, indexId, index);
+        }
+        return indexId;
+    }
+
+    /**
+     * Preprocess the venue routing graph of the updated map so reroutes never wait for it.
+     * A malformed grid only disables grid rerouting for the venue and must not fail the knowledge base update.
+     *
+     * @param knowledgeBase updated knowledge base row
+     */
+    private void publishRoutingGraph(KnowledgeBase knowledgeBase) {
+        Long venueId = knowledgeBase.getVenueId();
+        if (venueId == null) {
+            logger.warn("Knowledge base {} has no venue, routing graph not rebuilt", knowledgeBase.getId());
+            return;
+        }
+        try {
+            venueRoutingRegistry.publish(venueId, knowledgeBase.getVenueMapData());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Routing graph not built for venue {}: {}", venueId, e.getMessage());
+        }
     }
 
     /**
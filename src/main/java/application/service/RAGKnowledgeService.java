@@ -3,6 +3,31 @@ package com.navigation.application.service;
 import com.navigation.domain.entity.KnowledgeBase;
 import com.navigation.domain.repository.KnowledgeBaseRepository;
 import com.navigation.infrastructure.config.FAISSConfig;
+import com.navigation.system.infrastructure.backup.BackupManifest;
+import com.navigation.system.infrastructure.backup.KnowledgeBackupStore;
+import com.navigation.system.infrastructure.cache.SemanticQueryCache;
+import com.navigation.system.infrastructure.monitor.NodeHealth;
+import com.navigation.system.infrastructure.monitor.NodeHealthProber;
+import com.navigation.system.infrastructure.sync.KnowledgeDelta;
+import com.navigation.system.infrastructure.sync.KnowledgeDeltaCodec;
+import com.navigation.system.infrastructure.sync.KnowledgeSyncTracker;
+import com.navigation.system.infrastructure.sync.NodeSyncDispatcher;
+import com.navigation.system.infrastructure.vector.AttributeFilter;
+import com.navigation.system.infrastructure.vector.Bm25Index;
+import com.navigation.system.infrastructure.vector.ChunkAttributeIndex;
+import com.navigation.system.infrastructure.vector.EmbeddedChunks;
+import com.navigation.system.infrastructure.vector.HnswIndex;
+import com.navigation.system.infrastructure.vector.KnowledgeChunk;
+import com.navigation.system.infrastructure.vector.KnowledgeEmbeddingPipeline;
+import com.navigation.system.infrastructure.vector.MappedIvfFlatIndex;
+import com.navigation.system.infrastructure.vector.RankFusion;
+import com.navigation.system.infrastructure.vector.SearchParameterTuner;
+import com.navigation.system.infrastructure.vector.SearchResult;
+import com.navigation.system.infrastructure.vector.TextEmbedder;
+import com.navigation.system.infrastructure.vector.VectorIndex;
+import com.navigation.system.infrastructure.vector.VectorIndexFactory;
+import com.navigation.system.infrastructure.vector.VectorIndexStore;
+import com.navigation.system.infrastructure.vector.VenueIndexRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,7 +36,7 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -20,8 +45,18 @@ import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
@@ -36,6 +71,59 @@ public class RAGKnowledgeService {
     private final KnowledgeBaseRepository knowledgeBaseRepository;
     private final FAISSConfig faissConfig;
     private final RestTemplate restTemplate;
+    private final VectorIndexFactory vectorIndexFactory;
+    private final TextEmbedder textEmbedder;
+    private final KnowledgeEmbeddingPipeline embeddingPipeline;
+    private final VectorIndexStore vectorIndexStore;
+    private final VenueIndexRegistry venueIndexRegistry;
+    private final SemanticQueryCache semanticQueryCache;
+    private final KnowledgeSyncTracker syncTracker;
+    private final NodeSyncDispatcher nodeSyncDispatcher;
+    private final NodeHealthProber nodeHealthProber;
+    private final KnowledgeBackupStore knowledgeBackupStore;
+    private final SearchParameterTuner searchParameterTuner;
+    
+    // 恢复时先以该数量的分块构建在线索引，其余分块在上线后分批写入
+    private final int restoreOnlineChunks;
+    
+    // 上线后每批写入在线索引的分块数
+    private final int restoreBatchSize;
+    
+    // 接收增量时允许的最大分块数与删除分块数，解码前按此校验增量头部
+    private final int maxDeltaChunks;
+    
+    // 当前在线的进程内向量索引，重建完成后原子替换
+    private final AtomicReference<VectorIndex> liveIndex = new AtomicReference<>();
+    
+    // 与在线向量索引同分块ID的BM25关键词索引，随向量索引一同构建、增量写入与删除
+    private final AtomicReference<Bm25Index> liveKeywordIndex = new AtomicReference<>();
+    
+    // 与在线向量索引同分块ID的属性索引（楼层、区域、无障碍、来源），过滤检索时在索引扫描内预过滤
+    private final AtomicReference<ChunkAttributeIndex> liveAttributeIndex = new AtomicReference<>();
+    
+    // 在线索引对应的索引ID，增量修改由后台维护任务回写到同名索引文件
+    private volatile String liveIndexId;
+    
+    // 在线索引对应的知识库版本（记录ID@版本号/索引ID），作为全局检索语义缓存的版本标识
+    private volatile String liveKnowledgeVersion;
+    
+    // 在线索引存在尚未落盘的增量修改
+    private final AtomicBoolean liveIndexDirty = new AtomicBoolean();
+    
+    // 串行化在线索引的写操作（增量写入、删除、压缩），检索路径不受影响
+    private final Object indexUpdateLock = new Object();
+    
+    // 已删除向量占比超过该阈值时执行后台压缩
+    private static final double COMPACTION_DELETED_RATIO = 0.2;
+    
+    // 混合检索时每路召回的候选数相对topK的倍数，融合前保留足够的排名信息
+    private static final int HYBRID_CANDIDATE_MULTIPLIER = 3;
+    
+    // 不区分场馆的全局检索在语义缓存中使用的作用域
+    private static final long GLOBAL_CACHE_SCOPE = 0L;
+    
+    // 对端节点接收增量同步的接口路径
+    private static final String DELTA_SYNC_PATH = "/api/rag-knowledge/sync/delta";
     
     // JWT签名密钥（从配置中读取）
     private final SecretKey signingKey;
@@ -81,6 +169,10 @@ public class RAGKnowledgeService {
         public KnowledgeUpdateException(String message) { super(message); }
         public KnowledgeUpdateException(String message, Throwable cause) { super(message, cause); }
     }
+    
+    public static class KnowledgeVersionConflictException extends KnowledgeSyncException {
+        public KnowledgeVersionConflictException(String message, Throwable cause) { super(message, cause); }
+    }
 
     /**
      * 构造函数注入依赖
@@ -88,16 +180,58 @@ public class RAGKnowledgeService {
      * @param knowledgeBaseRepository 知识库仓储接口
      * @param faissConfig FAISS配置类
      * @param restTemplate HTTP客户端
+     * @param vectorIndexFactory 进程内向量索引工厂
+     * @param textEmbedder 文本向量化组件
+     * @param embeddingPipeline 知识分块与批量向量化流水线
+     * @param vectorIndexStore 向量索引文件存储
+     * @param venueIndexRegistry 按场馆分片的常驻向量索引注册表
+     * @param semanticQueryCache 检索结果语义缓存
+     * @param syncTracker 知识库版本向量与节点增量同步状态
+     * @param nodeSyncDispatcher 多节点并发同步分发器
+     * @param nodeHealthProber 节点并发健康探测与延迟统计
+     * @param knowledgeBackupStore 内容寻址的知识库增量备份存储
+     * @param searchParameterTuner 索引检索参数调优与时延降级
+     * @param restoreOnlineChunks 恢复时上线前写入索引的分块数
+     * @param restoreBatchSize 上线后每批恢复的分块数
+     * @param maxDeltaChunks 接收增量允许的最大分块数
      * @param jwtSecret JWT密钥（从配置注入）
      */
     @Autowired
     public RAGKnowledgeService(KnowledgeBaseRepository knowledgeBaseRepository, 
                               FAISSConfig faissConfig, 
                               RestTemplate restTemplate,
+                              VectorIndexFactory vectorIndexFactory,
+                              TextEmbedder textEmbedder,
+                              KnowledgeEmbeddingPipeline embeddingPipeline,
+                              VectorIndexStore vectorIndexStore,
+                              VenueIndexRegistry venueIndexRegistry,
+                              SemanticQueryCache semanticQueryCache,
+                              KnowledgeSyncTracker syncTracker,
+                              NodeSyncDispatcher nodeSyncDispatcher,
+                              NodeHealthProber nodeHealthProber,
+                              KnowledgeBackupStore knowledgeBackupStore,
+                              SearchParameterTuner searchParameterTuner,
+                              @Value("${navigation.rag.backup.restore-online-chunks:4096}") int restoreOnlineChunks,
+                              @Value("${navigation.rag.backup.restore-batch-size:1024}") int restoreBatchSize,
+                              @Value("${navigation.rag.sync.max-delta-chunks:1000000}") int maxDeltaChunks,
                               @Value("${app.security.jwt-secret}") String jwtSecret) {
         this.knowledgeBaseRepository = knowledgeBaseRepository;
         this.faissConfig = faissConfig;
         this.restTemplate = restTemplate;
+        this.vectorIndexFactory = vectorIndexFactory;
+        this.textEmbedder = textEmbedder;
+        this.embeddingPipeline = embeddingPipeline;
+        this.vectorIndexStore = vectorIndexStore;
+        this.venueIndexRegistry = venueIndexRegistry;
+        this.semanticQueryCache = semanticQueryCache;
+        this.syncTracker = syncTracker;
+        this.nodeSyncDispatcher = nodeSyncDispatcher;
+        this.nodeHealthProber = nodeHealthProber;
+        this.knowledgeBackupStore = knowledgeBackupStore;
+        this.searchParameterTuner = searchParameterTuner;
+        this.restoreOnlineChunks = Math.max(1, restoreOnlineChunks);
+        this.restoreBatchSize = Math.max(1, restoreBatchSize);
+        this.maxDeltaChunks = Math.max(0, maxDeltaChunks);
         this.signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
     }
 
@@ -120,14 +254,19 @@ public class RAGKnowledgeService {
             knowledgeBase.setRuleText(ruleText);
             knowledgeBase.setUpdateTime(new Date());
             
+            // 先落库获取知识库ID，分块向量ID据此映射回知识库记录
+            knowledgeBaseRepository.saveKnowledgeData(knowledgeBase);
+            
             // 构建向量索引
-            String vectorIndex = buildVectorIndexInternal(knowledgeData, ruleText);
+            String vectorIndex = buildVectorIndexInternal(knowledgeBase.getId(), knowledgeData, ruleText);
             knowledgeBase.setVectorIndex(vectorIndex);
             
             knowledgeBaseRepository.saveKnowledgeData(knowledgeBase);
+            publishKnowledgeVersion(knowledgeBase);
+            recordLocalChange(knowledgeBase.getId(), knowledgeData, ruleText);
 
-            // 异步执行节点同步
-            performNodeSync(cloudNodeUrl, edgeNodeUrl, knowledgeData, ruleText, vectorIndex);
+            // 异步并发同步到全部已注册节点，仅向各节点发送其已确认版本之后的变更
+            performNodeSync(cloudNodeUrl, edgeNodeUrl, knowledgeBase);
             
             return true;
         } catch (Exception e) {
@@ -144,19 +283,21 @@ public class RAGKnowledgeService {
      */
     public String buildVectorIndex(String knowledgeData, String ruleText) {
         try {
-            String vectorIndex = buildVectorIndexInternal(knowledgeData, ruleText);
-            
             // 获取或创建知识库记录
             KnowledgeBase latestKnowledge = knowledgeBaseRepository.findLatestKnowledge();
             if (latestKnowledge == null) {
                 latestKnowledge = new KnowledgeBase();
                 latestKnowledge.setVenueMapData(knowledgeData);
                 latestKnowledge.setRuleText(ruleText);
+                knowledgeBaseRepository.saveKnowledgeData(latestKnowledge);
             }
             
+            String vectorIndex = buildVectorIndexInternal(latestKnowledge.getId(), knowledgeData, ruleText);
             latestKnowledge.setVectorIndex(vectorIndex);
             latestKnowledge.setUpdateTime(new Date());
             knowledgeBaseRepository.saveKnowledgeData(latestKnowledge);
+            publishKnowledgeVersion(latestKnowledge);
+            recordLocalChange(latestKnowledge.getId(), knowledgeData, ruleText);
             
             return vectorIndex;
         } catch (Exception e) {
@@ -164,6 +305,115 @@ public class RAGKnowledgeService {
         }
     }
 
+    /**
+     * 在进程内向量索引上检索与查询最相似的知识条目
+     *
+     * @param query 查询文本
+     * @param topK 返回结果数量，为空时使用FAISSConfig.searchK
+     * @return SearchResult 按相似度排序的检索结果，结果ID为分块ID，可通过KnowledgeChunk.knowledgeBaseIdOf映射回知识库记录
+     */
+    public SearchResult searchKnowledge(String query, Integer topK) {
+        VectorIndex index = liveIndex.get();
+        if (index == null) {
+            index = loadPersistedIndex();
+        }
+        if (index == null || query == null || query.isEmpty()) {
+            return SearchResult.empty();
+        }
+        int k = topK != null && topK > 0 ? topK : vectorIndexFactory.getDefaultSearchK();
+        // 按当前时延降级级别调整nprobe/efSearch
+        searchParameterTuner.track(index);
+        // 相同或语义相近的查询直接命中语义缓存，跳过向量化与索引检索
+        return semanticQueryCache.get(GLOBAL_CACHE_SCOPE, liveKnowledgeVersion, query, k, index::search);
+    }
+
+    /**
+     * 按属性条件过滤检索：先按属性位图求出满足条件的分块，索引扫描时先判定再计算距离，
+     * 条件越严格扫描越少；满足条件的分块不足topK时继续探查更远的聚类或邻居，不会因后过滤而结果不足
+     * 过滤检索的组合过多，不经过语义缓存
+     *
+     * @param query 查询文本
+     * @param topK 返回结果数量，为空时使用FAISSConfig.searchK
+     * @param filter 属性条件，为空或无条件时等同于searchKnowledge(query, topK)
+     * @return SearchResult 满足条件的分块中按相似度排序的检索结果，无分块满足条件时为空
+     */
+    public SearchResult searchKnowledge(String query, Integer topK, AttributeFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            return searchKnowledge(query, topK);
+        }
+        VectorIndex index = liveIndex.get();
+        if (index == null) {
+            index = loadPersistedIndex();
+        }
+        ChunkAttributeIndex attributeIndex = liveAttributeIndex.get();
+        if (index == null || attributeIndex == null || query == null || query.isEmpty()) {
+            return SearchResult.empty();
+        }
+        int k = topK != null && topK > 0 ? topK : vectorIndexFactory.getDefaultSearchK();
+        searchParameterTuner.track(index);
+        float[] queryVector = textEmbedder.embed(query);
+        VectorIndex searchIndex = index;
+        return attributeIndex.search(filter, vectorFilter -> searchIndex.search(queryVector, k, vectorFilter));
+    }
+
+    /**
+     * 关键词与向量混合检索：BM25关键词索引与在线向量索引各召回一次，按倒数排名融合（RRF）
+     * 房间号、闸口编码等精确词条由关键词索引命中，语义相近的表述由向量索引命中，无需额外的向量探查
+     *
+     * @param query 查询文本
+     * @param topK 返回结果数量，为空时使用FAISSConfig.searchK
+     * @return SearchResult 按融合得分排序的检索结果，得分为RRF得分而非相似度，结果ID为分块ID
+     */
+    public SearchResult hybridSearchKnowledge(String query, Integer topK) {
+        VectorIndex index = liveIndex.get();
+        if (index == null) {
+            index = loadPersistedIndex();
+        }
+        if (index == null || query == null || query.isEmpty()) {
+            return SearchResult.empty();
+        }
+        int k = topK != null && topK > 0 ? topK : vectorIndexFactory.getDefaultSearchK();
+        int candidates = k * HYBRID_CANDIDATE_MULTIPLIER;
+        searchParameterTuner.track(index);
+        SearchResult vectorHits = index.search(textEmbedder.embed(query), candidates);
+        Bm25Index keywordIndex = liveKeywordIndex.get();
+        if (keywordIndex == null) {
+            return RankFusion.reciprocalRank(k, vectorHits);
+        }
+        return RankFusion.reciprocalRank(k, keywordIndex.search(query, candidates), vectorHits);
+    }
+
+    /**
+     * 在指定场馆的向量索引上检索知识条目
+     * 场馆索引首次查询时从本地索引文件内存映射加载，之后常驻内存直至按LRU淘汰或被新版本替换
+     *
+     * @param venueId 场馆ID
+     * @param query 查询文本
+     * @param topK 返回结果数量，为空时使用FAISSConfig.searchK
+     * @return SearchResult 按相似度排序的检索结果，场馆无可用索引时为空
+     */
+    public SearchResult searchVenueKnowledge(Long venueId, String query, Integer topK) {
+        if (venueId == null || query == null || query.isEmpty()) {
+            return SearchResult.empty();
+        }
+        try {
+            VectorIndex index = venueIndexRegistry.get(venueId, id -> knowledgeBaseRepository.findLatestByVenueId(id)
+                    .map(KnowledgeBase::getVectorIndex)
+                    .orElse(null));
+            if (index == null) {
+                return SearchResult.empty();
+            }
+            int k = topK != null && topK > 0 ? topK : vectorIndexFactory.getDefaultSearchK();
+            // 从索引文件加载的场馆索引以文件中已调优的nprobe为基准，随时延降级
+            searchParameterTuner.track(index);
+            // 场馆索引ID随知识库版本重建或发布而变化，以其作为缓存版本标识，旧版本缓存随之失效
+            String version = venueIndexRegistry.residentIndexId(venueId);
+            return semanticQueryCache.get(venueId, version, query, k, index::search);
+        } catch (IOException e) {
+            throw new KnowledgeSyncException("场馆向量索引加载失败: " + venueId, e);
+        }
+    }
+
     /**
      * 通过HTTPS+JWT安全传输数据
      *
@@ -210,6 +460,7 @@ public class RAGKnowledgeService {
             KnowledgeBase currentKnowledge = knowledgeBaseRepository.findLatestKnowledge();
             if (currentKnowledge == null) {
                 currentKnowledge = new KnowledgeBase();
+                knowledgeBaseRepository.saveKnowledgeData(currentKnowledge);
             }
 
             // 合并增量数据
@@ -217,17 +468,20 @@ public class RAGKnowledgeService {
                 currentKnowledge.getVenueMapData(), incrementalData);
             String updatedRules = mergeIncrementalData(
                 currentKnowledge.getRuleText(), incrementalRules);
-                
-            currentKnowledge.setVenueMapData(updatedData);
-            currentKnowledge.setRuleText(updatedRules);
-            currentKnowledge.setUpdateTime(new Date());
 
-            // 重新构建向量索引
-            String newVectorIndex = buildVectorIndexInternal(updatedData, updatedRules);
-            currentKnowledge.setVectorIndex(newVectorIndex);
+            // 仅对新增或内容变化的分块向量化并写入在线索引，无可用在线索引时退化为全量构建
+            String newVectorIndex = applyIncrementalVectors(currentKnowledge.getId(),
+                    currentKnowledge.getVenueMapData(), currentKnowledge.getRuleText(), updatedData, updatedRules);
+            if (newVectorIndex == null) {
+                newVectorIndex = buildVectorIndexInternal(currentKnowledge.getId(), updatedData, updatedRules);
+            }
+            // 更新内容并递增版本号，版本变化使旧版本的检索缓存失效
+            currentKnowledge.updateContent(updatedData, updatedRules, newVectorIndex);
 
             // 保存更新后的知识库
             knowledgeBaseRepository.saveKnowledgeData(currentKnowledge);
+            publishKnowledgeVersion(currentKnowledge);
+            recordLocalChange(currentKnowledge.getId(), updatedData, updatedRules);
 
             return true;
         } catch (Exception e) {
@@ -235,37 +489,220 @@ public class RAGKnowledgeService {
         }
     }
 
+    /**
+     * 按向量ID从在线索引中删除知识条目，删除为逻辑删除，空间由后台压缩回收
+     *
+     * @param vectorIds 向量ID
+     * @return int 实际删除的条目数
+     */
+    public int removeKnowledgeVectors(long[] vectorIds) {
+        try {
+            synchronized (indexUpdateLock) {
+                VectorIndex index = mutableLiveIndex();
+                if (index == null) {
+                    return 0;
+                }
+                int removed = index.remove(vectorIds);
+                Bm25Index keywordIndex = liveKeywordIndex.get();
+                if (keywordIndex != null) {
+                    keywordIndex.remove(vectorIds);
+                }
+                ChunkAttributeIndex attributeIndex = liveAttributeIndex.get();
+                if (attributeIndex != null) {
+                    attributeIndex.remove(vectorIds);
+                }
+                if (removed > 0) {
+                    liveIndexDirty.set(true);
+                    // 删除不改变知识库版本，需主动清除本地检索缓存
+                    semanticQueryCache.invalidate(GLOBAL_CACHE_SCOPE);
+                    recordRemoval(vectorIds);
+                }
+                return removed;
+            }
+        } catch (Exception e) {
+            throw new KnowledgeUpdateException("知识向量删除失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 解码对端节点发送的二进制增量
+     * 向量维度不得超过本节点嵌入维度，分块数不得超过配置上限，超限的增量在分配内存前即被拒绝
+     *
+     * @param body 二进制增量请求体
+     * @return KnowledgeDelta 解码后的增量
+     * @throws IOException 增量截断、损坏或超出上限
+     */
+    public KnowledgeDelta readKnowledgeDelta(InputStream body) throws IOException {
+        return KnowledgeDeltaCodec.read(body, textEmbedder.getDimension(), maxDeltaChunks);
+    }
+
+    /**
+     * 应用对端节点发送的知识库增量
+     * 增量仅在本地版本向量等于其基线版本时应用，全量增量直接以其中的向量重建在线索引
+     *
+     * @param delta 知识库增量
+     * @return String 应用后的本地版本向量
+     */
+    @Transactional(propagation = Propagation.REQUIRED)
+    public String applyKnowledgeDelta(KnowledgeDelta delta) {
+        try {
+            if (delta.getDimension() != textEmbedder.getDimension()
+                    || delta.getVectors().length != delta.getChunkIds().length * delta.getDimension()) {
+                throw new IllegalArgumentException("增量向量维度与本节点不一致: " + delta.getDimension());
+            }
+            synchronized (indexUpdateLock) {
+                // 版本向量不连续（本地落后、超前或并发修改）时拒绝，由发送方回退为全量同步
+                syncTracker.checkApplicable(delta);
+                long knowledgeBaseId = delta.getKnowledgeBaseId();
+                KnowledgeBase knowledgeBase = knowledgeBaseRepository.findById(knowledgeBaseId).orElseGet(() -> {
+                    KnowledgeBase created = new KnowledgeBase();
+                    created.setId(knowledgeBaseId);
+                    return created;
+                });
+                if (delta.getVenueMapData() != null) {
+                    knowledgeBase.setVenueMapData(delta.getVenueMapData());
+                }
+                if (delta.getRuleText() != null) {
+                    knowledgeBase.setRuleText(delta.getRuleText());
+                }
+                if (delta.isFull()) {
+                    VectorIndex index = vectorIndexFactory.buildIndex(delta.getChunkIds(), delta.getVectors());
+                    Bm25Index keywordIndex = new Bm25Index();
+                    ChunkAttributeIndex attributeIndex = new ChunkAttributeIndex();
+                    indexChunks(keywordIndex, attributeIndex, embeddingPipeline.chunk(knowledgeBaseId,
+                            knowledgeBase.getVenueMapData(), knowledgeBase.getRuleText()));
+                    installLiveIndex(index, keywordIndex, attributeIndex);
+                } else {
+                    VectorIndex index = mutableLiveIndex();
+                    if (index == null) {
+                        throw new IllegalStateException("本节点无在线索引，需全量同步");
+                    }
+                    // 只写入变更分块的向量，未变更分块不随增量传输
+                    index.remove(delta.getRemovedIds());
+                    index.add(delta.getChunkIds(), delta.getVectors());
+                    Bm25Index keywordIndex = liveKeywordIndex.get();
+                    ChunkAttributeIndex attributeIndex = liveAttributeIndex.get();
+                    if (keywordIndex != null && attributeIndex != null) {
+                        keywordIndex.remove(delta.getRemovedIds());
+                        attributeIndex.remove(delta.getRemovedIds());
+                        indexChunks(keywordIndex, attributeIndex, chunksOf(knowledgeBase, delta.getChunkIds()));
+                    }
+                    liveIndexDirty.set(true);
+                    semanticQueryCache.invalidate(GLOBAL_CACHE_SCOPE);
+                }
+                syncTracker.recordRemoteDelta(delta);
+                knowledgeBase.setVectorIndex(liveIndexId);
+                knowledgeBaseRepository.saveKnowledgeData(knowledgeBase);
+                publishKnowledgeVersion(knowledgeBase);
+                logger.info("已应用来自节点 {} 的知识库增量: {}", delta.getSourceNode(), delta);
+                return delta.getTargetVersion();
+            }
+        } catch (IllegalStateException e) {
+            throw new KnowledgeVersionConflictException("知识库增量版本冲突: " + e.getMessage(), e);
+        } catch (Exception e) {
+            throw new KnowledgeSyncException("知识库增量应用失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 在线索引后台维护：删除占比过高时压缩，存在增量修改时回写索引文件
+     */
+    @Scheduled(fixedDelayString = "${navigation.rag.index-maintenance-interval-ms:60000}")
+    public void maintainLiveIndex() {
+        VectorIndex index;
+        String indexId;
+        synchronized (indexUpdateLock) {
+            index = liveIndex.get();
+            indexId = liveIndexId;
+            if (index == null || indexId == null) {
+                return;
+            }
+            long deleted = index.deletedCount();
+            if (deleted > 0 && deleted >= (index.size() + deleted) * COMPACTION_DELETED_RATIO) {
+                if (index instanceof HnswIndex) {
+                    // HNSW已删除节点仍参与图路由，无法原地压缩，按存活向量重建图后替换在线索引
+                    long start = System.nanoTime();
+                    HnswIndex rebuilt = ((HnswIndex) index).rebuild();
+                    // 重建图沿用的是当前降级后的efSearch，调优值随索引迁移，时延恢复后回到调优值
+                    searchParameterTuner.transfer(index, rebuilt);
+                    index = rebuilt;
+                    liveIndex.set(index);
+                    liveIndexDirty.set(true);
+                    logger.info("在线HNSW索引重建完成，丢弃 {} 个已删除节点，耗时 {} ms",
+                            deleted, (System.nanoTime() - start) / 1_000_000);
+                } else {
+                    long reclaimed = index.compact();
+                    logger.info("在线向量索引压缩完成，回收 {} 条已删除向量", reclaimed);
+                }
+            }
+            if (!liveIndexDirty.getAndSet(false)) {
+                return;
+            }
+        }
+        try {
+            // 索引导出持有索引读锁，写文件期间检索与增量写入均不被阻塞在此锁上
+            vectorIndexStore.save(indexId, index);
+        } catch (IOException e) {
+            liveIndexDirty.set(true);
+            logger.warn("在线向量索引回写失败: {}", indexId, e);
+        }
+    }
+
     /**
      * 监控架构节点状态
+     * 并发探测全部节点，每个节点的探测受超时限制，总耗时约为单个节点的超时时间；探测过的节点加入后台持续探测
      *
      * @param nodeUrls 节点URL列表
      * @return List<NodeStatus> 各节点状态信息
      */
     public List<NodeStatus> monitorNodeStatus(List<String> nodeUrls) {
         try {
-            return nodeUrls.stream()
-                    .map(this::checkNodeHealth)
+            nodeUrls.forEach(nodeHealthProber::watch);
+            return nodeHealthProber.probe(nodeUrls).join().stream()
+                    .map(health -> new NodeStatus(health.getUrl(), health.getStatus(),
+                            health.getLatencyMs(), health.getDetails()))
                     .collect(Collectors.toList());
         } catch (Exception e) {
             throw new RuntimeException("节点状态监控失败: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * 获取后台探测缓存的节点状态，不发起探测，立即返回
+     *
+     * @return Map<String, Object> 节点URL到最近一次探测结果（含滚动p50/p95/p99延迟）的映射
+     */
+    public Map<String, Object> monitorNodeStatus() {
+        Map<String, Object> nodeStatus = new HashMap<>();
+        for (NodeHealth health : nodeHealthProber.snapshot()) {
+            nodeStatus.put(health.getUrl(), health);
+        }
+        return nodeStatus;
+    }
+
     /**
      * 备份知识库数据
+     * 按内容寻址分块增量备份：文本按内容定义分块，分块向量单独存储，与任一历史备份相同的分块不重复存储、不重新向量化
      *
-     * @param backupPath 备份路径
-     * @return boolean 备份是否成功
+     * @param backupPath 备份存储目录，为空时使用默认目录
+     * @return String 备份ID
      */
     @Transactional(propagation = Propagation.REQUIRED)
-    public boolean backupKnowledgeData(String backupPath) {
+    public String backupKnowledgeData(String backupPath) {
         try {
             KnowledgeBase knowledgeBase = knowledgeBaseRepository.findLatestKnowledge();
             if (knowledgeBase == null) {
                 throw new IllegalStateException("无可用的知识库数据进行备份");
             }
 
-            return knowledgeBaseRepository.backupAndRestore(knowledgeBase, backupPath, "backup");
+            KnowledgeBackupStore backupStore = backupPath != null && !backupPath.trim().isEmpty()
+                    ? new KnowledgeBackupStore(Paths.get(backupPath.trim())) : knowledgeBackupStore;
+            long knowledgeBaseId = knowledgeBaseId(knowledgeBase.getId());
+            BackupManifest manifest = backupStore.backup(knowledgeBaseId, knowledgeBase.getVersion(),
+                    knowledgeBase.getVectorIndex(), knowledgeBase.getVenueMapData(), knowledgeBase.getRuleText(),
+                    embeddingPipeline.chunk(knowledgeBaseId, knowledgeBase.getVenueMapData(), knowledgeBase.getRuleText()),
+                    textEmbedder);
+            return manifest.getBackupId();
         } catch (Exception e) {
             throw new KnowledgeSyncException("知识库备份失败: " + e.getMessage(), e);
         }
@@ -273,98 +710,379 @@ public class RAGKnowledgeService {
 
     /**
      * 恢复知识库数据
+     * 先恢复文本并以首批分块向量上线在线索引，其余分块在场馆可检索后分批写入
      *
-     * @param backupPath 备份文件路径
+     * @param backupId 备份ID
      * @return boolean 恢复是否成功
      */
     @Transactional(propagation = Propagation.REQUIRED)
-    public boolean restoreKnowledgeData(String backupPath) {
+    public boolean restoreKnowledgeData(String backupId) {
         try {
-            return knowledgeBaseRepository.backupAndRestore(null, backupPath, "restore");
+            BackupManifest manifest = knowledgeBackupStore.find(backupId)
+                    .orElseThrow(() -> new IllegalArgumentException("备份不存在: " + backupId));
+            restoreFromBackup(manifest);
+            return true;
         } catch (Exception e) {
             throw new KnowledgeSyncException("知识库恢复失败: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * 将知识库恢复到指定版本（取该版本最近一次备份）
+     *
+     * @param knowledgeBaseId 知识库ID
+     * @param version 知识库版本号
+     * @return boolean 恢复是否成功
+     */
+    @Transactional(propagation = Propagation.REQUIRED)
+    public boolean restoreKnowledgeVersion(Long knowledgeBaseId, String version) {
+        try {
+            BackupManifest manifest = knowledgeBackupStore.findByVersion(knowledgeBaseId(knowledgeBaseId), version)
+                    .orElseThrow(() -> new IllegalArgumentException("知识库 " + knowledgeBaseId + " 无版本 " + version + " 的备份"));
+            restoreFromBackup(manifest);
+            return true;
+        } catch (Exception e) {
+            throw new KnowledgeSyncException("知识库版本恢复失败: " + e.getMessage(), e);
+        }
+    }
+
     // ========== 私有方法 ==========
 
     /**
      * 内部向量索引构建方法
      */
-    private String buildVectorIndexInternal(String knowledgeData, String ruleText) {
+    private String buildVectorIndexInternal(Long knowledgeBaseId, String knowledgeData, String ruleText) {
         try {
-            // 组合文本数据进行向量化
-            String combinedText = knowledgeData + " " + ruleText;
+            // 按地图区域、规则条款分块，并以FAISSConfig.batchSize批量向量化
+            EmbeddedChunks chunks = embeddingPipeline.embed(knowledgeBaseId(knowledgeBaseId), knowledgeData, ruleText);
+            if (chunks.size() == 0) {
+                throw new IllegalArgumentException("知识数据为空，无法构建向量索引");
+            }
             
-            // 使用FAISS配置构建向量索引
-            return faissConfig.buildIndex(combinedText);
+            // 按FAISS配置在进程内构建索引，并替换当前在线索引
+            VectorIndex index = vectorIndexFactory.buildIndex(chunks.getIds(), chunks.getVectors());
+            Bm25Index keywordIndex = new Bm25Index();
+            ChunkAttributeIndex attributeIndex = new ChunkAttributeIndex();
+            indexChunks(keywordIndex, attributeIndex, chunks.getChunks().iterator());
+            return installLiveIndex(index, keywordIndex, attributeIndex);
         } catch (Exception e) {
             throw new KnowledgeSyncException("向量索引构建内部错误: " + e.getMessage(), e);
         }
     }
 
     /**
-     * 异步执行节点数据同步
+     * 从备份流式恢复知识库
+     * 文本与关键词索引先行恢复；向量索引以均匀取自整个备份的首批分块构建后即替换在线索引，剩余分块分批读取并写入在线索引，
+     * 读取备份分块时不持有索引写锁，检索在恢复全程可用
      */
-    @Async
-    protected void performNodeSync(String cloudNodeUrl, String edgeNodeUrl, 
-                                  String knowledgeData, String ruleText, String vectorIndex) {
-        try {
-            // 生成同步令牌
-            String syncToken = generateSyncToken();
-            
-            // 向公有云节点同步数据
-            boolean cloudSyncResult = syncWithCloudNode(cloudNodeUrl, knowledgeData, ruleText, vectorIndex, syncToken);
-            
-            // 向边缘节点同步数据
-            boolean edgeSyncResult = syncWithEdgeNode(edgeNodeUrl, knowledgeData, ruleText, vectorIndex, syncToken);
+    private void restoreFromBackup(BackupManifest manifest) throws IOException {
+        long start = System.nanoTime();
+        if (manifest.getDimension() != textEmbedder.getDimension()) {
+            throw new IllegalArgumentException("备份向量维度与本节点不一致: " + manifest.getDimension());
+        }
+        long[] chunkIds = manifest.getChunkIds();
+        if (chunkIds.length == 0) {
+            throw new IllegalArgumentException("备份不含知识向量: " + manifest.getBackupId());
+        }
+        long knowledgeBaseId = manifest.getKnowledgeBaseId();
+        String venueMapData = knowledgeBackupStore.readVenueMapData(manifest);
+        String ruleText = knowledgeBackupStore.readRuleText(manifest);
+        Bm25Index keywordIndex = new Bm25Index();
+        ChunkAttributeIndex attributeIndex = new ChunkAttributeIndex();
+        indexChunks(keywordIndex, attributeIndex, embeddingPipeline.chunk(knowledgeBaseId, venueMapData, ruleText));
 
-            if (!cloudSyncResult || !edgeSyncResult) {
-                logger.warn("节点同步部分失败 - 云节点: {}, 边缘节点: {}", cloudSyncResult, edgeSyncResult);
-            } else {
-                logger.info("节点同步成功完成");
+        // 分块按地图区域在前、规则条款在后排列，首批按等间隔取自整个备份，聚类中心、PQ码本与检索参数以全部分块的分布训练和调优
+        int online = Math.min(chunkIds.length, restoreOnlineChunks);
+        int[] sample = new int[online];
+        long[] sampleIds = new long[online];
+        for (int i = 0; i < online; i++) {
+            sample[i] = (int) ((long) i * chunkIds.length / online);
+            sampleIds[i] = chunkIds[sample[i]];
+        }
+        VectorIndex index = vectorIndexFactory.buildIndex(sampleIds, knowledgeBackupStore.readVectors(manifest, sample));
+        String indexId = installLiveIndex(index, keywordIndex, attributeIndex);
+
+        KnowledgeBase knowledgeBase = knowledgeBaseRepository.findById(knowledgeBaseId).orElseGet(() -> {
+            KnowledgeBase created = new KnowledgeBase();
+            created.setId(knowledgeBaseId);
+            return created;
+        });
+        knowledgeBase.setVenueMapData(venueMapData);
+        knowledgeBase.setRuleText(ruleText);
+        knowledgeBase.setVersion(manifest.getVersion());
+        knowledgeBase.setVectorIndex(indexId);
+        knowledgeBaseRepository.saveKnowledgeData(knowledgeBase);
+        publishKnowledgeVersion(knowledgeBase);
+        logger.info("知识库 {} 已从备份 {} 上线，{}/{} 个分块已写入索引", knowledgeBaseId, manifest.getBackupId(),
+                online, chunkIds.length);
+
+        int sampled = 0;
+        int[] positions = new int[restoreBatchSize];
+        long[] ids = new long[restoreBatchSize];
+        for (int from = 0; from < chunkIds.length; from += restoreBatchSize) {
+            int to = Math.min(chunkIds.length, from + restoreBatchSize);
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (sampled < online && sample[sampled] == i) {
+                    sampled++;
+                    continue;
+                }
+                positions[count] = i;
+                ids[count++] = chunkIds[i];
+            }
+            if (count == 0) {
+                continue;
+            }
+            float[] vectors = knowledgeBackupStore.readVectors(manifest, Arrays.copyOf(positions, count));
+            synchronized (indexUpdateLock) {
+                if (!indexId.equals(liveIndexId)) {
+                    logger.warn("恢复期间在线索引已被替换，停止恢复备份 {} 的剩余分块", manifest.getBackupId());
+                    return;
+                }
+                mutableLiveIndex().add(Arrays.copyOf(ids, count), vectors);
+                liveIndexDirty.set(true);
             }
-        } catch (Exception e) {
-            logger.error("节点同步异常", e);
         }
+        // 恢复期间的检索结果基于部分分块，完成后清除
+        semanticQueryCache.invalidate(GLOBAL_CACHE_SCOPE);
+        recordLocalChange(knowledgeBaseId, venueMapData, ruleText);
+        logger.info("知识库 {} 已恢复至版本 {}，共 {} 个分块，耗时 {} ms", knowledgeBaseId, manifest.getVersion(),
+                chunkIds.length, (System.nanoTime() - start) / 1_000_000);
     }
 
     /**
-     * 与公有云节点同步数据
+     * 索引落盘并替换当前在线索引
+     *
+     * @return 新在线索引ID
+     */
+    private String installLiveIndex(VectorIndex index, Bm25Index keywordIndex, ChunkAttributeIndex attributeIndex)
+            throws IOException {
+        String indexId = vectorIndexFactory.generateIndexId(index);
+        // 索引文件落盘到FAISSConfig.indexFilePath，节点通过内存映射加载
+        vectorIndexStore.save(indexId, index);
+        synchronized (indexUpdateLock) {
+            liveIndex.set(index);
+            liveKeywordIndex.set(keywordIndex);
+            liveAttributeIndex.set(attributeIndex);
+            liveIndexId = indexId;
+            liveIndexDirty.set(false);
+        }
+        return indexId;
+    }
+
+    /**
+     * 从本地索引文件内存映射加载最新知识库的向量索引
      */
-    private boolean syncWithCloudNode(String cloudNodeUrl, String knowledgeData, 
-                                     String ruleText, String vectorIndex, String syncToken) {
+    private VectorIndex loadPersistedIndex() {
+        KnowledgeBase latestKnowledge = knowledgeBaseRepository.findLatestKnowledge();
+        if (latestKnowledge == null || latestKnowledge.getVectorIndex() == null
+                || !vectorIndexStore.exists(latestKnowledge.getVectorIndex())) {
+            return null;
+        }
         try {
-            String syncData = createSyncPayload(knowledgeData, ruleText, vectorIndex, syncToken);
-            return secureDataTransmission(cloudNodeUrl + "/api/sync", syncData, syncToken);
-        } catch (Exception e) {
-            logger.error("公有云节点同步失败: {}", cloudNodeUrl, e);
-            return false;
+            VectorIndex mapped = vectorIndexStore.open(latestKnowledge.getVectorIndex());
+            // 关键词索引与属性索引不落盘，按同一分块规则从知识库记录重建，分块ID与向量ID一致
+            Bm25Index keywordIndex = new Bm25Index();
+            ChunkAttributeIndex attributeIndex = new ChunkAttributeIndex();
+            indexChunks(keywordIndex, attributeIndex, embeddingPipeline.chunk(knowledgeBaseId(latestKnowledge.getId()),
+                    latestKnowledge.getVenueMapData(), latestKnowledge.getRuleText()));
+            synchronized (indexUpdateLock) {
+                if (liveIndex.compareAndSet(null, mapped)) {
+                    liveIndexId = latestKnowledge.getVectorIndex();
+                    liveKeywordIndex.set(keywordIndex);
+                    liveAttributeIndex.set(attributeIndex);
+                    publishKnowledgeVersion(latestKnowledge);
+                    return mapped;
+                }
+                return liveIndex.get();
+            }
+        } catch (IOException e) {
+            logger.warn("向量索引文件加载失败: {}", latestKnowledge.getVectorIndex(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 将合并增量后的知识库记录中新增或内容变化的分块向量化后写入在线索引，并移除合并后不再存在的分块
+     * 分块ID为32位内容哈希，冲突按分块顺序顺延，单独对增量文本分块得到的ID可能与全量分块不一致；
+     * 因此对合并前后的整行重新分块（不向量化）并按分块ID与内容哈希求差，向量化开销仍与变化量成正比
+     *
+     * @return 在线索引ID，无可用在线索引时返回null
+     */
+    private String applyIncrementalVectors(Long knowledgeBaseId, String previousData, String previousRules,
+                                           String updatedData, String updatedRules) {
+        long rowId = knowledgeBaseId(knowledgeBaseId);
+        Map<Long, Long> indexedHashes = new HashMap<>();
+        embeddingPipeline.chunk(rowId, previousData, previousRules)
+                .forEachRemaining(chunk -> indexedHashes.put(chunk.getId(), chunk.getContentHash()));
+        List<KnowledgeChunk> changed = new ArrayList<>();
+        Iterator<KnowledgeChunk> updated = embeddingPipeline.chunk(rowId, updatedData, updatedRules);
+        while (updated.hasNext()) {
+            KnowledgeChunk chunk = updated.next();
+            Long indexedHash = indexedHashes.remove(chunk.getId());
+            if (indexedHash == null || indexedHash != chunk.getContentHash()) {
+                changed.add(chunk);
+            }
+        }
+        long[] removedIds = indexedHashes.keySet().stream().mapToLong(Long::longValue).toArray();
+        EmbeddedChunks chunks = embeddingPipeline.embed(changed.iterator());
+        synchronized (indexUpdateLock) {
+            VectorIndex index = mutableLiveIndex();
+            if (index == null) {
+                return null;
+            }
+            Bm25Index keywordIndex = liveKeywordIndex.get();
+            ChunkAttributeIndex attributeIndex = liveAttributeIndex.get();
+            if (removedIds.length > 0) {
+                index.remove(removedIds);
+                if (keywordIndex != null && attributeIndex != null) {
+                    keywordIndex.remove(removedIds);
+                    attributeIndex.remove(removedIds);
+                }
+            }
+            if (chunks.size() > 0) {
+                // 相同ID的分块覆盖旧向量，重复下发的增量不会重复入库
+                index.add(chunks.getIds(), chunks.getVectors());
+                if (keywordIndex != null && attributeIndex != null) {
+                    indexChunks(keywordIndex, attributeIndex, chunks.getChunks().iterator());
+                }
+            }
+            if (removedIds.length > 0 || chunks.size() > 0) {
+                liveIndexDirty.set(true);
+            }
+            return liveIndexId;
         }
     }
 
     /**
-     * 与边缘节点同步数据
+     * 获取可写的在线索引，只读的内存映射索引首次写入时复制到堆内（沿用已训练的聚类中心）
+     * 调用方需持有indexUpdateLock
      */
-    private boolean syncWithEdgeNode(String edgeNodeUrl, String knowledgeData, 
-                                    String ruleText, String vectorIndex, String syncToken) {
+    private VectorIndex mutableLiveIndex() {
+        VectorIndex index = liveIndex.get();
+        if (index == null) {
+            index = loadPersistedIndex();
+        }
+        if (index instanceof MappedIvfFlatIndex) {
+            VectorIndex heapIndex = ((MappedIvfFlatIndex) index).toHeapIndex(faissConfig.getBatchSize());
+            searchParameterTuner.transfer(index, heapIndex);
+            liveIndex.set(heapIndex);
+            index = heapIndex;
+        }
+        return index;
+    }
+
+    /**
+     * 记录在线索引对应的知识库版本，全局检索的语义缓存按此版本隔离
+     */
+    private void publishKnowledgeVersion(KnowledgeBase knowledgeBase) {
+        liveKnowledgeVersion = knowledgeBase.getId() + "@" + knowledgeBase.getVersion() + "/" + knowledgeBase.getVectorIndex();
+    }
+
+    /**
+     * 未落库的知识库记录使用0作为分块ID前缀
+     */
+    private static long knowledgeBaseId(Long knowledgeBaseId) {
+        return knowledgeBaseId != null ? knowledgeBaseId : 0L;
+    }
+
+    /**
+     * 注册本次同步的云节点与边缘节点，并将知识库分发到全部已注册节点
+     * 各节点在独立队列中并发同步，失败按指数退避重试，同步状态由分发器批量回写
+     */
+    private void performNodeSync(String cloudNodeUrl, String edgeNodeUrl, KnowledgeBase knowledgeBase) {
+        for (String nodeUrl : new String[]{cloudNodeUrl, edgeNodeUrl}) {
+            nodeSyncDispatcher.register(nodeUrl);
+            nodeHealthProber.watch(nodeUrl);
+        }
+        int queued = nodeSyncDispatcher.dispatch(knowledgeBaseId(knowledgeBase.getId()), this::syncWithNode);
+        logger.info("知识库 {} 已分发至 {} 个节点同步", knowledgeBase.getId(), queued);
+    }
+
+    /**
+     * 向单个节点发送其已确认版本之后的增量，发送失败时清除该节点的确认状态，下次同步退化为全量
+     * 每次投递读取知识库最新记录，重试时同样发送最新状态
+     */
+    private boolean syncWithNode(String nodeUrl, long knowledgeBaseId) {
+        // 分发时所在事务可能尚未提交，读不到记录时返回失败，由分发器退避后重试
+        KnowledgeBase knowledgeBase = knowledgeBaseRepository.findById(knowledgeBaseId).orElse(null);
+        if (knowledgeBase == null) {
+            return false;
+        }
         try {
-            String syncData = createSyncPayload(knowledgeData, ruleText, vectorIndex, syncToken);
-            return secureDataTransmission(edgeNodeUrl + "/api/sync", syncData, syncToken);
+            String syncToken = generateSyncToken();
+            KnowledgeDelta delta = syncTracker.planDelta(nodeUrl, knowledgeBaseId,
+                    knowledgeBase.getVenueMapData(), knowledgeBase.getRuleText(),
+                    embeddingPipeline.chunk(knowledgeBaseId, knowledgeBase.getVenueMapData(), knowledgeBase.getRuleText()),
+                    textEmbedder);
+            long[] payloadBytes = new long[1];
+            boolean delivered = restTemplate.execute(nodeUrl + DELTA_SYNC_PATH, HttpMethod.POST, request -> {
+                request.getHeaders().setBearerAuth(syncToken);
+                request.getHeaders().set("Content-Type", KnowledgeDeltaCodec.CONTENT_TYPE);
+                // 增量按分段压缩直接写入请求体，不在堆上拼装完整负载
+                payloadBytes[0] = KnowledgeDeltaCodec.write(delta, request.getBody());
+            }, response -> response.getStatusCode().is2xxSuccessful());
+            if (delivered) {
+                syncTracker.acknowledge(nodeUrl);
+            } else {
+                syncTracker.reject(nodeUrl);
+            }
+            logger.debug("节点 {} 同步 {}，负载 {} 字节", nodeUrl, delta, payloadBytes[0]);
+            return delivered;
         } catch (Exception e) {
-            logger.error("边缘节点同步失败: {}", edgeNodeUrl, e);
+            syncTracker.reject(nodeUrl);
+            logger.warn("节点同步失败: {}, {}", nodeUrl, e.getMessage());
             return false;
         }
     }
 
     /**
-     * 创建同步数据负载
+     * 记录本节点对知识库的修改，递增版本向量并生成分块清单
      */
-    private String createSyncPayload(String knowledgeData, String ruleText, 
-                                   String vectorIndex, String syncToken) {
-        // 简化实现，实际应使用JSON对象
-        return String.format("{\"knowledgeData\":\"%s\",\"ruleText\":\"%s\",\"vectorIndex\":\"%s\",\"syncToken\":\"%s\"}",
-                           knowledgeData, ruleText, vectorIndex, syncToken);
+    private void recordLocalChange(Long knowledgeBaseId, String venueMapData, String ruleText) {
+        long id = knowledgeBaseId(knowledgeBaseId);
+        syncTracker.recordLocalChange(id, venueMapData, ruleText, embeddingPipeline.chunk(id, venueMapData, ruleText));
+    }
+
+    /**
+     * 按所属知识库记录被删除的分块，使对端同步时一并删除
+     */
+    private void recordRemoval(long[] vectorIds) {
+        Map<Long, List<Long>> byKnowledgeBase = new HashMap<>();
+        for (long vectorId : vectorIds) {
+            byKnowledgeBase.computeIfAbsent(KnowledgeChunk.knowledgeBaseIdOf(vectorId), id -> new ArrayList<>()).add(vectorId);
+        }
+        byKnowledgeBase.forEach((knowledgeBaseId, ids) ->
+                syncTracker.recordRemoval(knowledgeBaseId, ids.stream().mapToLong(Long::longValue).toArray()));
+    }
+
+    /**
+     * 从知识库记录重新分块，取出指定ID的分块
+     */
+    private Iterator<KnowledgeChunk> chunksOf(KnowledgeBase knowledgeBase, long[] chunkIds) {
+        long[] sortedIds = chunkIds.clone();
+        Arrays.sort(sortedIds);
+        List<KnowledgeChunk> selected = new ArrayList<>(sortedIds.length);
+        Iterator<KnowledgeChunk> chunks = embeddingPipeline.chunk(knowledgeBaseId(knowledgeBase.getId()),
+                knowledgeBase.getVenueMapData(), knowledgeBase.getRuleText());
+        while (chunks.hasNext()) {
+            KnowledgeChunk chunk = chunks.next();
+            if (Arrays.binarySearch(sortedIds, chunk.getId()) >= 0) {
+                selected.add(chunk);
+            }
+        }
+        return selected.iterator();
+    }
+
+    /**
+     * 将同一批分块写入关键词索引与属性索引
+     */
+    private static void indexChunks(Bm25Index keywordIndex, ChunkAttributeIndex attributeIndex,
+                                    Iterator<KnowledgeChunk> chunks) {
+        List<KnowledgeChunk> materialized = new ArrayList<>();
+        chunks.forEachRemaining(materialized::add);
+        keywordIndex.add(materialized.iterator());
+        attributeIndex.add(materialized.iterator());
     }
 
     /**
@@ -437,27 +1155,6 @@ public class RAGKnowledgeService {
         }
         return currentData + " | " + incrementalData;
     }
-
-    /**
-     * 检查节点健康状态
-     */
-    private NodeStatus checkNodeHealth(String nodeUrl) {
-        long startTime = System.currentTimeMillis();
-        try {
-            ResponseEntity<String> response = restTemplate.getForEntity(nodeUrl + "/health", String.class);
-            long responseTime = System.currentTimeMillis() - startTime;
-            
-            if (response.getStatusCode().is2xxSuccessful()) {
-                return new NodeStatus(nodeUrl, "HEALTHY", responseTime, response.getBody());
-            } else {
-                return new NodeStatus(nodeUrl, "UNHEALTHY", responseTime, 
-                                    "HTTP Status: " + response.getStatusCode());
-            }
-        } catch (Exception e) {
-            long responseTime = System.currentTimeMillis() - startTime;
-            return new NodeStatus(nodeUrl, "OFFLINE", responseTime, e.getMessage());
-        }
-    }
 }
 
 
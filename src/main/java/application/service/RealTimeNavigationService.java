@@ -1,17 +1,32 @@
 package application.service;
 
+import domain.entity.KnowledgeBase;
 import domain.entity.NavigationPath;
-import domain.repository.NavigationPathRepository;
+import domain.repository.KnowledgeBaseRepository;
 import application.component.PagedAttentionProcessor;
 import application.component.ARNavigationGenerator;
 import application.component.PerformanceOptimizer;
 import application.dto.*;
+import com.navigation.system.infrastructure.journal.NavigationPathJournal;
+import com.navigation.system.infrastructure.routing.GridAStarPlanner;
+import com.navigation.system.infrastructure.routing.GridPath;
+import com.navigation.system.infrastructure.routing.IncrementalRoute;
+import com.navigation.system.infrastructure.routing.VenueGrid;
+import com.navigation.system.infrastructure.routing.VenueRoutingGraph;
+import com.navigation.system.infrastructure.routing.VenueRoutingRegistry;
+import com.navigation.system.infrastructure.session.SessionRegistry;
+import com.navigation.system.infrastructure.vector.SearchParameterTuner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -21,31 +36,60 @@ import java.util.stream.Collectors;
 @Service
 public class RealTimeNavigationService {
 
-    private static final int MAX_CONCURRENT_SESSIONS = 200;
+    private static final Logger logger = LoggerFactory.getLogger(RealTimeNavigationService.class);
+
     private static final double MAX_RESPONSE_LATENCY = 0.8;
     
-    private final NavigationPathRepository navigationPathRepository;
     private final PagedAttentionProcessor pagedAttentionProcessor;
     private final ARNavigationGenerator arNavigationGenerator;
     private final PerformanceOptimizer performanceOptimizer;
+    private final SearchParameterTuner searchParameterTuner;
+    private final KnowledgeBaseRepository knowledgeBaseRepository;
+    private final VenueRoutingRegistry venueRoutingRegistry;
+    private final NavigationPathJournal navigationPathJournal;
+    
+    // 栅格A*规划器（跳点剪枝，可用场馆预处理路网的地标下界），搜索状态按线程复用，所有会话共用一个实例
+    private final GridAStarPlanner gridPlanner = new GridAStarPlanner();
+    
+    // 新增障碍物的阻挡半径（米）
+    private final double obstacleRadius;
+    
+    // 会话内上报障碍物的有效期，过期后路径重新规划时不再绕行
+    private final Duration obstacleTtl;
     
     /**
-     * 并发会话管理，支持200+并发会话
-     * key: sessionId, value: 会话状态信息
+     * 并发会话管理：分段锁会话表，容量计数CAS准入，空闲超时由时间轮到期，创建与过期均为O(1)
      */
-    private final ConcurrentHashMap<String, SessionState> activeSessions = new ConcurrentHashMap<>();
-    private final AtomicInteger activeSessionCount = new AtomicInteger(0);
+    private final SessionRegistry<SessionState> activeSessions;
+    
+    // 会话空闲超时被清理后的回调，供控制器等上层释放各自的会话资源
+    private final List<Consumer<String>> sessionExpiryListeners = new CopyOnWriteArrayList<>();
 
     @Autowired
     public RealTimeNavigationService(
-            NavigationPathRepository navigationPathRepository,
             PagedAttentionProcessor pagedAttentionProcessor,
             ARNavigationGenerator arNavigationGenerator,
-            PerformanceOptimizer performanceOptimizer) {
-        this.navigationPathRepository = navigationPathRepository;
+            PerformanceOptimizer performanceOptimizer,
+            SearchParameterTuner searchParameterTuner,
+            KnowledgeBaseRepository knowledgeBaseRepository,
+            VenueRoutingRegistry venueRoutingRegistry,
+            NavigationPathJournal navigationPathJournal,
+            @Value("${navigation.routing.obstacle-radius:0.5}") double obstacleRadius,
+            @Value("${navigation.routing.obstacle-ttl-seconds:300}") long obstacleTtlSeconds,
+            @Value("${navigation.realtime.max-concurrent-sessions:200}") int maxConcurrentSessions,
+            @Value("${navigation.realtime.session-idle-timeout-seconds:1800}") long sessionIdleTimeoutSeconds,
+            @Value("${navigation.realtime.session-expiry-tick-ms:1000}") long sessionExpiryTickMs) {
         this.pagedAttentionProcessor = pagedAttentionProcessor;
         this.arNavigationGenerator = arNavigationGenerator;
         this.performanceOptimizer = performanceOptimizer;
+        this.searchParameterTuner = searchParameterTuner;
+        this.knowledgeBaseRepository = knowledgeBaseRepository;
+        this.venueRoutingRegistry = venueRoutingRegistry;
+        this.navigationPathJournal = navigationPathJournal;
+        this.obstacleRadius = obstacleRadius;
+        this.obstacleTtl = Duration.ofSeconds(obstacleTtlSeconds);
+        this.activeSessions = new SessionRegistry<>(maxConcurrentSessions,
+                Duration.ofSeconds(sessionIdleTimeoutSeconds), Duration.ofMillis(sessionExpiryTickMs));
     }
 
     /**
@@ -78,24 +122,43 @@ public class RealTimeNavigationService {
     public SessionCreationResult maintainConcurrentSessions(String sessionId, Long userId, DeviceInfo deviceInfo) {
         validateSessionParameters(sessionId, userId);
         
-        if (activeSessionCount.get() >= MAX_CONCURRENT_SESSIONS) {
-            throw new SessionLimitExceededException(
-                String.format("已达到最大并发会话限制(%d)", MAX_CONCURRENT_SESSIONS));
-        }
-        
-        SessionState sessionState = new SessionState(sessionId, userId, deviceInfo);
+        SessionState sessionState = new SessionState(sessionId, userId, deviceInfo,
+                new IncrementalRoute(gridPlanner, obstacleTtl));
         
-        SessionState existingSession = activeSessions.putIfAbsent(sessionId, sessionState);
-        if (existingSession != null) {
-            throw new SessionConflictException("会话ID已存在: " + sessionId);
+        switch (activeSessions.admit(sessionId, sessionState)) {
+            case FULL:
+                throw new SessionLimitExceededException(
+                    String.format("已达到最大并发会话限制(%d)", activeSessions.capacity()));
+            case DUPLICATE:
+                throw new SessionConflictException("会话ID已存在: " + sessionId);
+            default:
+                break;
         }
         
-        activeSessionCount.incrementAndGet();
         performanceOptimizer.initializeSessionMonitoring(sessionId);
         
         return new SessionCreationResult(sessionId, true, "会话创建成功");
     }
 
+    /**
+     * 建立视频流连接，生成会话ID并经会话注册表准入
+     *
+     * @return 新会话ID
+     * @throws SessionLimitExceededException 已达到最大并发会话数
+     */
+    public String establishVideoConnection(Long userId, DeviceInfo deviceInfo) {
+        String sessionId = UUID.randomUUID().toString();
+        maintainConcurrentSessions(sessionId, userId, deviceInfo);
+        return sessionId;
+    }
+
+    /**
+     * 关闭视频流连接，释放会话名额
+     */
+    public void closeVideoConnection(String sessionId) {
+        closeSession(sessionId);
+    }
+
     /**
      * 生成AR导航指引图层
      */
@@ -137,9 +200,10 @@ public class RealTimeNavigationService {
         }
         
         try {
-            NavigationPath adjustedPath = calculateAdjustedPath(currentPath, environmentChanges);
-            navigationPathRepository.savePathData(adjustedPath);
+            NavigationPath adjustedPath = calculateAdjustedPath(sessionState, currentPath, environmentChanges);
+            // 新路径立即生效，持久化异步批量写入（write-behind），不占用请求延迟；进程崩溃时队列中未写入的路径会丢失
             sessionState.setCurrentPath(adjustedPath);
+            navigationPathJournal.append(adjustedPath);
             
             return adjustedPath;
         } catch (Exception e) {
@@ -182,7 +246,6 @@ public class RealTimeNavigationService {
             return new SessionCloseResult(false, "会话不存在: " + sessionId);
         }
         
-        activeSessionCount.decrementAndGet();
         performanceOptimizer.cleanupSessionMonitoring(sessionId);
         
         return new SessionCloseResult(true, "会话关闭成功");
@@ -192,11 +255,26 @@ public class RealTimeNavigationService {
      * 获取当前活跃会话数量
      */
     public int getActiveSessionCount() {
-        return activeSessionCount.get();
+        return activeSessions.size();
+    }
+
+    /**
+     * 获取最大并发会话数量
+     */
+    public int getMaxConcurrentSessions() {
+        return activeSessions.capacity();
+    }
+
+    /**
+     * 注册会话空闲超时回调，会话从注册表移除后以会话ID调用
+     */
+    public void addSessionExpiryListener(Consumer<String> listener) {
+        sessionExpiryListeners.add(listener);
     }
 
     /**
      * 检查响应时延是否低于0.8秒
+     * 观测到的时延同时反馈给知识检索，接近阈值时降低nprobe/efSearch以缩短检索耗时
      */
     public LatencyCheckResult monitorResponseLatency(String sessionId) {
         validateSessionId(sessionId);
@@ -204,6 +282,7 @@ public class RealTimeNavigationService {
         
         try {
             double currentLatency = pagedAttentionProcessor.getProcessingLatency(sessionId);
+            searchParameterTuner.recordResponseLatency(currentLatency * 1000);
             boolean meetsRequirement = currentLatency < MAX_RESPONSE_LATENCY;
             String statusMessage = meetsRequirement ? 
                 String.format("时延满足要求(%.3fs)", currentLatency) : 
@@ -219,24 +298,26 @@ public class RealTimeNavigationService {
      * 获取所有活跃会话ID列表（用于监控和管理）
      */
     public List<String> getActiveSessionIds() {
-        return new ArrayList<>(activeSessions.keySet());
+        return activeSessions.sessionIds();
     }
 
     /**
-     * 强制清理所有过期或异常会话
+     * 清理空闲超时的会话，只处理时间轮上到期的会话，不遍历全部会话
      */
+    @Scheduled(fixedDelayString = "${navigation.realtime.session-expiry-tick-ms:1000}")
     public void cleanupExpiredSessions() {
-        Iterator<Map.Entry<String, SessionState>> iterator = activeSessions.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<String, SessionState> entry = iterator.next();
-            SessionState sessionState = entry.getValue();
-            
-            // 简单的超时检查（实际应基于最后活动时间）
-            if (sessionState.isExpired()) {
-                iterator.remove();
-                activeSessionCount.decrementAndGet();
-                performanceOptimizer.cleanupSessionMonitoring(entry.getKey());
+        int expired = activeSessions.expire((sessionId, sessionState) -> {
+            performanceOptimizer.cleanupSessionMonitoring(sessionId);
+            for (Consumer<String> listener : sessionExpiryListeners) {
+                try {
+                    listener.accept(sessionId);
+                } catch (Exception e) {
+                    logger.warn("会话过期回调执行失败，会话ID: {}", sessionId, e);
+                }
             }
+        });
+        if (expired > 0) {
+            logger.info("清理空闲超时会话 {} 个，当前活跃会话 {} 个", expired, activeSessions.size());
         }
     }
 
@@ -254,7 +335,7 @@ public class RealTimeNavigationService {
     }
 
     private SessionState getActiveSession(String sessionId) {
-        SessionState sessionState = activeSessions.get(sessionId);
+        SessionState sessionState = activeSessions.touch(sessionId);
         if (sessionState == null) {
             throw new SessionNotFoundException("会话不存在或已过期: " + sessionId);
         }
@@ -264,17 +345,18 @@ public class RealTimeNavigationService {
     /**
      * 使用A*算法重新规划路径以适应环境变化
      */
-    private NavigationPath calculateAdjustedPath(NavigationPath currentPath, EnvironmentChanges environmentChanges) {
-        AStarPathPlanner pathPlanner = new AStarPathPlanner();
-        
+    private NavigationPath calculateAdjustedPath(SessionState sessionState, NavigationPath currentPath,
+                                                 EnvironmentChanges environmentChanges) {
         // 获取起点和终点
         PathPoint startPoint = getCurrentPositionFromAnalysis(environmentChanges);
         PathPoint endPoint = currentPath.getPathPoints().get(currentPath.getPathPoints().size() - 1);
         
-        // 使用A*算法重新规划路径
-        List<PathPoint> adjustedPoints = pathPlanner.findPath(startPoint, endPoint, environmentChanges);
+        // 在场馆栅格上使用A*算法重新规划路径，会话内上报的障碍物所在栅格在有效期内不可通行
+        List<PathPoint> adjustedPoints = planPath(sessionState.getRoute(), currentPath.getVenueId(),
+                startPoint, endPoint, environmentChanges);
         
         NavigationPath adjustedPath = new NavigationPath();
+        adjustedPath.setVenueId(currentPath.getVenueId());
         adjustedPath.setPathPoints(adjustedPoints);
         adjustedPath.setDistanceEstimate(calculateAdjustedDistance(adjustedPoints));
         adjustedPath.setEstimatedTime(calculateAdjustedTime(adjustedPath.getDistanceEstimate(), environmentChanges));
@@ -283,6 +365,69 @@ public class RealTimeNavigationService {
         return adjustedPath;
     }
 
+    /**
+     * 在场馆栅格上规划起点到终点的路径，返回起点、各转折点与终点
+     * 新增障碍物未落在剩余路径上时沿用会话路径，否则按全部未过期障碍物重新搜索
+     * 场馆未配置栅格地图或起终点不在栅格内时无法绕行，直连终点
+     */
+    private List<PathPoint> planPath(IncrementalRoute route, Long venueId, PathPoint start, PathPoint end,
+                                     EnvironmentChanges environment) {
+        VenueRoutingGraph graph = routingGraph(venueId);
+        VenueGrid grid = graph == null ? null : graph.getGrid();
+        int startCell = grid == null ? -1 : grid.cellAt(start.getX(), start.getY());
+        int goalCell = grid == null ? -1 : grid.cellAt(end.getX(), end.getY());
+        if (startCell < 0 || goalCell < 0) {
+            if (environment.hasObstaclesBetween(start, end)) {
+                logger.warn("场馆 {} 无可用栅格地图，无法绕行起终点之间的障碍物", venueId);
+            }
+            return new ArrayList<>(Arrays.asList(start, end));
+        }
+        
+        GridPath gridPath = route.update(graph, startCell, goalCell, obstacleCells(grid, environment));
+        if (!gridPath.isFound()) {
+            throw new PathAdjustmentException("终点不可达，已探索 " + gridPath.getExpanded() + " 个栅格");
+        }
+        
+        int[] waypoints = gridPath.waypoints();
+        List<PathPoint> points = new ArrayList<>(waypoints.length);
+        points.add(start);
+        for (int i = 1; i < waypoints.length - 1; i++) {
+            points.add(new PathPoint(grid.centerX(waypoints[i]), grid.centerY(waypoints[i]), start.getZ()));
+        }
+        points.add(end);
+        return points;
+    }
+
+    /**
+     * 新增障碍物覆盖的栅格
+     */
+    private int[] obstacleCells(VenueGrid grid, EnvironmentChanges environment) {
+        List<PathPoint> obstacles = environment.getNewObstacles();
+        if (obstacles == null || obstacles.isEmpty()) {
+            return null;
+        }
+        int[] cells = new int[0];
+        for (PathPoint obstacle : obstacles) {
+            int[] covered = grid.cellsWithin(obstacle.getX(), obstacle.getY(), obstacleRadius);
+            int offset = cells.length;
+            cells = Arrays.copyOf(cells, offset + covered.length);
+            System.arraycopy(covered, 0, cells, offset, covered.length);
+        }
+        return cells;
+    }
+
+    /**
+     * 获取场馆预处理路网（栅格地图与地标距离表），首次使用时从磁盘加载或由场馆最新知识库的地图数据构建
+     */
+    private VenueRoutingGraph routingGraph(Long venueId) {
+        if (venueId == null) {
+            return null;
+        }
+        return venueRoutingRegistry.get(venueId, id -> knowledgeBaseRepository.findLatestByVenueId(id)
+                .map(KnowledgeBase::getVenueMapData)
+                .orElse(null));
+    }
+
     /**
      * 从环境变化中提取当前位置（简化实现）
      */
@@ -345,38 +490,29 @@ public class RealTimeNavigationService {
         private final String sessionId;
         private final Long userId;
         private final DeviceInfo deviceInfo;
+        private final IncrementalRoute route;
         private NavigationPath currentPath;
         private PowerMode powerMode;
         private Map<String, Object> optimizationSettings;
         private final long createTime;
-        private long lastActivityTime;
 
-        public SessionState(String sessionId, Long userId, DeviceInfo deviceInfo) {
+        public SessionState(String sessionId, Long userId, DeviceInfo deviceInfo, IncrementalRoute route) {
             this.sessionId = sessionId;
             this.userId = userId;
             this.deviceInfo = deviceInfo;
+            this.route = route;
             this.createTime = System.currentTimeMillis();
-            this.lastActivityTime = createTime;
             this.optimizationSettings = new HashMap<>();
         }
 
-        public boolean isExpired() {
-            long currentTime = System.currentTimeMillis();
-            return (currentTime - lastActivityTime) > (30 * 60 * 1000); // 30分钟超时
-        }
-
-        public void updateActivityTime() {
-            this.lastActivityTime = System.currentTimeMillis();
-        }
-
         // Getters and Setters
         public String getSessionId() { return sessionId; }
         public Long getUserId() { return userId; }
         public DeviceInfo getDeviceInfo() { return deviceInfo; }
+        public IncrementalRoute getRoute() { return route; }
         public NavigationPath getCurrentPath() { return currentPath; }
         public void setCurrentPath(NavigationPath currentPath) { 
             this.currentPath = currentPath;
-            updateActivityTime();
         }
         public PowerMode getPowerMode() { return powerMode; }
         public void setPowerMode(PowerMode powerMode) { this.powerMode = powerMode; }
@@ -386,35 +522,6 @@ public class RealTimeNavigationService {
         }
     }
 
-    /**
-     * 简化的A*路径规划器
-     */
-    private static class AStarPathPlanner {
-        public List<PathPoint> findPath(PathPoint start, PathPoint end, EnvironmentChanges environment) {
-            // 简化的A*算法实现
-            // 实际实现应包括开放列表、关闭列表、启发式函数等
-            List<PathPoint> path = new ArrayList<>();
-            path.add(start);
-            
-            // 简单的直线路径规划（实际应包含障碍物避让）
-            if (!environment.hasObstaclesBetween(start, end)) {
-                path.add(end);
-            } else {
-                // 绕行逻辑（简化实现）
-                path.addAll(generateDetourPath(start, end, environment));
-            }
-            
-            return path;
-        }
-
-        private List<PathPoint> generateDetourPath(PathPoint start, PathPoint end, EnvironmentChanges environment) {
-            // 简化的绕行路径生成
-            List<PathPoint> detour = new ArrayList<>();
-            // 实际应使用更复杂的路径规划算法
-            return detour;
-        }
-    }
-
     /**
      * 自定义异常类
      */
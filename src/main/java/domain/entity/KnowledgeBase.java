@@ -32,6 +32,12 @@ public class KnowledgeBase {
     @TableId(value = "id", type = IdType.AUTO)
     private Long id;
     
+    /**
+     * Venue identifier, the venue whose map and rules this row holds
+     * Per-venue vector indexes and routing graphs are looked up by it
+     */
+    private Long venueId;
+    
     /**
      * Venue map data, storing JSON format map information
      * Contains venue layout, path points, obstacles and other detailed information
@@ -45,8 +51,8 @@ public class KnowledgeBase {
     private String ruleText;
     
     /**
-     * Vector index, storing FAISS built vector index data
-     * Used for fast similarity search and semantic matching
+     * Vector index identifier, naming the index file under FAISSConfig.indexFilePath
+     * Nodes memory-map the file for fast similarity search and semantic matching
      */
     private String vectorIndex;
     
@@ -0,0 +1,113 @@
+package com.navigation.system.infrastructure.backup;
+
+/**
+ * One backup of a knowledge base row: its fields, and the store chunks that hold its texts and
+ * chunk vectors. A manifest only lists chunk keys, so successive backups that share content share
+ * the stored chunks, and a restore can read the chunks in any batches it likes.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class BackupManifest {
+
+    private final String backupId;
+    private final long knowledgeBaseId;
+    private final String version;
+    private final long createdAt;
+    private final String vectorIndex;
+    private final int dimension;
+    private final String[] venueMapDataKeys;
+    private final String[] ruleTextKeys;
+    private final long[] chunkIds;
+    private final String[] vectorKeys;
+
+    BackupManifest(String backupId, long knowledgeBaseId, String version, long createdAt, String vectorIndex,
+                   int dimension, String[] venueMapDataKeys, String[] ruleTextKeys, long[] chunkIds,
+                   String[] vectorKeys) {
+        this.backupId = backupId;
+        this.knowledgeBaseId = knowledgeBaseId;
+        this.version = version;
+        this.createdAt = createdAt;
+        this.vectorIndex = vectorIndex;
+        this.dimension = dimension;
+        this.venueMapDataKeys = venueMapDataKeys;
+        this.ruleTextKeys = ruleTextKeys;
+        this.chunkIds = chunkIds;
+        this.vectorKeys = vectorKeys;
+    }
+
+    /**
+     * @return backup id, knowledge base id and creation time as "kbId-epochMillis"
+     */
+    public String getBackupId() {
+        return backupId;
+    }
+
+    public long getKnowledgeBaseId() {
+        return knowledgeBaseId;
+    }
+
+    /**
+     * @return knowledge version of the row when it was backed up, possibly null
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return epoch millis of the backup
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return vector index id of the row when it was backed up, possibly null
+     */
+    public String getVectorIndex() {
+        return vectorIndex;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return number of knowledge chunks, each with one stored vector
+     */
+    public int getChunkCount() {
+        return chunkIds.length;
+    }
+
+    /**
+     * @return vector ids of the knowledge chunks, in index order
+     */
+    public long[] getChunkIds() {
+        return chunkIds.clone();
+    }
+
+    String[] getVenueMapDataKeys() {
+        return venueMapDataKeys;
+    }
+
+    String[] getRuleTextKeys() {
+        return ruleTextKeys;
+    }
+
+    long[] chunkIds() {
+        return chunkIds;
+    }
+
+    String[] getVectorKeys() {
+        return vectorKeys;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BackupManifest{id=%s, version=%s, chunks=%d}", backupId, version, chunkIds.length);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
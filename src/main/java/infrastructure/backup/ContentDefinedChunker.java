@@ -0,0 +1,60 @@
+package com.navigation.system.infrastructure.backup;
+
+import java.util.SplittableRandom;
+
+/**
+ * Cuts byte sequences at content-defined boundaries with a Gear rolling hash.
+ * A boundary depends only on the bytes just before it, so an edit shifts the boundaries of the
+ * chunk it falls in and leaves the chunks before and after it byte-identical, which is what lets
+ * successive backups of a large map text share all but a few chunks.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+final class ContentDefinedChunker {
+
+    static final int MIN_SIZE = 2 * 1024;
+    static final int MAX_SIZE = 64 * 1024;
+
+    // 13 high bits, which depend on the last 64 bytes: a boundary every 8 KiB on average past the minimum size
+    private static final long BOUNDARY_MASK = -1L << 51;
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed: boundaries must be identical across nodes and releases for chunks to dedupe
+        SplittableRandom random = new SplittableRandom(0x6b6e6f776c656467L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private ContentDefinedChunker() {
+    }
+
+    /**
+     * Finds the end of the chunk starting at an offset.
+     *
+     * @param data bytes to cut
+     * @param offset start of the chunk
+     * @param end end of the data
+     * @return exclusive end of the chunk, between MIN_SIZE and MAX_SIZE bytes past the offset
+     *         unless the data ends first
+     */
+    static int nextBoundary(byte[] data, int offset, int end) {
+        int limit = Math.min(end, offset + MAX_SIZE);
+        int i = Math.min(limit, offset + MIN_SIZE);
+        long hash = 0L;
+        for (; i < limit; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if ((hash & BOUNDARY_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
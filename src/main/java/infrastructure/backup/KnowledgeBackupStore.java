@@ -0,0 +1,541 @@
+package com.navigation.system.infrastructure.backup;
+
+import com.navigation.system.infrastructure.vector.KnowledgeChunk;
+import com.navigation.system.infrastructure.vector.TextEmbedder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Content-addressed, incremental backups of knowledge base rows on the file system.
+ * <ul>
+ *   <li>Map data and rule text are cut into content-defined chunks, and every chunk vector is
+ *       stored on its own. Chunks are stored once under the SHA-256 of their content, so a backup
+ *       only writes the chunks that changed since any earlier backup, of any version.</li>
+ *   <li>Vectors are keyed by the chunk text they embed, so unchanged chunks are neither re-embedded
+ *       nor re-stored, and a restore reads vectors back instead of re-embedding the venue.</li>
+ *   <li>Every backup writes a manifest listing its chunks. Manifests are kept per knowledge base
+ *       and found by backup id or by knowledge version.</li>
+ * </ul>
+ * Chunks are deflated with a CRC32 of their content, and chunks and manifests are written to a
+ * temporary file and renamed into place, so an interrupted backup leaves no partial file behind.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class KnowledgeBackupStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(KnowledgeBackupStore.class);
+
+    private static final int MANIFEST_MAGIC = 0x4B424D46; // "KBMF"
+    private static final byte FORMAT_VERSION = 1;
+    private static final String MANIFEST_EXTENSION = ".manifest";
+    private static final int KEY_BYTES = 32;
+    private static final int EMBED_BATCH_SIZE = 256;
+    private static final Pattern BACKUP_ID_PATTERN = Pattern.compile("(\\d{1,18})-(\\d{1,18})");
+    private static final Pattern MANIFEST_FILE_PATTERN = Pattern.compile("(\\d{1,18})\\.manifest");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path chunkDirectory;
+    private final Path manifestDirectory;
+
+    @Autowired
+    public KnowledgeBackupStore(@Value("${navigation.rag.backup.path:./data/backup}") String baseDirectory) {
+        this(Paths.get(baseDirectory));
+    }
+
+    public KnowledgeBackupStore(Path baseDirectory) {
+        this.chunkDirectory = baseDirectory.resolve("chunks");
+        this.manifestDirectory = baseDirectory.resolve("manifests");
+    }
+
+    /**
+     * Backs up one knowledge base row, storing only the chunks no earlier backup stored.
+     *
+     * @param knowledgeBaseId row id
+     * @param version knowledge version of the row, possibly null
+     * @param vectorIndex vector index id of the row, possibly null
+     * @param venueMapData venue map data, possibly null
+     * @param ruleText rule text, possibly null
+     * @param chunks knowledge chunks of the row, in index order
+     * @param embedder embedder of the chunks not backed up before
+     * @return manifest of the new backup
+     * @throws IOException when a chunk or the manifest cannot be written
+     */
+    public BackupManifest backup(long knowledgeBaseId, String version, String vectorIndex, String venueMapData,
+                                 String ruleText, Iterator<KnowledgeChunk> chunks, TextEmbedder embedder)
+            throws IOException {
+        long start = System.nanoTime();
+        Tally tally = new Tally();
+        String[] venueMapDataKeys = putText(venueMapData, tally);
+        String[] ruleTextKeys = putText(ruleText, tally);
+
+        int dimension = embedder.getDimension();
+        long[] chunkIds = new long[64];
+        String[] vectorKeys = new String[64];
+        int count = 0;
+        Map<String, String> pending = new LinkedHashMap<>();
+        while (chunks.hasNext()) {
+            KnowledgeChunk chunk = chunks.next();
+            String key = vectorKey(chunk.getText(), dimension);
+            if (count == chunkIds.length) {
+                chunkIds = Arrays.copyOf(chunkIds, count * 2);
+                vectorKeys = Arrays.copyOf(vectorKeys, count * 2);
+            }
+            chunkIds[count] = chunk.getId();
+            vectorKeys[count++] = key;
+            if (pending.containsKey(key)) {
+                continue;
+            }
+            if (Files.exists(chunkPath(key))) {
+                tally.reused++;
+                continue;
+            }
+            pending.put(key, chunk.getText());
+            if (pending.size() == EMBED_BATCH_SIZE) {
+                putVectors(pending, embedder, tally);
+            }
+        }
+        putVectors(pending, embedder, tally);
+
+        BackupManifest manifest = writeManifest(knowledgeBaseId, version, vectorIndex, dimension, venueMapDataKeys,
+                ruleTextKeys, Arrays.copyOf(chunkIds, count), Arrays.copyOf(vectorKeys, count));
+        logger.info("Backed up knowledge base {} version {} as {}: {} chunks written ({} bytes), {} reused, in {} ms",
+                knowledgeBaseId, version, manifest.getBackupId(), tally.written, tally.writtenBytes, tally.reused,
+                (System.nanoTime() - start) / 1_000_000);
+        return manifest;
+    }
+
+    /**
+     * @param backupId backup id
+     * @return manifest of the backup, empty when there is no such backup
+     * @throws IOException when the manifest cannot be read or is corrupted
+     */
+    public Optional<BackupManifest> find(String backupId) throws IOException {
+        Matcher matcher = backupId != null ? BACKUP_ID_PATTERN.matcher(backupId) : null;
+        if (matcher == null || !matcher.matches()) {
+            return Optional.empty();
+        }
+        Path path = manifestPath(Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)));
+        return Files.exists(path) ? Optional.of(readManifest(path)) : Optional.empty();
+    }
+
+    /**
+     * @param knowledgeBaseId row id
+     * @param version knowledge version
+     * @return latest backup of the row at that version, empty when the version was not backed up
+     * @throws IOException when a manifest cannot be read or is corrupted
+     */
+    public Optional<BackupManifest> findByVersion(long knowledgeBaseId, String version) throws IOException {
+        List<Long> times = backupTimes(knowledgeBaseId);
+        for (int i = times.size() - 1; i >= 0; i--) {
+            Path path = manifestPath(knowledgeBaseId, times.get(i));
+            // Only the header is read while scanning, the chunk list is loaded for the match
+            if (version.equals(readVersion(path))) {
+                return Optional.of(readManifest(path));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @param manifest backup manifest
+     * @return venue map data of the backup, possibly null
+     * @throws IOException when a chunk is missing or corrupted
+     */
+    public String readVenueMapData(BackupManifest manifest) throws IOException {
+        return readText(manifest.getVenueMapDataKeys());
+    }
+
+    /**
+     * @param manifest backup manifest
+     * @return rule text of the backup, possibly null
+     * @throws IOException when a chunk is missing or corrupted
+     */
+    public String readRuleText(BackupManifest manifest) throws IOException {
+        return readText(manifest.getRuleTextKeys());
+    }
+
+    /**
+     * Reads a range of the chunk vectors of a backup, so a restore can index them batch by batch.
+     *
+     * @param manifest backup manifest
+     * @param from first chunk, inclusive
+     * @param to last chunk, exclusive
+     * @return vectors of the chunks, (to - from) x dimension, in the order of {@link BackupManifest#getChunkIds()}
+     * @throws IOException when a chunk is missing or corrupted
+     */
+    public float[] readVectors(BackupManifest manifest, int from, int to) throws IOException {
+        if (from < 0 || to > manifest.getChunkCount() || from > to) {
+            throw new IndexOutOfBoundsException("Chunk range [" + from + ", " + to + ") of " + manifest.getChunkCount());
+        }
+        int dimension = manifest.getDimension();
+        float[] vectors = new float[(to - from) * dimension];
+        for (int i = from; i < to; i++) {
+            readVector(manifest, i, vectors, (i - from) * dimension);
+        }
+        return vectors;
+    }
+
+    /**
+     * Reads the chunk vectors at arbitrary positions, e.g. a training sample spread over the whole backup.
+     *
+     * @param manifest backup manifest
+     * @param positions chunk positions in {@link BackupManifest#getChunkIds()}
+     * @return vectors of the chunks, positions.length x dimension, in the order of the positions
+     * @throws IOException when a chunk is missing or corrupted
+     */
+    public float[] readVectors(BackupManifest manifest, int[] positions) throws IOException {
+        int dimension = manifest.getDimension();
+        float[] vectors = new float[positions.length * dimension];
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] < 0 || positions[i] >= manifest.getChunkCount()) {
+                throw new IndexOutOfBoundsException("Chunk " + positions[i] + " of " + manifest.getChunkCount());
+            }
+            readVector(manifest, positions[i], vectors, i * dimension);
+        }
+        return vectors;
+    }
+
+    private void readVector(BackupManifest manifest, int position, float[] vectors, int offset) throws IOException {
+        int dimension = manifest.getDimension();
+        String key = manifest.getVectorKeys()[position];
+        byte[] raw = readChunk(key);
+        if (raw.length != dimension * Float.BYTES) {
+            throw new IOException("Vector chunk " + key + " does not have dimension " + dimension);
+        }
+        ByteBuffer.wrap(raw).asFloatBuffer().get(vectors, offset, dimension);
+    }
+
+    private String[] putText(String text, Tally tally) throws IOException {
+        if (text == null) {
+            return null;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        List<String> keys = new ArrayList<>(bytes.length / (8 * 1024) + 1);
+        int offset = 0;
+        while (offset < bytes.length) {
+            int end = ContentDefinedChunker.nextBoundary(bytes, offset, bytes.length);
+            byte[] chunk = Arrays.copyOfRange(bytes, offset, end);
+            String key = hex(sha256().digest(chunk));
+            putChunk(key, chunk, tally);
+            keys.add(key);
+            offset = end;
+        }
+        return keys.toArray(new String[0]);
+    }
+
+    private String readText(String[] keys) throws IOException {
+        if (keys == null) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String key : keys) {
+            out.write(readChunk(key));
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void putVectors(Map<String, String> pending, TextEmbedder embedder, Tally tally) throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        int dimension = embedder.getDimension();
+        float[] vectors = embedder.embedBatch(new ArrayList<>(pending.values()));
+        int i = 0;
+        for (String key : pending.keySet()) {
+            ByteBuffer raw = ByteBuffer.allocate(dimension * Float.BYTES);
+            raw.asFloatBuffer().put(vectors, i++ * dimension, dimension);
+            putChunk(key, raw.array(), tally);
+        }
+        pending.clear();
+    }
+
+    private void putChunk(String key, byte[] content, Tally tally) throws IOException {
+        Path path = chunkPath(key);
+        if (Files.exists(path)) {
+            tally.reused++;
+            return;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 16);
+        try {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(content.length);
+            header.writeInt((int) crc.getValue());
+            deflater.setInput(content);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+        Files.createDirectories(path.getParent());
+        writeAtomically(path, out.toByteArray());
+        tally.written++;
+        tally.writtenBytes += out.size();
+    }
+
+    private byte[] readChunk(String key) throws IOException {
+        byte[] stored;
+        try {
+            stored = Files.readAllBytes(chunkPath(key));
+        } catch (NoSuchFileException e) {
+            throw new IOException("Backup chunk " + key + " is missing", e);
+        }
+        ByteBuffer header = ByteBuffer.wrap(stored);
+        if (stored.length < 2 * Integer.BYTES || header.getInt(0) < 0) {
+            throw new IOException("Backup chunk " + key + " is corrupted");
+        }
+        byte[] content = new byte[header.getInt(0)];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored, 2 * Integer.BYTES, stored.length - 2 * Integer.BYTES);
+            int length = 0;
+            while (length < content.length && !inflater.finished() && !inflater.needsInput()) {
+                length += inflater.inflate(content, length, content.length - length);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if (length != content.length || (int) crc.getValue() != header.getInt(Integer.BYTES)) {
+                throw new IOException("Backup chunk " + key + " is corrupted");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Backup chunk " + key + " is corrupted", e);
+        } finally {
+            inflater.end();
+        }
+        return content;
+    }
+
+    private synchronized BackupManifest writeManifest(long knowledgeBaseId, String version, String vectorIndex,
+                                                      int dimension, String[] venueMapDataKeys, String[] ruleTextKeys,
+                                                      long[] chunkIds, String[] vectorKeys) throws IOException {
+        long createdAt = System.currentTimeMillis();
+        // Backup ids are unique per knowledge base: a second backup in the same millisecond takes the next one
+        while (Files.exists(manifestPath(knowledgeBaseId, createdAt))) {
+            createdAt++;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + chunkIds.length * (Long.BYTES + KEY_BYTES));
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MANIFEST_MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        out.writeLong(knowledgeBaseId);
+        writeNullableString(out, version);
+        out.writeLong(createdAt);
+        writeNullableString(out, vectorIndex);
+        out.writeInt(dimension);
+        writeKeys(out, venueMapDataKeys);
+        writeKeys(out, ruleTextKeys);
+        out.writeInt(chunkIds.length);
+        for (int i = 0; i < chunkIds.length; i++) {
+            out.writeLong(chunkIds[i]);
+            out.write(unhex(vectorKeys[i]));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+
+        Path path = manifestPath(knowledgeBaseId, createdAt);
+        Files.createDirectories(path.getParent());
+        writeAtomically(path, bytes.toByteArray());
+        return new BackupManifest(knowledgeBaseId + "-" + createdAt, knowledgeBaseId, version, createdAt, vectorIndex,
+                dimension, venueMapDataKeys, ruleTextKeys, chunkIds, vectorKeys);
+    }
+
+    private BackupManifest readManifest(Path path) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < Long.BYTES) {
+            throw new IOException("Backup manifest " + path + " is corrupted");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Long.BYTES);
+        if (crc.getValue() != ByteBuffer.wrap(bytes).getLong(bytes.length - Long.BYTES)) {
+            throw new IOException("Backup manifest " + path + " is corrupted");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - Long.BYTES));
+        long knowledgeBaseId = readHeader(in, path);
+        String version = readNullableString(in);
+        long createdAt = in.readLong();
+        String vectorIndex = readNullableString(in);
+        int dimension = in.readInt();
+        String[] venueMapDataKeys = readKeys(in);
+        String[] ruleTextKeys = readKeys(in);
+        int count = in.readInt();
+        long[] chunkIds = new long[count];
+        String[] vectorKeys = new String[count];
+        byte[] key = new byte[KEY_BYTES];
+        for (int i = 0; i < count; i++) {
+            chunkIds[i] = in.readLong();
+            in.readFully(key);
+            vectorKeys[i] = hex(key);
+        }
+        return new BackupManifest(knowledgeBaseId + "-" + createdAt, knowledgeBaseId, version, createdAt, vectorIndex,
+                dimension, venueMapDataKeys, ruleTextKeys, chunkIds, vectorKeys);
+    }
+
+    private String readVersion(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            readHeader(in, path);
+            return readNullableString(in);
+        }
+    }
+
+    private static long readHeader(DataInputStream in, Path path) throws IOException {
+        if (in.readInt() != MANIFEST_MAGIC) {
+            throw new IOException("Not a backup manifest: " + path);
+        }
+        byte formatVersion = in.readByte();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported backup manifest format version " + formatVersion + ": " + path);
+        }
+        return in.readLong();
+    }
+
+    private List<Long> backupTimes(long knowledgeBaseId) throws IOException {
+        Path directory = manifestDirectory.resolve(Long.toString(knowledgeBaseId));
+        List<Long> times = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return times;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + MANIFEST_EXTENSION)) {
+            for (Path file : files) {
+                Matcher matcher = MANIFEST_FILE_PATTERN.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    times.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        times.sort(null);
+        return times;
+    }
+
+    private Path manifestPath(long knowledgeBaseId, long createdAt) {
+        return manifestDirectory.resolve(Long.toString(knowledgeBaseId)).resolve(createdAt + MANIFEST_EXTENSION);
+    }
+
+    private Path chunkPath(String key) {
+        // Two-character fan-out keeps directories small for large stores
+        return chunkDirectory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private static void writeAtomically(Path path, byte[] content) throws IOException {
+        Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content);
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeKeys(DataOutputStream out, String[] keys) throws IOException {
+        out.writeInt(keys != null ? keys.length : -1);
+        if (keys != null) {
+            for (String key : keys) {
+                out.write(unhex(key));
+            }
+        }
+    }
+
+    private static String[] readKeys(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        String[] keys = new String[count];
+        byte[] key = new byte[KEY_BYTES];
+        for (int i = 0; i < count; i++) {
+            in.readFully(key);
+            keys[i] = hex(key);
+        }
+        return keys;
+    }
+
+    private static String vectorKey(String text, int dimension) {
+        // Keyed by what determines the vector, so a chunk is only embedded the first time it is backed up
+        return hex(sha256().digest(("vector/" + dimension + "\n" + text).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static byte[] unhex(String key) {
+        byte[] bytes = new byte[KEY_BYTES];
+        for (int i = 0; i < KEY_BYTES; i++) {
+            bytes[i] = (byte) Integer.parseInt(key.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static final class Tally {
+        int written;
+        long writtenBytes;
+        int reused;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
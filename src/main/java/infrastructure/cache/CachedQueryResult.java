@@ -0,0 +1,119 @@
+package com.navigation.system.infrastructure.cache;
+
+import com.navigation.system.infrastructure.vector.SearchResult;
+
+/**
+ * One cached retrieval: the normalized query, its int8 quantized embedding and the result it produced.
+ * A mutable bean with a no-argument constructor so the shared tier can store it through the JSON
+ * serializer configured in RedisConfig.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public class CachedQueryResult {
+
+    private String query;
+    private byte[] vector;
+    private long[] ids;
+    private float[] scores;
+
+    public CachedQueryResult() {
+    }
+
+    public CachedQueryResult(String query, byte[] vector, SearchResult result) {
+        this.query = query;
+        this.vector = vector;
+        this.ids = result.getIds().clone();
+        this.scores = result.getScores().clone();
+    }
+
+    /**
+     * Quantizes a vector to int8 with one symmetric scale. The scale is dropped because cosine
+     * similarity does not depend on it.
+     *
+     * @param vector float vector
+     * @return quantized vector
+     */
+    public static byte[] quantize(float[] vector) {
+        float max = 0;
+        for (float value : vector) {
+            max = Math.max(max, Math.abs(value));
+        }
+        byte[] quantized = new byte[vector.length];
+        if (max == 0) {
+            return quantized;
+        }
+        float scale = 127f / max;
+        for (int i = 0; i < vector.length; i++) {
+            quantized[i] = (byte) Math.round(vector[i] * scale);
+        }
+        return quantized;
+    }
+
+    /**
+     * Cosine similarity between a query vector and the cached quantized vector.
+     *
+     * @param queryVector query vector of the same dimension
+     * @return cosine similarity, 0 when either vector is zero or dimensions differ
+     */
+    public float cosine(float[] queryVector) {
+        if (vector == null || vector.length != queryVector.length) {
+            return 0;
+        }
+        float dot = 0;
+        float queryNorm = 0;
+        float cachedNorm = 0;
+        for (int i = 0; i < vector.length; i++) {
+            dot += queryVector[i] * vector[i];
+            queryNorm += queryVector[i] * queryVector[i];
+            cachedNorm += vector[i] * vector[i];
+        }
+        if (queryNorm == 0 || cachedNorm == 0) {
+            return 0;
+        }
+        return (float) (dot / Math.sqrt((double) queryNorm * cachedNorm));
+    }
+
+    /**
+     * @return copy of the cached result, safe to hand to callers
+     */
+    public SearchResult toSearchResult() {
+        return new SearchResult(ids.clone(), scores.clone());
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public byte[] getVector() {
+        return vector;
+    }
+
+    public void setVector(byte[] vector) {
+        this.vector = vector;
+    }
+
+    public long[] getIds() {
+        return ids;
+    }
+
+    public void setIds(long[] ids) {
+        this.ids = ids;
+    }
+
+    public float[] getScores() {
+        return scores;
+    }
+
+    public void setScores(float[] scores) {
+        this.scores = scores;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
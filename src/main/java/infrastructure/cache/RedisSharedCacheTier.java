@@ -0,0 +1,49 @@
+package com.navigation.system.infrastructure.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared cache tier on the RedisTemplate from RedisConfig.
+ * Each bucket is one string key holding a JSON list, so a probe of several buckets is a single MGET.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class RedisSharedCacheTier implements SharedCacheTier {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    public RedisSharedCacheTier(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<List<CachedQueryResult>> multiGet(List<String> keys) {
+        List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+        List<List<CachedQueryResult>> buckets = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            Object value = values != null && i < values.size() ? values.get(i) : null;
+            buckets.add(value instanceof List ? (List<CachedQueryResult>) value : null);
+        }
+        return buckets;
+    }
+
+    @Override
+    public void put(String key, List<CachedQueryResult> bucket, Duration ttl) {
+        // Copy into an ArrayList so the JSON serializer records a concrete, deserializable list type
+        redisTemplate.opsForValue().set(key, new ArrayList<>(bucket), ttl);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
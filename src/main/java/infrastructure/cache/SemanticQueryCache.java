@@ -0,0 +1,370 @@
+package com.navigation.system.infrastructure.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.navigation.system.infrastructure.vector.SearchResult;
+import com.navigation.system.infrastructure.vector.TextEmbedder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Semantic cache of retrieval results, scoped per venue and knowledge version.
+ * <ul>
+ *   <li>A query whose normalized text was seen before is answered from the local tier without
+ *       being embedded.</li>
+ *   <li>Otherwise the query embedding is reduced to a random-hyperplane signature of
+ *       signatureBits bits. The bucket with that signature and the buckets one bit away are probed,
+ *       and a cached query is reused when the cosine similarity of its int8 quantized embedding
+ *       reaches similarityThreshold. The hyperplanes come from a fixed seed, so every node computes
+ *       the same signature for the same query.</li>
+ *   <li>The local tier is a bounded Caffeine cache. On a local miss all probed buckets are fetched
+ *       from the shared tier in one round trip, and shared hits are copied into the local tier.</li>
+ *   <li>The knowledge version is part of every key. When a venue is queried with a new version, its
+ *       local entries are dropped; shared entries of the old version are no longer addressed and
+ *       expire with their TTL.</li>
+ * </ul>
+ * A failing shared tier is skipped for {@link #SHARED_TIER_RETRY_MS} ms so a Redis outage does not
+ * add a timeout to every query.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class SemanticQueryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SemanticQueryCache.class);
+
+    private static final String SHARED_KEY_PREFIX = "rag:semantic:";
+
+    private static final int MAX_BUCKET_ENTRIES = 8;
+
+    private static final long SHARED_TIER_RETRY_MS = 30_000;
+
+    private static final long SIGNATURE_SEED = 0x5EED_CAC4EL;
+
+    private final TextEmbedder embedder;
+    private final SharedCacheTier sharedTier;
+    private final boolean enabled;
+    private final float similarityThreshold;
+    private final int signatureBits;
+    private final Duration ttl;
+    private final float[] hyperplanes;
+    private final Cache<String, CachedQueryResult> exactEntries;
+    private final Cache<String, List<CachedQueryResult>> buckets;
+    private final Map<Long, String> versions = new ConcurrentHashMap<>();
+    private volatile long sharedTierRetryAt;
+
+    private final LongAdder exactHits = new LongAdder();
+    private final LongAdder semanticHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public SemanticQueryCache(TextEmbedder embedder, SharedCacheTier sharedTier,
+                              @Value("${navigation.rag.semantic-cache.enabled:true}") boolean enabled,
+                              @Value("${navigation.rag.semantic-cache.similarity-threshold:0.92}") float similarityThreshold,
+                              @Value("${navigation.rag.semantic-cache.signature-bits:12}") int signatureBits,
+                              @Value("${navigation.rag.semantic-cache.local-max-entries:10000}") long localMaxEntries,
+                              @Value("${navigation.rag.semantic-cache.ttl-seconds:600}") long ttlSeconds) {
+        this(embedder, sharedTier, enabled, similarityThreshold, signatureBits, localMaxEntries, Duration.ofSeconds(ttlSeconds));
+    }
+
+    /**
+     * @param embedder query embedder
+     * @param sharedTier shared second tier, or null for a local-only cache
+     * @param enabled whether results are cached at all
+     * @param similarityThreshold cosine similarity from which a cached query counts as the same question
+     * @param signatureBits signature length, longer signatures give smaller buckets and fewer semantic hits
+     * @param localMaxEntries local tier capacity, per entry kind
+     * @param ttl entry time to live in both tiers
+     */
+    public SemanticQueryCache(TextEmbedder embedder, SharedCacheTier sharedTier, boolean enabled,
+                              float similarityThreshold, int signatureBits, long localMaxEntries, Duration ttl) {
+        if (similarityThreshold <= 0 || similarityThreshold > 1) {
+            throw new IllegalArgumentException("Semantic cache similarity threshold must be between 0-1");
+        }
+        if (signatureBits < 1 || signatureBits > 32) {
+            throw new IllegalArgumentException("Semantic cache signature bits must be between 1-32");
+        }
+        if (localMaxEntries <= 0) {
+            throw new IllegalArgumentException("Semantic cache local capacity must be greater than 0");
+        }
+        if (ttl.isZero() || ttl.isNegative()) {
+            throw new IllegalArgumentException("Semantic cache TTL must be greater than 0");
+        }
+        this.embedder = embedder;
+        this.sharedTier = sharedTier;
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.signatureBits = signatureBits;
+        this.ttl = ttl;
+        this.hyperplanes = hyperplanes(signatureBits, embedder.getDimension());
+        this.exactEntries = Caffeine.newBuilder()
+                .maximumSize(localMaxEntries)
+                .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(localMaxEntries)
+                .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Runs one retrieval against the index for a query embedding.
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         * @param queryVector query embedding
+         * @param k number of results
+         * @return retrieval result
+         */
+        SearchResult search(float[] queryVector, int k);
+    }
+
+    /**
+     * Returns the cached result of the same or a near-identical query, or runs and caches the retrieval.
+     *
+     * @param venueId cache scope
+     * @param version knowledge version the scope is currently served from
+     * @param query query text
+     * @param k number of results
+     * @param loader retrieval run on a miss
+     * @return retrieval result
+     */
+    public SearchResult get(long venueId, String version, String query, int k, Loader loader) {
+        if (!enabled || version == null) {
+            return loader.search(embedder.embed(query), k);
+        }
+        String previous = versions.put(venueId, version);
+        if (previous != null && !previous.equals(version)) {
+            invalidate(venueId);
+            versions.put(venueId, version);
+        }
+
+        String scope = venueId + ":" + version + ":" + k + ":";
+        String normalized = normalize(query);
+        CachedQueryResult exact = exactEntries.getIfPresent(scope + normalized);
+        if (exact != null) {
+            exactHits.increment();
+            return exact.toSearchResult();
+        }
+
+        float[] queryVector = embedder.embed(query);
+        int signature = signature(queryVector);
+        List<String> keys = probeKeys(scope, signature);
+        for (String key : keys) {
+            CachedQueryResult match = match(buckets.getIfPresent(key), normalized, queryVector);
+            if (match != null) {
+                semanticHits.increment();
+                exactEntries.put(scope + normalized, match);
+                return match.toSearchResult();
+            }
+        }
+
+        List<List<CachedQueryResult>> shared = fetchShared(keys);
+        if (shared != null) {
+            for (int i = 0; i < keys.size(); i++) {
+                CachedQueryResult match = match(shared.get(i), normalized, queryVector);
+                if (match != null) {
+                    sharedHits.increment();
+                    exactEntries.put(scope + normalized, match);
+                    buckets.asMap().merge(keys.get(i), Collections.singletonList(match), SemanticQueryCache::append);
+                    return match.toSearchResult();
+                }
+            }
+        }
+
+        misses.increment();
+        SearchResult result = loader.search(queryVector, k);
+        CachedQueryResult entry = new CachedQueryResult(normalized, CachedQueryResult.quantize(queryVector), result);
+        String key = keys.get(0);
+        exactEntries.put(scope + normalized, entry);
+        buckets.asMap().merge(key, Collections.singletonList(entry), SemanticQueryCache::append);
+        if (shared != null) {
+            List<CachedQueryResult> current = shared.get(0);
+            storeShared(key, append(current != null ? current : Collections.emptyList(), Collections.singletonList(entry)));
+        }
+        return result;
+    }
+
+    /**
+     * Drops all local entries of a venue, for example after its index changed without a version change.
+     *
+     * @param venueId cache scope
+     */
+    public void invalidate(long venueId) {
+        String prefix = venueId + ":";
+        exactEntries.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        buckets.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        versions.remove(venueId);
+    }
+
+    public long getExactHits() {
+        return exactHits.sum();
+    }
+
+    public long getSemanticHits() {
+        return semanticHits.sum();
+    }
+
+    public long getSharedHits() {
+        return sharedHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SemanticQueryCache{enabled=%s, exactHits=%d, semanticHits=%d, sharedHits=%d, misses=%d}",
+                enabled, getExactHits(), getSemanticHits(), getSharedHits(), getMisses());
+    }
+
+    /**
+     * Lower-cases and collapses whitespace and trailing punctuation so trivially different spellings share an entry.
+     */
+    static String normalize(String query) {
+        StringBuilder normalized = new StringBuilder(query.length());
+        boolean space = false;
+        for (int i = 0; i < query.length(); i++) {
+            char ch = query.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                space = normalized.length() > 0;
+                continue;
+            }
+            if (space) {
+                normalized.append(' ');
+                space = false;
+            }
+            normalized.append(ch);
+        }
+        int end = normalized.length();
+        while (end > 0 && isTrailingPunctuation(normalized.charAt(end - 1))) {
+            end--;
+        }
+        normalized.setLength(end);
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isTrailingPunctuation(char ch) {
+        return ch == '?' || ch == '!' || ch == '.' || ch == '？' || ch == '！' || ch == '。';
+    }
+
+    private CachedQueryResult match(List<CachedQueryResult> bucket, String normalized, float[] queryVector) {
+        if (bucket == null) {
+            return null;
+        }
+        CachedQueryResult best = null;
+        float bestSimilarity = similarityThreshold;
+        for (CachedQueryResult candidate : bucket) {
+            if (normalized.equals(candidate.getQuery())) {
+                return candidate;
+            }
+            float similarity = candidate.cosine(queryVector);
+            if (similarity >= bestSimilarity) {
+                best = candidate;
+                bestSimilarity = similarity;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Keys of the query's own bucket first, then of every bucket whose signature differs in one bit.
+     */
+    private List<String> probeKeys(String scope, int signature) {
+        List<String> keys = new ArrayList<>(signatureBits + 1);
+        keys.add(scope + Integer.toHexString(signature));
+        for (int bit = 0; bit < signatureBits; bit++) {
+            keys.add(scope + Integer.toHexString(signature ^ (1 << bit)));
+        }
+        return keys;
+    }
+
+    private int signature(float[] vector) {
+        int dimension = vector.length;
+        int signature = 0;
+        for (int bit = 0; bit < signatureBits; bit++) {
+            float dot = 0;
+            int offset = bit * dimension;
+            for (int i = 0; i < dimension; i++) {
+                dot += hyperplanes[offset + i] * vector[i];
+            }
+            if (dot >= 0) {
+                signature |= 1 << bit;
+            }
+        }
+        return signature;
+    }
+
+    private List<List<CachedQueryResult>> fetchShared(List<String> keys) {
+        if (sharedTier == null || System.currentTimeMillis() < sharedTierRetryAt) {
+            return null;
+        }
+        List<String> sharedKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            sharedKeys.add(SHARED_KEY_PREFIX + key);
+        }
+        try {
+            return sharedTier.multiGet(sharedKeys);
+        } catch (RuntimeException e) {
+            sharedTierFailed(e);
+            return null;
+        }
+    }
+
+    private void storeShared(String key, List<CachedQueryResult> bucket) {
+        try {
+            sharedTier.put(SHARED_KEY_PREFIX + key, bucket, ttl);
+        } catch (RuntimeException e) {
+            sharedTierFailed(e);
+        }
+    }
+
+    private void sharedTierFailed(RuntimeException e) {
+        sharedTierRetryAt = System.currentTimeMillis() + SHARED_TIER_RETRY_MS;
+        logger.warn("Shared query cache tier unavailable, using local tier only for {} ms: {}",
+                SHARED_TIER_RETRY_MS, e.getMessage());
+    }
+
+    /**
+     * Appends entries to a bucket, keeping the most recent {@link #MAX_BUCKET_ENTRIES}.
+     */
+    private static List<CachedQueryResult> append(List<CachedQueryResult> bucket, List<CachedQueryResult> added) {
+        List<CachedQueryResult> merged = new ArrayList<>(bucket.size() + added.size());
+        merged.addAll(bucket);
+        merged.addAll(added);
+        int excess = merged.size() - MAX_BUCKET_ENTRIES;
+        return excess > 0 ? new ArrayList<>(merged.subList(excess, merged.size())) : merged;
+    }
+
+    private static float[] hyperplanes(int bits, int dimension) {
+        Random random = new Random(SIGNATURE_SEED);
+        float[] hyperplanes = new float[bits * dimension];
+        for (int i = 0; i < hyperplanes.length; i++) {
+            hyperplanes[i] = (float) random.nextGaussian();
+        }
+        return hyperplanes;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
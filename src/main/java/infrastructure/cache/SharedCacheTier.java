@@ -0,0 +1,36 @@
+package com.navigation.system.infrastructure.cache;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Second cache tier shared by all nodes serving the same venues.
+ * Values are small buckets of cached results stored under one key; implementations may fail with
+ * runtime exceptions, which callers treat as a miss.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public interface SharedCacheTier {
+
+    /**
+     * Fetches several buckets in one round trip.
+     *
+     * @param keys bucket keys
+     * @return buckets index aligned with keys, null for missing keys
+     */
+    List<List<CachedQueryResult>> multiGet(List<String> keys);
+
+    /**
+     * Replaces a bucket.
+     *
+     * @param key bucket key
+     * @param bucket bucket contents
+     * @param ttl time to live
+     */
+    void put(String key, List<CachedQueryResult> bucket, Duration ttl);
+}
+
+
+// 内容由AI生成，仅供参考
@@ -74,6 +74,60 @@ public class FAISSConfig {
      * Default returns 10 most similar results.
      */
     private Integer searchK = 10;
+    
+    /**
+     * Number of product quantization sub-quantizers for IVF_PQ.
+     * Default 16 sub-vectors, each vector is compressed to 16 code bytes.
+     */
+    private Integer pqSubQuantizers = 16;
+    
+    /**
+     * Bits per product quantization code for IVF_PQ.
+     * Default 8 bits, i.e. 256 codewords per sub-quantizer.
+     */
+    private Integer pqBitsPerCode = 8;
+    
+    /**
+     * Number of sampled queries used to report compressed index recall when no search parameter
+     * tuner measures it. Each query scans the whole corpus, so the default 0 skips the evaluation.
+     */
+    private Integer recallSampleQueries = 0;
+    
+    /**
+     * Number of HNSW graph neighbors per node.
+     * Default 16 links per node on upper layers and 32 on the bottom layer.
+     */
+    private Integer hnswM = 16;
+    
+    /**
+     * HNSW candidate list size during construction.
+     * Default 200, higher values build a better graph more slowly.
+     */
+    private Integer hnswEfConstruction = 200;
+    
+    /**
+     * HNSW candidate list size during search.
+     * Default 64, trading recall against query latency.
+     */
+    private Integer hnswEfSearch = 64;
+    
+    /**
+     * Maximum number of tokens per knowledge chunk.
+     * Default 128 tokens, longer regions and clauses are split into overlapping windows.
+     */
+    private Integer chunkMaxTokens = 128;
+    
+    /**
+     * Number of tokens shared by consecutive chunk windows.
+     * Default 16 tokens, keeping context across window boundaries.
+     */
+    private Integer chunkOverlapTokens = 16;
+
+    /**
+     * Memory budget for per-venue indexes resident on this node, in megabytes.
+     * Default 1024 MB; least recently used venues are evicted beyond it.
+     */
+    private Integer venueIndexMemoryBudgetMb = 1024;
 
     // Getter and Setter methods
     
@@ -157,6 +211,78 @@ public class FAISSConfig {
         this.searchK = searchK;
     }
 
+    public Integer getPqSubQuantizers() {
+        return pqSubQuantizers;
+    }
+
+    public void setPqSubQuantizers(Integer pqSubQuantizers) {
+        this.pqSubQuantizers = pqSubQuantizers;
+    }
+
+    public Integer getPqBitsPerCode() {
+        return pqBitsPerCode;
+    }
+
+    public void setPqBitsPerCode(Integer pqBitsPerCode) {
+        this.pqBitsPerCode = pqBitsPerCode;
+    }
+
+    public Integer getRecallSampleQueries() {
+        return recallSampleQueries;
+    }
+
+    public void setRecallSampleQueries(Integer recallSampleQueries) {
+        this.recallSampleQueries = recallSampleQueries;
+    }
+
+    public Integer getHnswM() {
+        return hnswM;
+    }
+
+    public void setHnswM(Integer hnswM) {
+        this.hnswM = hnswM;
+    }
+
+    public Integer getHnswEfConstruction() {
+        return hnswEfConstruction;
+    }
+
+    public void setHnswEfConstruction(Integer hnswEfConstruction) {
+        this.hnswEfConstruction = hnswEfConstruction;
+    }
+
+    public Integer getHnswEfSearch() {
+        return hnswEfSearch;
+    }
+
+    public void setHnswEfSearch(Integer hnswEfSearch) {
+        this.hnswEfSearch = hnswEfSearch;
+    }
+
+    public Integer getChunkMaxTokens() {
+        return chunkMaxTokens;
+    }
+
+    public void setChunkMaxTokens(Integer chunkMaxTokens) {
+        this.chunkMaxTokens = chunkMaxTokens;
+    }
+
+    public Integer getChunkOverlapTokens() {
+        return chunkOverlapTokens;
+    }
+
+    public void setChunkOverlapTokens(Integer chunkOverlapTokens) {
+        this.chunkOverlapTokens = chunkOverlapTokens;
+    }
+
+    public Integer getVenueIndexMemoryBudgetMb() {
+        return venueIndexMemoryBudgetMb;
+    }
+
+    public void setVenueIndexMemoryBudgetMb(Integer venueIndexMemoryBudgetMb) {
+        this.venueIndexMemoryBudgetMb = venueIndexMemoryBudgetMb;
+    }
+
     /**
      * Validates configuration parameter legality.
      * 
@@ -185,6 +311,30 @@ public class FAISSConfig {
         if (searchK == null || searchK <= 0 || searchK > 1000) {
             throw new IllegalArgumentException("Number of search results must be between 1-1000");
         }
+        if (pqSubQuantizers == null || pqSubQuantizers <= 0 || dimensionSize % pqSubQuantizers != 0) {
+            throw new IllegalArgumentException("Vector dimension size must be divisible by the number of PQ sub-quantizers");
+        }
+        if (pqBitsPerCode == null || pqBitsPerCode <= 0 || pqBitsPerCode > 8) {
+            throw new IllegalArgumentException("PQ bits per code must be between 1-8");
+        }
+        if (recallSampleQueries == null || recallSampleQueries < 0) {
+            throw new IllegalArgumentException("Number of recall sample queries must not be negative");
+        }
+        if (hnswM == null || hnswM < 2 || hnswM > 128) {
+            throw new IllegalArgumentException("HNSW M must be between 2-128");
+        }
+        if (hnswEfConstruction == null || hnswEfConstruction <= 0 || hnswEfSearch == null || hnswEfSearch <= 0) {
+            throw new IllegalArgumentException("HNSW efConstruction and efSearch must be greater than 0");
+        }
+        if (chunkMaxTokens == null || chunkMaxTokens <= 0 || chunkMaxTokens > 8192) {
+            throw new IllegalArgumentException("Chunk size must be between 1-8192 tokens");
+        }
+        if (chunkOverlapTokens == null || chunkOverlapTokens < 0 || chunkOverlapTokens >= chunkMaxTokens) {
+            throw new IllegalArgumentException("Chunk overlap must be non-negative and smaller than the chunk size");
+        }
+        if (venueIndexMemoryBudgetMb == null || venueIndexMemoryBudgetMb <= 0) {
+            throw new IllegalArgumentException("Venue index memory budget must be greater than 0");
+        }
         return true;
     }
 
@@ -197,9 +347,11 @@ public class FAISSConfig {
     public String toString() {
         return String.format(
             "FAISSConfig{indexType='%s', dimensionSize=%d, similarityAlgorithm='%s', " +
-            "nlist=%d, nprobe=%d, gpuAcceleration=%s, batchSize=%d, buildThreads=%d, searchK=%d}",
+            "nlist=%d, nprobe=%d, gpuAcceleration=%s, batchSize=%d, buildThreads=%d, searchK=%d, " +
+            "pqSubQuantizers=%d, pqBitsPerCode=%d, hnswM=%d, hnswEfConstruction=%d, hnswEfSearch=%d}",
             indexType, dimensionSize, similarityAlgorithm, nlist, nprobe, 
-            gpuAcceleration, batchSize, buildThreads, searchK
+            gpuAcceleration, batchSize, buildThreads, searchK, pqSubQuantizers, pqBitsPerCode,
+            hnswM, hnswEfConstruction, hnswEfSearch
         );
     }
 }
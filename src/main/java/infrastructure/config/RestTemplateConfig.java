@@ -0,0 +1,47 @@
+package com.navigation.system.infrastructure.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * HTTP客户端配置类
+ * 节点间同步的请求体以流式写出，关闭请求体缓冲，避免大体量增量在发送前整体复制到内存
+ *
+ * @author Alex
+ * @version 1.0
+ */
+@Configuration
+public class RestTemplateConfig {
+
+    /**
+     * 连接超时时间（毫秒）
+     */
+    @Value("${navigation.rag.sync.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    /**
+     * 读取超时时间（毫秒）
+     */
+    @Value("${navigation.rag.sync.read-timeout-ms:120000}")
+    private int readTimeoutMs;
+
+    /**
+     * 创建RestTemplate实例，请求体按分块传输编码边写边发
+     *
+     * @return RestTemplate实例
+     */
+    @Bean
+    public RestTemplate restTemplate() {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setBufferRequestBody(false);
+        requestFactory.setConnectTimeout(connectTimeoutMs);
+        requestFactory.setReadTimeout(readTimeoutMs);
+        return new RestTemplate(requestFactory);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,49 @@
+package com.navigation.system.infrastructure.journal;
+
+import domain.entity.NavigationPath;
+import domain.repository.NavigationPathRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * Write-behind journal of rerouted navigation paths. Each batch is one
+ * {@link NavigationPathRepository#saveAll} call, a single transaction whose inserts into
+ * navigation_path the JDBC driver sends as statement batches.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class NavigationPathJournal extends WriteBehindJournal<NavigationPath> {
+
+    /**
+     * @param navigationPathRepository navigation_path repository
+     * @param meterRegistry registry of the journal meters
+     * @param capacity maximum number of queued paths
+     * @param maxBatchSize maximum number of paths per transaction
+     */
+    @Autowired
+    public NavigationPathJournal(NavigationPathRepository navigationPathRepository,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${navigation.routing.journal.capacity:4096}") int capacity,
+                                 @Value("${navigation.routing.journal.max-batch-size:256}") int maxBatchSize) {
+        super("navigation-path", navigationPathRepository::saveAll, capacity, maxBatchSize, meterRegistry);
+    }
+
+    /**
+     * Writes the queued paths before the data source shuts down.
+     */
+    @PreDestroy
+    @Override
+    public void close() {
+        super.close();
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,224 @@
+package com.navigation.system.infrastructure.journal;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind journal that persists entries off the request thread.
+ * <ul>
+ *   <li>{@link #append} queues an entry and returns; one writer thread drains the queue in batches of up
+ *       to the maximum batch size, so under load many entries share one statement batch and commit.</li>
+ *   <li>The queue is bounded. When it is full the appending thread writes its entry itself, which slows
+ *       producers down to the store's pace instead of dropping entries or growing the heap.</li>
+ *   <li>A failed batch is retried entry by entry, so one bad entry does not lose the batch; entries that
+ *       still fail are logged and counted.</li>
+ *   <li>{@link #close} stops the writer after everything queued has been written.</li>
+ * </ul>
+ * Meters, tagged with the journal name: navigation.journal.pending (queued entries),
+ * navigation.journal.written, navigation.journal.failed, navigation.journal.overflow (entries written
+ * by the appending thread because the queue was full) and navigation.journal.batch (batch write time).
+ *
+ * @param <T> entry type
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public class WriteBehindJournal<T> implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindJournal.class);
+
+    private static final long CLOSE_TIMEOUT_MS = 30_000;
+
+    /**
+     * Persists a batch of entries, typically in one transaction.
+     */
+    @FunctionalInterface
+    public interface BatchWriter<T> {
+
+        /**
+         * @param batch entries in append order
+         */
+        void write(List<T> batch) throws Exception;
+    }
+
+    private final String name;
+    private final BatchWriter<T> writer;
+    private final int capacity;
+    private final int maxBatchSize;
+    private final Thread writerThread;
+
+    // Guarded by this
+    private final ArrayDeque<T> queue = new ArrayDeque<>();
+    private long appended;
+    private long processed;
+    private boolean closed;
+
+    private final Counter written;
+    private final Counter failed;
+    private final Counter overflow;
+    private final Timer batchTimer;
+
+    /**
+     * @param name journal name, used for the writer thread and the meter tag
+     * @param writer persists batches
+     * @param capacity maximum number of queued entries
+     * @param maxBatchSize maximum number of entries per batch write
+     * @param meterRegistry registry of the journal meters
+     */
+    public WriteBehindJournal(String name, BatchWriter<T> writer, int capacity, int maxBatchSize,
+                              MeterRegistry meterRegistry) {
+        if (capacity <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Journal capacity and batch size must be greater than 0");
+        }
+        this.name = name;
+        this.writer = writer;
+        this.capacity = capacity;
+        this.maxBatchSize = maxBatchSize;
+        Gauge.builder("navigation.journal.pending", this, WriteBehindJournal::pending)
+                .description("Entries queued for the journal writer")
+                .tag("journal", name)
+                .register(meterRegistry);
+        this.written = Counter.builder("navigation.journal.written").tag("journal", name).register(meterRegistry);
+        this.failed = Counter.builder("navigation.journal.failed").tag("journal", name).register(meterRegistry);
+        this.overflow = Counter.builder("navigation.journal.overflow")
+                .description("Entries written by the appending thread because the queue was full")
+                .tag("journal", name)
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("navigation.journal.batch").tag("journal", name).register(meterRegistry);
+        this.writerThread = new Thread(this::drain, name + "-journal-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues an entry for writing. Returns without waiting for the store unless the queue is full or the journal is closed,
+     * in which case the entry is written on the calling thread.
+     *
+     * @param entry entry to persist
+     */
+    public void append(T entry) {
+        synchronized (this) {
+            if (!closed && queue.size() < capacity) {
+                queue.addLast(entry);
+                appended++;
+                notifyAll();
+                return;
+            }
+        }
+        overflow.increment();
+        writeBatch(Collections.singletonList(entry));
+    }
+
+    /**
+     * Waits until every entry appended before the call has been written or given up on.
+     *
+     * @param timeoutMs maximum wait
+     * @return whether the journal caught up within the timeout
+     */
+    public synchronized boolean flush(long timeoutMs) throws InterruptedException {
+        long target = appended;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (processed < target) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                return false;
+            }
+            wait(remainingMs);
+        }
+        return true;
+    }
+
+    /**
+     * @return number of queued entries
+     */
+    public synchronized int pending() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting entries into the queue, writes everything queued and stops the writer.
+     * Entries appended afterwards are written on the calling thread.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writerThread.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int left = pending();
+        if (left > 0) {
+            logger.warn("Journal {} closed with {} entries not written", name, left);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WriteBehindJournal{name=%s, pending=%d, written=%.0f, failed=%.0f, overflow=%.0f}",
+                name, pending(), written.count(), failed.count(), overflow.count());
+    }
+
+    private void drain() {
+        List<T> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            synchronized (this) {
+                processed += batch.size();
+                notifyAll();
+                batch.clear();
+                while (queue.isEmpty()) {
+                    if (closed) {
+                        return;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Only close() ends the writer; entries must not be left behind
+                    }
+                }
+                while (batch.size() < maxBatchSize && !queue.isEmpty()) {
+                    batch.add(queue.pollFirst());
+                }
+            }
+            writeBatch(batch);
+        }
+    }
+
+    private void writeBatch(List<T> batch) {
+        long begin = System.nanoTime();
+        try {
+            writer.write(batch);
+            written.increment(batch.size());
+            return;
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                failed.increment();
+                logger.warn("Journal {} failed to write an entry: {}", name, e.getMessage(), e);
+                return;
+            }
+            logger.warn("Journal {} failed to write a batch of {}, retrying entries one by one: {}",
+                    name, batch.size(), e.getMessage());
+        } finally {
+            batchTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        }
+        for (T entry : batch) {
+            writeBatch(Collections.singletonList(entry));
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,104 @@
+package com.navigation.system.infrastructure.monitor;
+
+/**
+ * Result of the latest health probe of one node, with its rolling latency percentiles.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class NodeHealth {
+
+    public static final String HEALTHY = "HEALTHY";
+    public static final String UNHEALTHY = "UNHEALTHY";
+    public static final String OFFLINE = "OFFLINE";
+    public static final String UNKNOWN = "UNKNOWN";
+
+    private final String url;
+    private final String status;
+    private final long latencyMs;
+    private final String details;
+    private final long checkedAt;
+    private final int consecutiveFailures;
+    private final double p50Ms;
+    private final double p95Ms;
+    private final double p99Ms;
+
+    NodeHealth(String url, String status, long latencyMs, String details, long checkedAt, int consecutiveFailures,
+               double p50Ms, double p95Ms, double p99Ms) {
+        this.url = url;
+        this.status = status;
+        this.latencyMs = latencyMs;
+        this.details = details;
+        this.checkedAt = checkedAt;
+        this.consecutiveFailures = consecutiveFailures;
+        this.p50Ms = p50Ms;
+        this.p95Ms = p95Ms;
+        this.p99Ms = p99Ms;
+    }
+
+    NodeHealth withPercentiles(double p50Ms, double p95Ms, double p99Ms) {
+        return new NodeHealth(url, status, latencyMs, details, checkedAt, consecutiveFailures, p50Ms, p95Ms, p99Ms);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return HEALTHY, UNHEALTHY (answered with an error status), OFFLINE (no answer in time) or UNKNOWN (not probed yet)
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @return response time of the latest probe, the probe timeout when the node did not answer
+     */
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    public String getDetails() {
+        return details;
+    }
+
+    /**
+     * @return epoch millis of the latest probe, 0 when not probed yet
+     */
+    public long getCheckedAt() {
+        return checkedAt;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return median response time over the rolling window, NaN without answered probes
+     */
+    public double getP50Ms() {
+        return p50Ms;
+    }
+
+    public double getP95Ms() {
+        return p95Ms;
+    }
+
+    public double getP99Ms() {
+        return p99Ms;
+    }
+
+    public boolean isHealthy() {
+        return HEALTHY.equals(status);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NodeHealth{url='%s', status=%s, latencyMs=%d, p95Ms=%.1f, failures=%d}",
+                url, status, latencyMs, p95Ms, consecutiveFailures);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,421 @@
+package com.navigation.system.infrastructure.routing;
+
+import java.util.Arrays;
+
+/**
+ * A* search on a {@link VenueGrid} with 8-connected moves (straight cost 1, diagonal cost sqrt(2))
+ * and jump point pruning, returning shortest paths.
+ * <ul>
+ *   <li>Jump points: instead of pushing every neighbour, a cell's successors are found by running
+ *       straight or diagonally until a cell where an optimal path may turn, i.e. where an obstacle ends
+ *       beside the run. Open floor between shelves and walls is crossed without touching the open set,
+ *       so only a few dozen cells are expanded even across a 1000 x 1000 venue.</li>
+ *   <li>Straight runs test 64 cells per step against the row-major or column-major blocked bitset.</li>
+ *   <li>The heuristic is the octile distance, which is consistent, so expanded cells are never reopened.
+ *       On a {@link VenueRoutingGraph} it is the larger of the octile distance and the landmark bound;
+ *       quantized landmark bounds may be inconsistent by a quantum, so a cell reached again more cheaply
+ *       after its expansion is reopened.</li>
+ *   <li>The open set is an {@link IndexedMinHeap} of cell numbers with decrease-key; g scores,
+ *       parents and the closed set are primitive arrays indexed by cell.</li>
+ *   <li>All per-search state lives in a per-thread context sized to the largest grid seen. Instead of
+ *       clearing the arrays, every search bumps a generation number and a cell's entries count only
+ *       when its stamp equals the current generation, so a search touches just the cells it visits
+ *       and allocates nothing but the returned path.</li>
+ *   <li>Diagonal moves may not cut the corner of a blocked cell.</li>
+ *   <li>Temporary obstacles are passed per search and set in per-thread overlay bitsets, leaving the
+ *       shared grid untouched.</li>
+ * </ul>
+ * Thread-safe; one instance serves all sessions.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class GridAStarPlanner {
+
+    static final float DIAGONAL_COST = (float) Math.sqrt(2.0);
+
+    /**
+     * Improvement below which an expanded cell is not reopened; absorbs float rounding between equal-length paths.
+     */
+    private static final float REOPEN_EPSILON = 1e-3f;
+
+    /**
+     * Landmarks consulted per search, the ones bounding the start best.
+     */
+    static final int ACTIVE_LANDMARKS = 3;
+
+    static final int[] DX = {1, -1, 0, 0, 1, 1, -1, -1};
+    static final int[] DY = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    /**
+     * Index into {@link #DX} of the direction (dx, dy), at (dy + 1) * 3 + dx + 1.
+     */
+    private static final int[] DIRECTION_INDEX = {7, 3, 5, 1, -1, 0, 6, 2, 4};
+
+    private static final int ALL_DIRECTIONS = 0xFF;
+
+    private final ThreadLocal<SearchContext> contexts = ThreadLocal.withInitial(SearchContext::new);
+
+    /**
+     * Finds a shortest path between two cells.
+     *
+     * @param grid venue grid
+     * @param start start cell; searched from even when it lies inside an obstacle, since the user stands there
+     * @param goal goal cell
+     * @param temporaryBlocked cells blocked for this search only, e.g. reported obstacles; may be null
+     * @return shortest path, not found when the goal is blocked or enclosed
+     */
+    public GridPath findPath(VenueGrid grid, int start, int goal, int[] temporaryBlocked) {
+        return search(grid, null, start, goal, temporaryBlocked);
+    }
+
+    /**
+     * Finds a shortest path between two cells guided by the landmark bounds of a preprocessed graph.
+     * Cells in different components are answered without searching.
+     *
+     * @param graph preprocessed venue graph
+     * @param start start cell; searched from even when it lies inside an obstacle, since the user stands there
+     * @param goal goal cell
+     * @param temporaryBlocked cells blocked for this search only, e.g. reported obstacles; may be null
+     * @return shortest path, not found when the goal is blocked or enclosed
+     */
+    public GridPath findPath(VenueRoutingGraph graph, int start, int goal, int[] temporaryBlocked) {
+        return search(graph.getGrid(), graph, start, goal, temporaryBlocked);
+    }
+
+    private GridPath search(VenueGrid grid, VenueRoutingGraph graph, int start, int goal, int[] temporaryBlocked) {
+        int cellCount = grid.cellCount();
+        if (start < 0 || start >= cellCount || goal < 0 || goal >= cellCount) {
+            throw new IllegalArgumentException("Start " + start + " or goal " + goal + " outside grid of " + cellCount + " cells");
+        }
+        SearchContext s = contexts.get();
+        int generation = s.begin(grid, temporaryBlocked);
+        if (start == goal) {
+            return new GridPath(new int[]{start}, 0.0, 0);
+        }
+        int width = grid.getWidth();
+        int goalX = goal % width;
+        int goalY = goal / width;
+        if (blocked(grid, s, goalX, goalY)
+                || (graph != null && !grid.isBlocked(start) && graph.lowerBound(start, goal) == Float.POSITIVE_INFINITY)) {
+            return GridPath.notFound(0);
+        }
+
+        VenueRoutingGraph.GoalBound bound = graph == null ? null : graph.towards(start, goal, ACTIVE_LANDMARKS);
+        s.seen[start] = generation;
+        s.g[start] = 0f;
+        s.parent[start] = -1;
+        s.h[start] = heuristic(bound, start, start % width, start / width, goalX, goalY);
+        s.open.push(start, s.h[start], 0f);
+        int expanded = 0;
+        while (!s.open.isEmpty()) {
+            int current = s.open.pop();
+            if (current == goal) {
+                return new GridPath(s.trace(goal, width), s.g[goal] * grid.getCellSize(), expanded);
+            }
+            s.closed[current] = generation;
+            expanded++;
+            int cx = current % width;
+            int cy = current / width;
+            int directions = successorDirections(grid, s, current, cx, cy);
+            for (int d = 0; d < DX.length; d++) {
+                if ((directions & (1 << d)) == 0) {
+                    continue;
+                }
+                int jumpPoint = jump(grid, s, cx, cy, DX[d], DY[d], goalX, goalY);
+                if (jumpPoint < 0 || (graph == null && s.closed[jumpPoint] == generation)) {
+                    continue;
+                }
+                int jx = jumpPoint % width;
+                int jy = jumpPoint / width;
+                int steps = Math.max(Math.abs(jx - cx), Math.abs(jy - cy));
+                float g = s.g[current] + steps * (d >= 4 ? DIAGONAL_COST : 1f);
+                if (s.seen[jumpPoint] != generation) {
+                    s.seen[jumpPoint] = generation;
+                    s.g[jumpPoint] = g;
+                    s.parent[jumpPoint] = current;
+                    s.h[jumpPoint] = heuristic(bound, jumpPoint, jx, jy, goalX, goalY);
+                    s.open.push(jumpPoint, g + s.h[jumpPoint], g);
+                } else if (s.closed[jumpPoint] != generation) {
+                    if (g < s.g[jumpPoint]) {
+                        s.g[jumpPoint] = g;
+                        s.parent[jumpPoint] = current;
+                        s.open.decrease(jumpPoint, g + s.h[jumpPoint], g);
+                    }
+                } else if (g < s.g[jumpPoint] - REOPEN_EPSILON) {
+                    s.g[jumpPoint] = g;
+                    s.parent[jumpPoint] = current;
+                    s.closed[jumpPoint] = 0;
+                    s.open.push(jumpPoint, g + s.h[jumpPoint], g);
+                }
+            }
+        }
+        return GridPath.notFound(expanded);
+    }
+
+    /**
+     * Octile distance in cells: the exact path length on an empty 8-connected grid.
+     */
+    static float octile(int x, int y, int goalX, int goalY) {
+        int dx = Math.abs(x - goalX);
+        int dy = Math.abs(y - goalY);
+        return Math.max(dx, dy) + (DIAGONAL_COST - 1f) * Math.min(dx, dy);
+    }
+
+    private static float heuristic(VenueRoutingGraph.GoalBound bound, int cell, int x, int y, int goalX, int goalY) {
+        float h = octile(x, y, goalX, goalY);
+        return bound == null ? h : Math.max(h, bound.lowerBound(cell));
+    }
+
+    /**
+     * Directions worth jumping in from an expanded cell, as a bit mask over {@link #DX}: all eight from the
+     * start; otherwise the travel direction, the two straight components of a diagonal travel direction,
+     * and the turns around an obstacle that ends beside a straight run (forced neighbours).
+     */
+    private static int successorDirections(VenueGrid grid, SearchContext s, int cell, int x, int y) {
+        int parent = s.parent[cell];
+        if (parent < 0) {
+            return ALL_DIRECTIONS;
+        }
+        int width = grid.getWidth();
+        int dx = Integer.signum(x - parent % width);
+        int dy = Integer.signum(y - parent / width);
+        if (dx != 0 && dy != 0) {
+            return bit(dx, 0) | bit(0, dy) | bit(dx, dy);
+        }
+        int mask = bit(dx, dy);
+        for (int side = -1; side <= 1; side += 2) {
+            // Perpendicular offset (px, py) of the side being checked
+            int px = dy != 0 ? side : 0;
+            int py = dx != 0 ? side : 0;
+            if (blocked(grid, s, x - dx + px, y - dy + py) && !blocked(grid, s, x + px, y + py)) {
+                mask |= bit(px, py) | bit(dx + px, dy + py);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Moves from a cell in one direction until reaching the goal or a jump point, a cell where an optimal
+     * path may turn. Diagonal runs stop where a straight run branching off them would find a jump point.
+     *
+     * @return jump point cell, or -1 when the run ends at an obstacle or the grid edge
+     */
+    private static int jump(VenueGrid grid, SearchContext s, int x, int y, int dx, int dy, int goalX, int goalY) {
+        if (dy == 0) {
+            int stop = scan(grid.blockedWords(), s.overlayRows, grid.getWidth(), grid.getHeight(),
+                    y, x, dx, goalY == y ? goalX : -1);
+            return stop < 0 ? -1 : y * grid.getWidth() + stop;
+        }
+        if (dx == 0) {
+            int stop = scan(grid.blockedWordsByColumn(), s.overlayColumns, grid.getHeight(), grid.getWidth(),
+                    x, y, dy, goalX == x ? goalY : -1);
+            return stop < 0 ? -1 : stop * grid.getWidth() + x;
+        }
+        while (!blocked(grid, s, x + dx, y + dy) && !blocked(grid, s, x + dx, y) && !blocked(grid, s, x, y + dy)) {
+            x += dx;
+            y += dy;
+            if ((x == goalX && y == goalY) || jump(grid, s, x, y, dx, 0, goalX, goalY) >= 0
+                    || jump(grid, s, x, y, 0, dy, goalX, goalY) >= 0) {
+                return y * grid.getWidth() + x;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Straight run along one line of a bitset (a row, or a column of the column-major copy), 64 cells per step.
+     * The run stops at the goal or at a cell beside which a neighbouring line turns from blocked to free.
+     *
+     * @param blocked permanent blocked bitset, line-major
+     * @param overlay temporary blocked bitset in the same layout
+     * @param lineLength cells per line
+     * @param lineCount number of lines
+     * @param line line of the run
+     * @param from index on the line the run starts from, exclusive
+     * @param step +1 or -1
+     * @param goalIndex index of the goal on this line, or -1
+     * @return index of the cell the run stops at, or -1 when it hits an obstacle or the grid edge first
+     */
+    private static int scan(long[] blocked, long[] overlay, int lineLength, int lineCount,
+                            int line, int from, int step, int goalIndex) {
+        if (step > 0) {
+            for (int base = from + 1; ; base += 64) {
+                long stops = turns(blocked, overlay, lineLength, lineCount, line + 1, base - 1, base)
+                        | turns(blocked, overlay, lineLength, lineCount, line - 1, base - 1, base);
+                if (goalIndex >= base && goalIndex < base + 64) {
+                    stops |= 1L << (goalIndex - base);
+                }
+                int obstacle = Long.numberOfTrailingZeros(bits(blocked, overlay, lineLength, lineCount, line, base));
+                int stop = Long.numberOfTrailingZeros(stops);
+                if (stop < obstacle) {
+                    return base + stop;
+                }
+                if (obstacle < 64) {
+                    return -1;
+                }
+            }
+        }
+        for (int base = from - 64; ; base -= 64) {
+            long stops = turns(blocked, overlay, lineLength, lineCount, line + 1, base + 1, base)
+                    | turns(blocked, overlay, lineLength, lineCount, line - 1, base + 1, base);
+            if (goalIndex >= base && goalIndex < base + 64) {
+                stops |= 1L << (goalIndex - base);
+            }
+            int obstacle = 63 - Long.numberOfLeadingZeros(bits(blocked, overlay, lineLength, lineCount, line, base));
+            int stop = 63 - Long.numberOfLeadingZeros(stops);
+            if (stop > obstacle) {
+                return base + stop;
+            }
+            if (obstacle >= 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Bit i set where the cell at behind + i is blocked and the cell at base + i is free, on one line.
+     */
+    private static long turns(long[] blocked, long[] overlay, int lineLength, int lineCount, int line, int behind, int base) {
+        return bits(blocked, overlay, lineLength, lineCount, line, behind)
+                & ~bits(blocked, overlay, lineLength, lineCount, line, base);
+    }
+
+    /**
+     * 64 blocked bits of one line from index base on; cells off the grid read as blocked.
+     */
+    private static long bits(long[] blocked, long[] overlay, int lineLength, int lineCount, int line, int base) {
+        int low = Math.max(base, 0);
+        int high = Math.min(base + 64, lineLength);
+        if (line < 0 || line >= lineCount || low >= high) {
+            return -1L;
+        }
+        int position = line * lineLength + low;
+        long valid = high - low == 64 ? -1L : (1L << (high - low)) - 1;
+        long result = (word(blocked, position) | word(overlay, position)) & valid | ~valid;
+        int shift = low - base;
+        return shift == 0 ? result : result << shift | (1L << shift) - 1;
+    }
+
+    /**
+     * 64 bits of a bitset starting at an arbitrary bit position.
+     */
+    private static long word(long[] bits, int position) {
+        int index = position >>> 6;
+        int offset = position & 63;
+        long result = bits[index] >>> offset;
+        if (offset != 0 && index + 1 < bits.length) {
+            result |= bits[index + 1] << (64 - offset);
+        }
+        return result;
+    }
+
+    /**
+     * Whether grid coordinates are off the grid, permanently blocked or blocked for this search.
+     */
+    private static boolean blocked(VenueGrid grid, SearchContext s, int x, int y) {
+        if (x < 0 || y < 0 || x >= grid.getWidth() || y >= grid.getHeight()) {
+            return true;
+        }
+        int cell = y * grid.getWidth() + x;
+        return grid.isBlocked(cell) || (s.overlayRows[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    private static int bit(int dx, int dy) {
+        return 1 << DIRECTION_INDEX[(dy + 1) * 3 + dx + 1];
+    }
+
+    /**
+     * Per-thread search state, reused across searches and grids.
+     */
+    private static final class SearchContext {
+        final IndexedMinHeap open = new IndexedMinHeap();
+        int[] seen = new int[0];
+        int[] closed = new int[0];
+        float[] g = new float[0];
+        float[] h = new float[0];
+        int[] parent = new int[0];
+        long[] overlayRows = new long[0];
+        long[] overlayColumns = new long[0];
+        int[] overlayWords = new int[0];
+        int overlayCount;
+        int generation;
+
+        /**
+         * Starts a search on a grid, setting its temporary obstacles, and returns its generation.
+         */
+        int begin(VenueGrid grid, int[] temporaryBlocked) {
+            int cellCount = grid.cellCount();
+            if (seen.length < cellCount) {
+                seen = new int[cellCount];
+                closed = new int[cellCount];
+                g = new float[cellCount];
+                h = new float[cellCount];
+                parent = new int[cellCount];
+                overlayRows = new long[(cellCount + 63) >>> 6];
+                overlayColumns = new long[(cellCount + 63) >>> 6];
+                overlayCount = 0;
+                generation = 0;
+            }
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(seen, 0);
+                Arrays.fill(closed, 0);
+                generation = 1;
+            }
+            // Clear the previous search's obstacles; only their words were ever set
+            for (int i = 0; i < overlayCount; i++) {
+                overlayRows[overlayWords[2 * i]] = 0;
+                overlayColumns[overlayWords[2 * i + 1]] = 0;
+            }
+            overlayCount = 0;
+            if (temporaryBlocked != null) {
+                if (overlayWords.length < 2 * temporaryBlocked.length) {
+                    overlayWords = new int[2 * temporaryBlocked.length];
+                }
+                int width = grid.getWidth();
+                for (int cell : temporaryBlocked) {
+                    if (cell >= 0 && cell < cellCount) {
+                        int transposed = (cell % width) * grid.getHeight() + cell / width;
+                        overlayRows[cell >>> 6] |= 1L << cell;
+                        overlayColumns[transposed >>> 6] |= 1L << transposed;
+                        overlayWords[2 * overlayCount] = cell >>> 6;
+                        overlayWords[2 * overlayCount + 1] = transposed >>> 6;
+                        overlayCount++;
+                    }
+                }
+            }
+            open.clear(cellCount);
+            return generation;
+        }
+
+        /**
+         * Cells from start to goal, filling in the straight and diagonal runs between jump points.
+         */
+        int[] trace(int goal, int width) {
+            int length = 1;
+            for (int cell = goal; parent[cell] != -1; cell = parent[cell]) {
+                length += steps(parent[cell], cell, width);
+            }
+            int[] path = new int[length];
+            int i = length - 1;
+            path[i] = goal;
+            for (int cell = goal; parent[cell] != -1; cell = parent[cell]) {
+                int from = parent[cell];
+                int step = Integer.signum(from / width - cell / width) * width + Integer.signum(from % width - cell % width);
+                for (int walked = cell + step; walked != from; walked += step) {
+                    path[--i] = walked;
+                }
+                path[--i] = from;
+            }
+            return path;
+        }
+
+        private static int steps(int from, int to, int width) {
+            return Math.max(Math.abs(from % width - to % width), Math.abs(from / width - to / width));
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,90 @@
+package com.navigation.system.infrastructure.routing;
+
+import java.util.Arrays;
+
+/**
+ * Result of a grid search: the cells walked from start to goal and the path length.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class GridPath {
+
+    private static final GridPath NOT_FOUND = new GridPath(new int[0], Double.POSITIVE_INFINITY, 0);
+
+    private final int[] cells;
+    private final double length;
+    private final int expanded;
+
+    GridPath(int[] cells, double length, int expanded) {
+        this.cells = cells;
+        this.length = length;
+        this.expanded = expanded;
+    }
+
+    static GridPath notFound(int expanded) {
+        return expanded == 0 ? NOT_FOUND : new GridPath(new int[0], Double.POSITIVE_INFINITY, expanded);
+    }
+
+    /**
+     * @return whether the goal was reached
+     */
+    public boolean isFound() {
+        return cells.length > 0;
+    }
+
+    /**
+     * @return cells from start to goal inclusive, empty when the goal is unreachable
+     */
+    public int[] getCells() {
+        return cells;
+    }
+
+    /**
+     * @return path length in metres, infinite when the goal is unreachable
+     */
+    public double getLength() {
+        return length;
+    }
+
+    /**
+     * @return number of cells the search expanded
+     */
+    public int getExpanded() {
+        return expanded;
+    }
+
+    /**
+     * Cells where the path changes direction, plus start and goal; the straight runs between
+     * them are implied, which keeps the turn-by-turn waypoint list short.
+     *
+     * @return waypoint cells from start to goal
+     */
+    public int[] waypoints() {
+        if (cells.length <= 2) {
+            return cells.clone();
+        }
+        int[] turns = new int[cells.length];
+        int count = 0;
+        turns[count++] = cells[0];
+        int step = cells[1] - cells[0];
+        for (int i = 2; i < cells.length; i++) {
+            int next = cells[i] - cells[i - 1];
+            if (next != step) {
+                turns[count++] = cells[i - 1];
+                step = next;
+            }
+        }
+        turns[count++] = cells[cells.length - 1];
+        return Arrays.copyOf(turns, count);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GridPath{cells=%d, length=%.2f, expanded=%d}", cells.length, length, expanded);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
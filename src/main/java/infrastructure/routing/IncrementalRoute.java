@@ -0,0 +1,215 @@
+package com.navigation.system.infrastructure.routing;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-session route that is replanned only when obstacle changes touch it.
+ * <ul>
+ *   <li>Obstacles reported during the session accumulate here with a time to live, so a reroute around
+ *       a new obstacle does not lead back into one reported a minute earlier.</li>
+ *   <li>Obstacles only make paths longer: a shortest path that none of the new obstacle cells lies on,
+ *       or cuts the corner of, is still a shortest path. An update then just returns the rest of the
+ *       stored path from the user's cell, checking each new cell against an index of the path cells,
+ *       so the cost depends on the number of changed cells rather than the venue size.</li>
+ *   <li>Only when a new obstacle touches the remaining path, an obstacle expires, the user left the path
+ *       or the goal or venue graph changed is the route searched again, with all live obstacles.</li>
+ * </ul>
+ * Unlike D* Lite, which keeps g and rhs values for every cell it visited (megabytes per session on
+ * large venues), the state here is the path and the obstacle set, and replans use the jump point planner.
+ * Thread-safe.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class IncrementalRoute {
+
+    private final GridAStarPlanner planner;
+    private final long obstacleTtlNanos;
+    private final LongSupplier nanoClock;
+
+    private VenueRoutingGraph graph;
+    private int goal = -1;
+    private int[] path = new int[0];
+    private double[] remaining = new double[0];
+    // Sorted (cell << 32 | index) pairs of the stored path for cell lookups
+    private long[] positions = new long[0];
+    private final Map<Integer, Long> obstacleExpiry = new HashMap<>();
+    private long replans;
+    private long reuses;
+
+    /**
+     * @param planner shared planner
+     * @param obstacleTtl how long a reported obstacle keeps blocking its cells
+     */
+    public IncrementalRoute(GridAStarPlanner planner, Duration obstacleTtl) {
+        this(planner, obstacleTtl, System::nanoTime);
+    }
+
+    /**
+     * @param planner shared planner
+     * @param obstacleTtl how long a reported obstacle keeps blocking its cells
+     * @param nanoClock monotonic clock in nanoseconds
+     */
+    public IncrementalRoute(GridAStarPlanner planner, Duration obstacleTtl, LongSupplier nanoClock) {
+        if (obstacleTtl.isZero() || obstacleTtl.isNegative()) {
+            throw new IllegalArgumentException("Obstacle time to live must be positive");
+        }
+        this.planner = planner;
+        this.obstacleTtlNanos = obstacleTtl.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Records new obstacles and returns the shortest path from the user's cell to the goal around all live obstacles.
+     *
+     * @param graph venue routing graph
+     * @param current cell the user is in
+     * @param goal goal cell
+     * @param newBlocked cells covered by newly reported obstacles; may be null
+     * @return shortest path, not found when the goal is blocked or enclosed
+     */
+    public synchronized GridPath update(VenueRoutingGraph graph, int current, int goal, int[] newBlocked) {
+        long now = nanoClock.getAsLong();
+        boolean replan = purgeExpired(now) || graph != this.graph || goal != this.goal;
+        if (graph != this.graph) {
+            obstacleExpiry.clear();
+        }
+        int from = replan ? -1 : indexOf(current);
+        replan |= from < 0;
+        if (newBlocked != null) {
+            for (int cell : newBlocked) {
+                boolean added = obstacleExpiry.put(cell, now + obstacleTtlNanos) == null;
+                if (added && !replan && blocksPath(graph.getGrid(), cell, from)) {
+                    replan = true;
+                }
+            }
+        }
+        if (!replan) {
+            reuses++;
+            return new GridPath(Arrays.copyOfRange(path, from, path.length), remaining[from], 0);
+        }
+
+        replans++;
+        this.graph = graph;
+        this.goal = goal;
+        GridPath planned = planner.findPath(graph, current, goal, obstacleCells());
+        store(planned, graph.getGrid());
+        return planned;
+    }
+
+    /**
+     * @return cells currently blocked by reported obstacles, expired ones included until the next update
+     */
+    public synchronized int[] obstacleCells() {
+        int[] cells = new int[obstacleExpiry.size()];
+        int i = 0;
+        for (Integer cell : obstacleExpiry.keySet()) {
+            cells[i++] = cell;
+        }
+        return cells;
+    }
+
+    /**
+     * @return number of updates that searched
+     */
+    public synchronized long getReplans() {
+        return replans;
+    }
+
+    /**
+     * @return number of updates answered from the stored path
+     */
+    public synchronized long getReuses() {
+        return reuses;
+    }
+
+    /**
+     * Drops expired obstacles.
+     *
+     * @return whether any expired; the stored path may then no longer be the shortest
+     */
+    private boolean purgeExpired(long now) {
+        boolean expired = false;
+        for (Iterator<Long> it = obstacleExpiry.values().iterator(); it.hasNext(); ) {
+            if (it.next() - now <= 0) {
+                it.remove();
+                expired = true;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Whether a blocked cell lies on the path after index from, or is a corner a diagonal step after from cuts.
+     * The user's own cell does not count; they are already standing there.
+     */
+    private boolean blocksPath(VenueGrid grid, int cell, int from) {
+        if (indexOf(cell) > from) {
+            return true;
+        }
+        int width = grid.getWidth();
+        int x = cell % width;
+        int y = cell / width;
+        for (int d = 0; d < 4; d++) {
+            int neighbor = grid.cell(x + GridAStarPlanner.DX[d], y + GridAStarPlanner.DY[d]);
+            int index = neighbor < 0 ? -1 : indexOf(neighbor);
+            if (index < from) {
+                continue;
+            }
+            // A step between two orthogonal neighbours of the cell is a diagonal around its corner
+            if ((index > from && orthogonallyAdjacent(path[index - 1], cell, width))
+                    || (index + 1 < path.length && orthogonallyAdjacent(path[index + 1], cell, width))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean orthogonallyAdjacent(int a, int b, int width) {
+        return Math.abs(a % width - b % width) + Math.abs(a / width - b / width) == 1;
+    }
+
+    /**
+     * @return index of a cell on the stored path, or -1
+     */
+    private int indexOf(int cell) {
+        int low = 0;
+        int high = positions.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midCell = (int) (positions[mid] >>> 32);
+            if (midCell < cell) {
+                low = mid + 1;
+            } else if (midCell > cell) {
+                high = mid - 1;
+            } else {
+                return (int) positions[mid];
+            }
+        }
+        return -1;
+    }
+
+    private void store(GridPath planned, VenueGrid grid) {
+        path = planned.getCells();
+        positions = new long[path.length];
+        remaining = new double[path.length];
+        int width = grid.getWidth();
+        for (int i = path.length - 1; i >= 0; i--) {
+            positions[i] = (long) path[i] << 32 | i;
+            if (i < path.length - 1) {
+                boolean diagonal = path[i] % width != path[i + 1] % width && path[i] / width != path[i + 1] / width;
+                remaining[i] = remaining[i + 1] + (diagonal ? GridAStarPlanner.DIAGONAL_COST : 1.0) * grid.getCellSize();
+            }
+        }
+        Arrays.sort(positions);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,132 @@
+package com.navigation.system.infrastructure.routing;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int node ids over primitive arrays, used as the A* open set.
+ * Each node remembers its heap slot so a cheaper path found later lowers its key in place
+ * (decrease-key) instead of pushing a duplicate entry.
+ * Keys are ordered by f and, on equal f, by larger g so the search prefers nodes closer to the goal.
+ * Instances are reusable through {@link #clear(int)}; positions of nodes not in the heap are stale
+ * and must only be read for nodes the caller knows to be open.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+final class IndexedMinHeap {
+
+    private int[] nodes = new int[1024];
+    private float[] fs = new float[1024];
+    private float[] gs = new float[1024];
+    private int[] positions = new int[0];
+    private int size;
+
+    /**
+     * Empties the heap and makes room for node ids below nodeCount.
+     */
+    void clear(int nodeCount) {
+        if (positions.length < nodeCount) {
+            positions = new int[nodeCount];
+        }
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * f of the top node; only valid while the heap is not empty.
+     */
+    float peekF() {
+        return fs[0];
+    }
+
+    /**
+     * Inserts a node that is not in the heap.
+     */
+    void push(int node, float f, float g) {
+        if (size == nodes.length) {
+            int capacity = nodes.length * 2;
+            nodes = Arrays.copyOf(nodes, capacity);
+            fs = Arrays.copyOf(fs, capacity);
+            gs = Arrays.copyOf(gs, capacity);
+        }
+        siftUp(size++, node, f, g);
+    }
+
+    /**
+     * Lowers the key of a node that is in the heap.
+     */
+    void decrease(int node, float f, float g) {
+        siftUp(positions[node], node, f, g);
+    }
+
+    /**
+     * Removes and returns the node with the smallest key.
+     */
+    int pop() {
+        int top = nodes[0];
+        size--;
+        if (size > 0) {
+            siftDown(nodes[size], fs[size], gs[size]);
+        }
+        return top;
+    }
+
+    private void siftUp(int i, int node, float f, float g) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(f, g, fs[parent], gs[parent])) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        place(i, node, f, g);
+    }
+
+    private void siftDown(int node, float f, float g) {
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && less(fs[right], gs[right], fs[child], gs[child])) {
+                child = right;
+            }
+            if (!less(fs[child], gs[child], f, g)) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        place(i, node, f, g);
+    }
+
+    private void move(int from, int to) {
+        nodes[to] = nodes[from];
+        fs[to] = fs[from];
+        gs[to] = gs[from];
+        positions[nodes[to]] = to;
+    }
+
+    private void place(int i, int node, float f, float g) {
+        nodes[i] = node;
+        fs[i] = f;
+        gs[i] = g;
+        positions[node] = i;
+    }
+
+    private static boolean less(float f1, float g1, float f2, float g2) {
+        return f1 < f2 || (f1 == f2 && g1 > g2);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
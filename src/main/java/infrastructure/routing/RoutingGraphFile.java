@@ -0,0 +1,171 @@
+package com.navigation.system.infrastructure.routing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Versioned binary file format of a {@link VenueRoutingGraph}.
+ * Layout (little endian):
+ * <pre>
+ * header      64 bytes  magic, version, width, height, landmark count, cell size, origin
+ * blocked     ceil(width x height / 64) x int64 bitset words
+ * landmarks   landmark count x int32 cells
+ * quanta      landmark count x float32 cells per stored unit
+ * tables      landmark count x width x height uint16 distances
+ * </pre>
+ * Files are written to a temporary sibling and atomically renamed so readers never observe a partial file.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class RoutingGraphFile {
+
+    /**
+     * File magic, ASCII "NAVR".
+     */
+    public static final int MAGIC = 0x4E415652;
+
+    /**
+     * Current format version.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * File name extension of routing graph files.
+     */
+    public static final String FILE_EXTENSION = ".route";
+
+    static final int HEADER_BYTES = 64;
+
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private RoutingGraphFile() {
+    }
+
+    /**
+     * Writes a routing graph to disk.
+     *
+     * @param graph graph to persist
+     * @param target target file
+     * @throws IOException when the file cannot be written
+     */
+    public static void write(VenueRoutingGraph graph, Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        VenueGrid grid = graph.getGrid();
+        int landmarkCount = graph.landmarkCount();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(grid.getWidth()).putInt(grid.getHeight())
+                    .putInt(landmarkCount).putInt(0)
+                    .putDouble(grid.getCellSize()).putDouble(grid.getOriginX()).putDouble(grid.getOriginY());
+            buffer.position(HEADER_BYTES);
+            for (long word : grid.blockedWords()) {
+                ensureRemaining(channel, buffer, Long.BYTES);
+                buffer.putLong(word);
+            }
+            int[] landmarks = graph.getLandmarks();
+            for (int i = 0; i < landmarkCount; i++) {
+                ensureRemaining(channel, buffer, Integer.BYTES);
+                buffer.putInt(landmarks[i]);
+            }
+            for (int i = 0; i < landmarkCount; i++) {
+                ensureRemaining(channel, buffer, Float.BYTES);
+                buffer.putFloat(graph.quantum(i));
+            }
+            for (int i = 0; i < landmarkCount; i++) {
+                for (char distance : graph.table(i)) {
+                    ensureRemaining(channel, buffer, Character.BYTES);
+                    buffer.putChar(distance);
+                }
+            }
+            buffer.flip();
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a routing graph into memory.
+     *
+     * @param file routing graph file
+     * @return routing graph
+     * @throws IOException when the file cannot be read or is not a valid routing graph file
+     */
+    public static VenueRoutingGraph read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Invalid routing graph file size " + fileSize + ": " + file);
+            }
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize).order(ByteOrder.LITTLE_ENDIAN);
+            if (bytes.getInt(0) != MAGIC) {
+                throw new IOException("Not a routing graph file: " + file);
+            }
+            int version = bytes.getInt(4);
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported routing graph file version " + version + ": " + file);
+            }
+            int width = bytes.getInt(8);
+            int height = bytes.getInt(12);
+            int landmarkCount = bytes.getInt(16);
+            if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE || landmarkCount < 0) {
+                throw new IOException("Corrupt routing graph header: " + file);
+            }
+            int cells = width * height;
+            int words = (cells + 63) >>> 6;
+            long expected = HEADER_BYTES + (long) words * Long.BYTES
+                    + (long) landmarkCount * (Integer.BYTES + Float.BYTES)
+                    + (long) landmarkCount * cells * Character.BYTES;
+            if (fileSize != expected) {
+                throw new IOException("Routing graph file truncated, " + fileSize + " of " + expected + " bytes: " + file);
+            }
+            bytes.position(HEADER_BYTES);
+            long[] blocked = new long[words];
+            bytes.asLongBuffer().get(blocked);
+            bytes.position(bytes.position() + words * Long.BYTES);
+            int[] landmarks = new int[landmarkCount];
+            bytes.asIntBuffer().get(landmarks);
+            bytes.position(bytes.position() + landmarkCount * Integer.BYTES);
+            float[] quanta = new float[landmarkCount];
+            bytes.asFloatBuffer().get(quanta);
+            bytes.position(bytes.position() + landmarkCount * Float.BYTES);
+            char[][] tables = new char[landmarkCount][cells];
+            for (int i = 0; i < landmarkCount; i++) {
+                bytes.asCharBuffer().get(tables[i]);
+                bytes.position(bytes.position() + cells * Character.BYTES);
+            }
+            VenueGrid grid = new VenueGrid(width, height, bytes.getDouble(24), bytes.getDouble(32), bytes.getDouble(40), blocked);
+            return new VenueRoutingGraph(grid, landmarks, quanta, tables);
+        }
+    }
+
+    private static void ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            buffer.flip();
+            drain(channel, buffer);
+            buffer.clear();
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,240 @@
+package com.navigation.system.infrastructure.routing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Walkability grid of one venue floor plan. Cells are numbered row-major (cell = y * width + x)
+ * and blocked cells are kept in a bitset, so a 1000 x 1000 grid takes 125 KB, plus a column-major
+ * copy of it that lets searches scan columns 64 cells at a time as well as rows.
+ * Immutable once built and safe to share between concurrent searches.
+ * <p>
+ * The grid is read from the optional "grid" member of KnowledgeBase.venueMapData:
+ * <pre>
+ * "grid": {"width": 1000, "height": 800, "cellSize": 0.5, "originX": 0, "originY": 0,
+ *          "blocked": [[x0, y0, x1, y1], ...]}
+ * </pre>
+ * where cellSize and origin are in metres and each blocked entry is an inclusive rectangle of cells (walls, shelves, closed areas).
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class VenueGrid {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final int width;
+    private final int height;
+    private final double cellSize;
+    private final double originX;
+    private final double originY;
+    private final long[] blocked;
+    private final long[] blockedByColumn;
+
+    /**
+     * @param width cells per row
+     * @param height number of rows
+     * @param cellSize cell edge length in metres
+     * @param originX venue x coordinate of the lower-left corner of cell 0
+     * @param originY venue y coordinate of the lower-left corner of cell 0
+     * @param blocked bitset of blocked cells, at least width * height bits; copied
+     */
+    public VenueGrid(int width, int height, double cellSize, double originX, double originY, long[] blocked) {
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE || !(cellSize > 0)) {
+            throw new IllegalArgumentException("Invalid grid " + width + "x" + height + " with cell size " + cellSize);
+        }
+        int words = (int) (((long) width * height + 63) >>> 6);
+        if (blocked.length < words) {
+            throw new IllegalArgumentException("Blocked bitset holds " + blocked.length + " words, " + words + " required");
+        }
+        this.width = width;
+        this.height = height;
+        this.cellSize = cellSize;
+        this.originX = originX;
+        this.originY = originY;
+        this.blocked = Arrays.copyOf(blocked, words);
+        this.blockedByColumn = new long[words];
+        for (int word = 0; word < words; word++) {
+            for (long bits = this.blocked[word]; bits != 0; bits &= bits - 1) {
+                int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+                int transposed = (cell % width) * height + cell / width;
+                blockedByColumn[transposed >>> 6] |= 1L << transposed;
+            }
+        }
+    }
+
+    /**
+     * Reads the grid of a venue map.
+     *
+     * @param venueMapData KnowledgeBase.venueMapData JSON
+     * @return grid, or null when the map carries no "grid" member
+     * @throws IllegalArgumentException when the map is not valid JSON or the grid is malformed
+     */
+    public static VenueGrid parse(String venueMapData) {
+        if (venueMapData == null || venueMapData.isEmpty()) {
+            return null;
+        }
+        JsonNode grid;
+        try {
+            grid = MAPPER.readTree(venueMapData).path("grid");
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Venue map data is not valid JSON", e);
+        }
+        if (!grid.isObject()) {
+            return null;
+        }
+        int width = grid.path("width").asInt();
+        int height = grid.path("height").asInt();
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid venue grid size " + width + "x" + height);
+        }
+        long[] blocked = new long[(int) (((long) width * height + 63) >>> 6)];
+        for (JsonNode rect : grid.path("blocked")) {
+            if (rect.size() != 4) {
+                throw new IllegalArgumentException("Blocked area must be [x0, y0, x1, y1]: " + rect);
+            }
+            int x0 = Math.max(0, Math.min(rect.get(0).asInt(), rect.get(2).asInt()));
+            int y0 = Math.max(0, Math.min(rect.get(1).asInt(), rect.get(3).asInt()));
+            int x1 = Math.min(width - 1, Math.max(rect.get(0).asInt(), rect.get(2).asInt()));
+            int y1 = Math.min(height - 1, Math.max(rect.get(1).asInt(), rect.get(3).asInt()));
+            for (int y = y0; y <= y1; y++) {
+                for (int x = x0; x <= x1; x++) {
+                    int cell = y * width + x;
+                    blocked[cell >>> 6] |= 1L << cell;
+                }
+            }
+        }
+        return new VenueGrid(width, height, grid.path("cellSize").asDouble(1.0),
+                grid.path("originX").asDouble(0.0), grid.path("originY").asDouble(0.0), blocked);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public double getOriginX() {
+        return originX;
+    }
+
+    public double getOriginY() {
+        return originY;
+    }
+
+    /**
+     * @return number of cells
+     */
+    public int cellCount() {
+        return width * height;
+    }
+
+    /**
+     * @return cell number of grid coordinates, or -1 outside the grid
+     */
+    public int cell(int x, int y) {
+        return x < 0 || y < 0 || x >= width || y >= height ? -1 : y * width + x;
+    }
+
+    /**
+     * @return cell containing a venue position in metres, or -1 outside the grid
+     */
+    public int cellAt(double x, double y) {
+        double gx = Math.floor((x - originX) / cellSize);
+        double gy = Math.floor((y - originY) / cellSize);
+        return gx < 0 || gy < 0 || gx >= width || gy >= height ? -1 : (int) gy * width + (int) gx;
+    }
+
+    /**
+     * @return venue x coordinate of a cell centre
+     */
+    public double centerX(int cell) {
+        return originX + (cell % width + 0.5) * cellSize;
+    }
+
+    /**
+     * @return venue y coordinate of a cell centre
+     */
+    public double centerY(int cell) {
+        return originY + (cell / width + 0.5) * cellSize;
+    }
+
+    /**
+     * @return whether a cell is permanently blocked
+     */
+    public boolean isBlocked(int cell) {
+        return (blocked[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Cells whose centre lies within a radius of a position, used to block temporary obstacles.
+     *
+     * @param x venue x coordinate in metres
+     * @param y venue y coordinate in metres
+     * @param radius radius in metres; at least the cell containing the position is returned
+     * @return cells inside the grid, empty when the position is off the grid
+     */
+    public int[] cellsWithin(double x, double y, double radius) {
+        int center = cellAt(x, y);
+        if (center < 0) {
+            return new int[0];
+        }
+        int reach = (int) Math.ceil(radius / cellSize);
+        int cx = center % width;
+        int cy = center / width;
+        int[] cells = new int[(2 * reach + 1) * (2 * reach + 1)];
+        int count = 0;
+        for (int gy = Math.max(0, cy - reach); gy <= Math.min(height - 1, cy + reach); gy++) {
+            for (int gx = Math.max(0, cx - reach); gx <= Math.min(width - 1, cx + reach); gx++) {
+                int cell = gy * width + gx;
+                double dx = centerX(cell) - x;
+                double dy = centerY(cell) - y;
+                if (cell == center || dx * dx + dy * dy <= radius * radius) {
+                    cells[count++] = cell;
+                }
+            }
+        }
+        return Arrays.copyOf(cells, count);
+    }
+
+    /**
+     * Blocked bitset words, not copied; callers must not modify them.
+     */
+    long[] blockedWords() {
+        return blocked;
+    }
+
+    /**
+     * Column-major blocked bitset (bit x * height + y), not copied; callers must not modify it.
+     */
+    long[] blockedWordsByColumn() {
+        return blockedByColumn;
+    }
+
+    /**
+     * Approximate heap footprint of the grid.
+     *
+     * @return bytes retained by the grid
+     */
+    public long ramBytesUsed() {
+        return 2L * blocked.length * Long.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VenueGrid{width=%d, height=%d, cellSize=%.2f}", width, height, cellSize);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
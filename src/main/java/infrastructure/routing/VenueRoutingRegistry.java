@@ -0,0 +1,263 @@
+package com.navigation.system.infrastructure.routing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-venue registry of preprocessed {@link VenueRoutingGraph}s.
+ * <ul>
+ *   <li>Graphs are persisted under navigation.routing.graph-path as venue-&lt;id&gt;-&lt;hash&gt;.route,
+ *       where the hash covers the grid and the landmark count. A venue whose map is unchanged is read
+ *       back from disk instead of being preprocessed again, and a changed map gets a new file.</li>
+ *   <li>{@link #publish} preprocesses a venue when its knowledge base is rebuilt, so the first reroute
+ *       after a map change does not pay for landmark preprocessing; files of older map versions are deleted.</li>
+ *   <li>Venues whose map carries no grid or a malformed one are remembered as such, so queries do not parse the map again.</li>
+ * </ul>
+ * Lookups of resident venues take no lock; loads and publishes of one venue are serialized on a striped lock.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class VenueRoutingRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(VenueRoutingRegistry.class);
+
+    private static final int LOAD_STRIPES = 64;
+
+    private static final Entry NO_GRID = new Entry(null, null);
+
+    private final Path baseDirectory;
+    private final int landmarkCount;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Object[] loadLocks = new Object[LOAD_STRIPES];
+
+    @Autowired
+    public VenueRoutingRegistry(@Value("${navigation.routing.graph-path:./data/routing}") String graphPath,
+                                @Value("${navigation.routing.landmarks:8}") int landmarkCount) {
+        this(Paths.get(graphPath), landmarkCount);
+    }
+
+    /**
+     * @param baseDirectory directory of routing graph files
+     * @param landmarkCount landmarks per venue graph
+     */
+    public VenueRoutingRegistry(Path baseDirectory, int landmarkCount) {
+        if (landmarkCount < 0) {
+            throw new IllegalArgumentException("Landmark count must not be negative");
+        }
+        this.baseDirectory = baseDirectory;
+        this.landmarkCount = landmarkCount;
+        for (int i = 0; i < LOAD_STRIPES; i++) {
+            loadLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Resolves the venue map data currently recorded for a venue, typically from its latest knowledge base row.
+     */
+    @FunctionalInterface
+    public interface MapDataResolver {
+
+        /**
+         * @param venueId venue identifier
+         * @return KnowledgeBase.venueMapData, or null when the venue has no map
+         */
+        String resolve(long venueId);
+    }
+
+    /**
+     * Returns the venue's routing graph, loading or preprocessing it on first use.
+     *
+     * @param venueId venue identifier
+     * @param resolver resolves the venue's map data on a miss
+     * @return routing graph, or null when the venue map carries no grid or a malformed one
+     */
+    public VenueRoutingGraph get(long venueId, MapDataResolver resolver) {
+        Entry entry = entries.get(venueId);
+        if (entry != null) {
+            return entry.graph;
+        }
+        synchronized (loadLock(venueId)) {
+            entry = entries.get(venueId);
+            if (entry == null) {
+                try {
+                    entry = load(venueId, resolver.resolve(venueId));
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Venue {} map carries an invalid grid, rerouting disabled until the next publish", venueId, e);
+                    entry = NO_GRID;
+                }
+                entries.put(venueId, entry);
+            }
+            return entry.graph;
+        }
+    }
+
+    /**
+     * Preprocesses and installs a new version of a venue's map, replacing the resident graph if any.
+     *
+     * @param venueId venue identifier
+     * @param venueMapData KnowledgeBase.venueMapData
+     * @return routing graph, or null when the map carries no grid
+     * @throws IllegalArgumentException when the venue map is malformed
+     */
+    public VenueRoutingGraph publish(long venueId, String venueMapData) {
+        synchronized (loadLock(venueId)) {
+            Entry entry = load(venueId, venueMapData);
+            entries.put(venueId, entry);
+            return entry.graph;
+        }
+    }
+
+    /**
+     * Drops a venue's resident graph; the next query loads it again.
+     *
+     * @param venueId venue identifier
+     * @return whether a graph was resident
+     */
+    public boolean invalidate(long venueId) {
+        synchronized (loadLock(venueId)) {
+            return entries.remove(venueId) != null;
+        }
+    }
+
+    /**
+     * @return number of venues with a resident entry
+     */
+    public int residentVenues() {
+        return entries.size();
+    }
+
+    /**
+     * @return heap bytes of all resident graphs
+     */
+    public long residentBytes() {
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.graph != null) {
+                total += entry.graph.ramBytesUsed();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @param venueId venue identifier
+     * @param grid venue grid
+     * @return path of the routing graph file of that grid version
+     */
+    public Path resolve(long venueId, VenueGrid grid) {
+        return baseDirectory.resolve(filePrefix(venueId) + contentHash(grid) + RoutingGraphFile.FILE_EXTENSION);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VenueRoutingRegistry{venues=%d, residentBytes=%d, landmarks=%d}",
+                residentVenues(), residentBytes(), landmarkCount);
+    }
+
+    /**
+     * Reads the routing graph of a map version from disk, or preprocesses and persists it. Caller holds the venue's load lock.
+     */
+    private Entry load(long venueId, String venueMapData) {
+        VenueGrid grid = VenueGrid.parse(venueMapData);
+        if (grid == null) {
+            return NO_GRID;
+        }
+        Path file = resolve(venueId, grid);
+        Entry resident = entries.get(venueId);
+        if (resident != null && file.equals(resident.file)) {
+            return resident;
+        }
+        if (Files.exists(file)) {
+            try {
+                return new Entry(file, RoutingGraphFile.read(file));
+            } catch (IOException e) {
+                logger.warn("Routing graph file {} of venue {} is unreadable, rebuilding", file, venueId, e);
+            }
+        }
+        long begin = System.nanoTime();
+        VenueRoutingGraph graph = VenueRoutingGraph.build(grid, landmarkCount);
+        logger.info("Built routing graph of venue {} in {} ms: {}", venueId, (System.nanoTime() - begin) / 1_000_000, graph);
+        try {
+            RoutingGraphFile.write(graph, file);
+            deleteStaleFiles(venueId, file);
+        } catch (IOException e) {
+            logger.warn("Failed to persist routing graph of venue {} to {}", venueId, file, e);
+        }
+        return new Entry(file, graph);
+    }
+
+    private void deleteStaleFiles(long venueId, Path current) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(baseDirectory,
+                filePrefix(venueId) + "*" + RoutingGraphFile.FILE_EXTENSION)) {
+            for (Path file : files) {
+                if (!file.equals(current)) {
+                    Files.deleteIfExists(file);
+                    logger.info("Deleted stale routing graph file {} of venue {}", file, venueId);
+                }
+            }
+        }
+    }
+
+    private static String filePrefix(long venueId) {
+        return "venue-" + venueId + "-";
+    }
+
+    /**
+     * Hash of everything the graph is derived from: grid geometry, blocked cells and the landmark count.
+     */
+    private String contentHash(VenueGrid grid) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        ByteBuffer header = ByteBuffer.allocate(3 * Integer.BYTES + 3 * Double.BYTES)
+                .putInt(grid.getWidth()).putInt(grid.getHeight()).putInt(landmarkCount)
+                .putDouble(grid.getCellSize()).putDouble(grid.getOriginX()).putDouble(grid.getOriginY());
+        digest.update(header.array());
+        ByteBuffer words = ByteBuffer.allocate(grid.blockedWords().length * Long.BYTES);
+        words.asLongBuffer().put(grid.blockedWords());
+        digest.update(words.array());
+        StringBuilder hex = new StringBuilder();
+        byte[] hash = digest.digest();
+        for (int i = 0; i < 8; i++) {
+            hex.append(String.format("%02x", hash[i]));
+        }
+        return hex.toString();
+    }
+
+    private Object loadLock(long venueId) {
+        return loadLocks[(int) ((venueId ^ (venueId >>> 32)) & (LOAD_STRIPES - 1))];
+    }
+
+    private static final class Entry {
+        final Path file;
+        final VenueRoutingGraph graph;
+
+        Entry(Path file, VenueRoutingGraph graph) {
+            this.file = file;
+            this.graph = graph;
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
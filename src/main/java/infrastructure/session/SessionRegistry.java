@@ -0,0 +1,250 @@
+package com.navigation.system.infrastructure.session;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded registry of live sessions with idle expiry.
+ * <ul>
+ *   <li>Admission reserves a slot with a compare-and-set on the session counter, so a full registry
+ *       rejects new sessions without taking a lock.</li>
+ *   <li>Sessions are spread over stripes by id. Each stripe has its own lock and a hierarchical
+ *       {@link TimingWheel} holding the idle deadline of its sessions, so creating, closing and
+ *       expiring a session is O(1) and contends only with sessions of the same stripe.</li>
+ *   <li>{@link #touch} only records the access time. When a session's deadline fires it is expired if it
+ *       stayed idle for the whole timeout, and otherwise scheduled again at its new deadline, so active
+ *       sessions never move in the wheel on the request path.</li>
+ * </ul>
+ * Lookups take no lock.
+ *
+ * @param <S> session state type
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class SessionRegistry<S> {
+
+    private static final int STRIPES = 32;
+
+    /**
+     * Outcome of {@link #admit}.
+     */
+    public enum Admission {
+        ADMITTED,
+        DUPLICATE,
+        FULL
+    }
+
+    private final int capacity;
+    private final long idleTimeoutNanos;
+    private final long tickNanos;
+    private final LongSupplier nanoClock;
+    private final long originNanos;
+    private final AtomicInteger size = new AtomicInteger();
+    private final Map<String, Entry<S>> sessions = new ConcurrentHashMap<>();
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * @param capacity maximum number of sessions
+     * @param idleTimeout time without access after which a session expires
+     * @param tick expiry resolution; sessions expire up to one tick late
+     */
+    public SessionRegistry(int capacity, Duration idleTimeout, Duration tick) {
+        this(capacity, idleTimeout, tick, System::nanoTime);
+    }
+
+    /**
+     * @param capacity maximum number of sessions
+     * @param idleTimeout time without access after which a session expires
+     * @param tick expiry resolution; sessions expire up to one tick late
+     * @param nanoClock monotonic clock in nanoseconds
+     */
+    public SessionRegistry(int capacity, Duration idleTimeout, Duration tick, LongSupplier nanoClock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Session capacity must be greater than 0");
+        }
+        if (idleTimeout.isZero() || idleTimeout.isNegative() || tick.isZero() || tick.isNegative()) {
+            throw new IllegalArgumentException("Session idle timeout and expiry tick must be positive");
+        }
+        this.capacity = capacity;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.tickNanos = tick.toNanos();
+        this.nanoClock = nanoClock;
+        this.originNanos = nanoClock.getAsLong();
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Registers a session if the registry has room and the id is free.
+     *
+     * @param sessionId session id
+     * @param session session state
+     * @return outcome; the session is registered only when ADMITTED
+     */
+    public Admission admit(String sessionId, S session) {
+        int current;
+        do {
+            current = size.get();
+            if (current >= capacity) {
+                return Admission.FULL;
+            }
+        } while (!size.compareAndSet(current, current + 1));
+
+        long now = nanoClock.getAsLong();
+        Entry<S> entry = new Entry<>(sessionId, session, now);
+        Stripe stripe = stripe(sessionId);
+        synchronized (stripe) {
+            if (sessions.putIfAbsent(sessionId, entry) != null) {
+                size.decrementAndGet();
+                return Admission.DUPLICATE;
+            }
+            stripe.wheel.schedule(entry, deadlineTick(now));
+        }
+        return Admission.ADMITTED;
+    }
+
+    /**
+     * @param sessionId session id
+     * @return session state, or null when not registered
+     */
+    public S get(String sessionId) {
+        Entry<S> entry = sessions.get(sessionId);
+        return entry == null ? null : entry.session;
+    }
+
+    /**
+     * Returns a session and restarts its idle timeout.
+     *
+     * @param sessionId session id
+     * @return session state, or null when not registered
+     */
+    public S touch(String sessionId) {
+        Entry<S> entry = sessions.get(sessionId);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccessNanos = nanoClock.getAsLong();
+        return entry.session;
+    }
+
+    /**
+     * @param sessionId session id
+     * @return removed session state, or null when not registered
+     */
+    public S remove(String sessionId) {
+        Stripe stripe = stripe(sessionId);
+        Entry<S> entry;
+        synchronized (stripe) {
+            entry = sessions.remove(sessionId);
+            if (entry == null) {
+                return null;
+            }
+            stripe.wheel.cancel(entry);
+        }
+        size.decrementAndGet();
+        return entry.session;
+    }
+
+    /**
+     * Removes the sessions idle for longer than the timeout.
+     *
+     * @param listener receives each expired session after it was removed
+     * @return number of expired sessions
+     */
+    public int expire(BiConsumer<String, S> listener) {
+        long now = nanoClock.getAsLong();
+        long nowTick = tick(now);
+        List<Entry<S>> expired = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.wheel.advance(nowTick, node -> {
+                    @SuppressWarnings("unchecked")
+                    Entry<S> entry = (Entry<S>) node;
+                    long lastAccess = entry.lastAccessNanos;
+                    if (now - lastAccess < idleTimeoutNanos) {
+                        stripe.wheel.schedule(entry, deadlineTick(lastAccess));
+                    } else {
+                        sessions.remove(entry.sessionId);
+                        expired.add(entry);
+                    }
+                });
+            }
+        }
+        size.addAndGet(-expired.size());
+        for (Entry<S> entry : expired) {
+            listener.accept(entry.sessionId, entry.session);
+        }
+        return expired.size();
+    }
+
+    /**
+     * @return number of registered sessions
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return maximum number of sessions
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return ids of the registered sessions
+     */
+    public List<String> sessionIds() {
+        return new ArrayList<>(sessions.keySet());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SessionRegistry{sessions=%d, capacity=%d, idleTimeoutMs=%d}",
+                size(), capacity, TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos));
+    }
+
+    private long tick(long nanos) {
+        return (nanos - originNanos) / tickNanos;
+    }
+
+    /**
+     * First tick at which a session last accessed at the given time has been idle for the whole timeout.
+     */
+    private long deadlineTick(long lastAccessNanos) {
+        return tick(lastAccessNanos + idleTimeoutNanos + tickNanos - 1);
+    }
+
+    private Stripe stripe(String sessionId) {
+        int hash = sessionId.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    private static final class Stripe {
+        final TimingWheel wheel = new TimingWheel(0);
+    }
+
+    private static final class Entry<S> extends TimingWheel.Node {
+        final String sessionId;
+        final S session;
+        volatile long lastAccessNanos;
+
+        Entry(String sessionId, S session, long lastAccessNanos) {
+            this.sessionId = sessionId;
+            this.session = session;
+            this.lastAccessNanos = lastAccessNanos;
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,175 @@
+package com.navigation.system.infrastructure.session;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel of {@link Node}s keyed by deadline tick.
+ * Four levels of 64 slots; level L holds nodes whose deadline shares all base-64 digits above L
+ * with the current tick, and a node is moved one level down when the current tick enters its
+ * slot's range. Scheduling and cancelling are O(1); advancing costs O(1) per tick plus the nodes
+ * that fire or move. Deadlines beyond the top level's range wait in its last slot and are placed
+ * again when it is reached. Not thread-safe.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+final class TimingWheel {
+
+    static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /**
+     * Intrusive list node; a node is in at most one wheel at a time.
+     */
+    static class Node {
+        long deadlineTick;
+        int level = -1;
+        int slot;
+        Node prev;
+        Node next;
+
+        boolean isScheduled() {
+            return level >= 0;
+        }
+    }
+
+    private final Node[][] heads = new Node[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param startTick tick the wheel starts at
+     */
+    TimingWheel(long startTick) {
+        this.currentTick = startTick;
+    }
+
+    /**
+     * @return current tick
+     */
+    long currentTick() {
+        return currentTick;
+    }
+
+    /**
+     * @return number of scheduled nodes
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Schedules a node; deadlines not after the current tick fire on the next tick.
+     *
+     * @param node unscheduled node
+     * @param deadlineTick tick at which the node fires
+     */
+    void schedule(Node node, long deadlineTick) {
+        if (node.isScheduled()) {
+            throw new IllegalStateException("Node already scheduled");
+        }
+        node.deadlineTick = Math.max(deadlineTick, currentTick + 1);
+        place(node);
+        size++;
+    }
+
+    /**
+     * @param node node to remove, ignored when not scheduled
+     */
+    void cancel(Node node) {
+        if (node.isScheduled()) {
+            unlink(node);
+            size--;
+        }
+    }
+
+    /**
+     * Advances to a tick, passing every node whose deadline is reached to the consumer, in deadline order.
+     * The consumer may schedule nodes again, including the fired one.
+     *
+     * @param toTick tick to advance to; earlier ticks are ignored
+     * @param fired receives fired nodes, already unscheduled
+     */
+    void advance(long toTick, Consumer<Node> fired) {
+        while (currentTick < toTick) {
+            currentTick++;
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                Node node = detach(level, (int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                while (node != null) {
+                    Node next = node.next;
+                    node.next = null;
+                    place(node);
+                    node = next;
+                }
+            }
+            Node node = detach(0, (int) currentTick & SLOT_MASK);
+            while (node != null) {
+                Node next = node.next;
+                node.next = null;
+                size--;
+                fired.accept(node);
+                node = next;
+            }
+        }
+    }
+
+    private void place(Node node) {
+        long deadline = node.deadlineTick;
+        int level = 0;
+        while (level < LEVELS - 1 && (deadline >>> (SLOT_BITS * (level + 1))) != (currentTick >>> (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot;
+        // The top level wraps around: a deadline within one rotation is reached through its own slot
+        if (level == LEVELS - 1 && deadline - currentTick >= 1L << (SLOT_BITS * LEVELS)) {
+            // Beyond the wheel's range: park in the top slot reached last
+            slot = (int) ((currentTick >>> (SLOT_BITS * level)) - 1) & SLOT_MASK;
+        } else {
+            slot = (int) (deadline >>> (SLOT_BITS * level)) & SLOT_MASK;
+        }
+        node.level = level;
+        node.slot = slot;
+        node.prev = null;
+        node.next = heads[level][slot];
+        if (node.next != null) {
+            node.next.prev = node;
+        }
+        heads[level][slot] = node;
+    }
+
+    private void unlink(Node node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            heads[node.level][node.slot] = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        node.level = -1;
+    }
+
+    /**
+     * Empties a slot and returns its list, each node marked unscheduled.
+     */
+    private Node detach(int level, int slot) {
+        Node head = heads[level][slot];
+        heads[level][slot] = null;
+        for (Node node = head; node != null; node = node.next) {
+            node.level = -1;
+            node.prev = null;
+        }
+        return head;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
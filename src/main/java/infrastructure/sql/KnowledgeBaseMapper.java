@@ -182,9 +182,9 @@ public interface KnowledgeBaseMapper extends BaseMapper<KnowledgeBase> {
      * @param knowledgeBase knowledge base entity object
      * @return number of affected rows
      */
-    @Update("INSERT INTO knowledge_base_backup (id, venue_map_data, rule_text, vector_index, "
+    @Update("INSERT INTO knowledge_base_backup (id, venue_id, venue_map_data, rule_text, vector_index, "
             + "sync_status, create_time, update_time, deleted) "
-            + "VALUES (#{kb.id}, #{kb.venueMapData}, #{kb.ruleText}, #{kb.vectorIndex}, "
+            + "VALUES (#{kb.id}, #{kb.venueId}, #{kb.venueMapData}, #{kb.ruleText}, #{kb.vectorIndex}, "
             + "#{kb.syncStatus}, #{kb.createTime}, #{kb.updateTime}, #{kb.deleted})")
     int insertBackupRecord(@Param("kb") KnowledgeBase knowledgeBase);
 
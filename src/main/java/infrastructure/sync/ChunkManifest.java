@@ -0,0 +1,271 @@
+package com.navigation.system.infrastructure.sync;
+
+import com.navigation.system.infrastructure.vector.KnowledgeChunk;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Chunk-level summary of one knowledge base version: the sorted chunk ids with their content
+ * hashes, plus hashes of the two text fields. Two manifests are compared in one merge walk to find
+ * the chunks a replica is missing, so a sync carries only what changed.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class ChunkManifest {
+
+    private final long knowledgeBaseId;
+    private final VersionVector version;
+    private final long[] ids;
+    private final long[] contentHashes;
+    private final long venueMapDataHash;
+    private final long ruleTextHash;
+
+    private ChunkManifest(long knowledgeBaseId, VersionVector version, long[] ids, long[] contentHashes,
+                          long venueMapDataHash, long ruleTextHash) {
+        this.knowledgeBaseId = knowledgeBaseId;
+        this.version = version;
+        this.ids = ids;
+        this.contentHashes = contentHashes;
+        this.venueMapDataHash = venueMapDataHash;
+        this.ruleTextHash = ruleTextHash;
+    }
+
+    /**
+     * @param knowledgeBaseId knowledge base row id
+     * @return manifest of a replica that holds nothing of the row, the base of a full sync
+     */
+    public static ChunkManifest empty(long knowledgeBaseId) {
+        return new ChunkManifest(knowledgeBaseId, VersionVector.empty(), new long[0], new long[0], 0L, 0L);
+    }
+
+    /**
+     * Builds the manifest of a knowledge base row from its chunks.
+     *
+     * @param knowledgeBaseId knowledge base row id
+     * @param version version of the row
+     * @param venueMapData venue map data the chunks were cut from
+     * @param ruleText rule text the chunks were cut from
+     * @param chunks chunks of the row
+     * @return manifest
+     */
+    public static ChunkManifest build(long knowledgeBaseId, VersionVector version, String venueMapData,
+                                      String ruleText, Iterator<KnowledgeChunk> chunks) {
+        long[] ids = new long[64];
+        long[] hashes = new long[64];
+        int count = 0;
+        while (chunks.hasNext()) {
+            KnowledgeChunk chunk = chunks.next();
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                hashes = Arrays.copyOf(hashes, count * 2);
+            }
+            ids[count] = chunk.getId();
+            hashes[count] = chunk.getContentHash();
+            count++;
+        }
+        return sorted(knowledgeBaseId, version, ids, hashes, count, textHash(venueMapData), textHash(ruleText));
+    }
+
+    /**
+     * Compares this manifest with the one a replica last acknowledged.
+     *
+     * @param base manifest acknowledged by the replica, or null when unknown
+     * @return chunks to send and to drop; a full diff when the base is unknown or of another row
+     */
+    public Diff diff(ChunkManifest base) {
+        if (base == null || base.knowledgeBaseId != knowledgeBaseId) {
+            return new Diff(ids.clone(), new long[0], true, true, true);
+        }
+        long[] added = new long[ids.length];
+        long[] removed = new long[base.ids.length];
+        int addedCount = 0;
+        int removedCount = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ids.length || j < base.ids.length) {
+            if (j == base.ids.length || i < ids.length && ids[i] < base.ids[j]) {
+                added[addedCount++] = ids[i++];
+            } else if (i == ids.length || base.ids[j] < ids[i]) {
+                removed[removedCount++] = base.ids[j++];
+            } else {
+                if (contentHashes[i] != base.contentHashes[j]) {
+                    // Same 32-bit id with different content: the add overwrites the replica's vector
+                    added[addedCount++] = ids[i];
+                }
+                i++;
+                j++;
+            }
+        }
+        return new Diff(Arrays.copyOf(added, addedCount), Arrays.copyOf(removed, removedCount),
+                venueMapDataHash != base.venueMapDataHash, ruleTextHash != base.ruleTextHash, false);
+    }
+
+    /**
+     * Derives the manifest a replica holds after applying a delta on top of this one.
+     *
+     * @param delta applied delta
+     * @return manifest at the delta's target version
+     */
+    public ChunkManifest apply(KnowledgeDelta delta) {
+        long[] removed = delta.getRemovedIds().clone();
+        Arrays.sort(removed);
+        long[] nextIds = new long[ids.length + delta.getChunkIds().length];
+        long[] nextHashes = new long[nextIds.length];
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (Arrays.binarySearch(removed, ids[i]) < 0) {
+                nextIds[count] = ids[i];
+                nextHashes[count] = contentHashes[i];
+                count++;
+            }
+        }
+        System.arraycopy(delta.getChunkIds(), 0, nextIds, count, delta.getChunkIds().length);
+        System.arraycopy(delta.getContentHashes(), 0, nextHashes, count, delta.getChunkIds().length);
+        count += delta.getChunkIds().length;
+        long mapHash = delta.getVenueMapData() != null ? textHash(delta.getVenueMapData()) : venueMapDataHash;
+        long ruleHash = delta.getRuleText() != null ? textHash(delta.getRuleText()) : ruleTextHash;
+        return sorted(knowledgeBaseId, VersionVector.parse(delta.getTargetVersion()), nextIds, nextHashes,
+                count, mapHash, ruleHash);
+    }
+
+    /**
+     * @param removedIds chunk ids removed from the live index
+     * @param version version after the removal
+     * @return manifest without those chunks
+     */
+    public ChunkManifest without(long[] removedIds, VersionVector version) {
+        long[] removed = removedIds.clone();
+        Arrays.sort(removed);
+        long[] nextIds = new long[ids.length];
+        long[] nextHashes = new long[ids.length];
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (Arrays.binarySearch(removed, ids[i]) < 0) {
+                nextIds[count] = ids[i];
+                nextHashes[count] = contentHashes[i];
+                count++;
+            }
+        }
+        return new ChunkManifest(knowledgeBaseId, version, Arrays.copyOf(nextIds, count),
+                Arrays.copyOf(nextHashes, count), venueMapDataHash, ruleTextHash);
+    }
+
+    /**
+     * @param chunkId chunk id
+     * @return whether the chunk is part of this version
+     */
+    public boolean contains(long chunkId) {
+        return Arrays.binarySearch(ids, chunkId) >= 0;
+    }
+
+    public long getKnowledgeBaseId() {
+        return knowledgeBaseId;
+    }
+
+    public VersionVector getVersion() {
+        return version;
+    }
+
+    /**
+     * @return number of chunks
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ChunkManifest{knowledgeBaseId=%d, version=%s, chunks=%d}",
+                knowledgeBaseId, version.encode(), ids.length);
+    }
+
+    static long textHash(String text) {
+        return text != null ? KnowledgeChunk.hash(text) : 0L;
+    }
+
+    /**
+     * Sorts by chunk id, keeping the last hash of a repeated id.
+     */
+    private static ChunkManifest sorted(long knowledgeBaseId, VersionVector version, long[] ids, long[] hashes,
+                                        int count, long venueMapDataHash, long ruleTextHash) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        // Object sort is stable, so repeated ids keep their insertion order
+        Arrays.sort(order, (a, b) -> Long.compare(ids[a], ids[b]));
+        long[] sortedIds = new long[count];
+        long[] sortedHashes = new long[count];
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            int source = order[i];
+            if (unique > 0 && sortedIds[unique - 1] == ids[source]) {
+                sortedHashes[unique - 1] = hashes[source];
+                continue;
+            }
+            sortedIds[unique] = ids[source];
+            sortedHashes[unique] = hashes[source];
+            unique++;
+        }
+        return new ChunkManifest(knowledgeBaseId, version, Arrays.copyOf(sortedIds, unique),
+                Arrays.copyOf(sortedHashes, unique), venueMapDataHash, ruleTextHash);
+    }
+
+    /**
+     * Difference between a manifest and the one a replica holds.
+     */
+    public static final class Diff {
+        private final long[] addedIds;
+        private final long[] removedIds;
+        private final boolean venueMapDataChanged;
+        private final boolean ruleTextChanged;
+        private final boolean full;
+
+        Diff(long[] addedIds, long[] removedIds, boolean venueMapDataChanged, boolean ruleTextChanged, boolean full) {
+            this.addedIds = addedIds;
+            this.removedIds = removedIds;
+            this.venueMapDataChanged = venueMapDataChanged;
+            this.ruleTextChanged = ruleTextChanged;
+            this.full = full;
+        }
+
+        /**
+         * @return ids of chunks the replica is missing or holds with other content, ascending
+         */
+        public long[] getAddedIds() {
+            return addedIds;
+        }
+
+        /**
+         * @return ids of chunks the replica has to drop, ascending
+         */
+        public long[] getRemovedIds() {
+            return removedIds;
+        }
+
+        public boolean isVenueMapDataChanged() {
+            return venueMapDataChanged;
+        }
+
+        public boolean isRuleTextChanged() {
+            return ruleTextChanged;
+        }
+
+        /**
+         * @return whether the replica state is unknown and everything has to be sent
+         */
+        public boolean isFull() {
+            return full;
+        }
+
+        public boolean isEmpty() {
+            return addedIds.length == 0 && removedIds.length == 0 && !venueMapDataChanged && !ruleTextChanged;
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
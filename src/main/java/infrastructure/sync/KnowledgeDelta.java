@@ -0,0 +1,160 @@
+package com.navigation.system.infrastructure.sync;
+
+/**
+ * Sync payload moving a replica of one knowledge base from a base version to a target version.
+ * It carries the embeddings of added or changed chunks, the ids of removed chunks and a text field
+ * only when that field changed. The embeddings are most of the payload, so its size follows the
+ * change rather than the venue. A full delta has an empty base and replaces the replica's index.
+ * Sent between nodes in the binary format of {@link KnowledgeDeltaCodec}.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public class KnowledgeDelta {
+
+    private long knowledgeBaseId;
+    private String sourceNode;
+    private String baseVersion;
+    private String targetVersion;
+    private boolean full;
+    private String venueMapData;
+    private String ruleText;
+    private int dimension;
+    private long[] chunkIds = new long[0];
+    private long[] contentHashes = new long[0];
+    private float[] vectors = new float[0];
+    private long[] removedIds = new long[0];
+
+    public long getKnowledgeBaseId() {
+        return knowledgeBaseId;
+    }
+
+    public void setKnowledgeBaseId(long knowledgeBaseId) {
+        this.knowledgeBaseId = knowledgeBaseId;
+    }
+
+    /**
+     * @return id of the node the delta was planned on
+     */
+    public String getSourceNode() {
+        return sourceNode;
+    }
+
+    public void setSourceNode(String sourceNode) {
+        this.sourceNode = sourceNode;
+    }
+
+    /**
+     * @return encoded version vector the replica must hold for the delta to apply
+     */
+    public String getBaseVersion() {
+        return baseVersion;
+    }
+
+    public void setBaseVersion(String baseVersion) {
+        this.baseVersion = baseVersion;
+    }
+
+    /**
+     * @return encoded version vector the replica holds after applying the delta
+     */
+    public String getTargetVersion() {
+        return targetVersion;
+    }
+
+    public void setTargetVersion(String targetVersion) {
+        this.targetVersion = targetVersion;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public void setFull(boolean full) {
+        this.full = full;
+    }
+
+    /**
+     * @return new venue map data, or null when unchanged
+     */
+    public String getVenueMapData() {
+        return venueMapData;
+    }
+
+    public void setVenueMapData(String venueMapData) {
+        this.venueMapData = venueMapData;
+    }
+
+    /**
+     * @return new rule text, or null when unchanged
+     */
+    public String getRuleText() {
+        return ruleText;
+    }
+
+    public void setRuleText(String ruleText) {
+        this.ruleText = ruleText;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public void setDimension(int dimension) {
+        this.dimension = dimension;
+    }
+
+    /**
+     * @return ids of added or changed chunks
+     */
+    public long[] getChunkIds() {
+        return chunkIds;
+    }
+
+    public void setChunkIds(long[] chunkIds) {
+        this.chunkIds = chunkIds;
+    }
+
+    /**
+     * @return content hashes, index aligned with the chunk ids
+     */
+    public long[] getContentHashes() {
+        return contentHashes;
+    }
+
+    public void setContentHashes(long[] contentHashes) {
+        this.contentHashes = contentHashes;
+    }
+
+    /**
+     * @return row-major embeddings of the chunks, chunk count x dimension floats
+     */
+    public float[] getVectors() {
+        return vectors;
+    }
+
+    public void setVectors(float[] vectors) {
+        this.vectors = vectors;
+    }
+
+    /**
+     * @return ids of chunks the replica drops
+     */
+    public long[] getRemovedIds() {
+        return removedIds;
+    }
+
+    public void setRemovedIds(long[] removedIds) {
+        this.removedIds = removedIds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("KnowledgeDelta{knowledgeBaseId=%d, base=%s, target=%s, full=%s, chunks=%d, removed=%d}",
+                knowledgeBaseId, baseVersion, targetVersion, full, chunkIds.length, removedIds.length);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
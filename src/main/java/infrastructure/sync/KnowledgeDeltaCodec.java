@@ -0,0 +1,556 @@
+package com.navigation.system.infrastructure.sync;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Streaming binary format of {@link KnowledgeDelta} sync payloads.
+ * Layout (big endian):
+ * <pre>
+ * header    int32 magic, int8 format version
+ * sections  per section: int8 type, frames, int32 end marker 0, int32 CRC32 of the section's raw bytes
+ * frame     int32 raw length, int32 compressed length, deflate-compressed bytes of at most 64 KiB raw data
+ * end       int8 section type 0
+ * </pre>
+ * Sections, in order: fields, venue map data, rule text, chunks, removed ids. The two text sections
+ * are present only when the delta carries that field. Each section is compressed frame by frame
+ * while it is written, so encoding a delta only needs one frame buffer on top of the delta itself,
+ * and the decoder never holds more than one frame of compressed input. Counts in the header are
+ * checked against the caller's limits and the decoded arrays grow with the chunks actually read,
+ * so a small payload cannot make the decoder allocate for a delta it does not carry. The
+ * per-section CRC32, like KnowledgeBase's checksum, rejects payloads corrupted in transit.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class KnowledgeDeltaCodec {
+
+    /**
+     * Media type of encoded payloads.
+     */
+    public static final String CONTENT_TYPE = "application/x-knowledge-delta";
+
+    /**
+     * Payload magic, ASCII "KDLT".
+     */
+    public static final int MAGIC = 0x4B444C54;
+
+    /**
+     * Current format version.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    static final int FRAME_BYTES = 1 << 16;
+
+    private static final int INITIAL_CHUNK_CAPACITY = 256;
+
+    private static final int SECTION_END = 0;
+    private static final int SECTION_FIELDS = 1;
+    private static final int SECTION_VENUE_MAP_DATA = 2;
+    private static final int SECTION_RULE_TEXT = 3;
+    private static final int SECTION_CHUNKS = 4;
+    private static final int SECTION_REMOVED = 5;
+
+    private KnowledgeDeltaCodec() {
+    }
+
+    /**
+     * Encodes a delta onto a stream. The stream is not closed.
+     *
+     * @param delta delta to encode
+     * @param out target stream, typically an HTTP request body
+     * @return number of bytes written
+     * @throws IOException when the stream cannot be written
+     */
+    public static long write(KnowledgeDelta delta, OutputStream out) throws IOException {
+        int dimension = delta.getDimension();
+        long[] chunkIds = delta.getChunkIds();
+        if ((long) chunkIds.length * dimension != delta.getVectors().length
+                || delta.getContentHashes().length != chunkIds.length) {
+            throw new IllegalArgumentException("Delta vectors do not match its " + chunkIds.length + " chunks");
+        }
+        SectionWriter section = new SectionWriter(out);
+        try {
+            writeSections(delta, section);
+        } finally {
+            section.release();
+        }
+        return section.bytesWritten;
+    }
+
+    private static void writeSections(KnowledgeDelta delta, SectionWriter section) throws IOException {
+        int dimension = delta.getDimension();
+        long[] chunkIds = delta.getChunkIds();
+        section.writeRawInt(MAGIC);
+        section.writeRawByte(FORMAT_VERSION);
+
+        section.begin(SECTION_FIELDS);
+        section.writeLong(delta.getKnowledgeBaseId());
+        section.writeString(delta.getSourceNode());
+        section.writeString(delta.getBaseVersion());
+        section.writeString(delta.getTargetVersion());
+        section.writeByte(delta.isFull() ? 1 : 0);
+        section.writeInt(dimension);
+        section.writeInt(chunkIds.length);
+        section.writeInt(delta.getRemovedIds().length);
+        section.end();
+
+        writeText(section, SECTION_VENUE_MAP_DATA, delta.getVenueMapData());
+        writeText(section, SECTION_RULE_TEXT, delta.getRuleText());
+
+        section.begin(SECTION_CHUNKS);
+        float[] vectors = delta.getVectors();
+        for (int i = 0; i < chunkIds.length; i++) {
+            section.writeLong(chunkIds[i]);
+            section.writeLong(delta.getContentHashes()[i]);
+            for (int d = 0, offset = i * dimension; d < dimension; d++) {
+                section.writeInt(Float.floatToRawIntBits(vectors[offset + d]));
+            }
+        }
+        section.end();
+
+        section.begin(SECTION_REMOVED);
+        for (long removedId : delta.getRemovedIds()) {
+            section.writeLong(removedId);
+        }
+        section.end();
+
+        section.writeRawByte(SECTION_END);
+        section.flush();
+    }
+
+    /**
+     * Decodes a delta from a stream. The stream is not closed.
+     *
+     * @param in source stream, typically an HTTP request body
+     * @param maxDimension largest vector dimension accepted, the local embedding dimension
+     * @param maxChunks largest number of chunks and of removed ids accepted
+     * @return decoded delta
+     * @throws IOException when the stream is truncated, corrupted, exceeds the limits or is not a delta payload
+     */
+    public static KnowledgeDelta read(InputStream in, int maxDimension, int maxChunks) throws IOException {
+        SectionReader section = new SectionReader(in);
+        try {
+            return readSections(section, maxDimension, maxChunks);
+        } finally {
+            section.release();
+        }
+    }
+
+    private static KnowledgeDelta readSections(SectionReader section, int maxDimension, int maxChunks)
+            throws IOException {
+        if (section.readRawInt() != MAGIC) {
+            throw new IOException("Not a knowledge delta payload");
+        }
+        int formatVersion = section.readRawByte();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported knowledge delta format version " + formatVersion);
+        }
+
+        section.begin(SECTION_FIELDS, section.readRawByte());
+        KnowledgeDelta delta = new KnowledgeDelta();
+        delta.setKnowledgeBaseId(section.readLong());
+        delta.setSourceNode(section.readString());
+        delta.setBaseVersion(section.readString());
+        delta.setTargetVersion(section.readString());
+        delta.setFull(section.readByte() != 0);
+        int dimension = section.readInt();
+        int chunkCount = section.readInt();
+        int removedCount = section.readInt();
+        if (dimension < 0 || dimension > maxDimension || chunkCount < 0 || chunkCount > maxChunks
+                || removedCount < 0 || removedCount > maxChunks
+                || (long) chunkCount * dimension > Integer.MAX_VALUE - 8) {
+            throw new IOException("Invalid knowledge delta size: " + chunkCount + " chunks of dimension " + dimension);
+        }
+        delta.setDimension(dimension);
+        section.end();
+
+        int type = section.readRawByte();
+        if (type == SECTION_VENUE_MAP_DATA) {
+            section.begin(SECTION_VENUE_MAP_DATA, type);
+            delta.setVenueMapData(readText(section));
+            type = section.readRawByte();
+        }
+        if (type == SECTION_RULE_TEXT) {
+            section.begin(SECTION_RULE_TEXT, type);
+            delta.setRuleText(readText(section));
+            type = section.readRawByte();
+        }
+
+        section.begin(SECTION_CHUNKS, type);
+        int capacity = Math.min(chunkCount, INITIAL_CHUNK_CAPACITY);
+        long[] chunkIds = new long[capacity];
+        long[] contentHashes = new long[capacity];
+        float[] vectors = new float[capacity * dimension];
+        for (int i = 0, offset = 0; i < chunkCount; i++) {
+            if (i == capacity) {
+                capacity = (int) Math.min(chunkCount, 2L * capacity);
+                chunkIds = Arrays.copyOf(chunkIds, capacity);
+                contentHashes = Arrays.copyOf(contentHashes, capacity);
+                vectors = Arrays.copyOf(vectors, capacity * dimension);
+            }
+            chunkIds[i] = section.readLong();
+            contentHashes[i] = section.readLong();
+            for (int d = 0; d < dimension; d++) {
+                vectors[offset++] = Float.intBitsToFloat(section.readInt());
+            }
+        }
+        delta.setChunkIds(chunkIds);
+        delta.setContentHashes(contentHashes);
+        delta.setVectors(vectors);
+        section.end();
+
+        section.begin(SECTION_REMOVED, section.readRawByte());
+        long[] removedIds = new long[Math.min(removedCount, INITIAL_CHUNK_CAPACITY)];
+        for (int i = 0; i < removedCount; i++) {
+            if (i == removedIds.length) {
+                removedIds = Arrays.copyOf(removedIds, (int) Math.min(removedCount, 2L * i));
+            }
+            removedIds[i] = section.readLong();
+        }
+        delta.setRemovedIds(removedIds);
+        section.end();
+
+        if (section.readRawByte() != SECTION_END) {
+            throw new IOException("Knowledge delta payload has trailing sections");
+        }
+        return delta;
+    }
+
+    private static void writeText(SectionWriter section, int type, String text) throws IOException {
+        if (text == null) {
+            return;
+        }
+        section.begin(type);
+        // The encoder works through the text in small pieces, so no UTF-8 copy of it is made
+        Writer writer = new OutputStreamWriter(section, StandardCharsets.UTF_8);
+        writer.write(text);
+        writer.flush();
+        section.end();
+    }
+
+    private static String readText(SectionReader section) throws IOException {
+        Reader reader = new InputStreamReader(section, StandardCharsets.UTF_8);
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        for (int read; (read = reader.read(buffer)) >= 0; ) {
+            text.append(buffer, 0, read);
+        }
+        section.end();
+        return text.toString();
+    }
+
+    /**
+     * Compresses section content into frames. Raw header bytes go straight to the target stream.
+     */
+    private static final class SectionWriter extends OutputStream {
+        private final OutputStream out;
+        private final byte[] frame = new byte[FRAME_BYTES];
+        private final byte[] compressed = new byte[FRAME_BYTES + FRAME_BYTES / 8 + 64];
+        private final byte[] scratch = new byte[8];
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final CRC32 crc = new CRC32();
+        private int position;
+        private boolean open;
+        long bytesWritten;
+
+        SectionWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void begin(int type) throws IOException {
+            writeRawByte(type);
+            crc.reset();
+            position = 0;
+            open = true;
+        }
+
+        void end() throws IOException {
+            flushFrame();
+            writeRawInt(0);
+            writeRawInt((int) crc.getValue());
+            open = false;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        void release() {
+            deflater.end();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (position == frame.length) {
+                flushFrame();
+            }
+            frame[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (position == frame.length) {
+                    flushFrame();
+                }
+                int count = Math.min(length, frame.length - position);
+                System.arraycopy(bytes, offset, frame, position, count);
+                position += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        void writeByte(int value) throws IOException {
+            write(value);
+        }
+
+        void writeInt(int value) throws IOException {
+            if (frame.length - position < 4) {
+                flushFrame();
+            }
+            frame[position++] = (byte) (value >>> 24);
+            frame[position++] = (byte) (value >>> 16);
+            frame[position++] = (byte) (value >>> 8);
+            frame[position++] = (byte) value;
+        }
+
+        void writeLong(long value) throws IOException {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void writeRawByte(int value) throws IOException {
+            out.write(value);
+            bytesWritten++;
+        }
+
+        void writeRawInt(int value) throws IOException {
+            scratch[0] = (byte) (value >>> 24);
+            scratch[1] = (byte) (value >>> 16);
+            scratch[2] = (byte) (value >>> 8);
+            scratch[3] = (byte) value;
+            out.write(scratch, 0, 4);
+            bytesWritten += 4;
+        }
+
+        private void flushFrame() throws IOException {
+            if (!open) {
+                throw new IllegalStateException("No open section");
+            }
+            if (position == 0) {
+                return;
+            }
+            crc.update(frame, 0, position);
+            deflater.reset();
+            deflater.setInput(frame, 0, position);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            writeRawInt(position);
+            writeRawInt(length);
+            out.write(compressed, 0, length);
+            bytesWritten += length;
+            position = 0;
+        }
+    }
+
+    /**
+     * Inflates section frames one at a time and checks the section CRC at its end.
+     */
+    private static final class SectionReader extends InputStream {
+        private final InputStream in;
+        private final byte[] frame = new byte[FRAME_BYTES];
+        private final byte[] compressed = new byte[FRAME_BYTES + FRAME_BYTES / 8 + 64];
+        private final byte[] scratch = new byte[8];
+        private final Inflater inflater = new Inflater();
+        private final CRC32 crc = new CRC32();
+        private int position;
+        private int limit;
+        private boolean ended;
+
+        SectionReader(InputStream in) {
+            this.in = in;
+        }
+
+        void release() {
+            inflater.end();
+        }
+
+        void begin(int expectedType, int type) throws IOException {
+            if (type != expectedType) {
+                throw new IOException("Expected knowledge delta section " + expectedType + " but found " + type);
+            }
+            crc.reset();
+            position = 0;
+            limit = 0;
+            ended = false;
+        }
+
+        void end() throws IOException {
+            if (position < limit || !ended && nextFrame()) {
+                throw new IOException("Knowledge delta section longer than expected");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit && !nextFrame()) {
+                return -1;
+            }
+            return frame[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position == limit && !nextFrame()) {
+                return -1;
+            }
+            int count = Math.min(length, limit - position);
+            System.arraycopy(frame, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        int readByte() throws IOException {
+            int value = read();
+            if (value < 0) {
+                throw new EOFException("Knowledge delta section ended early");
+            }
+            return value;
+        }
+
+        int readInt() throws IOException {
+            if (limit - position < 4) {
+                return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+            }
+            int value = (frame[position] & 0xFF) << 24 | (frame[position + 1] & 0xFF) << 16
+                    | (frame[position + 2] & 0xFF) << 8 | frame[position + 3] & 0xFF;
+            position += 4;
+            return value;
+        }
+
+        long readLong() throws IOException {
+            return (long) readInt() << 32 | readInt() & 0xFFFFFFFFL;
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            if (length > FRAME_BYTES) {
+                throw new IOException("Knowledge delta field of " + length + " bytes exceeds " + FRAME_BYTES);
+            }
+            byte[] bytes = new byte[length];
+            for (int read = 0; read < length; ) {
+                int count = read(bytes, read, length - read);
+                if (count < 0) {
+                    throw new EOFException("Knowledge delta section ended early");
+                }
+                read += count;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int readRawByte() throws IOException {
+            int value = in.read();
+            if (value < 0) {
+                throw new EOFException("Knowledge delta payload truncated");
+            }
+            return value;
+        }
+
+        int readRawInt() throws IOException {
+            readFully(scratch, 4);
+            return (scratch[0] & 0xFF) << 24 | (scratch[1] & 0xFF) << 16 | (scratch[2] & 0xFF) << 8 | scratch[3] & 0xFF;
+        }
+
+        /**
+         * @return whether a frame was read; false once the section's end marker and CRC were consumed
+         */
+        private boolean nextFrame() throws IOException {
+            if (ended) {
+                return false;
+            }
+            int rawLength = readRawInt();
+            if (rawLength == 0) {
+                ended = true;
+                if (readRawInt() != (int) crc.getValue()) {
+                    throw new IOException("Knowledge delta section checksum mismatch");
+                }
+                return false;
+            }
+            int compressedLength = readRawInt();
+            if (rawLength < 0 || rawLength > FRAME_BYTES || compressedLength <= 0 || compressedLength > compressed.length) {
+                throw new IOException("Invalid knowledge delta frame: " + rawLength + "/" + compressedLength + " bytes");
+            }
+            readFully(compressed, compressedLength);
+            inflater.reset();
+            inflater.setInput(compressed, 0, compressedLength);
+            try {
+                int inflated = 0;
+                while (inflated < rawLength && !inflater.finished()) {
+                    int count = inflater.inflate(frame, inflated, rawLength - inflated);
+                    if (count == 0) {
+                        // Input exhausted, or a preset dictionary requested that no frame ever has
+                        break;
+                    }
+                    inflated += count;
+                }
+                if (inflated != rawLength) {
+                    throw new IOException("Knowledge delta frame inflated to " + inflated + " of " + rawLength + " bytes");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupted knowledge delta frame", e);
+            }
+            crc.update(frame, 0, rawLength);
+            position = 0;
+            limit = rawLength;
+            return true;
+        }
+
+        private void readFully(byte[] bytes, int length) throws IOException {
+            for (int read = 0; read < length; ) {
+                int count = in.read(bytes, read, length - read);
+                if (count < 0) {
+                    throw new EOFException("Knowledge delta payload truncated");
+                }
+                read += count;
+            }
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
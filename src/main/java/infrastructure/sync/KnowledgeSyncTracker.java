@@ -0,0 +1,224 @@
+package com.navigation.system.infrastructure.sync;
+
+import com.navigation.system.infrastructure.vector.KnowledgeChunk;
+import com.navigation.system.infrastructure.vector.TextEmbedder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks knowledge base versions for delta sync between cloud and edge nodes.
+ * <ul>
+ *   <li>Every local change of a knowledge base increments this node's entry in its version vector
+ *       and records the chunk manifest of the new version.</li>
+ *   <li>For every peer the manifest it last acknowledged is kept. A sync sends the diff against it:
+ *       the embeddings of added chunks, the ids of removed ones and only the text fields that changed.</li>
+ *   <li>A peer with no acknowledged manifest, for example after a restart or a failed delivery,
+ *       gets a full delta.</li>
+ *   <li>On the receiving side a delta applies only on top of the exact base version it was planned
+ *       against. Anything else is a conflict that the sender resolves with a full delta.</li>
+ * </ul>
+ * State is kept in memory; losing it only turns the next sync into a full one.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class KnowledgeSyncTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(KnowledgeSyncTracker.class);
+
+    private static final int EMBED_BATCH_SIZE = 256;
+
+    private final String nodeId;
+    private final Map<Long, ChunkManifest> manifests = new ConcurrentHashMap<>();
+    private final Map<String, ChunkManifest> acknowledged = new ConcurrentHashMap<>();
+    private final Map<String, ChunkManifest> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param nodeId id of this node in version vectors, unique among the nodes that sync a knowledge base
+     */
+    @Autowired
+    public KnowledgeSyncTracker(@Value("${navigation.rag.sync.node-id:local}") String nodeId) {
+        // Rejects ids that cannot be encoded in a version vector
+        VersionVector.empty().increment(nodeId);
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Records a change made on this node.
+     *
+     * @param knowledgeBaseId knowledge base row id
+     * @param venueMapData venue map data after the change
+     * @param ruleText rule text after the change
+     * @param chunks chunks of the row after the change
+     * @return manifest of the new version
+     */
+    public ChunkManifest recordLocalChange(long knowledgeBaseId, String venueMapData, String ruleText,
+                                           Iterator<KnowledgeChunk> chunks) {
+        return manifests.compute(knowledgeBaseId, (id, previous) -> ChunkManifest.build(id,
+                (previous != null ? previous.getVersion() : VersionVector.empty()).increment(nodeId),
+                venueMapData, ruleText, chunks));
+    }
+
+    /**
+     * Records chunks removed from the live index on this node.
+     *
+     * @param knowledgeBaseId knowledge base row id
+     * @param chunkIds removed chunk ids
+     * @return manifest of the new version, or null when the row has no recorded version
+     */
+    public ChunkManifest recordRemoval(long knowledgeBaseId, long[] chunkIds) {
+        return manifests.computeIfPresent(knowledgeBaseId,
+                (id, previous) -> previous.without(chunkIds, previous.getVersion().increment(nodeId)));
+    }
+
+    /**
+     * @param knowledgeBaseId knowledge base row id
+     * @return manifest of the current version, or null when none is recorded
+     */
+    public ChunkManifest current(long knowledgeBaseId) {
+        return manifests.get(knowledgeBaseId);
+    }
+
+    /**
+     * Plans the delta bringing a peer to the current version of a knowledge base. The plan stays
+     * pending until {@link #acknowledge} or {@link #reject} reports the outcome of its delivery.
+     *
+     * @param peer peer node URL
+     * @param knowledgeBaseId knowledge base row id
+     * @param venueMapData current venue map data of the row
+     * @param ruleText current rule text of the row
+     * @param chunks chunks of the current row
+     * @param embedder embedder of added chunks
+     * @return delta to send
+     */
+    public KnowledgeDelta planDelta(String peer, long knowledgeBaseId, String venueMapData, String ruleText,
+                                    Iterator<KnowledgeChunk> chunks, TextEmbedder embedder) {
+        ChunkManifest target = manifests.get(knowledgeBaseId);
+        if (target == null) {
+            throw new IllegalStateException("No version recorded for knowledge base " + knowledgeBaseId);
+        }
+        ChunkManifest base = acknowledged.get(peer);
+        ChunkManifest.Diff diff = target.diff(base);
+
+        long[] added = diff.getAddedIds();
+        long[] hashes = new long[added.length];
+        String[] texts = new String[added.length];
+        int found = 0;
+        while (chunks.hasNext() && found < added.length) {
+            KnowledgeChunk chunk = chunks.next();
+            int position = Arrays.binarySearch(added, chunk.getId());
+            if (position >= 0 && texts[position] == null) {
+                hashes[position] = chunk.getContentHash();
+                texts[position] = chunk.getText();
+                found++;
+            }
+        }
+        if (found != added.length) {
+            throw new IllegalStateException("Knowledge base " + knowledgeBaseId
+                    + " text does not match its recorded version, " + found + " of " + added.length + " chunks found");
+        }
+
+        KnowledgeDelta delta = new KnowledgeDelta();
+        delta.setKnowledgeBaseId(knowledgeBaseId);
+        delta.setSourceNode(nodeId);
+        delta.setBaseVersion(diff.isFull() ? "" : base.getVersion().encode());
+        delta.setTargetVersion(target.getVersion().encode());
+        delta.setFull(diff.isFull());
+        delta.setVenueMapData(diff.isVenueMapDataChanged() ? venueMapData : null);
+        delta.setRuleText(diff.isRuleTextChanged() ? ruleText : null);
+        delta.setDimension(embedder.getDimension());
+        delta.setChunkIds(added);
+        delta.setContentHashes(hashes);
+        delta.setVectors(embed(embedder, Arrays.asList(texts)));
+        delta.setRemovedIds(diff.getRemovedIds());
+        pending.put(peer, target);
+        logger.debug("Planned {} for peer {} ({} unchanged chunks not sent)", delta, peer,
+                target.size() - added.length);
+        return delta;
+    }
+
+    /**
+     * Marks the last delta planned for a peer as delivered.
+     *
+     * @param peer peer node URL
+     */
+    public void acknowledge(String peer) {
+        ChunkManifest delivered = pending.remove(peer);
+        if (delivered != null) {
+            acknowledged.put(peer, delivered);
+        }
+    }
+
+    /**
+     * Forgets what a peer holds after a failed delivery; its next sync is a full one.
+     *
+     * @param peer peer node URL
+     */
+    public void reject(String peer) {
+        pending.remove(peer);
+        acknowledged.remove(peer);
+    }
+
+    /**
+     * Checks whether a received delta applies to the local replica.
+     *
+     * @param delta received delta
+     * @throws IllegalStateException when the local version is not the delta's base
+     */
+    public void checkApplicable(KnowledgeDelta delta) {
+        ChunkManifest local = manifests.get(delta.getKnowledgeBaseId());
+        VersionVector target = VersionVector.parse(delta.getTargetVersion());
+        if (delta.isFull()) {
+            if (local != null && local.getVersion().compare(target) == VersionVector.Ordering.AFTER) {
+                throw new IllegalStateException("Local version " + local.getVersion().encode()
+                        + " is newer than full delta " + delta.getTargetVersion());
+            }
+            return;
+        }
+        VersionVector base = VersionVector.parse(delta.getBaseVersion());
+        if (local == null || !local.getVersion().equals(base)) {
+            throw new IllegalStateException("Delta base " + delta.getBaseVersion() + " does not match local version "
+                    + (local != null ? local.getVersion().encode() : "none"));
+        }
+    }
+
+    /**
+     * Records the version reached by applying a received delta.
+     *
+     * @param delta applied delta
+     * @return local manifest at the delta's target version
+     */
+    public ChunkManifest recordRemoteDelta(KnowledgeDelta delta) {
+        return manifests.compute(delta.getKnowledgeBaseId(), (id, local) ->
+                (delta.isFull() || local == null ? ChunkManifest.empty(id) : local).apply(delta));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    private static float[] embed(TextEmbedder embedder, List<String> texts) {
+        int dimension = embedder.getDimension();
+        float[] vectors = new float[texts.size() * dimension];
+        for (int from = 0; from < texts.size(); from += EMBED_BATCH_SIZE) {
+            int to = Math.min(texts.size(), from + EMBED_BATCH_SIZE);
+            float[] batch = embedder.embedBatch(texts.subList(from, to));
+            System.arraycopy(batch, 0, vectors, from * dimension, (to - from) * dimension);
+        }
+        return vectors;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
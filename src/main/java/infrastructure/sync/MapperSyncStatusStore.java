@@ -0,0 +1,44 @@
+package com.navigation.system.infrastructure.sync;
+
+import infrastructure.sql.KnowledgeBaseMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Sync status store on the knowledge_base.sync_status column, one
+ * {@link KnowledgeBaseMapper#batchUpdateSyncStatus} statement per call.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class MapperSyncStatusStore implements SyncStatusStore {
+
+    private final KnowledgeBaseMapper knowledgeBaseMapper;
+
+    @Autowired
+    public MapperSyncStatusStore(KnowledgeBaseMapper knowledgeBaseMapper) {
+        this.knowledgeBaseMapper = knowledgeBaseMapper;
+    }
+
+    @Override
+    public void markSyncing(List<Long> knowledgeBaseIds) {
+        knowledgeBaseMapper.batchUpdateSyncStatus(knowledgeBaseIds, KnowledgeBaseMapper.SYNC_STATUS_SYNCING);
+    }
+
+    @Override
+    public void markSynced(List<Long> knowledgeBaseIds) {
+        knowledgeBaseMapper.batchUpdateSyncStatus(knowledgeBaseIds, KnowledgeBaseMapper.SYNC_STATUS_SYNCED);
+    }
+
+    @Override
+    public void markFailed(List<Long> knowledgeBaseIds) {
+        knowledgeBaseMapper.batchUpdateSyncStatus(knowledgeBaseIds, KnowledgeBaseMapper.SYNC_STATUS_FAILED);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
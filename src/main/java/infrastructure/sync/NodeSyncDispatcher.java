@@ -0,0 +1,399 @@
+package com.navigation.system.infrastructure.sync;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans knowledge base syncs out to every registered node concurrently.
+ * <ul>
+ *   <li>Each node has its own lane: a bounded queue of knowledge base rows drained by one worker
+ *       at a time, so deliveries to a node stay in order while all nodes progress in parallel.
+ *       A venue with many edge nodes syncs in about the time of its slowest node.</li>
+ *   <li>A row already queued for a node is not queued twice; the transport sends the row's state
+ *       at delivery time, so one delivery covers every change made while it waited.</li>
+ *   <li>A failed delivery stays at the head of its lane and is retried with exponential backoff
+ *       and jitter, up to a maximum number of attempts. Only that node's lane waits.</li>
+ *   <li>A sync-state table tracks the outstanding deliveries of each row. Status changes are
+ *       collected for a short interval and written in one batch per status.</li>
+ * </ul>
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class NodeSyncDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeSyncDispatcher.class);
+
+    /**
+     * Delivers the current state of a knowledge base row to one node.
+     */
+    @FunctionalInterface
+    public interface Transport {
+
+        /**
+         * @param nodeUrl node URL
+         * @param knowledgeBaseId knowledge base row id
+         * @return whether the node accepted the row; false or an exception schedules a retry
+         */
+        boolean deliver(String nodeUrl, long knowledgeBaseId) throws Exception;
+    }
+
+    private enum Admission {
+        QUEUED,
+        COALESCED,
+        REJECTED
+    }
+
+    private enum Status {
+        SYNCING,
+        SYNCED,
+        FAILED
+    }
+
+    private final SyncStatusStore statusStore;
+    private final int queueCapacity;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final long statusFlushMs;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService scheduler;
+
+    private final Set<String> nodes = new CopyOnWriteArraySet<>();
+    private final Map<String, NodeLane> lanes = new ConcurrentHashMap<>();
+    // Sync-state table: outstanding deliveries per knowledge base row, guarded by itself
+    private final Map<Long, Fanout> fanouts = new HashMap<>();
+    // Status changes waiting for the next batch write, guarded by itself
+    private final Map<Long, Status> statusUpdates = new HashMap<>();
+    private boolean flushScheduled;
+
+    /**
+     * @param statusStore persistent sync status of knowledge base rows
+     * @param nodes node URLs registered at startup
+     * @param maxConcurrency maximum number of nodes delivered to at the same time
+     * @param queueCapacity maximum number of rows queued per node
+     * @param maxAttempts delivery attempts per row and node before it is reported failed
+     * @param initialBackoffMs delay before the first retry, doubled on each further one
+     * @param maxBackoffMs upper bound of the retry delay
+     * @param statusFlushMs interval over which status changes are collected into one batch write
+     */
+    @Autowired
+    public NodeSyncDispatcher(SyncStatusStore statusStore,
+                              @Value("${navigation.rag.sync.nodes:}") String[] nodes,
+                              @Value("${navigation.rag.sync.max-concurrency:64}") int maxConcurrency,
+                              @Value("${navigation.rag.sync.queue-capacity:256}") int queueCapacity,
+                              @Value("${navigation.rag.sync.max-attempts:6}") int maxAttempts,
+                              @Value("${navigation.rag.sync.initial-backoff-ms:500}") long initialBackoffMs,
+                              @Value("${navigation.rag.sync.max-backoff-ms:60000}") long maxBackoffMs,
+                              @Value("${navigation.rag.sync.status-flush-ms:200}") long statusFlushMs) {
+        if (maxConcurrency <= 0 || queueCapacity <= 0 || maxAttempts <= 0) {
+            throw new IllegalArgumentException("Sync concurrency, queue capacity and attempts must be greater than 0");
+        }
+        if (initialBackoffMs < 0 || maxBackoffMs < initialBackoffMs || statusFlushMs < 0) {
+            throw new IllegalArgumentException("Invalid sync backoff: initial " + initialBackoffMs
+                    + " ms, max " + maxBackoffMs + " ms");
+        }
+        this.statusStore = statusStore;
+        this.queueCapacity = queueCapacity;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.statusFlushMs = statusFlushMs;
+        this.workers = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("knowledge-sync-"));
+        this.workers.allowCoreThreadTimeOut(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("knowledge-sync-scheduler-"));
+        for (String node : nodes) {
+            register(node);
+        }
+    }
+
+    /**
+     * @param nodeUrl node URL, ignored when blank
+     * @return whether the node was not registered yet
+     */
+    public boolean register(String nodeUrl) {
+        return nodeUrl != null && !nodeUrl.trim().isEmpty() && nodes.add(nodeUrl.trim());
+    }
+
+    /**
+     * @return registered node URLs in registration order
+     */
+    public List<String> getNodes() {
+        return new ArrayList<>(nodes);
+    }
+
+    /**
+     * Queues the sync of a knowledge base row to every registered node and returns immediately.
+     *
+     * @param knowledgeBaseId knowledge base row id
+     * @param transport delivery of the row to one node
+     * @return number of nodes the row was newly queued for
+     */
+    public int dispatch(long knowledgeBaseId, Transport transport) {
+        int queued = 0;
+        int rejected = 0;
+        Status status;
+        synchronized (fanouts) {
+            Fanout fanout = fanouts.computeIfAbsent(knowledgeBaseId, id -> new Fanout());
+            for (String node : nodes) {
+                Admission admission = lanes.computeIfAbsent(node, NodeLane::new).offer(knowledgeBaseId, transport);
+                if (admission == Admission.QUEUED) {
+                    queued++;
+                } else if (admission == Admission.REJECTED) {
+                    rejected++;
+                }
+            }
+            fanout.outstanding += queued;
+            // Queued deliveries send the latest state, so earlier failures no longer decide the outcome
+            fanout.failed = rejected > 0;
+            if (fanout.outstanding > 0) {
+                status = Status.SYNCING;
+            } else {
+                fanouts.remove(knowledgeBaseId);
+                status = fanout.failed ? Status.FAILED : Status.SYNCED;
+            }
+        }
+        if (rejected > 0) {
+            logger.warn("Sync queue full on {} of {} nodes, knowledge base {} not queued there",
+                    rejected, nodes.size(), knowledgeBaseId);
+        }
+        recordStatus(knowledgeBaseId, status);
+        return queued;
+    }
+
+    /**
+     * Stops the workers and writes the status changes collected so far.
+     */
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+        scheduler.shutdownNow();
+        flushStatus();
+    }
+
+    private void resolve(long knowledgeBaseId, boolean delivered) {
+        Status status;
+        synchronized (fanouts) {
+            Fanout fanout = fanouts.get(knowledgeBaseId);
+            if (fanout == null) {
+                return;
+            }
+            fanout.failed |= !delivered;
+            if (--fanout.outstanding > 0) {
+                return;
+            }
+            fanouts.remove(knowledgeBaseId);
+            status = fanout.failed ? Status.FAILED : Status.SYNCED;
+        }
+        recordStatus(knowledgeBaseId, status);
+    }
+
+    private void recordStatus(long knowledgeBaseId, Status status) {
+        synchronized (statusUpdates) {
+            statusUpdates.put(knowledgeBaseId, status);
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        try {
+            scheduler.schedule(this::flushStatus, statusFlushMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            flushStatus();
+        }
+    }
+
+    private void flushStatus() {
+        Map<Status, List<Long>> byStatus = new HashMap<>();
+        synchronized (statusUpdates) {
+            for (Map.Entry<Long, Status> update : statusUpdates.entrySet()) {
+                byStatus.computeIfAbsent(update.getValue(), status -> new ArrayList<>()).add(update.getKey());
+            }
+            statusUpdates.clear();
+            flushScheduled = false;
+        }
+        for (Map.Entry<Status, List<Long>> batch : byStatus.entrySet()) {
+            try {
+                switch (batch.getKey()) {
+                    case SYNCING:
+                        statusStore.markSyncing(batch.getValue());
+                        break;
+                    case SYNCED:
+                        statusStore.markSynced(batch.getValue());
+                        break;
+                    default:
+                        statusStore.markFailed(batch.getValue());
+                        break;
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to write sync status {} of knowledge bases {}: {}",
+                        batch.getKey(), batch.getValue(), e.getMessage());
+            }
+        }
+    }
+
+    private long backoffMs(int attempts) {
+        long delay = initialBackoffMs << Math.min(attempts - 1, 30);
+        delay = Math.min(maxBackoffMs, delay < 0 ? maxBackoffMs : delay);
+        // Equal jitter keeps nodes that failed together from retrying in lockstep
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Fanout {
+        int outstanding;
+        boolean failed;
+    }
+
+    private static final class Delivery {
+        final long knowledgeBaseId;
+        final Transport transport;
+        int attempts;
+
+        Delivery(long knowledgeBaseId, Transport transport) {
+            this.knowledgeBaseId = knowledgeBaseId;
+            this.transport = transport;
+        }
+    }
+
+    /**
+     * Retry queue of one node. At most one drain task runs per lane; while a delivery backs off,
+     * the lane stays active so no other task overtakes it.
+     */
+    private final class NodeLane {
+        private final String nodeUrl;
+        private final ArrayDeque<Delivery> queue = new ArrayDeque<>();
+        private final Set<Long> queued = new HashSet<>();
+        private boolean active;
+
+        NodeLane(String nodeUrl) {
+            this.nodeUrl = nodeUrl;
+        }
+
+        synchronized Admission offer(long knowledgeBaseId, Transport transport) {
+            if (queued.contains(knowledgeBaseId)) {
+                return Admission.COALESCED;
+            }
+            if (queue.size() >= queueCapacity) {
+                return Admission.REJECTED;
+            }
+            if (!active) {
+                try {
+                    workers.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    return Admission.REJECTED;
+                }
+                active = true;
+            }
+            queue.addLast(new Delivery(knowledgeBaseId, transport));
+            queued.add(knowledgeBaseId);
+            return Admission.QUEUED;
+        }
+
+        void drain() {
+            while (true) {
+                Delivery delivery;
+                synchronized (this) {
+                    delivery = queue.pollFirst();
+                    if (delivery == null) {
+                        active = false;
+                        return;
+                    }
+                    queued.remove(delivery.knowledgeBaseId);
+                }
+                if (deliver(delivery)) {
+                    resolve(delivery.knowledgeBaseId, true);
+                    continue;
+                }
+                if (delivery.attempts >= maxAttempts) {
+                    logger.warn("Giving up syncing knowledge base {} to {} after {} attempts",
+                            delivery.knowledgeBaseId, nodeUrl, delivery.attempts);
+                    resolve(delivery.knowledgeBaseId, false);
+                    continue;
+                }
+                boolean superseded;
+                synchronized (this) {
+                    superseded = queued.contains(delivery.knowledgeBaseId);
+                    if (!superseded) {
+                        queue.addFirst(delivery);
+                        queued.add(delivery.knowledgeBaseId);
+                    }
+                }
+                if (superseded) {
+                    // A newer delivery of the row is queued and decides the outcome
+                    resolve(delivery.knowledgeBaseId, true);
+                    continue;
+                }
+                long delay = backoffMs(delivery.attempts);
+                logger.debug("Retrying knowledge base {} on {} in {} ms (attempt {} of {})",
+                        delivery.knowledgeBaseId, nodeUrl, delay, delivery.attempts + 1, maxAttempts);
+                try {
+                    scheduler.schedule(this::resume, delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    stop();
+                }
+                return;
+            }
+        }
+
+        private boolean deliver(Delivery delivery) {
+            delivery.attempts++;
+            try {
+                return delivery.transport.deliver(nodeUrl, delivery.knowledgeBaseId);
+            } catch (Exception e) {
+                logger.debug("Sync of knowledge base {} to {} failed: {}",
+                        delivery.knowledgeBaseId, nodeUrl, e.getMessage());
+                return false;
+            }
+        }
+
+        private void resume() {
+            try {
+                workers.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                stop();
+            }
+        }
+
+        private synchronized void stop() {
+            active = false;
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,32 @@
+package com.navigation.system.infrastructure.sync;
+
+import java.util.List;
+
+/**
+ * Persistent sync status of knowledge base rows. Each call updates a batch of rows at once so a
+ * fan-out to many nodes costs a few statements rather than one per node.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public interface SyncStatusStore {
+
+    /**
+     * @param knowledgeBaseIds rows whose sync to the registered nodes has started
+     */
+    void markSyncing(List<Long> knowledgeBaseIds);
+
+    /**
+     * @param knowledgeBaseIds rows delivered to every registered node
+     */
+    void markSynced(List<Long> knowledgeBaseIds);
+
+    /**
+     * @param knowledgeBaseIds rows at least one node did not accept within the retry budget
+     */
+    void markFailed(List<Long> knowledgeBaseIds);
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,150 @@
+package com.navigation.system.infrastructure.sync;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Immutable version vector of one knowledge base: a change counter per node that modified it.
+ * Comparing two vectors tells whether one replica has seen every change of the other, or whether
+ * both changed independently since they last agreed.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class VersionVector {
+
+    /**
+     * Causal relation of this vector to another one.
+     */
+    public enum Ordering {
+        EQUAL,
+        BEFORE,
+        AFTER,
+        CONCURRENT
+    }
+
+    private static final VersionVector EMPTY = new VersionVector(new TreeMap<>());
+
+    private final SortedMap<String, Long> counters;
+
+    private VersionVector(SortedMap<String, Long> counters) {
+        this.counters = Collections.unmodifiableSortedMap(counters);
+    }
+
+    /**
+     * @return vector of a knowledge base no node has changed yet
+     */
+    public static VersionVector empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param nodeId node identifier
+     * @return number of changes made on that node
+     */
+    public long get(String nodeId) {
+        return counters.getOrDefault(nodeId, 0L);
+    }
+
+    /**
+     * @param nodeId node that made a change, must not contain ':' or ','
+     * @return vector with that node's counter incremented
+     */
+    public VersionVector increment(String nodeId) {
+        if (nodeId == null || nodeId.isEmpty() || nodeId.indexOf(':') >= 0 || nodeId.indexOf(',') >= 0) {
+            throw new IllegalArgumentException("Invalid sync node id: " + nodeId);
+        }
+        SortedMap<String, Long> next = new TreeMap<>(counters);
+        next.merge(nodeId, 1L, Long::sum);
+        return new VersionVector(next);
+    }
+
+    /**
+     * @param other another vector
+     * @return element-wise maximum of both vectors
+     */
+    public VersionVector merge(VersionVector other) {
+        SortedMap<String, Long> next = new TreeMap<>(counters);
+        for (Map.Entry<String, Long> counter : other.counters.entrySet()) {
+            next.merge(counter.getKey(), counter.getValue(), Math::max);
+        }
+        return new VersionVector(next);
+    }
+
+    /**
+     * @param other another vector
+     * @return causal relation of this vector to the other one
+     */
+    public Ordering compare(VersionVector other) {
+        boolean behind = false;
+        boolean ahead = false;
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            long theirs = other.get(counter.getKey());
+            ahead |= counter.getValue() > theirs;
+            behind |= counter.getValue() < theirs;
+        }
+        for (Map.Entry<String, Long> counter : other.counters.entrySet()) {
+            behind |= counter.getValue() > get(counter.getKey());
+        }
+        if (ahead && behind) {
+            return Ordering.CONCURRENT;
+        }
+        return ahead ? Ordering.AFTER : behind ? Ordering.BEFORE : Ordering.EQUAL;
+    }
+
+    /**
+     * Encodes the vector as "node:count" pairs joined by ',' in node order.
+     *
+     * @return encoded vector, empty for the empty vector
+     */
+    public String encode() {
+        StringBuilder encoded = new StringBuilder();
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            if (encoded.length() > 0) {
+                encoded.append(',');
+            }
+            encoded.append(counter.getKey()).append(':').append(counter.getValue());
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * @param encoded vector produced by {@link #encode()}, null or empty for the empty vector
+     * @return decoded vector
+     */
+    public static VersionVector parse(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return EMPTY;
+        }
+        SortedMap<String, Long> counters = new TreeMap<>();
+        for (String pair : encoded.split(",")) {
+            int separator = pair.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid version vector: " + encoded);
+            }
+            counters.put(pair.substring(0, separator), Long.parseLong(pair.substring(separator + 1)));
+        }
+        return new VersionVector(counters);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof VersionVector && counters.equals(((VersionVector) o).counters);
+    }
+
+    @Override
+    public int hashCode() {
+        return counters.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "VersionVector{" + encode() + "}";
+    }
+}
+
+
+// 内容由AI生成，仅供参考
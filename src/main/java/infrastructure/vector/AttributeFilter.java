@@ -0,0 +1,112 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.util.Objects;
+
+/**
+ * Metadata predicate of a filtered knowledge search: every criterion that is set must match.
+ * Immutable; each method returns a copy with one more criterion.
+ * <pre>
+ * AttributeFilter.any().onFloor(2).accessibleOnly()
+ * </pre>
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class AttributeFilter {
+
+    private static final AttributeFilter ANY = new AttributeFilter(null, null, null, null, false);
+
+    private final Long knowledgeBaseId;
+    private final Integer floor;
+    private final String zone;
+    private final KnowledgeChunk.Source source;
+    private final boolean accessibleOnly;
+
+    private AttributeFilter(Long knowledgeBaseId, Integer floor, String zone, KnowledgeChunk.Source source,
+                            boolean accessibleOnly) {
+        this.knowledgeBaseId = knowledgeBaseId;
+        this.floor = floor;
+        this.zone = zone;
+        this.source = source;
+        this.accessibleOnly = accessibleOnly;
+    }
+
+    /**
+     * @return filter without criteria
+     */
+    public static AttributeFilter any() {
+        return ANY;
+    }
+
+    /**
+     * Restricts to chunks of one knowledge base, i.e. one venue's knowledge.
+     */
+    public AttributeFilter ofKnowledgeBase(long knowledgeBaseId) {
+        return new AttributeFilter(knowledgeBaseId, floor, zone, source, accessibleOnly);
+    }
+
+    /**
+     * Restricts to chunks mentioning a floor; basement floors are negative (B1 is -1).
+     */
+    public AttributeFilter onFloor(int floor) {
+        return new AttributeFilter(knowledgeBaseId, floor, zone, source, accessibleOnly);
+    }
+
+    /**
+     * Restricts to chunks mentioning a zone, e.g. "A" for A区; case-insensitive.
+     */
+    public AttributeFilter inZone(String zone) {
+        return new AttributeFilter(knowledgeBaseId, floor, ChunkAttributeIndex.normalizeZone(zone), source, accessibleOnly);
+    }
+
+    /**
+     * Restricts to map regions or to rule clauses.
+     */
+    public AttributeFilter from(KnowledgeChunk.Source source) {
+        return new AttributeFilter(knowledgeBaseId, floor, zone, Objects.requireNonNull(source), accessibleOnly);
+    }
+
+    /**
+     * Restricts to chunks describing accessible (barrier-free) regions or routes.
+     */
+    public AttributeFilter accessibleOnly() {
+        return new AttributeFilter(knowledgeBaseId, floor, zone, source, true);
+    }
+
+    /**
+     * @return whether no criterion is set
+     */
+    public boolean isEmpty() {
+        return knowledgeBaseId == null && floor == null && zone == null && source == null && !accessibleOnly;
+    }
+
+    public Long getKnowledgeBaseId() {
+        return knowledgeBaseId;
+    }
+
+    public Integer getFloor() {
+        return floor;
+    }
+
+    public String getZone() {
+        return zone;
+    }
+
+    public KnowledgeChunk.Source getSource() {
+        return source;
+    }
+
+    public boolean isAccessibleOnly() {
+        return accessibleOnly;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AttributeFilter{knowledgeBaseId=%s, floor=%s, zone=%s, source=%s, accessibleOnly=%s}",
+                knowledgeBaseId, floor, zone, source, accessibleOnly);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,376 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted keyword index with BM25 scoring, kept alongside a vector index under the same chunk ids.
+ * Dense embeddings blur exact identifiers such as room numbers and gate codes; this index matches them
+ * term for term so the two rankings can be fused with {@link RankFusion}.
+ * <ul>
+ *   <li>Documents are numbered in insertion order and posting lists are appended, so they stay sorted
+ *       by document number without re-sorting.</li>
+ *   <li>Adding an existing id replaces the document; removals are tombstones. Once tombstones exceed
+ *       a fifth of the documents the posting lists are rewritten without them. Until then document
+ *       frequencies still count tombstoned documents, which slightly understates idf.</li>
+ *   <li>Searches share a read lock and score into per-thread accumulators, so a query costs
+ *       the length of the posting lists of its terms, not the size of the index.</li>
+ * </ul>
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class Bm25Index {
+
+    /**
+     * Default term frequency saturation.
+     */
+    public static final float DEFAULT_K1 = 1.2f;
+
+    /**
+     * Default document length normalization.
+     */
+    public static final float DEFAULT_B = 0.75f;
+
+    private static final float COMPACTION_DELETED_RATIO = 0.2f;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final float k1;
+    private final float b;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final LongLongHashMap docsById = new LongLongHashMap();
+
+    private long[] docIds = new long[64];
+    private int[] docLengths = new int[64];
+    private boolean[] deleted = new boolean[64];
+    private int docCount;
+    private int deletedCount;
+    private long liveLength;
+
+    public Bm25Index() {
+        this(DEFAULT_K1, DEFAULT_B);
+    }
+
+    /**
+     * @param k1 term frequency saturation, must not be negative
+     * @param b document length normalization, between 0 and 1
+     */
+    public Bm25Index(float k1, float b) {
+        if (k1 < 0) {
+            throw new IllegalArgumentException("BM25 k1 must not be negative");
+        }
+        if (b < 0 || b > 1) {
+            throw new IllegalArgumentException("BM25 b must be between 0-1");
+        }
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    /**
+     * Indexes documents, replacing any document already indexed under the same id.
+     *
+     * @param ids document ids, normally chunk ids shared with the vector index
+     * @param texts document texts, index aligned with ids
+     */
+    public void add(long[] ids, List<String> texts) {
+        if (ids.length != texts.size()) {
+            throw new IllegalArgumentException("Number of ids " + ids.length
+                    + " does not match number of texts " + texts.size());
+        }
+        // Tokenize before taking the write lock so concurrent searches are only blocked by the posting appends
+        String[][] terms = new String[ids.length][];
+        int[][] frequencies = new int[ids.length][];
+        int[] lengths = new int[ids.length];
+        List<String> tokens = new ArrayList<>();
+        Map<String, int[]> counts = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            tokens.clear();
+            counts.clear();
+            KeywordTokenizer.tokenize(texts.get(i), tokens);
+            for (String token : tokens) {
+                counts.computeIfAbsent(token, t -> new int[1])[0]++;
+            }
+            terms[i] = new String[counts.size()];
+            frequencies[i] = new int[counts.size()];
+            int j = 0;
+            for (Map.Entry<String, int[]> count : counts.entrySet()) {
+                terms[i][j] = count.getKey();
+                frequencies[i][j] = count.getValue()[0];
+                j++;
+            }
+            lengths[i] = tokens.size();
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                delete(ids[i]);
+                int doc = newDocument(ids[i], lengths[i]);
+                for (int j = 0; j < terms[i].length; j++) {
+                    postings.computeIfAbsent(terms[i][j], t -> new Postings()).append(doc, frequencies[i][j]);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes the text of each chunk under its chunk id.
+     *
+     * @param chunks chunks, for example from {@link KnowledgeChunker#chunk} or {@link EmbeddedChunks#getChunks()}
+     */
+    public void add(Iterator<KnowledgeChunk> chunks) {
+        long[] ids = new long[64];
+        List<String> texts = new ArrayList<>();
+        while (chunks.hasNext()) {
+            KnowledgeChunk chunk = chunks.next();
+            if (texts.size() == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[texts.size()] = chunk.getId();
+            texts.add(chunk.getText());
+        }
+        add(Arrays.copyOf(ids, texts.size()), texts);
+    }
+
+    /**
+     * Removes documents by id.
+     *
+     * @param ids document ids
+     * @return number of documents that were indexed and are now removed
+     */
+    public int remove(long[] ids) {
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (long id : ids) {
+                if (delete(id)) {
+                    removed++;
+                }
+            }
+            compactIfNeeded();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the k documents with the highest BM25 score for a query.
+     * Documents that share no term with the query are never returned.
+     *
+     * @param query query text, tokenized like the documents
+     * @param k number of results
+     * @return results ordered by descending BM25 score
+     */
+    public SearchResult search(String query, int k) {
+        if (k <= 0) {
+            return SearchResult.empty();
+        }
+        List<String> tokens = new ArrayList<>();
+        KeywordTokenizer.tokenize(query, tokens);
+        if (tokens.isEmpty()) {
+            return SearchResult.empty();
+        }
+        Set<String> queryTerms = new LinkedHashSet<>(tokens);
+
+        lock.readLock().lock();
+        try {
+            int liveDocs = docCount - deletedCount;
+            if (liveDocs == 0) {
+                return SearchResult.empty();
+            }
+            float averageLength = Math.max(1f, (float) liveLength / liveDocs);
+            Scratch scratch = SCRATCH.get();
+            scratch.ensureCapacity(docCount);
+            float[] scores = scratch.scores;
+            int[] touched = scratch.touched;
+            int touchedCount = 0;
+            for (String term : queryTerms) {
+                Postings list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                int documentFrequency = Math.min(list.size, liveDocs);
+                float idf = (float) Math.log(1 + (liveDocs - documentFrequency + 0.5) / (documentFrequency + 0.5));
+                for (int i = 0; i < list.size; i++) {
+                    int doc = list.docs[i];
+                    if (deleted[doc]) {
+                        continue;
+                    }
+                    int tf = list.frequencies[i];
+                    float norm = k1 * (1 - b + b * docLengths[doc] / averageLength);
+                    if (scores[doc] == 0) {
+                        touched[touchedCount++] = doc;
+                    }
+                    scores[doc] += idf * tf * (k1 + 1) / (tf + norm);
+                }
+            }
+            TopKCollector collector = new TopKCollector(Math.min(k, touchedCount));
+            for (int i = 0; i < touchedCount; i++) {
+                int doc = touched[i];
+                collector.offer(docIds[doc], scores[doc]);
+                scores[doc] = 0;
+            }
+            return collector.toResult(MetricType.INNER_PRODUCT);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of live documents
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docCount - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of distinct terms, including terms only found in tombstoned documents
+     */
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Bm25Index{documents=%d, terms=%d, k1=%.2f, b=%.2f}", size(), termCount(), k1, b);
+    }
+
+    private int newDocument(long id, int length) {
+        if (docCount == docIds.length) {
+            int capacity = docIds.length * 2;
+            docIds = Arrays.copyOf(docIds, capacity);
+            docLengths = Arrays.copyOf(docLengths, capacity);
+            deleted = Arrays.copyOf(deleted, capacity);
+        }
+        int doc = docCount++;
+        docIds[doc] = id;
+        docLengths[doc] = length;
+        deleted[doc] = false;
+        docsById.put(id, doc);
+        liveLength += length;
+        return doc;
+    }
+
+    private boolean delete(long id) {
+        long doc = docsById.remove(id);
+        if (doc == LongLongHashMap.MISSING) {
+            return false;
+        }
+        deleted[(int) doc] = true;
+        deletedCount++;
+        liveLength -= docLengths[(int) doc];
+        return true;
+    }
+
+    /**
+     * Rewrites documents and posting lists without tombstones once they make up too large a share.
+     */
+    private void compactIfNeeded() {
+        if (deletedCount == 0 || deletedCount < docCount * COMPACTION_DELETED_RATIO) {
+            return;
+        }
+        int[] remap = new int[docCount];
+        int live = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (deleted[doc]) {
+                remap[doc] = -1;
+                continue;
+            }
+            remap[doc] = live;
+            docIds[live] = docIds[doc];
+            docLengths[live] = docLengths[doc];
+            deleted[live] = false;
+            docsById.put(docIds[live], live);
+            live++;
+        }
+        Arrays.fill(deleted, live, docCount, false);
+        docCount = live;
+        deletedCount = 0;
+        Iterator<Postings> lists = postings.values().iterator();
+        while (lists.hasNext()) {
+            if (lists.next().retain(remap) == 0) {
+                lists.remove();
+            }
+        }
+    }
+
+    /**
+     * Posting list of one term: document numbers in ascending order with their term frequencies.
+     */
+    private static final class Postings {
+        int[] docs = new int[4];
+        int[] frequencies = new int[4];
+        int size;
+
+        void append(int doc, int frequency) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docs[size] = doc;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        /**
+         * Drops removed documents and renumbers the rest.
+         *
+         * @return remaining size
+         */
+        int retain(int[] remap) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int doc = remap[docs[i]];
+                if (doc >= 0) {
+                    docs[kept] = doc;
+                    frequencies[kept] = frequencies[i];
+                    kept++;
+                }
+            }
+            size = kept;
+            return kept;
+        }
+    }
+
+    /**
+     * Per-thread score accumulators; every touched slot is reset to zero before a search returns.
+     */
+    private static final class Scratch {
+        float[] scores = new float[0];
+        int[] touched = new int[0];
+
+        void ensureCapacity(int docs) {
+            if (scores.length < docs) {
+                scores = new float[Math.max(docs, scores.length * 2)];
+                touched = new int[scores.length];
+            }
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
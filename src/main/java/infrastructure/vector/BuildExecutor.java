@@ -0,0 +1,145 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bounded fork/join pool for index construction, sized by FAISSConfig.buildThreads.
+ * Work is cut into at most {@link #parallelism()} contiguous slices so callers can keep one
+ * local buffer per slice and merge them in slice order; for a given thread count the merge
+ * order, and therefore the floating point result, does not depend on scheduling.
+ * A single-threaded executor, or one that has been closed, runs every slice on the caller.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class BuildExecutor implements AutoCloseable {
+
+    private static final BuildExecutor SEQUENTIAL = new BuildExecutor(1);
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param threads number of build threads, must be greater than 0
+     */
+    public BuildExecutor(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of build threads must be greater than 0");
+        }
+        this.parallelism = threads;
+        this.pool = threads == 1 ? null : new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("vector-index-build-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * @return shared executor that runs everything on the calling thread
+     */
+    public static BuildExecutor sequential() {
+        return SEQUENTIAL;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Number of slices {@link #forEachSlice} will use for n items.
+     *
+     * @param n number of items
+     * @param minSliceSize smallest slice worth handing to another thread
+     * @return slice count, at least 1
+     */
+    public int sliceCount(int n, int minSliceSize) {
+        long bySize = (n + (long) minSliceSize - 1) / Math.max(1, minSliceSize);
+        return (int) Math.max(1, Math.min(parallelism, bySize));
+    }
+
+    /**
+     * Runs a task over [0, n) cut into {@link #sliceCount(int, int)} contiguous slices and waits for all of them.
+     * Exceptions thrown by a slice are rethrown to the caller.
+     *
+     * @param n number of items
+     * @param minSliceSize smallest slice worth handing to another thread
+     * @param task slice body
+     */
+    public void forEachSlice(int n, int minSliceSize, SliceTask task) {
+        int slices = sliceCount(n, minSliceSize);
+        if (slices == 1 || pool == null || pool.isShutdown()) {
+            for (int slice = 0; slice < slices; slice++) {
+                task.run(slice, sliceStart(n, slices, slice), sliceStart(n, slices, slice + 1));
+            }
+            return;
+        }
+        pool.invoke(new SliceAction(task, n, slices, 0, slices));
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private static int sliceStart(int n, int slices, int slice) {
+        return (int) ((long) n * slice / slices);
+    }
+
+    @Override
+    public String toString() {
+        return "BuildExecutor{parallelism=" + parallelism + "}";
+    }
+
+    /**
+     * Body of one slice.
+     */
+    @FunctionalInterface
+    public interface SliceTask {
+
+        /**
+         * @param slice slice number, from 0 to sliceCount - 1
+         * @param from first item, inclusive
+         * @param to last item, exclusive
+         */
+        void run(int slice, int from, int to);
+    }
+
+    private static final class SliceAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SliceTask task;
+        private final int n;
+        private final int slices;
+        private final int first;
+        private final int last;
+
+        SliceAction(SliceTask task, int n, int slices, int first, int last) {
+            this.task = task;
+            this.n = n;
+            this.slices = slices;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1) {
+                task.run(first, sliceStart(n, slices, first), sliceStart(n, slices, first + 1));
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            invokeAll(new SliceAction(task, n, slices, first, middle),
+                    new SliceAction(task, n, slices, middle, last));
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,361 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Per-chunk metadata kept alongside a vector index under the same chunk ids, used to pre-filter searches.
+ * <ul>
+ *   <li>Attributes are extracted from the chunk text: floors and zones from JSON members
+ *       ("floor", "zone") and from phrases such as 3楼, B1层, 2F and A区; accessibility from
+ *       "accessible": true or 无障碍/轮椅; plus the chunk source and the knowledge base in its id.
+ *       A chunk mentioning several floors or zones matches each of them.</li>
+ *   <li>Documents are numbered in insertion order and every attribute value keeps a bitmap over
+ *       document numbers. A filter is compiled per query by AND-ing a few bitmaps, one word per
+ *       64 chunks, and is then tested with one id lookup and one bit test per scanned vector.</li>
+ *   <li>Removals clear the live bit; once they exceed a fifth of the documents the bitmaps are
+ *       rewritten without them.</li>
+ * </ul>
+ * Like {@link Bm25Index} it is not persisted but rebuilt from the knowledge base rows.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class ChunkAttributeIndex {
+
+    private static final float COMPACTION_DELETED_RATIO = 0.2f;
+
+    private static final Pattern JSON_FLOOR = Pattern.compile("\"floor\"\\s*:\\s*\"?([Bb]?-?\\d{1,3})");
+    private static final Pattern TEXT_FLOOR = Pattern.compile("(?<![A-Za-z0-9])([Bb]?)(\\d{1,3})\\s*(?:楼|层|[Ff](?![A-Za-z]))");
+    private static final Pattern JSON_ZONE = Pattern.compile("\"zone\"\\s*:\\s*\"([^\"]{1,16})\"");
+    private static final Pattern TEXT_ZONE = Pattern.compile("(?<![A-Za-z0-9])([A-Za-z0-9]{1,3})区");
+    private static final Pattern ACCESSIBLE = Pattern.compile(
+            "\"accessible\"\\s*:\\s*true|无障碍|轮椅|(?i:wheelchair|barrier-free)");
+
+    private static final String KNOWLEDGE_BASE = "kb:";
+    private static final String FLOOR = "floor:";
+    private static final String ZONE = "zone:";
+    private static final String SOURCE = "source:";
+    private static final String ACCESSIBLE_KEY = "accessible";
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, long[]> bitmaps = new HashMap<>();
+    private final LongLongHashMap docsById = new LongLongHashMap();
+
+    private long[] docIds = new long[64];
+    private long[] live = new long[1];
+    private int docCount;
+    private int deletedCount;
+
+    /**
+     * Indexes the attributes of each chunk under its chunk id, replacing earlier attributes of the same id.
+     *
+     * @param chunks chunks, for example from {@link KnowledgeChunker#chunk} or {@link EmbeddedChunks#getChunks()}
+     */
+    public void add(Iterator<KnowledgeChunk> chunks) {
+        // Extract before taking the write lock so concurrent searches are only blocked by the bit updates
+        List<KnowledgeChunk> added = new ArrayList<>();
+        List<List<String>> keys = new ArrayList<>();
+        while (chunks.hasNext()) {
+            KnowledgeChunk chunk = chunks.next();
+            added.add(chunk);
+            keys.add(attributeKeys(chunk));
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < added.size(); i++) {
+                long id = added.get(i).getId();
+                delete(id);
+                int doc = newDocument(id);
+                for (String key : keys.get(i)) {
+                    long[] bits = bitmaps.get(key);
+                    if (bits == null || bits.length <= doc >>> 6) {
+                        bits = bits == null ? new long[live.length] : Arrays.copyOf(bits, live.length);
+                        bitmaps.put(key, bits);
+                    }
+                    bits[doc >>> 6] |= 1L << doc;
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes chunks by id.
+     *
+     * @param ids chunk ids
+     * @return number of chunks that were indexed and are now removed
+     */
+    public int remove(long[] ids) {
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (long id : ids) {
+                if (delete(id)) {
+                    removed++;
+                }
+            }
+            compactIfNeeded();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compiles a filter and runs a search with it while holding the read lock, so the document
+     * numbering cannot change under the scan. Filters matching no chunk skip the search.
+     *
+     * @param filter metadata predicate
+     * @param search vector search run with the compiled filter
+     * @return search result, empty when no chunk matches
+     */
+    public SearchResult search(AttributeFilter filter, Function<VectorFilter, SearchResult> search) {
+        lock.readLock().lock();
+        try {
+            long[] matched = Arrays.copyOf(live, live.length);
+            for (String key : filterKeys(filter)) {
+                long[] bits = bitmaps.get(key);
+                if (bits == null) {
+                    return SearchResult.empty();
+                }
+                for (int w = 0; w < matched.length; w++) {
+                    matched[w] &= w < bits.length ? bits[w] : 0L;
+                }
+            }
+            long cardinality = 0;
+            for (long word : matched) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality == 0) {
+                return SearchResult.empty();
+            }
+            return search.apply(new BitmapFilter(matched, cardinality));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of indexed chunks matching a filter.
+     *
+     * @param filter metadata predicate
+     * @return matching chunk count
+     */
+    public long count(AttributeFilter filter) {
+        long[] count = new long[1];
+        search(filter, vectorFilter -> {
+            count[0] = vectorFilter.cardinality();
+            return SearchResult.empty();
+        });
+        return count[0];
+    }
+
+    /**
+     * @return number of indexed chunks
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docCount - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.readLock().lock();
+        try {
+            return String.format("ChunkAttributeIndex{chunks=%d, attributeValues=%d}", docCount - deletedCount, bitmaps.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Normalizes a zone name: trims, drops a trailing 区 and upper-cases latin letters.
+     */
+    static String normalizeZone(String zone) {
+        String normalized = zone.trim();
+        if (normalized.endsWith("区")) {
+            normalized = normalized.substring(0, normalized.length() - 1).trim();
+        }
+        return normalized.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Attribute keys of one chunk.
+     */
+    static List<String> attributeKeys(KnowledgeChunk chunk) {
+        List<String> keys = new ArrayList<>(6);
+        keys.add(KNOWLEDGE_BASE + chunk.getKnowledgeBaseId());
+        keys.add(SOURCE + chunk.getSource());
+        String text = chunk.getText();
+        Matcher matcher = JSON_FLOOR.matcher(text);
+        while (matcher.find()) {
+            String value = matcher.group(1);
+            boolean basement = value.charAt(0) == 'B' || value.charAt(0) == 'b';
+            int floor = Integer.parseInt(basement ? value.substring(1) : value);
+            addKey(keys, FLOOR + (basement ? -Math.abs(floor) : floor));
+        }
+        matcher = TEXT_FLOOR.matcher(text);
+        while (matcher.find()) {
+            int floor = Integer.parseInt(matcher.group(2));
+            addKey(keys, FLOOR + (matcher.group(1).isEmpty() ? floor : -floor));
+        }
+        matcher = JSON_ZONE.matcher(text);
+        while (matcher.find()) {
+            addKey(keys, ZONE + normalizeZone(matcher.group(1)));
+        }
+        matcher = TEXT_ZONE.matcher(text);
+        while (matcher.find()) {
+            addKey(keys, ZONE + normalizeZone(matcher.group(1)));
+        }
+        if (ACCESSIBLE.matcher(text).find()) {
+            keys.add(ACCESSIBLE_KEY);
+        }
+        return keys;
+    }
+
+    private static void addKey(List<String> keys, String key) {
+        if (!keys.contains(key)) {
+            keys.add(key);
+        }
+    }
+
+    private static List<String> filterKeys(AttributeFilter filter) {
+        List<String> keys = new ArrayList<>(5);
+        if (filter.getKnowledgeBaseId() != null) {
+            keys.add(KNOWLEDGE_BASE + filter.getKnowledgeBaseId());
+        }
+        if (filter.getSource() != null) {
+            keys.add(SOURCE + filter.getSource());
+        }
+        if (filter.getFloor() != null) {
+            keys.add(FLOOR + filter.getFloor());
+        }
+        if (filter.getZone() != null) {
+            keys.add(ZONE + filter.getZone());
+        }
+        if (filter.isAccessibleOnly()) {
+            keys.add(ACCESSIBLE_KEY);
+        }
+        return keys;
+    }
+
+    private int newDocument(long id) {
+        if (docCount == docIds.length) {
+            docIds = Arrays.copyOf(docIds, docIds.length * 2);
+        }
+        int doc = docCount++;
+        if (live.length <= doc >>> 6) {
+            live = Arrays.copyOf(live, live.length * 2);
+        }
+        docIds[doc] = id;
+        live[doc >>> 6] |= 1L << doc;
+        docsById.put(id, doc);
+        return doc;
+    }
+
+    private boolean delete(long id) {
+        long doc = docsById.remove(id);
+        if (doc == LongLongHashMap.MISSING) {
+            return false;
+        }
+        live[(int) (doc >>> 6)] &= ~(1L << doc);
+        deletedCount++;
+        return true;
+    }
+
+    /**
+     * Renumbers the live documents densely and rewrites every bitmap once removals make up too large a share.
+     */
+    private void compactIfNeeded() {
+        if (deletedCount == 0 || deletedCount < docCount * COMPACTION_DELETED_RATIO) {
+            return;
+        }
+        int[] remap = new int[docCount];
+        int kept = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if ((live[doc >>> 6] & (1L << doc)) == 0) {
+                remap[doc] = -1;
+                continue;
+            }
+            remap[doc] = kept;
+            docIds[kept] = docIds[doc];
+            docsById.put(docIds[kept], kept);
+            kept++;
+        }
+        int words = Math.max(1, (kept + 63) >>> 6);
+        Iterator<Map.Entry<String, long[]>> entries = bitmaps.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, long[]> entry = entries.next();
+            long[] bits = entry.getValue();
+            long[] rewritten = new long[words];
+            boolean any = false;
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    int doc = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    int target = doc < docCount ? remap[doc] : -1;
+                    if (target >= 0) {
+                        rewritten[target >>> 6] |= 1L << target;
+                        any = true;
+                    }
+                }
+            }
+            if (any) {
+                entry.setValue(rewritten);
+            } else {
+                entries.remove();
+            }
+        }
+        live = new long[words];
+        for (int doc = 0; doc < kept; doc++) {
+            live[doc >>> 6] |= 1L << doc;
+        }
+        docCount = kept;
+        deletedCount = 0;
+    }
+
+    /**
+     * Filter over the matched document bitmap; only valid while the read lock is held.
+     */
+    private final class BitmapFilter implements VectorFilter {
+        private final long[] matched;
+        private final long cardinality;
+
+        BitmapFilter(long[] matched, long cardinality) {
+            this.matched = matched;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public boolean accepts(long id) {
+            long doc = docsById.get(id);
+            return doc != LongLongHashMap.MISSING && (matched[(int) (doc >>> 6)] & (1L << doc)) != 0;
+        }
+
+        @Override
+        public long cardinality() {
+            return cardinality;
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,50 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Inner product and squared L2 kernels over contiguous float storage.
+ * The second operand is either a heap float array or an off-heap little-endian buffer such as a
+ * mapped index segment, read with absolute offsets so one buffer can be shared by all search threads.
+ * Implementations are selected once at startup by {@link DistanceKernels}.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public interface DistanceKernel {
+
+    /**
+     * @return short implementation name for logs and benchmarks
+     */
+    String name();
+
+    /**
+     * Inner product of two vectors stored in flat arrays.
+     */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int dimension);
+
+    /**
+     * Squared Euclidean distance of two vectors stored in flat arrays.
+     */
+    float l2Squared(float[] a, int aOffset, float[] b, int bOffset, int dimension);
+
+    /**
+     * Inner product of a heap vector and a little-endian vector stored in a buffer.
+     *
+     * @param b buffer holding the second vector
+     * @param bByteOffset absolute byte offset of the second vector
+     */
+    float dot(float[] a, int aOffset, ByteBuffer b, int bByteOffset, int dimension);
+
+    /**
+     * Squared Euclidean distance of a heap vector and a little-endian vector stored in a buffer.
+     *
+     * @param b buffer holding the second vector
+     * @param bByteOffset absolute byte offset of the second vector
+     */
+    float l2Squared(float[] a, int aOffset, ByteBuffer b, int bByteOffset, int dimension);
+}
+
+
+// 内容由AI生成，仅供参考
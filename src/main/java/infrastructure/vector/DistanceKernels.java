@@ -0,0 +1,124 @@
+package com.navigation.system.infrastructure.vector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * Selects the distance kernel once at startup.
+ * The Vector API kernel is used when its class was compiled (jdk17-vector profile), the JVM was
+ * started with {@code --add-modules jdk.incubator.vector}, and it reproduces the scalar results on a
+ * self-check; otherwise the scalar kernel is used. The system property
+ * {@value #KERNEL_PROPERTY} forces a choice: {@code auto} (default), {@code scalar} or {@code vector}.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class DistanceKernels {
+
+    private static final Logger logger = LoggerFactory.getLogger(DistanceKernels.class);
+
+    /**
+     * System property overriding kernel selection.
+     */
+    public static final String KERNEL_PROPERTY = "navigation.vector.kernel";
+
+    private static final String VECTOR_KERNEL_CLASS = "com.navigation.system.infrastructure.vector.VectorApiDistanceKernel";
+    private static final int SELF_CHECK_DIMENSION = 37;
+
+    private static final DistanceKernel VECTORIZED = loadVectorized();
+    private static final DistanceKernel SELECTED = select(System.getProperty(KERNEL_PROPERTY, "auto"));
+
+    private DistanceKernels() {
+    }
+
+    /**
+     * @return kernel used by all in-process indexes
+     */
+    public static DistanceKernel selected() {
+        return SELECTED;
+    }
+
+    public static DistanceKernel scalar() {
+        return ScalarDistanceKernel.INSTANCE;
+    }
+
+    /**
+     * @return Vector API kernel, or null when it is unavailable on this JVM
+     */
+    public static DistanceKernel vectorized() {
+        return VECTORIZED;
+    }
+
+    private static DistanceKernel select(String mode) {
+        DistanceKernel kernel;
+        switch (mode.trim().toLowerCase()) {
+            case "scalar":
+                kernel = ScalarDistanceKernel.INSTANCE;
+                break;
+            case "vector":
+                if (VECTORIZED == null) {
+                    logger.warn("{}=vector requested but the Vector API kernel is unavailable, "
+                            + "start the JVM with --add-modules jdk.incubator.vector", KERNEL_PROPERTY);
+                }
+                kernel = VECTORIZED != null ? VECTORIZED : ScalarDistanceKernel.INSTANCE;
+                break;
+            default:
+                kernel = VECTORIZED != null ? VECTORIZED : ScalarDistanceKernel.INSTANCE;
+                break;
+        }
+        logger.info("Using {} distance kernels", kernel.name());
+        return kernel;
+    }
+
+    private static DistanceKernel loadVectorized() {
+        try {
+            DistanceKernel kernel = (DistanceKernel) Class.forName(VECTOR_KERNEL_CLASS)
+                    .getDeclaredConstructor().newInstance();
+            return selfCheck(kernel) ? kernel : null;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            logger.debug("Vector API distance kernel unavailable: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Runs every kernel entry point once, which also surfaces linkage errors on JDKs whose
+     * Vector API no longer matches, and compares the results with the scalar kernel.
+     */
+    private static boolean selfCheck(DistanceKernel kernel) {
+        Random random = new Random(17L);
+        int dimension = SELF_CHECK_DIMENSION;
+        float[] a = new float[dimension + 1];
+        float[] b = new float[dimension + 1];
+        ByteBuffer buffer = ByteBuffer.allocateDirect((dimension + 1) * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i <= dimension; i++) {
+            a[i] = (float) random.nextGaussian();
+            b[i] = (float) random.nextGaussian();
+            buffer.putFloat(i * Float.BYTES, b[i]);
+        }
+        DistanceKernel scalar = ScalarDistanceKernel.INSTANCE;
+        float[] expected = {
+                scalar.dot(a, 1, b, 1, dimension), scalar.l2Squared(a, 1, b, 1, dimension)
+        };
+        float[] actual = {
+                kernel.dot(a, 1, b, 1, dimension), kernel.l2Squared(a, 1, b, 1, dimension),
+                kernel.dot(a, 1, buffer, Float.BYTES, dimension), kernel.l2Squared(a, 1, buffer, Float.BYTES, dimension)
+        };
+        for (int i = 0; i < actual.length; i++) {
+            float reference = expected[i % 2];
+            if (Math.abs(actual[i] - reference) > 1e-4f * Math.max(1f, Math.abs(reference))) {
+                logger.warn("Vector API distance kernel failed its self-check, falling back to scalar kernels");
+                return false;
+            }
+        }
+        return true;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,50 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Output of the embedding pipeline: chunks with their ids and row-major vectors, ready for
+ * {@link VectorIndex#add(long[], float[])}.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class EmbeddedChunks {
+
+    private final List<KnowledgeChunk> chunks;
+    private final long[] ids;
+    private final float[] vectors;
+
+    EmbeddedChunks(List<KnowledgeChunk> chunks, long[] ids, float[] vectors) {
+        this.chunks = Collections.unmodifiableList(chunks);
+        this.ids = ids;
+        this.vectors = vectors;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public List<KnowledgeChunk> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return chunk ids, index aligned with {@link #getChunks()}; not copied
+     */
+    public long[] getIds() {
+        return ids;
+    }
+
+    /**
+     * @return vectors, size() x dimension, row-major; not copied
+     */
+    public float[] getVectors() {
+        return vectors;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
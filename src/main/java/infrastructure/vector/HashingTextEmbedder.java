@@ -0,0 +1,106 @@
+package com.navigation.system.infrastructure.vector;
+
+import com.navigation.system.infrastructure.config.FAISSConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Feature-hashing text embedder.
+ * Runs fully in-process: latin/digit tokens and CJK unigrams/bigrams are hashed into
+ * FAISSConfig.dimensionSize signed buckets and the vector is L2 normalized, so inner product
+ * equals cosine similarity. Serves as the default embedder until a model based one is plugged in.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class HashingTextEmbedder implements TextEmbedder {
+
+    private final int dimension;
+
+    @Autowired
+    public HashingTextEmbedder(FAISSConfig faissConfig) {
+        this(faissConfig.getDimensionSize());
+    }
+
+    public HashingTextEmbedder(int dimension) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Vector dimension must be greater than 0");
+        }
+        this.dimension = dimension;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimension];
+        if (text == null || text.isEmpty()) {
+            return vector;
+        }
+        int length = text.length();
+        int tokenStart = -1;
+        char previousCjk = 0;
+        for (int i = 0; i <= length; i++) {
+            char ch = i < length ? text.charAt(i) : ' ';
+            boolean cjk = isCjk(ch);
+            boolean word = !cjk && Character.isLetterOrDigit(ch);
+            if (word) {
+                if (tokenStart < 0) {
+                    tokenStart = i;
+                }
+            } else if (tokenStart >= 0) {
+                accumulate(vector, hashToken(text, tokenStart, i));
+                tokenStart = -1;
+            }
+            if (cjk) {
+                accumulate(vector, mix(ch));
+                if (previousCjk != 0) {
+                    accumulate(vector, mix(((long) previousCjk << 16) | ch));
+                }
+                previousCjk = ch;
+            } else {
+                previousCjk = 0;
+            }
+        }
+        VectorMath.normalize(vector, 0, dimension);
+        return vector;
+    }
+
+    private void accumulate(float[] vector, long hash) {
+        int bucket = (int) ((hash >>> 1) % dimension);
+        vector[bucket] += (hash & 1L) == 0 ? 1f : -1f;
+    }
+
+    private static long hashToken(String text, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h ^= Character.toLowerCase(text.charAt(i));
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    static boolean isCjk(char ch) {
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(ch);
+        return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+                || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+                || block == Character.UnicodeBlock.CJK_COMPATIBILITY_IDEOGRAPHS;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
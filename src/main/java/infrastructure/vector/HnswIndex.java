@@ -0,0 +1,797 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pure-Java HNSW (hierarchical navigable small world) graph index.
+ * <p>
+ * Concurrency model:
+ * <ul>
+ *   <li>Nodes live in fixed-size chunks published through {@link AtomicReferenceArray}, so growing
+ *       the index never copies or blocks existing nodes.</li>
+ *   <li>Every neighbor list is an immutable int array replaced copy-on-write, so searches read the
+ *       graph without any lock.</li>
+ *   <li>Inserts update neighbor lists under a striped lock keyed by node; a writer never holds two
+ *       stripes at once, so concurrent inserts cannot deadlock.</li>
+ *   <li>The entry point (top level and node) is packed into one atomic long and raised by CAS.</li>
+ * </ul>
+ * No training is required; vectors are searchable as soon as their insert completes.
+ * Removed vectors are flagged deleted: they stay in the graph as routing nodes but are never returned.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public class HnswIndex implements VectorIndex {
+
+    public static final String INDEX_TYPE = "HNSW";
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = 1 << 16;
+    static final int MAX_LEVEL = 16;
+    private static final int LOCK_STRIPES = 64;
+    private static final long NO_ENTRY = -1L;
+    private static final int[] NO_LINKS = new int[0];
+    private static final int MIN_INSERTS_PER_SLICE = 256;
+
+    private final int dimension;
+    private final MetricType metric;
+    private final int m;
+    private final int maxLinksLevel0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final BuildExecutor executor;
+    private volatile int efSearch;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<Node>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final AtomicLong ntotal = new AtomicLong();
+    private final AtomicLong linkBytes = new AtomicLong();
+    private final AtomicLong deleted = new AtomicLong();
+    private final LongLongHashMap slotsById = new LongLongHashMap();
+    private final ReentrantLock idLock = new ReentrantLock();
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+    private final ThreadLocal<SearchScratch> scratch = ThreadLocal.withInitial(SearchScratch::new);
+    private final AtomicLong entryPoint = new AtomicLong(NO_ENTRY);
+
+    /**
+     * Creates an empty graph.
+     *
+     * @param dimension vector dimension
+     * @param metric similarity metric
+     * @param m number of neighbors per node on upper layers (2 x m on layer 0)
+     * @param efConstruction candidate list size used while inserting
+     * @param efSearch candidate list size used while searching
+     */
+    public HnswIndex(int dimension, MetricType metric, int m, int efConstruction, int efSearch) {
+        this(dimension, metric, m, efConstruction, efSearch, BuildExecutor.sequential());
+    }
+
+    /**
+     * Creates an empty graph whose bulk adds insert concurrently on a build executor.
+     */
+    public HnswIndex(int dimension, MetricType metric, int m, int efConstruction, int efSearch,
+                     BuildExecutor executor) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Vector dimension must be greater than 0");
+        }
+        if (m < 2 || efConstruction <= 0 || efSearch <= 0) {
+            throw new IllegalArgumentException("M must be at least 2, efConstruction and efSearch must be greater than 0");
+        }
+        this.dimension = dimension;
+        this.metric = metric;
+        this.m = m;
+        this.maxLinksLevel0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.executor = executor;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public String getIndexType() {
+        return INDEX_TYPE;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public MetricType getMetric() {
+        return metric;
+    }
+
+    @Override
+    public long size() {
+        return ntotal.get();
+    }
+
+    /**
+     * HNSW needs no training.
+     */
+    @Override
+    public boolean isTrained() {
+        return true;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    /**
+     * Changes the search candidate list size; takes effect for subsequent searches.
+     *
+     * @param efSearch candidate list size, must be greater than 0
+     */
+    public void setEfSearch(int efSearch) {
+        if (efSearch <= 0) {
+            throw new IllegalArgumentException("efSearch must be greater than 0");
+        }
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * No-op apart from argument validation; the graph is built incrementally by {@link #add}.
+     */
+    @Override
+    public void train(float[] vectors, int n) {
+        checkVectors(vectors, n);
+    }
+
+    /**
+     * Inserts vectors. Safe to call from several threads at once and concurrently with searches;
+     * large batches are split into slices inserted concurrently on the build executor.
+     * When an id occurs twice in one batch, which occurrence survives is unspecified.
+     */
+    @Override
+    public void add(long[] ids, float[] vectors) {
+        checkVectors(vectors, ids.length);
+        executor.forEachSlice(ids.length, MIN_INSERTS_PER_SLICE, (slice, from, to) -> {
+            SearchScratch s = scratch.get();
+            for (int i = from; i < to; i++) {
+                insert(ids[i], Arrays.copyOfRange(vectors, i * dimension, (i + 1) * dimension), s);
+            }
+        });
+    }
+
+    @Override
+    public int remove(long[] ids) {
+        int removed = 0;
+        idLock.lock();
+        try {
+            for (long id : ids) {
+                long slot = slotsById.remove(id);
+                if (slot != LongLongHashMap.MISSING) {
+                    markDeleted((int) slot);
+                    removed++;
+                }
+            }
+        } finally {
+            idLock.unlock();
+        }
+        return removed;
+    }
+
+    @Override
+    public long deletedCount() {
+        return deleted.get();
+    }
+
+    /**
+     * Deleted nodes keep routing searches through the graph, so they cannot be unlinked in place
+     * without degrading recall; their memory is reclaimed only by {@link #rebuild()}.
+     *
+     * @return always 0
+     */
+    @Override
+    public long compact() {
+        return 0L;
+    }
+
+    /**
+     * Builds a new graph with the same parameters over the live vectors only, dropping deleted nodes.
+     * This index stays searchable meanwhile; vectors added or removed concurrently may be missed.
+     *
+     * @return new index holding the live vectors
+     */
+    public HnswIndex rebuild() {
+        int count = Math.min(nextSlot.get(), MAX_CHUNKS * CHUNK_SIZE);
+        long[] ids = new long[count];
+        float[] vectors = new float[count * dimension];
+        int live = 0;
+        for (int slot = 0; slot < count; slot++) {
+            AtomicReferenceArray<Node> chunk = chunks.get(slot >>> CHUNK_BITS);
+            Node node = chunk == null ? null : chunk.get(slot & CHUNK_MASK);
+            if (node != null && !node.deleted) {
+                ids[live] = node.id;
+                System.arraycopy(node.vector, 0, vectors, live * dimension, dimension);
+                live++;
+            }
+        }
+        HnswIndex rebuilt = new HnswIndex(dimension, metric, m, efConstruction, efSearch, executor);
+        rebuilt.add(Arrays.copyOf(ids, live), Arrays.copyOf(vectors, live * dimension));
+        return rebuilt;
+    }
+
+    @Override
+    public SearchResult search(float[] query, int k) {
+        return search(query, k, null);
+    }
+
+    /**
+     * Rejected nodes are still expanded so the beam can route through them, but never enter the
+     * results. The beam stays open until it holds efSearch accepted nodes or every node the filter
+     * accepts, so a restrictive filter walks further through the graph instead of returning short.
+     */
+    @Override
+    public SearchResult search(float[] query, int k, VectorFilter filter) {
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("Query dimension " + query.length + " does not match index dimension " + dimension);
+        }
+        long entry = entryPoint.get();
+        if (k <= 0 || entry == NO_ENTRY) {
+            return SearchResult.empty();
+        }
+        SearchScratch s = scratch.get();
+        int current = entrySlot(entry);
+        for (int level = entryLevel(entry); level > 0; level--) {
+            current = greedyClosest(query, current, level);
+        }
+        float currentRank = rank(query, node(current));
+        int ef = Math.max(efSearch, k);
+        if (filter != null) {
+            ef = (int) Math.max(1, Math.min(ef, filter.cardinality()));
+        }
+        searchLayer(query, current, currentRank, ef, 0, true, filter, s);
+        int found = s.drainSorted();
+        int n = Math.min(k, found);
+        long[] ids = new long[n];
+        float[] scores = new float[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = node((int) s.slots[i]).id;
+            scores[i] = metric.fromRank(s.ranks[i]);
+        }
+        return new SearchResult(ids, scores);
+    }
+
+    /**
+     * Estimated heap footprint of vectors, ids and neighbor lists.
+     */
+    @Override
+    public long ramBytesUsed() {
+        int slots = Math.min(nextSlot.get(), MAX_CHUNKS * CHUNK_SIZE);
+        long vectorBytes = (long) slots * ((long) dimension * Float.BYTES + Long.BYTES);
+        long chunkBytes = (long) ((slots + CHUNK_MASK) >>> CHUNK_BITS) * CHUNK_SIZE * 8L;
+        return vectorBytes + chunkBytes + linkBytes.get();
+    }
+
+    /**
+     * Streams the graph to a sink node by node in slot order, deleted nodes included since they
+     * still route searches. Takes no lock: nodes inserted while exporting are left out together
+     * with the links pointing at them, and a slot reserved but not yet filled is written as a
+     * deleted node without links.
+     *
+     * @param sink receives the graph
+     * @throws IOException when the sink fails
+     */
+    void exportTo(VectorIndexFile.GraphSink sink) throws IOException {
+        long entry = entryPoint.get();
+        int count = entry == NO_ENTRY ? 0 : Math.min(nextSlot.get(), MAX_CHUNKS * CHUNK_SIZE);
+        sink.begin(count, entry == NO_ENTRY ? -1 : entryLevel(entry), entry == NO_ENTRY ? -1 : entrySlot(entry));
+        for (int slot = 0; slot < count; slot++) {
+            AtomicReferenceArray<Node> chunk = chunks.get(slot >>> CHUNK_BITS);
+            Node node = chunk == null ? null : chunk.get(slot & CHUNK_MASK);
+            if (node == null) {
+                sink.node(-1L, null, true, new int[][]{NO_LINKS});
+                continue;
+            }
+            int[][] links = new int[node.links.length()][];
+            for (int level = 0; level < links.length; level++) {
+                int[] neighbors = node.links.get(level);
+                int kept = 0;
+                for (int neighbor : neighbors) {
+                    if (neighbor < count) {
+                        kept++;
+                    }
+                }
+                if (kept < neighbors.length) {
+                    int[] filtered = new int[kept];
+                    kept = 0;
+                    for (int neighbor : neighbors) {
+                        if (neighbor < count) {
+                            filtered[kept++] = neighbor;
+                        }
+                    }
+                    neighbors = filtered;
+                }
+                links[level] = neighbors;
+            }
+            sink.node(node.id, node.vector, node.deleted, links);
+        }
+    }
+
+    /**
+     * Places a node read from elsewhere, e.g. an index file, at the next slot of an empty index
+     * being restored. Not thread-safe; the index must not be used until {@link #restoreEntryPoint}.
+     *
+     * @param id vector id
+     * @param vector vector, kept by reference
+     * @param deleted whether the node only routes searches
+     * @param links neighbor slots per level, level 0 first
+     */
+    void restoreNode(long id, float[] vector, boolean deleted, int[][] links) {
+        int slot = nextSlot.getAndIncrement();
+        if (slot >= MAX_CHUNKS * CHUNK_SIZE) {
+            throw new IllegalStateException("HNSW index capacity exceeded");
+        }
+        Node node = new Node(id, vector, links.length - 1);
+        for (int level = 0; level < links.length; level++) {
+            node.links.set(level, links[level]);
+            linkBytes.addAndGet((long) links[level].length * Integer.BYTES);
+        }
+        node.deleted = deleted;
+        store(slot, node);
+        if (deleted) {
+            this.deleted.incrementAndGet();
+        } else {
+            long previous = slotsById.put(id, slot);
+            if (previous != LongLongHashMap.MISSING) {
+                markDeleted((int) previous);
+            }
+            ntotal.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sets the entry point once every node was restored.
+     *
+     * @param level top level of the entry node
+     * @param slot entry node slot
+     */
+    void restoreEntryPoint(int level, int slot) {
+        if (slot < 0 || slot >= nextSlot.get()) {
+            throw new IllegalArgumentException("Entry point " + slot + " is not a restored node");
+        }
+        entryPoint.set(pack(level, slot));
+    }
+
+    @Override
+    public String toString() {
+        long entry = entryPoint.get();
+        return String.format("HnswIndex{dimension=%d, metric=%s, M=%d, efConstruction=%d, efSearch=%d, levels=%d, ntotal=%d}",
+                dimension, metric, m, efConstruction, efSearch, entry == NO_ENTRY ? 0 : entryLevel(entry) + 1, ntotal.get());
+    }
+
+    private void insert(long id, float[] vector, SearchScratch s) {
+        int level = randomLevel();
+        int slot = nextSlot.getAndIncrement();
+        if (slot >= MAX_CHUNKS * CHUNK_SIZE) {
+            throw new IllegalStateException("HNSW index capacity exceeded");
+        }
+        Node node = new Node(id, vector, level);
+        store(slot, node);
+        idLock.lock();
+        try {
+            long previous = slotsById.put(id, slot);
+            if (previous != LongLongHashMap.MISSING) {
+                markDeleted((int) previous);
+            }
+        } finally {
+            idLock.unlock();
+        }
+
+        long entry = entryPoint.get();
+        if (entry == NO_ENTRY) {
+            if (entryPoint.compareAndSet(NO_ENTRY, pack(level, slot))) {
+                ntotal.incrementAndGet();
+                return;
+            }
+            entry = entryPoint.get();
+        }
+        int entryLevel = entryLevel(entry);
+        int current = entrySlot(entry);
+        for (int l = entryLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+        float currentRank = rank(vector, node(current));
+        for (int l = Math.min(level, entryLevel); l >= 0; l--) {
+            searchLayer(vector, current, currentRank, efConstruction, l, false, null, s);
+            int found = s.drainSorted();
+            current = (int) s.slots[0];
+            currentRank = s.ranks[0];
+
+            int[] selected = selectNeighbors(vector, slot, s.slots, s.ranks, found, m);
+            setLinks(slot, node, l, selected);
+            int maxLinks = l == 0 ? maxLinksLevel0 : m;
+            for (int neighbor : selected) {
+                addLink(neighbor, slot, l, maxLinks, s);
+            }
+        }
+        while (true) {
+            long currentEntry = entryPoint.get();
+            if (entryLevel(currentEntry) >= level || entryPoint.compareAndSet(currentEntry, pack(level, slot))) {
+                break;
+            }
+        }
+        ntotal.incrementAndGet();
+    }
+
+    /**
+     * Beam search on one layer; leaves the ef best nodes in the scratch result heap.
+     * With skipDeleted, deleted nodes are still expanded but never enter the result heap;
+     * the same holds for nodes a non-null filter rejects.
+     */
+    private void searchLayer(float[] query, int entry, float entryRank, int ef, int level,
+                             boolean skipDeleted, VectorFilter filter, SearchScratch s) {
+        s.visited.begin(nextSlot.get());
+        s.visited.mark(entry);
+        s.candidates.clear();
+        s.candidates.push(entry, entryRank);
+        s.results.reset(ef);
+        if (admits(node(entry), skipDeleted, filter)) {
+            s.results.offer(entry, entryRank);
+        }
+        while (!s.candidates.isEmpty()) {
+            if (s.candidates.peekRank() < s.results.threshold()) {
+                break;
+            }
+            int current = s.candidates.pop();
+            int[] links = node(current).links.get(level);
+            for (int neighbor : links) {
+                if (!s.visited.mark(neighbor)) {
+                    continue;
+                }
+                Node candidate = node(neighbor);
+                float rank = rank(query, candidate);
+                if (s.results.accepts(rank)) {
+                    s.candidates.push(neighbor, rank);
+                    if (admits(candidate, skipDeleted, filter)) {
+                        s.results.offer(neighbor, rank);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean admits(Node node, boolean skipDeleted, VectorFilter filter) {
+        return (!skipDeleted || !node.deleted) && (filter == null || filter.accepts(node.id));
+    }
+
+    /**
+     * Greedy walk towards the query on an upper layer with a candidate list of one.
+     */
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float currentRank = rank(query, node(current));
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbor : node(current).links.get(level)) {
+                float rank = rank(query, node(neighbor));
+                if (rank > currentRank) {
+                    currentRank = rank;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Neighbor selection heuristic of the HNSW paper: a candidate (sorted best first) is kept only
+     * if it is closer to the base vector than to every neighbor kept so far, which favours links
+     * in diverse directions and keeps the graph navigable on clustered data.
+     */
+    private int[] selectNeighbors(float[] base, int self, long[] slots, float[] ranks, int count, int limit) {
+        int[] selected = new int[Math.min(limit, count)];
+        int size = 0;
+        for (int i = 0; i < count && size < selected.length; i++) {
+            int candidate = (int) slots[i];
+            if (candidate == self) {
+                continue;
+            }
+            float[] candidateVector = node(candidate).vector;
+            boolean diverse = true;
+            for (int j = 0; j < size; j++) {
+                if (rank(candidateVector, node(selected[j])) > ranks[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[size++] = candidate;
+            }
+        }
+        return size == selected.length ? selected : Arrays.copyOf(selected, size);
+    }
+
+    private void markDeleted(int slot) {
+        Node node = node(slot);
+        if (!node.deleted) {
+            node.deleted = true;
+            deleted.incrementAndGet();
+            ntotal.decrementAndGet();
+        }
+    }
+
+    private void setLinks(int slot, Node node, int level, int[] links) {
+        ReentrantLock lock = stripe(slot);
+        lock.lock();
+        try {
+            int[] previous = node.links.get(level);
+            node.links.set(level, links);
+            linkBytes.addAndGet((long) (links.length - previous.length) * Integer.BYTES);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a reverse link, pruning the neighbor list with the selection heuristic when it is full.
+     */
+    private void addLink(int slot, int target, int level, int maxLinks, SearchScratch s) {
+        Node node = node(slot);
+        ReentrantLock lock = stripe(slot);
+        lock.lock();
+        try {
+            int[] links = node.links.get(level);
+            int[] updated;
+            if (links.length < maxLinks) {
+                updated = Arrays.copyOf(links, links.length + 1);
+                updated[links.length] = target;
+            } else {
+                int count = links.length + 1;
+                s.ensurePruneCapacity(count);
+                for (int i = 0; i < links.length; i++) {
+                    s.pruneSlots[i] = links[i];
+                    s.pruneRanks[i] = rank(node.vector, node(links[i]));
+                }
+                s.pruneSlots[links.length] = target;
+                s.pruneRanks[links.length] = rank(node.vector, node(target));
+                sortByRank(s.pruneSlots, s.pruneRanks, count);
+                updated = selectNeighbors(node.vector, slot, s.pruneSlots, s.pruneRanks, count, maxLinks);
+            }
+            node.links.set(level, updated);
+            linkBytes.addAndGet((long) (updated.length - links.length) * Integer.BYTES);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void sortByRank(long[] slots, float[] ranks, int count) {
+        for (int i = 1; i < count; i++) {
+            long slot = slots[i];
+            float rank = ranks[i];
+            int j = i - 1;
+            while (j >= 0 && ranks[j] < rank) {
+                slots[j + 1] = slots[j];
+                ranks[j + 1] = ranks[j];
+                j--;
+            }
+            slots[j + 1] = slot;
+            ranks[j + 1] = rank;
+        }
+    }
+
+    private float rank(float[] query, Node node) {
+        return metric.toRank(metric.compute(query, 0, node.vector, 0, dimension));
+    }
+
+    private int randomLevel() {
+        double u = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(u) * levelMultiplier));
+    }
+
+    private void store(int slot, Node node) {
+        int chunkIndex = slot >>> CHUNK_BITS;
+        AtomicReferenceArray<Node> chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunks.compareAndSet(chunkIndex, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+            chunk = chunks.get(chunkIndex);
+        }
+        chunk.set(slot & CHUNK_MASK, node);
+    }
+
+    private Node node(int slot) {
+        return chunks.get(slot >>> CHUNK_BITS).get(slot & CHUNK_MASK);
+    }
+
+    private ReentrantLock stripe(int slot) {
+        return stripes[slot & (LOCK_STRIPES - 1)];
+    }
+
+    private static long pack(int level, int slot) {
+        return ((long) level << 32) | (slot & 0xFFFFFFFFL);
+    }
+
+    private static int entryLevel(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static int entrySlot(long entry) {
+        return (int) entry;
+    }
+
+    private void checkVectors(float[] vectors, int n) {
+        if (vectors == null || (long) n * dimension != vectors.length) {
+            throw new IllegalArgumentException("Vector array length must equal n * dimension (" + dimension + ")");
+        }
+    }
+
+    /**
+     * Graph node; links holds one immutable neighbor array per level.
+     */
+    private static final class Node {
+        final long id;
+        final float[] vector;
+        final AtomicReferenceArray<int[]> links;
+        volatile boolean deleted;
+
+        Node(long id, float[] vector, int level) {
+            this.id = id;
+            this.vector = vector;
+            this.links = new AtomicReferenceArray<>(level + 1);
+            for (int l = 0; l <= level; l++) {
+                links.set(l, NO_LINKS);
+            }
+        }
+    }
+
+    /**
+     * Visited set cleared in O(1) by bumping a generation stamp instead of zeroing an array.
+     */
+    private static final class VisitedSet {
+        private int[] stamps = new int[CHUNK_SIZE];
+        private int generation;
+
+        void begin(int capacity) {
+            if (capacity > stamps.length) {
+                stamps = new int[capacity + (capacity >> 1)];
+                generation = 0;
+            }
+            generation++;
+            if (generation == 0) {
+                Arrays.fill(stamps, 0);
+                generation = 1;
+            }
+        }
+
+        /**
+         * @return true when the slot was not visited before in this generation
+         */
+        boolean mark(int slot) {
+            if (slot >= stamps.length) {
+                stamps = Arrays.copyOf(stamps, Math.max(slot + 1, stamps.length * 2));
+            }
+            if (stamps[slot] == generation) {
+                return false;
+            }
+            stamps[slot] = generation;
+            return true;
+        }
+    }
+
+    /**
+     * Primitive max-heap of candidates ordered best rank first.
+     */
+    private static final class CandidateQueue {
+        private int[] slots = new int[64];
+        private float[] ranks = new float[64];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        float peekRank() {
+            return ranks[0];
+        }
+
+        void push(int slot, float rank) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (ranks[parent] >= rank) {
+                    break;
+                }
+                slots[i] = slots[parent];
+                ranks[i] = ranks[parent];
+                i = parent;
+            }
+            slots[i] = slot;
+            ranks[i] = rank;
+        }
+
+        int pop() {
+            int top = slots[0];
+            size--;
+            if (size > 0) {
+                int slot = slots[size];
+                float rank = ranks[size];
+                int i = 0;
+                int half = size >>> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    int right = child + 1;
+                    if (right < size && ranks[right] > ranks[child]) {
+                        child = right;
+                    }
+                    if (rank >= ranks[child]) {
+                        break;
+                    }
+                    slots[i] = slots[child];
+                    ranks[i] = ranks[child];
+                    i = child;
+                }
+                slots[i] = slot;
+                ranks[i] = rank;
+            }
+            return top;
+        }
+    }
+
+    /**
+     * Per-thread reusable buffers for searches and inserts.
+     */
+    private static final class SearchScratch {
+        final VisitedSet visited = new VisitedSet();
+        final CandidateQueue candidates = new CandidateQueue();
+        final TopKCollector results = new TopKCollector(64);
+        long[] slots = new long[64];
+        float[] ranks = new float[64];
+        long[] pruneSlots = new long[64];
+        float[] pruneRanks = new float[64];
+
+        /**
+         * Drains the result heap best first into {@link #slots} and {@link #ranks}.
+         */
+        int drainSorted() {
+            int size = results.size();
+            if (slots.length < size) {
+                slots = new long[size];
+                ranks = new float[size];
+            }
+            return results.drainSorted(slots, ranks);
+        }
+
+        void ensurePruneCapacity(int count) {
+            if (pruneSlots.length < count) {
+                pruneSlots = new long[count];
+                pruneRanks = new float[count];
+            }
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,144 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures recall@k of an approximate index against a reference index built on the same data,
+ * or against the exact top-k of a brute-force scan over the indexed vectors.
+ * Recall@k is the fraction of the reference top-k ids that the candidate also returns in its top-k.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class IndexRecallEvaluator {
+
+    private IndexRecallEvaluator() {
+    }
+
+    /**
+     * Computes mean recall@k over a set of queries.
+     *
+     * @param reference reference index, typically IVF_FLAT
+     * @param candidate index under evaluation
+     * @param queries query vectors, row-major
+     * @param nq number of queries
+     * @param k result count
+     * @return recall@k between 0 and 1
+     */
+    public static double recallAtK(VectorIndex reference, VectorIndex candidate, float[] queries, int nq, int k) {
+        int dimension = reference.getDimension();
+        if (candidate.getDimension() != dimension || (long) nq * dimension != queries.length) {
+            throw new IllegalArgumentException("Query array length must equal nq * dimension (" + dimension + ")");
+        }
+        if (nq == 0 || k <= 0) {
+            return 1.0;
+        }
+        float[] query = new float[dimension];
+        long hits = 0;
+        long expected = 0;
+        for (int q = 0; q < nq; q++) {
+            System.arraycopy(queries, q * dimension, query, 0, dimension);
+            long[] truth = reference.search(query, k).getIds();
+            long[] found = candidate.search(query, k).getIds();
+            Arrays.sort(found);
+            for (long id : truth) {
+                if (Arrays.binarySearch(found, id) >= 0) {
+                    hits++;
+                }
+            }
+            expected += truth.length;
+        }
+        return expected == 0 ? 1.0 : (double) hits / expected;
+    }
+
+    /**
+     * Answers queries exactly by scanning the corpus, without building a second index.
+     *
+     * @param metric distance metric
+     * @param ids corpus ids
+     * @param vectors corpus, row-major
+     * @param dimension vector dimension
+     * @param queries query vectors, row-major
+     * @param nq number of queries
+     * @param k result count
+     * @return sorted top-k ids of each query
+     */
+    public static long[][] exactTopK(MetricType metric, long[] ids, float[] vectors, int dimension,
+                                     float[] queries, int nq, int k) {
+        long[][] truth = new long[nq][];
+        TopKCollector collector = new TopKCollector(k);
+        for (int q = 0; q < nq; q++) {
+            collector.reset(k);
+            for (int i = 0; i < ids.length; i++) {
+                float rank = metric.toRank(metric.compute(queries, q * dimension, vectors, i * dimension, dimension));
+                if (collector.accepts(rank)) {
+                    collector.offer(ids[i], rank);
+                }
+            }
+            int size = collector.size();
+            truth[q] = Arrays.copyOf(collector.drainIds(new long[size]), size);
+            Arrays.sort(truth[q]);
+        }
+        return truth;
+    }
+
+    /**
+     * Computes mean recall@k against precomputed exact results.
+     *
+     * @param candidate index under evaluation
+     * @param queries query vectors, row-major
+     * @param nq number of queries
+     * @param k result count
+     * @param truth sorted exact top-k ids of each query, from {@link #exactTopK}
+     * @return recall@k between 0 and 1
+     */
+    public static double recallAtK(VectorIndex candidate, float[] queries, int nq, int k, long[][] truth) {
+        int dimension = candidate.getDimension();
+        float[] query = new float[dimension];
+        long hits = 0;
+        long expected = 0;
+        for (int q = 0; q < nq; q++) {
+            System.arraycopy(queries, q * dimension, query, 0, dimension);
+            for (long id : candidate.search(query, k).getIds()) {
+                if (Arrays.binarySearch(truth[q], id) >= 0) {
+                    hits++;
+                }
+            }
+            expected += truth[q].length;
+        }
+        return expected == 0 ? 1.0 : (double) hits / expected;
+    }
+
+    /**
+     * Draws up to {@code count} distinct vectors from a corpus as evaluation queries.
+     *
+     * @param vectors corpus, row-major
+     * @param n number of corpus vectors
+     * @param dimension vector dimension
+     * @param count requested number of queries
+     * @param seed random seed
+     * @return sampled queries, row-major
+     */
+    public static float[] sampleQueries(float[] vectors, int n, int dimension, int count, long seed) {
+        int nq = Math.min(count, n);
+        int[] perm = new int[n];
+        for (int i = 0; i < n; i++) {
+            perm[i] = i;
+        }
+        Random random = new Random(seed);
+        float[] queries = new float[nq * dimension];
+        for (int i = 0; i < nq; i++) {
+            int j = i + random.nextInt(n - i);
+            int tmp = perm[i];
+            perm[i] = perm[j];
+            perm[j] = tmp;
+            System.arraycopy(vectors, perm[i] * dimension, queries, i * dimension, dimension);
+        }
+        return queries;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
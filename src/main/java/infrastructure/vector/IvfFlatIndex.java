@@ -0,0 +1,566 @@
+package com.navigation.system.infrastructure.vector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Pure-Java IVF_FLAT index.
+ * A k-means trained coarse quantizer partitions the space into nlist cells; every cell keeps
+ * its vectors uncompressed in one contiguous float array plus a parallel id array.
+ * A query scans only the nprobe cells whose centroids are closest to it.
+ * Removal tombstones a vector in its list; {@link #compact()} rewrites lists to reclaim the space.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public class IvfFlatIndex implements VectorIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(IvfFlatIndex.class);
+
+    public static final String INDEX_TYPE = "IVF_FLAT";
+
+    private static final int INITIAL_LIST_CAPACITY = 16;
+
+    /**
+     * Smallest number of vectors assigned by one build thread.
+     */
+    private static final int MIN_VECTORS_PER_SLICE = 64;
+
+    private final int dimension;
+    private final MetricType metric;
+    private final int configuredNlist;
+    private final int batchSize;
+    private final KMeansTrainer trainer;
+    private volatile int nprobe;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<SearchScratch> scratch;
+
+    private int nlist;
+    private float[] centroids;
+    private float[][] listVectors;
+    private long[][] listIds;
+    private int[] listSizes;
+    private ListTombstones tombstones;
+    private LongLongHashMap locations;
+    private long ntotal;
+
+    /**
+     * Creates an untrained index.
+     *
+     * @param dimension vector dimension
+     * @param metric similarity metric
+     * @param nlist number of coarse clusters
+     * @param nprobe number of clusters scanned per query
+     * @param batchSize number of vectors assigned per batch when adding
+     */
+    public IvfFlatIndex(int dimension, MetricType metric, int nlist, int nprobe, int batchSize) {
+        this(dimension, metric, nlist, nprobe, batchSize, new KMeansTrainer());
+    }
+
+    public IvfFlatIndex(int dimension, MetricType metric, int nlist, int nprobe, int batchSize,
+                        KMeansTrainer trainer) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Vector dimension must be greater than 0");
+        }
+        if (nlist <= 0 || nprobe <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("nlist, nprobe and batchSize must be greater than 0");
+        }
+        this.dimension = dimension;
+        this.metric = metric;
+        this.configuredNlist = nlist;
+        this.nprobe = nprobe;
+        this.batchSize = batchSize;
+        this.trainer = trainer;
+        this.scratch = ThreadLocal.withInitial(SearchScratch::new);
+    }
+
+    @Override
+    public String getIndexType() {
+        return INDEX_TYPE;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public MetricType getMetric() {
+        return metric;
+    }
+
+    @Override
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return ntotal;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isTrained() {
+        lock.readLock().lock();
+        try {
+            return centroids != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of clusters actually trained (may be lower than configured for small corpora)
+     */
+    public int getNlist() {
+        return centroids != null ? nlist : configuredNlist;
+    }
+
+    public int getNprobe() {
+        return nprobe;
+    }
+
+    /**
+     * Changes the number of clusters scanned per query; takes effect for subsequent searches.
+     *
+     * @param nprobe clusters to probe, must be greater than 0
+     */
+    public void setNprobe(int nprobe) {
+        if (nprobe <= 0) {
+            throw new IllegalArgumentException("Number of clusters to probe must be greater than 0");
+        }
+        this.nprobe = nprobe;
+    }
+
+    @Override
+    public void train(float[] vectors, int n) {
+        checkVectors(vectors, n);
+        if (n == 0) {
+            throw new IllegalArgumentException("At least one training vector is required");
+        }
+        int k = Math.min(configuredNlist, n);
+        if (k < configuredNlist) {
+            logger.warn("Only {} training vectors for nlist={}, training {} clusters instead", n, configuredNlist, k);
+        }
+        float[] trained = trainer.train(vectors, n, dimension, k, metric);
+
+        lock.writeLock().lock();
+        try {
+            this.nlist = k;
+            this.centroids = trained;
+            this.listVectors = new float[k][];
+            this.listIds = new long[k][];
+            this.listSizes = new int[k];
+            for (int c = 0; c < k; c++) {
+                listVectors[c] = new float[INITIAL_LIST_CAPACITY * dimension];
+                listIds[c] = new long[INITIAL_LIST_CAPACITY];
+            }
+            this.tombstones = new ListTombstones(k);
+            this.locations = new LongLongHashMap();
+            this.ntotal = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds vectors batch by batch. Within a batch, assignment runs on the trainer's build executor
+     * with one list histogram per slice; the histograms are merged to grow every touched list once,
+     * ids and locations are recorded in input order, and the vectors are then copied into their
+     * list positions in parallel.
+     */
+    @Override
+    public void add(long[] ids, float[] vectors) {
+        int n = ids.length;
+        checkVectors(vectors, n);
+        BuildExecutor executor = trainer.getExecutor();
+        int batch = Math.min(batchSize, Math.max(n, 1));
+        int[] assignment = new int[batch];
+        int[] positions = new int[batch];
+
+        lock.writeLock().lock();
+        try {
+            if (centroids == null) {
+                throw new IllegalStateException("Index must be trained before adding vectors");
+            }
+            int slices = executor.sliceCount(batch, MIN_VECTORS_PER_SLICE);
+            int[][] sliceHistograms = new int[slices][nlist];
+            int[] additions = new int[nlist];
+            int replaced = 0;
+            for (int start = 0; start < n; start += batchSize) {
+                int base = start;
+                int count = Math.min(n, start + batchSize) - start;
+                executor.forEachSlice(count, MIN_VECTORS_PER_SLICE, (slice, from, to) -> {
+                    int[] histogram = sliceHistograms[slice];
+                    Arrays.fill(histogram, 0);
+                    for (int i = from; i < to; i++) {
+                        int list = KMeansTrainer.nearest(vectors, (base + i) * dimension, centroids, nlist, dimension, metric);
+                        assignment[i] = list;
+                        histogram[list]++;
+                    }
+                });
+                Arrays.fill(additions, 0);
+                int used = executor.sliceCount(count, MIN_VECTORS_PER_SLICE);
+                for (int slice = 0; slice < used; slice++) {
+                    for (int c = 0; c < nlist; c++) {
+                        additions[c] += sliceHistograms[slice][c];
+                    }
+                }
+                for (int c = 0; c < nlist; c++) {
+                    if (additions[c] > 0) {
+                        ensureCapacity(c, listSizes[c] + additions[c]);
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    if (tombstone(ids[base + i])) {
+                        replaced++;
+                    }
+                    int list = assignment[i];
+                    int position = listSizes[list]++;
+                    listIds[list][position] = ids[base + i];
+                    locations.put(ids[base + i], location(list, position));
+                    positions[i] = position;
+                }
+                executor.forEachSlice(count, MIN_VECTORS_PER_SLICE, (slice, from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        System.arraycopy(vectors, (base + i) * dimension, listVectors[assignment[i]],
+                                positions[i] * dimension, dimension);
+                    }
+                });
+            }
+            ntotal += n - replaced;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int remove(long[] ids) {
+        lock.writeLock().lock();
+        try {
+            if (centroids == null) {
+                return 0;
+            }
+            int removed = 0;
+            for (long id : ids) {
+                if (tombstone(id)) {
+                    removed++;
+                }
+            }
+            ntotal -= removed;
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long deletedCount() {
+        lock.readLock().lock();
+        try {
+            return tombstones == null ? 0L : tombstones.total();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long compact() {
+        lock.writeLock().lock();
+        try {
+            if (tombstones == null || tombstones.total() == 0) {
+                return 0L;
+            }
+            long reclaimed = tombstones.total();
+            for (int c = 0; c < nlist; c++) {
+                long[] deleted = tombstones.bitsOf(c);
+                if (deleted == null) {
+                    continue;
+                }
+                long[] ids = listIds[c];
+                float[] vectors = listVectors[c];
+                int size = listSizes[c];
+                int kept = 0;
+                for (int i = 0; i < size; i++) {
+                    if (ListTombstones.isDeleted(deleted, i)) {
+                        continue;
+                    }
+                    if (kept != i) {
+                        ids[kept] = ids[i];
+                        System.arraycopy(vectors, i * dimension, vectors, kept * dimension, dimension);
+                        locations.put(ids[kept], location(c, kept));
+                    }
+                    kept++;
+                }
+                listSizes[c] = kept;
+                tombstones.clear(c);
+                int capacity = Math.max(INITIAL_LIST_CAPACITY, kept + (kept >> 1));
+                if (capacity < ids.length) {
+                    listIds[c] = Arrays.copyOf(ids, capacity);
+                    listVectors[c] = Arrays.copyOf(vectors, capacity * dimension);
+                }
+            }
+            logger.debug("Compacted {} removed vectors from {}", reclaimed, this);
+            return reclaimed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public SearchResult search(float[] query, int k) {
+        return search(query, k, null);
+    }
+
+    /**
+     * Tests the filter before computing a distance. Filtered searches rank every list and keep
+     * probing lists beyond nprobe, closest first, until k vectors passed the filter.
+     */
+    @Override
+    public SearchResult search(float[] query, int k, VectorFilter filter) {
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("Query dimension " + query.length + " does not match index dimension " + dimension);
+        }
+        if (k <= 0) {
+            return SearchResult.empty();
+        }
+        SearchScratch s = scratch.get();
+        lock.readLock().lock();
+        try {
+            if (centroids == null || ntotal == 0) {
+                return SearchResult.empty();
+            }
+            int probes = Math.min(nprobe, nlist);
+            int probeCount = s.probes.select(query, metric, centroids, nlist, dimension,
+                    filter == null ? probes : nlist, filter != null);
+            long wanted = filter == null ? k : Math.min(k, filter.cardinality());
+
+            s.results.reset(k);
+            for (int p = 0; p < probeCount; p++) {
+                if (p >= probes && s.results.size() >= wanted) {
+                    break;
+                }
+                int list = s.probes.list(p);
+                float[] vectors = listVectors[list];
+                long[] ids = listIds[list];
+                int size = listSizes[list];
+                long[] deleted = tombstones.bitsOf(list);
+                for (int i = 0; i < size; i++) {
+                    if (deleted != null && ListTombstones.isDeleted(deleted, i)) {
+                        continue;
+                    }
+                    if (filter != null && !filter.accepts(ids[i])) {
+                        continue;
+                    }
+                    float rank = metric.toRank(metric.compute(query, 0, vectors, i * dimension, dimension));
+                    if (s.results.accepts(rank)) {
+                        s.results.offer(ids[i], rank);
+                    }
+                }
+            }
+            return s.results.toResult(metric);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scans list-major: the probe lists of all queries are grouped by list, and every probed list is
+     * read once while each of its vectors is compared against all queries of the group, so a vector
+     * is loaded into cache once per batch instead of once per query.
+     */
+    @Override
+    public SearchResult[] searchBatch(float[] queries, int n, int k) {
+        checkVectors(queries, n);
+        if (k <= 0) {
+            return ListProbeGroups.empty(n);
+        }
+        SearchScratch s = scratch.get();
+        lock.readLock().lock();
+        try {
+            if (centroids == null || ntotal == 0) {
+                return ListProbeGroups.empty(n);
+            }
+            ListProbeGroups groups = s.groups;
+            groups.build(queries, n, dimension, metric, centroids, nlist, nprobe);
+            TopKCollector[] results = groups.resetResults(n, k);
+            for (int list = 0; list < nlist; list++) {
+                int from = groups.start(list);
+                int to = groups.end(list);
+                int size = listSizes[list];
+                if (from == to || size == 0) {
+                    continue;
+                }
+                float[] vectors = listVectors[list];
+                long[] ids = listIds[list];
+                long[] deleted = tombstones.bitsOf(list);
+                for (int i = 0; i < size; i++) {
+                    if (deleted != null && ListTombstones.isDeleted(deleted, i)) {
+                        continue;
+                    }
+                    int offset = i * dimension;
+                    for (int g = from; g < to; g++) {
+                        int q = groups.query(g);
+                        float rank = metric.toRank(metric.compute(queries, q * dimension, vectors, offset, dimension));
+                        if (results[q].accepts(rank)) {
+                            results[q].offer(ids[i], rank);
+                        }
+                    }
+                }
+            }
+            return groups.toResults(n, metric);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        lock.readLock().lock();
+        try {
+            if (centroids == null) {
+                return 0L;
+            }
+            long bytes = (long) centroids.length * Float.BYTES + (long) listSizes.length * Integer.BYTES
+                    + tombstones.ramBytesUsed() + (long) locations.size() * 2 * Long.BYTES;
+            for (int c = 0; c < nlist; c++) {
+                bytes += (long) listVectors[c].length * Float.BYTES + (long) listIds[c].length * Long.BYTES;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Streams a consistent snapshot of the index into a sink while holding the read lock.
+     * Removed vectors are left out, so the written lists are always compact.
+     *
+     * @param sink destination of centroids and inverted lists
+     * @throws IOException when the sink fails
+     */
+    void exportTo(VectorIndexFile.IvfListSink sink) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (centroids == null) {
+                throw new IllegalStateException("Index must be trained before it can be exported");
+            }
+            int[] liveSizes = new int[nlist];
+            for (int c = 0; c < nlist; c++) {
+                liveSizes[c] = listSizes[c] - tombstones.count(c);
+            }
+            sink.begin(nlist, nprobe, ntotal, centroids, liveSizes);
+            for (int c = 0; c < nlist; c++) {
+                long[] deleted = tombstones.bitsOf(c);
+                if (deleted == null) {
+                    sink.list(listIds[c], listVectors[c], listSizes[c]);
+                    continue;
+                }
+                long[] ids = new long[liveSizes[c]];
+                float[] vectors = new float[liveSizes[c] * dimension];
+                int kept = 0;
+                for (int i = 0; i < listSizes[c]; i++) {
+                    if (!ListTombstones.isDeleted(deleted, i)) {
+                        ids[kept] = listIds[c][i];
+                        System.arraycopy(listVectors[c], i * dimension, vectors, kept * dimension, dimension);
+                        kept++;
+                    }
+                }
+                sink.list(ids, vectors, kept);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the whole index content with trained state read from elsewhere, e.g. an index file.
+     *
+     * @param nlist number of lists
+     * @param centroids trained centroids
+     * @param ids per-list ids
+     * @param vectors per-list vectors
+     * @param sizes per-list sizes
+     */
+    void restore(int nlist, float[] centroids, long[][] ids, float[][] vectors, int[] sizes) {
+        lock.writeLock().lock();
+        try {
+            this.nlist = nlist;
+            this.centroids = centroids;
+            this.listIds = ids;
+            this.listVectors = vectors;
+            this.listSizes = sizes;
+            this.tombstones = new ListTombstones(nlist);
+            long total = 0;
+            for (int c = 0; c < nlist; c++) {
+                total += sizes[c];
+            }
+            this.locations = new LongLongHashMap((int) Math.min(Integer.MAX_VALUE, total));
+            for (int c = 0; c < nlist; c++) {
+                for (int i = 0; i < sizes[c]; i++) {
+                    locations.put(ids[c][i], location(c, i));
+                }
+            }
+            this.ntotal = total;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IvfFlatIndex{dimension=%d, metric=%s, nlist=%d, nprobe=%d, ntotal=%d}",
+                dimension, metric, getNlist(), nprobe, ntotal);
+    }
+
+    /**
+     * Tombstones the current vector of an id, if any. Caller holds the write lock.
+     *
+     * @return whether the id was present
+     */
+    private boolean tombstone(long id) {
+        long location = locations.remove(id);
+        if (location == LongLongHashMap.MISSING) {
+            return false;
+        }
+        tombstones.mark((int) (location >>> 32), (int) location);
+        return true;
+    }
+
+    private static long location(int list, int position) {
+        return ((long) list << 32) | (position & 0xFFFFFFFFL);
+    }
+
+    private void ensureCapacity(int list, int required) {
+        int capacity = listIds[list].length;
+        if (required > capacity) {
+            capacity = Math.max(required, capacity + (capacity >> 1) + 1);
+            listIds[list] = Arrays.copyOf(listIds[list], capacity);
+            listVectors[list] = Arrays.copyOf(listVectors[list], capacity * dimension);
+        }
+    }
+
+    private void checkVectors(float[] vectors, int n) {
+        if (vectors == null || (long) n * dimension != vectors.length) {
+            throw new IllegalArgumentException("Vector array length must equal n * dimension (" + dimension + ")");
+        }
+    }
+
+    /**
+     * Per-thread reusable search buffers.
+     */
+    private static final class SearchScratch {
+        final QueryProbes probes = new QueryProbes();
+        final TopKCollector results = new TopKCollector(16);
+        final ListProbeGroups groups = new ListProbeGroups();
+    }
+}
+
+
+// 内容由AI生成，仅供参考
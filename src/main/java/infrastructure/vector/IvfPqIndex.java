@@ -0,0 +1,674 @@
+package com.navigation.system.infrastructure.vector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Pure-Java IVF_PQ index for memory constrained nodes.
+ * Shares the coarse quantizer of IVF_FLAT but stores, per vector, only the product quantization
+ * code of its residual to the assigned centroid: m bytes instead of dimension x 4 bytes.
+ * Queries use asymmetric distance computation. For L2 one lookup table is built per probed list
+ * from the query residual; for inner product a single table is built per query and the list's
+ * q·c term is added, since q·(c + r) = q·c + q·r. All search buffers are reused per thread.
+ * Removal tombstones codes in place until {@link #compact()} rewrites the affected lists.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public class IvfPqIndex implements VectorIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(IvfPqIndex.class);
+
+    public static final String INDEX_TYPE = "IVF_PQ";
+
+    private static final int INITIAL_LIST_CAPACITY = 16;
+
+    /**
+     * Smallest number of vectors assigned and encoded by one build thread.
+     */
+    private static final int MIN_VECTORS_PER_SLICE = 64;
+
+    private final int dimension;
+    private final MetricType metric;
+    private final int configuredNlist;
+    private final int batchSize;
+    private final KMeansTrainer trainer;
+    private final ProductQuantizer pq;
+    private final int codeSize;
+    private volatile int nprobe;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<SearchScratch> scratch;
+
+    private int nlist;
+    private float[] centroids;
+    private byte[][] listCodes;
+    private long[][] listIds;
+    private int[] listSizes;
+    private ListTombstones tombstones;
+    private LongLongHashMap locations;
+    private long ntotal;
+
+    /**
+     * Creates an untrained index.
+     *
+     * @param dimension vector dimension
+     * @param metric similarity metric
+     * @param nlist number of coarse clusters
+     * @param nprobe number of clusters scanned per query
+     * @param batchSize number of vectors encoded per batch when adding
+     * @param subQuantizers number of PQ sub-quantizers, must divide dimension
+     * @param bitsPerCode bits per sub-quantizer code, between 1 and 8
+     */
+    public IvfPqIndex(int dimension, MetricType metric, int nlist, int nprobe, int batchSize,
+                      int subQuantizers, int bitsPerCode) {
+        this(dimension, metric, nlist, nprobe, batchSize, subQuantizers, bitsPerCode, new KMeansTrainer());
+    }
+
+    public IvfPqIndex(int dimension, MetricType metric, int nlist, int nprobe, int batchSize,
+                      int subQuantizers, int bitsPerCode, KMeansTrainer trainer) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Vector dimension must be greater than 0");
+        }
+        if (nlist <= 0 || nprobe <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("nlist, nprobe and batchSize must be greater than 0");
+        }
+        this.dimension = dimension;
+        this.metric = metric;
+        this.configuredNlist = nlist;
+        this.nprobe = nprobe;
+        this.batchSize = batchSize;
+        this.trainer = trainer;
+        this.pq = new ProductQuantizer(dimension, subQuantizers, bitsPerCode);
+        this.codeSize = pq.getCodeSize();
+        this.scratch = ThreadLocal.withInitial(() -> new SearchScratch(dimension));
+    }
+
+    @Override
+    public String getIndexType() {
+        return INDEX_TYPE;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public MetricType getMetric() {
+        return metric;
+    }
+
+    @Override
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return ntotal;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isTrained() {
+        lock.readLock().lock();
+        try {
+            return centroids != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of clusters actually trained (may be lower than configured for small corpora)
+     */
+    public int getNlist() {
+        return centroids != null ? nlist : configuredNlist;
+    }
+
+    public int getNprobe() {
+        return nprobe;
+    }
+
+    /**
+     * Changes the number of clusters scanned per query; takes effect for subsequent searches.
+     *
+     * @param nprobe clusters to probe, must be greater than 0
+     */
+    public void setNprobe(int nprobe) {
+        if (nprobe <= 0) {
+            throw new IllegalArgumentException("Number of clusters to probe must be greater than 0");
+        }
+        this.nprobe = nprobe;
+    }
+
+    /**
+     * @return bytes stored per vector code
+     */
+    public int getCodeSize() {
+        return codeSize;
+    }
+
+    public int getSubQuantizers() {
+        return pq.getSubQuantizers();
+    }
+
+    public int getBitsPerCode() {
+        return pq.getBitsPerCode();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public void train(float[] vectors, int n) {
+        checkVectors(vectors, n);
+        if (n == 0) {
+            throw new IllegalArgumentException("At least one training vector is required");
+        }
+        int k = Math.min(configuredNlist, n);
+        if (k < configuredNlist) {
+            logger.warn("Only {} training vectors for nlist={}, training {} clusters instead", n, configuredNlist, k);
+        }
+        float[] trained = trainer.train(vectors, n, dimension, k, metric);
+
+        float[] residuals = new float[n * dimension];
+        trainer.getExecutor().forEachSlice(n, MIN_VECTORS_PER_SLICE, (slice, from, to) -> {
+            for (int i = from; i < to; i++) {
+                int c = KMeansTrainer.nearest(vectors, i * dimension, trained, k, dimension, metric);
+                residual(vectors, i * dimension, trained, c, residuals, i * dimension);
+            }
+        });
+
+        lock.writeLock().lock();
+        try {
+            pq.train(residuals, n, trainer);
+            this.nlist = k;
+            this.centroids = trained;
+            this.listCodes = new byte[k][];
+            this.listIds = new long[k][];
+            this.listSizes = new int[k];
+            for (int c = 0; c < k; c++) {
+                listCodes[c] = new byte[INITIAL_LIST_CAPACITY * codeSize];
+                listIds[c] = new long[INITIAL_LIST_CAPACITY];
+            }
+            this.tombstones = new ListTombstones(k);
+            this.locations = new LongLongHashMap();
+            this.ntotal = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds vectors batch by batch. Within a batch, assignment and encoding run on the trainer's
+     * build executor with one list histogram per slice; the histograms are merged to grow every
+     * touched list once, ids and locations are recorded in input order, and the codes are then
+     * copied into their list positions in parallel.
+     */
+    @Override
+    public void add(long[] ids, float[] vectors) {
+        int n = ids.length;
+        checkVectors(vectors, n);
+        BuildExecutor executor = trainer.getExecutor();
+        int batch = Math.min(batchSize, Math.max(n, 1));
+        int[] assignment = new int[batch];
+        int[] positions = new int[batch];
+        byte[] codes = new byte[batch * codeSize];
+
+        lock.writeLock().lock();
+        try {
+            if (centroids == null) {
+                throw new IllegalStateException("Index must be trained before adding vectors");
+            }
+            int slices = executor.sliceCount(batch, MIN_VECTORS_PER_SLICE);
+            int[][] sliceHistograms = new int[slices][nlist];
+            float[][] sliceResiduals = new float[slices][dimension];
+            int[] additions = new int[nlist];
+            int replaced = 0;
+            for (int start = 0; start < n; start += batchSize) {
+                int base = start;
+                int count = Math.min(n, start + batchSize) - start;
+                executor.forEachSlice(count, MIN_VECTORS_PER_SLICE, (slice, from, to) -> {
+                    int[] histogram = sliceHistograms[slice];
+                    float[] residual = sliceResiduals[slice];
+                    Arrays.fill(histogram, 0);
+                    for (int i = from; i < to; i++) {
+                        int list = KMeansTrainer.nearest(vectors, (base + i) * dimension, centroids, nlist, dimension, metric);
+                        assignment[i] = list;
+                        histogram[list]++;
+                        residual(vectors, (base + i) * dimension, centroids, list, residual, 0);
+                        pq.encode(residual, 0, codes, i * codeSize);
+                    }
+                });
+                Arrays.fill(additions, 0);
+                int used = executor.sliceCount(count, MIN_VECTORS_PER_SLICE);
+                for (int slice = 0; slice < used; slice++) {
+                    for (int c = 0; c < nlist; c++) {
+                        additions[c] += sliceHistograms[slice][c];
+                    }
+                }
+                for (int c = 0; c < nlist; c++) {
+                    if (additions[c] > 0) {
+                        ensureCapacity(c, listSizes[c] + additions[c]);
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    if (tombstone(ids[base + i])) {
+                        replaced++;
+                    }
+                    int list = assignment[i];
+                    int position = listSizes[list]++;
+                    listIds[list][position] = ids[base + i];
+                    locations.put(ids[base + i], location(list, position));
+                    positions[i] = position;
+                }
+                executor.forEachSlice(count, MIN_VECTORS_PER_SLICE, (slice, from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        System.arraycopy(codes, i * codeSize, listCodes[assignment[i]], positions[i] * codeSize, codeSize);
+                    }
+                });
+            }
+            ntotal += n - replaced;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int remove(long[] ids) {
+        lock.writeLock().lock();
+        try {
+            if (centroids == null) {
+                return 0;
+            }
+            int removed = 0;
+            for (long id : ids) {
+                if (tombstone(id)) {
+                    removed++;
+                }
+            }
+            ntotal -= removed;
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long deletedCount() {
+        lock.readLock().lock();
+        try {
+            return tombstones == null ? 0L : tombstones.total();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long compact() {
+        lock.writeLock().lock();
+        try {
+            if (tombstones == null || tombstones.total() == 0) {
+                return 0L;
+            }
+            long reclaimed = tombstones.total();
+            for (int c = 0; c < nlist; c++) {
+                long[] deleted = tombstones.bitsOf(c);
+                if (deleted == null) {
+                    continue;
+                }
+                long[] ids = listIds[c];
+                byte[] codes = listCodes[c];
+                int size = listSizes[c];
+                int kept = 0;
+                for (int i = 0; i < size; i++) {
+                    if (ListTombstones.isDeleted(deleted, i)) {
+                        continue;
+                    }
+                    if (kept != i) {
+                        ids[kept] = ids[i];
+                        System.arraycopy(codes, i * codeSize, codes, kept * codeSize, codeSize);
+                        locations.put(ids[kept], location(c, kept));
+                    }
+                    kept++;
+                }
+                listSizes[c] = kept;
+                tombstones.clear(c);
+                int capacity = Math.max(INITIAL_LIST_CAPACITY, kept + (kept >> 1));
+                if (capacity < ids.length) {
+                    listIds[c] = Arrays.copyOf(ids, capacity);
+                    listCodes[c] = Arrays.copyOf(codes, capacity * codeSize);
+                }
+            }
+            logger.debug("Compacted {} removed vectors from {}", reclaimed, this);
+            return reclaimed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public SearchResult search(float[] query, int k) {
+        return search(query, k, null);
+    }
+
+    /**
+     * Tests the filter before computing a distance. Filtered searches rank every list and keep
+     * probing lists beyond nprobe, closest first, until k vectors passed the filter.
+     */
+    @Override
+    public SearchResult search(float[] query, int k, VectorFilter filter) {
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("Query dimension " + query.length + " does not match index dimension " + dimension);
+        }
+        if (k <= 0) {
+            return SearchResult.empty();
+        }
+        SearchScratch s = scratch.get();
+        lock.readLock().lock();
+        try {
+            if (centroids == null || ntotal == 0) {
+                return SearchResult.empty();
+            }
+            if (s.table.length != pq.getTableSize()) {
+                s.table = new float[pq.getTableSize()];
+            }
+            int probes = Math.min(nprobe, nlist);
+            int probeCount = s.probes.select(query, metric, centroids, nlist, dimension,
+                    filter == null ? probes : nlist, filter != null);
+            long wanted = filter == null ? k : Math.min(k, filter.cardinality());
+
+            boolean innerProduct = metric == MetricType.INNER_PRODUCT;
+            if (innerProduct) {
+                pq.computeInnerProductTable(query, 0, s.table);
+            }
+            s.results.reset(k);
+            for (int p = 0; p < probeCount; p++) {
+                if (p >= probes && s.results.size() >= wanted) {
+                    break;
+                }
+                int list = s.probes.list(p);
+                int size = listSizes[list];
+                if (size == 0) {
+                    continue;
+                }
+                float base = 0f;
+                if (innerProduct) {
+                    base = VectorMath.dot(query, 0, centroids, list * dimension, dimension);
+                } else {
+                    residual(query, 0, centroids, list, s.residual, 0);
+                    pq.computeL2Table(s.residual, 0, s.table);
+                }
+                byte[] codes = listCodes[list];
+                long[] ids = listIds[list];
+                long[] deleted = tombstones.bitsOf(list);
+                for (int i = 0; i < size; i++) {
+                    if (deleted != null && ListTombstones.isDeleted(deleted, i)) {
+                        continue;
+                    }
+                    if (filter != null && !filter.accepts(ids[i])) {
+                        continue;
+                    }
+                    float rank = metric.toRank(base + pq.lookup(s.table, codes, i * codeSize));
+                    if (s.results.accepts(rank)) {
+                        s.results.offer(ids[i], rank);
+                    }
+                }
+            }
+            return s.results.toResult(metric);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scans list-major: the probe lists of all queries are grouped by list and the codes of every
+     * probed list are scanned back to back for all queries of the group while they are cache resident.
+     * Inner product lookup tables are built once per query for the whole batch.
+     */
+    @Override
+    public SearchResult[] searchBatch(float[] queries, int n, int k) {
+        checkVectors(queries, n);
+        if (k <= 0) {
+            return ListProbeGroups.empty(n);
+        }
+        SearchScratch s = scratch.get();
+        lock.readLock().lock();
+        try {
+            if (centroids == null || ntotal == 0) {
+                return ListProbeGroups.empty(n);
+            }
+            int tableSize = pq.getTableSize();
+            if (s.table.length != tableSize) {
+                s.table = new float[tableSize];
+            }
+            boolean innerProduct = metric == MetricType.INNER_PRODUCT;
+            float[][] tables = null;
+            if (innerProduct) {
+                tables = s.queryTables(n, tableSize);
+                for (int q = 0; q < n; q++) {
+                    pq.computeInnerProductTable(queries, q * dimension, tables[q]);
+                }
+            }
+            ListProbeGroups groups = s.groups;
+            groups.build(queries, n, dimension, metric, centroids, nlist, nprobe);
+            TopKCollector[] results = groups.resetResults(n, k);
+            for (int list = 0; list < nlist; list++) {
+                int from = groups.start(list);
+                int to = groups.end(list);
+                int size = listSizes[list];
+                if (from == to || size == 0) {
+                    continue;
+                }
+                byte[] codes = listCodes[list];
+                long[] ids = listIds[list];
+                long[] deleted = tombstones.bitsOf(list);
+                for (int g = from; g < to; g++) {
+                    int q = groups.query(g);
+                    float base = 0f;
+                    float[] table;
+                    if (innerProduct) {
+                        table = tables[q];
+                        base = VectorMath.dot(queries, q * dimension, centroids, list * dimension, dimension);
+                    } else {
+                        table = s.table;
+                        residual(queries, q * dimension, centroids, list, s.residual, 0);
+                        pq.computeL2Table(s.residual, 0, table);
+                    }
+                    TopKCollector collector = results[q];
+                    for (int i = 0; i < size; i++) {
+                        if (deleted != null && ListTombstones.isDeleted(deleted, i)) {
+                            continue;
+                        }
+                        float rank = metric.toRank(base + pq.lookup(table, codes, i * codeSize));
+                        if (collector.accepts(rank)) {
+                            collector.offer(ids[i], rank);
+                        }
+                    }
+                }
+            }
+            return groups.toResults(n, metric);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        lock.readLock().lock();
+        try {
+            if (centroids == null) {
+                return 0L;
+            }
+            long bytes = (long) centroids.length * Float.BYTES + (long) listSizes.length * Integer.BYTES
+                    + pq.ramBytesUsed() + tombstones.ramBytesUsed() + (long) locations.size() * 2 * Long.BYTES;
+            for (int c = 0; c < nlist; c++) {
+                bytes += listCodes[c].length + (long) listIds[c].length * Long.BYTES;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Streams the trained quantizers and the live codes of every list to a sink, skipping removed
+     * codes. Holds the read lock, so searches proceed while the index is written out.
+     *
+     * @param sink receives the index content
+     * @throws IOException when the sink fails
+     */
+    void exportTo(VectorIndexFile.PqListSink sink) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (centroids == null) {
+                throw new IllegalStateException("Index must be trained before it can be exported");
+            }
+            int[] liveSizes = new int[nlist];
+            for (int c = 0; c < nlist; c++) {
+                liveSizes[c] = listSizes[c] - tombstones.count(c);
+            }
+            sink.begin(nlist, nprobe, ntotal, centroids, pq.getCodebookSize(), pq.getCodebooks(), liveSizes);
+            for (int c = 0; c < nlist; c++) {
+                long[] deleted = tombstones.bitsOf(c);
+                if (deleted == null) {
+                    sink.list(listIds[c], listCodes[c], listSizes[c]);
+                    continue;
+                }
+                long[] ids = new long[liveSizes[c]];
+                byte[] codes = new byte[liveSizes[c] * codeSize];
+                int kept = 0;
+                for (int i = 0; i < listSizes[c]; i++) {
+                    if (!ListTombstones.isDeleted(deleted, i)) {
+                        ids[kept] = listIds[c][i];
+                        System.arraycopy(listCodes[c], i * codeSize, codes, kept * codeSize, codeSize);
+                        kept++;
+                    }
+                }
+                sink.list(ids, codes, kept);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the whole index content with trained state read from elsewhere, e.g. an index file.
+     *
+     * @param nlist number of lists
+     * @param centroids trained coarse centroids
+     * @param codebookSize codewords per sub-quantizer
+     * @param codebooks trained PQ codebooks
+     * @param ids per-list ids
+     * @param codes per-list codes
+     * @param sizes per-list sizes
+     */
+    void restore(int nlist, float[] centroids, int codebookSize, float[] codebooks,
+                 long[][] ids, byte[][] codes, int[] sizes) {
+        lock.writeLock().lock();
+        try {
+            pq.restore(codebookSize, codebooks);
+            this.nlist = nlist;
+            this.centroids = centroids;
+            this.listIds = ids;
+            this.listCodes = codes;
+            this.listSizes = sizes;
+            this.tombstones = new ListTombstones(nlist);
+            long total = 0;
+            for (int c = 0; c < nlist; c++) {
+                total += sizes[c];
+            }
+            this.locations = new LongLongHashMap((int) Math.min(Integer.MAX_VALUE, total));
+            for (int c = 0; c < nlist; c++) {
+                for (int i = 0; i < sizes[c]; i++) {
+                    locations.put(ids[c][i], location(c, i));
+                }
+            }
+            this.ntotal = total;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IvfPqIndex{dimension=%d, metric=%s, nlist=%d, nprobe=%d, m=%d, bits=%d, ntotal=%d}",
+                dimension, metric, getNlist(), nprobe, pq.getSubQuantizers(), pq.getBitsPerCode(), ntotal);
+    }
+
+    private void residual(float[] vectors, int offset, float[] centroids, int centroid, float[] out, int outOffset) {
+        int centroidOffset = centroid * dimension;
+        for (int d = 0; d < dimension; d++) {
+            out[outOffset + d] = vectors[offset + d] - centroids[centroidOffset + d];
+        }
+    }
+
+    /**
+     * Tombstones the current code of an id, if any. Caller holds the write lock.
+     *
+     * @return whether the id was present
+     */
+    private boolean tombstone(long id) {
+        long location = locations.remove(id);
+        if (location == LongLongHashMap.MISSING) {
+            return false;
+        }
+        tombstones.mark((int) (location >>> 32), (int) location);
+        return true;
+    }
+
+    private static long location(int list, int position) {
+        return ((long) list << 32) | (position & 0xFFFFFFFFL);
+    }
+
+    private void ensureCapacity(int list, int required) {
+        int capacity = listIds[list].length;
+        if (required > capacity) {
+            capacity = Math.max(required, capacity + (capacity >> 1) + 1);
+            listIds[list] = Arrays.copyOf(listIds[list], capacity);
+            listCodes[list] = Arrays.copyOf(listCodes[list], capacity * codeSize);
+        }
+    }
+
+    private void checkVectors(float[] vectors, int n) {
+        if (vectors == null || (long) n * dimension != vectors.length) {
+            throw new IllegalArgumentException("Vector array length must equal n * dimension (" + dimension + ")");
+        }
+    }
+
+    /**
+     * Per-thread reusable search buffers, including the distance lookup table.
+     */
+    private static final class SearchScratch {
+        final QueryProbes probes = new QueryProbes();
+        final TopKCollector results = new TopKCollector(16);
+        final float[] residual;
+        final ListProbeGroups groups = new ListProbeGroups();
+        float[] table = new float[0];
+        float[][] tables = new float[0][];
+
+        SearchScratch(int dimension) {
+            this.residual = new float[dimension];
+        }
+
+        /**
+         * @return at least n per-query lookup tables of the given size
+         */
+        float[][] queryTables(int n, int tableSize) {
+            if (tables.length < n || (tables.length > 0 && tables[0].length != tableSize)) {
+                tables = new float[Math.max(n, tables.length)][tableSize];
+            }
+            return tables;
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
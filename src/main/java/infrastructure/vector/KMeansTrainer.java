@@ -0,0 +1,240 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Lloyd k-means used to train coarse quantizers and product quantizer codebooks.
+ * Follows the FAISS defaults: random distinct initial centroids, at most 256 training
+ * points per centroid, and splitting of the largest cluster when a centroid becomes empty.
+ * The assignment step runs on the build executor: every slice of the sample accumulates
+ * centroid sums and counts into its own buffers, which are merged in slice order.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public class KMeansTrainer {
+
+    /**
+     * Default number of Lloyd iterations.
+     */
+    public static final int DEFAULT_ITERATIONS = 25;
+
+    /**
+     * Maximum number of training points sampled per centroid.
+     */
+    public static final int MAX_POINTS_PER_CENTROID = 256;
+
+    private static final float SPLIT_EPSILON = 1f / 1024f;
+
+    /**
+     * Smallest number of sample points assigned by one build thread.
+     */
+    private static final int MIN_POINTS_PER_SLICE = 256;
+
+    private final int iterations;
+    private final long seed;
+    private final BuildExecutor executor;
+
+    public KMeansTrainer() {
+        this(DEFAULT_ITERATIONS, 1234L);
+    }
+
+    public KMeansTrainer(int iterations, long seed) {
+        this(iterations, seed, BuildExecutor.sequential());
+    }
+
+    public KMeansTrainer(BuildExecutor executor) {
+        this(DEFAULT_ITERATIONS, 1234L, executor);
+    }
+
+    public KMeansTrainer(int iterations, long seed, BuildExecutor executor) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("K-means iterations must be greater than 0");
+        }
+        this.iterations = iterations;
+        this.seed = seed;
+        this.executor = executor;
+    }
+
+    /**
+     * @return executor used for assignment steps, shared with the indexes built by this trainer
+     */
+    public BuildExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Trains k centroids.
+     *
+     * @param data training vectors, row-major
+     * @param n number of training vectors
+     * @param dimension vector dimension
+     * @param k number of centroids, must not exceed n
+     * @param metric metric used for assignment; inner product trains spherical centroids
+     * @return centroids, row-major k x dimension
+     */
+    public float[] train(float[] data, int n, int dimension, int k, MetricType metric) {
+        if (k <= 0 || k > n) {
+            throw new IllegalArgumentException("Number of centroids must be between 1 and the number of training vectors");
+        }
+        Random random = new Random(seed);
+        float[] sample = subsample(data, n, dimension, k, random);
+        int sampleSize = sample.length / dimension;
+
+        float[] centroids = new float[k * dimension];
+        int[] perm = permutation(sampleSize, random);
+        for (int c = 0; c < k; c++) {
+            System.arraycopy(sample, perm[c] * dimension, centroids, c * dimension, dimension);
+        }
+
+        int slices = executor.sliceCount(sampleSize, MIN_POINTS_PER_SLICE);
+        int[][] sliceCounts = new int[slices][k];
+        float[][] sliceSums = new float[slices][k * dimension];
+        for (int iter = 0; iter < iterations; iter++) {
+            executor.forEachSlice(sampleSize, MIN_POINTS_PER_SLICE, (slice, from, to) -> {
+                int[] counts = sliceCounts[slice];
+                float[] sums = sliceSums[slice];
+                Arrays.fill(counts, 0);
+                Arrays.fill(sums, 0f);
+                for (int i = from; i < to; i++) {
+                    int c = nearest(sample, i * dimension, centroids, k, dimension, metric);
+                    counts[c]++;
+                    int src = i * dimension;
+                    int dst = c * dimension;
+                    for (int j = 0; j < dimension; j++) {
+                        sums[dst + j] += sample[src + j];
+                    }
+                }
+            });
+            int[] counts = sliceCounts[0];
+            float[] sums = sliceSums[0];
+            for (int slice = 1; slice < slices; slice++) {
+                int[] otherCounts = sliceCounts[slice];
+                float[] otherSums = sliceSums[slice];
+                for (int c = 0; c < k; c++) {
+                    counts[c] += otherCounts[c];
+                }
+                for (int j = 0; j < sums.length; j++) {
+                    sums[j] += otherSums[j];
+                }
+            }
+            updateCentroids(centroids, sums, counts, k, dimension, metric, random);
+        }
+        return centroids;
+    }
+
+    /**
+     * Finds the centroid closest to a vector.
+     *
+     * @return index of the best centroid
+     */
+    public static int nearest(float[] vectors, int offset, float[] centroids, int k, int dimension, MetricType metric) {
+        int best = 0;
+        float bestRank = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+            float rank = metric.toRank(metric.compute(vectors, offset, centroids, c * dimension, dimension));
+            if (rank > bestRank) {
+                bestRank = rank;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the closest of k centroids stored from centroid index {@code first} under squared L2.
+     *
+     * @return index of the best centroid relative to {@code first}
+     */
+    static int nearestL2(float[] vectors, int offset, float[] centroids, int first, int k, int dimension) {
+        int best = 0;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (int c = 0; c < k; c++) {
+            float distance = VectorMath.l2Squared(vectors, offset, centroids, (first + c) * dimension, dimension);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Recomputes centroids from accumulated sums and splits the largest cluster into empty ones.
+     */
+    static void updateCentroids(float[] centroids, float[] sums, int[] counts, int k, int dimension,
+                                MetricType metric, Random random) {
+        for (int c = 0; c < k; c++) {
+            if (counts[c] == 0) {
+                continue;
+            }
+            float inv = 1f / counts[c];
+            int off = c * dimension;
+            for (int j = 0; j < dimension; j++) {
+                centroids[off + j] = sums[off + j] * inv;
+            }
+        }
+        for (int c = 0; c < k; c++) {
+            if (counts[c] != 0) {
+                continue;
+            }
+            int largest = 0;
+            for (int other = 1; other < k; other++) {
+                if (counts[other] > counts[largest]) {
+                    largest = other;
+                }
+            }
+            if (counts[largest] <= 1) {
+                break;
+            }
+            int src = largest * dimension;
+            int dst = c * dimension;
+            for (int j = 0; j < dimension; j++) {
+                float value = centroids[src + j];
+                float delta = (random.nextBoolean() ? 1f : -1f) * SPLIT_EPSILON * (Math.abs(value) + SPLIT_EPSILON);
+                centroids[dst + j] = value + delta;
+                centroids[src + j] = value - delta;
+            }
+            counts[c] = counts[largest] / 2;
+            counts[largest] -= counts[c];
+        }
+        if (metric == MetricType.INNER_PRODUCT) {
+            for (int c = 0; c < k; c++) {
+                VectorMath.normalize(centroids, c * dimension, dimension);
+            }
+        }
+    }
+
+    private static float[] subsample(float[] data, int n, int dimension, int k, Random random) {
+        long maxPoints = (long) k * MAX_POINTS_PER_CENTROID;
+        if (n <= maxPoints) {
+            return n * dimension == data.length ? data : Arrays.copyOf(data, n * dimension);
+        }
+        int sampleSize = (int) maxPoints;
+        int[] perm = permutation(n, random);
+        float[] sample = new float[sampleSize * dimension];
+        for (int i = 0; i < sampleSize; i++) {
+            System.arraycopy(data, perm[i] * dimension, sample, i * dimension, dimension);
+        }
+        return sample;
+    }
+
+    private static int[] permutation(int n, Random random) {
+        int[] perm = new int[n];
+        for (int i = 0; i < n; i++) {
+            perm[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = perm[i];
+            perm[i] = perm[j];
+            perm[j] = tmp;
+        }
+        return perm;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,82 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tokenizer for the keyword index.
+ * <ul>
+ *   <li>Latin letters and digits form lower-cased word tokens. A single '-', '_', '.' or '/'
+ *       between two letters or digits is kept inside the token, so room numbers and gate codes
+ *       such as "A3-05" or "B2/1" stay one exact-match term.</li>
+ *   <li>CJK runs are split into overlapping bigrams; a run of one character is kept as a unigram.</li>
+ * </ul>
+ * Queries and documents go through the same rules, so a code typed in a query matches the code in the text.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+final class KeywordTokenizer {
+
+    private KeywordTokenizer() {
+    }
+
+    /**
+     * Appends the tokens of a text to a list.
+     *
+     * @param text text to tokenize, may be null
+     * @param out token sink
+     */
+    static void tokenize(String text, List<String> out) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char ch = text.charAt(i);
+            if (HashingTextEmbedder.isCjk(ch)) {
+                int end = i + 1;
+                while (end < length && HashingTextEmbedder.isCjk(text.charAt(end))) {
+                    end++;
+                }
+                if (end - i == 1) {
+                    out.add(text.substring(i, end));
+                } else {
+                    for (int start = i; start + 1 < end; start++) {
+                        out.add(text.substring(start, start + 2));
+                    }
+                }
+                i = end;
+            } else if (isWordChar(ch)) {
+                int end = i + 1;
+                while (end < length) {
+                    char next = text.charAt(end);
+                    if (isWordChar(next)) {
+                        end++;
+                    } else if (isJoiner(next) && end + 1 < length && isWordChar(text.charAt(end + 1))) {
+                        end += 2;
+                    } else {
+                        break;
+                    }
+                }
+                out.add(text.substring(i, end).toLowerCase(Locale.ROOT));
+                i = end;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean isWordChar(char ch) {
+        return Character.isLetterOrDigit(ch) && !HashingTextEmbedder.isCjk(ch);
+    }
+
+    private static boolean isJoiner(char ch) {
+        return ch == '-' || ch == '_' || ch == '.' || ch == '/';
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,116 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Retrieval unit cut from a knowledge base row: one map region or one rule clause, or a token
+ * window of either when it is too long.
+ * Chunk ids carry the knowledge base id in the upper 32 bits and a content hash in the lower 32,
+ * so identical content keeps its id across rebuilds and every search hit maps back to its row.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class KnowledgeChunk {
+
+    /**
+     * Part of the knowledge base a chunk was cut from.
+     */
+    public enum Source {
+        MAP_REGION,
+        RULE_CLAUSE
+    }
+
+    private final long id;
+    private final long knowledgeBaseId;
+    private final Source source;
+    private final int ordinal;
+    private final String text;
+    private final long contentHash;
+
+    KnowledgeChunk(long id, long knowledgeBaseId, Source source, int ordinal, String text, long contentHash) {
+        this.id = id;
+        this.knowledgeBaseId = knowledgeBaseId;
+        this.source = source;
+        this.ordinal = ordinal;
+        this.text = text;
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * @return vector id of the chunk
+     */
+    public long getId() {
+        return id;
+    }
+
+    public long getKnowledgeBaseId() {
+        return knowledgeBaseId;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * @return position of the chunk within its source
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return 64-bit FNV-1a hash of the chunk text
+     */
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Recovers the knowledge base id from a chunk vector id.
+     *
+     * @param chunkId chunk vector id
+     * @return knowledge base row id
+     */
+    public static long knowledgeBaseIdOf(long chunkId) {
+        return chunkId >>> 32;
+    }
+
+    /**
+     * Composes a chunk vector id.
+     *
+     * @param knowledgeBaseId knowledge base row id, must fit in 31 bits
+     * @param contentHash chunk content hash
+     * @return chunk vector id
+     */
+    static long chunkId(long knowledgeBaseId, long contentHash) {
+        return (knowledgeBaseId << 32) | ((contentHash ^ (contentHash >>> 32)) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param text chunk text
+     * @return 64-bit FNV-1a hash of the UTF-8 bytes
+     */
+    public static long hash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("KnowledgeChunk{id=%d, knowledgeBaseId=%d, source=%s, ordinal=%d, length=%d}",
+                id, knowledgeBaseId, source, ordinal, text.length());
+    }
+}
+
+
+// 内容由AI生成，仅供参考
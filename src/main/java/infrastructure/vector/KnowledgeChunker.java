@@ -0,0 +1,392 @@
+package com.navigation.system.infrastructure.vector;
+
+import com.navigation.system.infrastructure.config.FAISSConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming chunker for knowledge base rows.
+ * <ul>
+ *   <li>venueMapData in JSON form is cut into map regions: elements of the top-level array, or
+ *       members of the top-level object with array members expanded element by element. Each
+ *       region is prefixed with its member key. Non-JSON map data is cut by line.</li>
+ *   <li>ruleText is cut into clauses at 。；;！？!? and line breaks.</li>
+ *   <li>Regions and clauses longer than the token budget are split into overlapping token windows.
+ *       Tokens follow the embedder: latin/digit runs and single CJK characters.</li>
+ * </ul>
+ * Chunks are produced lazily, one unit at a time, so callers can embed in batches without
+ * materializing every chunk first.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class KnowledgeChunker {
+
+    private final int maxTokens;
+    private final int overlapTokens;
+
+    @Autowired
+    public KnowledgeChunker(FAISSConfig faissConfig) {
+        this(faissConfig.getChunkMaxTokens(), faissConfig.getChunkOverlapTokens());
+    }
+
+    public KnowledgeChunker(int maxTokens, int overlapTokens) {
+        if (maxTokens <= 0 || overlapTokens < 0 || overlapTokens >= maxTokens) {
+            throw new IllegalArgumentException("Chunk overlap must be non-negative and smaller than the chunk size");
+        }
+        this.maxTokens = maxTokens;
+        this.overlapTokens = overlapTokens;
+    }
+
+    /**
+     * Lazily chunks one knowledge base row.
+     *
+     * @param knowledgeBaseId row id encoded into the chunk ids, must fit in 31 bits
+     * @param venueMapData venue map data, JSON or plain text, may be null
+     * @param ruleText rule text, may be null
+     * @return iterator over map region chunks followed by rule clause chunks
+     */
+    public Iterator<KnowledgeChunk> chunk(long knowledgeBaseId, String venueMapData, String ruleText) {
+        if (knowledgeBaseId < 0 || knowledgeBaseId > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Knowledge base id out of range: " + knowledgeBaseId);
+        }
+        return new ChunkIterator(knowledgeBaseId, venueMapData == null ? "" : venueMapData,
+                ruleText == null ? "" : ruleText);
+    }
+
+    /**
+     * Splits a unit into token windows of at most maxTokens sharing overlapTokens tokens.
+     */
+    void window(String unit, ArrayDeque<String> out) {
+        int length = unit.length();
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int count = 0;
+        int tokenStart = -1;
+        for (int i = 0; i <= length; i++) {
+            char ch = i < length ? unit.charAt(i) : ' ';
+            boolean cjk = HashingTextEmbedder.isCjk(ch);
+            boolean word = !cjk && Character.isLetterOrDigit(ch);
+            if (!word && tokenStart >= 0) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                }
+                starts[count] = tokenStart;
+                ends[count++] = i;
+                tokenStart = -1;
+            }
+            if (word && tokenStart < 0) {
+                tokenStart = i;
+            }
+            if (cjk) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                }
+                starts[count] = i;
+                ends[count++] = i + 1;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        if (count <= maxTokens) {
+            out.add(unit.trim());
+            return;
+        }
+        int step = maxTokens - overlapTokens;
+        for (int first = 0; ; first += step) {
+            int last = Math.min(first + maxTokens, count) - 1;
+            out.add(unit.substring(starts[first], ends[last]));
+            if (last == count - 1) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Lazy iterator; holds at most the windows of one region or clause.
+     */
+    private final class ChunkIterator implements Iterator<KnowledgeChunk> {
+
+        private final long knowledgeBaseId;
+        private final JsonRegionScanner regions;
+        private final ClauseScanner clauses;
+        private final ArrayDeque<String> pending = new ArrayDeque<>();
+        private final LongLongHashMap usedIds = new LongLongHashMap();
+        private KnowledgeChunk.Source pendingSource;
+        private int regionOrdinal;
+        private int clauseOrdinal;
+        private KnowledgeChunk next;
+
+        ChunkIterator(long knowledgeBaseId, String venueMapData, String ruleText) {
+            this.knowledgeBaseId = knowledgeBaseId;
+            this.regions = new JsonRegionScanner(venueMapData);
+            this.clauses = new ClauseScanner(ruleText);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public KnowledgeChunk next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            KnowledgeChunk chunk = next;
+            next = null;
+            return chunk;
+        }
+
+        private KnowledgeChunk advance() {
+            while (pending.isEmpty()) {
+                String region = regions.next();
+                if (region != null) {
+                    pendingSource = KnowledgeChunk.Source.MAP_REGION;
+                    window(region, pending);
+                    continue;
+                }
+                String clause = clauses.next();
+                if (clause == null) {
+                    return null;
+                }
+                pendingSource = KnowledgeChunk.Source.RULE_CLAUSE;
+                window(clause, pending);
+            }
+            String text = pending.poll();
+            int ordinal = pendingSource == KnowledgeChunk.Source.MAP_REGION ? regionOrdinal++ : clauseOrdinal++;
+            long hash = KnowledgeChunk.hash(text);
+            long id = KnowledgeChunk.chunkId(knowledgeBaseId, hash);
+            while (usedIds.put(id, ordinal) != LongLongHashMap.MISSING) {
+                // Resolve 32-bit hash collisions deterministically within the row
+                id = (knowledgeBaseId << 32) | ((id + 1) & 0xFFFFFFFFL);
+            }
+            return new KnowledgeChunk(id, knowledgeBaseId, pendingSource, ordinal, text, hash);
+        }
+    }
+
+    /**
+     * Cuts JSON map data into regions without building a document tree.
+     * Falls back to one region per line when the data is not JSON or turns out malformed.
+     */
+    static final class JsonRegionScanner {
+
+        private static final int TOP_ARRAY = 0;
+        private static final int OBJECT = 1;
+        private static final int MEMBER_ARRAY = 2;
+        private static final int LINES = 3;
+        private static final int DONE = 4;
+
+        private final String s;
+        private int pos;
+        private int mode;
+        private String key;
+
+        JsonRegionScanner(String s) {
+            this.s = s;
+            int start = skipWhitespace(0);
+            if (start < s.length() && s.charAt(start) == '{') {
+                mode = OBJECT;
+                pos = start + 1;
+            } else if (start < s.length() && s.charAt(start) == '[') {
+                mode = TOP_ARRAY;
+                pos = start + 1;
+            } else {
+                mode = LINES;
+                pos = 0;
+            }
+        }
+
+        /**
+         * @return next region text, or null when exhausted
+         */
+        String next() {
+            while (true) {
+                switch (mode) {
+                    case TOP_ARRAY:
+                    case MEMBER_ARRAY: {
+                        pos = skipSeparators(pos);
+                        if (pos >= s.length()) {
+                            mode = DONE;
+                            continue;
+                        }
+                        if (s.charAt(pos) == ']') {
+                            pos++;
+                            mode = mode == TOP_ARRAY ? DONE : OBJECT;
+                            continue;
+                        }
+                        int end = skipValue(pos);
+                        String value = s.substring(pos, end);
+                        pos = end;
+                        return mode == MEMBER_ARRAY ? key + ": " + value : value;
+                    }
+                    case OBJECT: {
+                        pos = skipSeparators(pos);
+                        if (pos >= s.length() || s.charAt(pos) == '}') {
+                            mode = DONE;
+                            continue;
+                        }
+                        if (s.charAt(pos) != '"') {
+                            mode = LINES;
+                            continue;
+                        }
+                        int keyEnd = skipString(pos);
+                        int colon = skipWhitespace(keyEnd);
+                        if (colon >= s.length() || s.charAt(colon) != ':') {
+                            mode = LINES;
+                            continue;
+                        }
+                        key = s.substring(pos + 1, keyEnd - 1);
+                        pos = skipWhitespace(colon + 1);
+                        if (pos < s.length() && s.charAt(pos) == '[') {
+                            pos++;
+                            mode = MEMBER_ARRAY;
+                            continue;
+                        }
+                        int end = skipValue(pos);
+                        String value = s.substring(pos, end);
+                        pos = end;
+                        return key + ": " + value;
+                    }
+                    case LINES: {
+                        while (pos < s.length()) {
+                            int end = s.indexOf('\n', pos);
+                            if (end < 0) {
+                                end = s.length();
+                            }
+                            String line = s.substring(pos, end).trim();
+                            pos = end + 1;
+                            if (!line.isEmpty()) {
+                                return line;
+                            }
+                        }
+                        mode = DONE;
+                        continue;
+                    }
+                    default:
+                        return null;
+                }
+            }
+        }
+
+        private int skipWhitespace(int i) {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+                i++;
+            }
+            return i;
+        }
+
+        private int skipSeparators(int i) {
+            while (i < s.length() && (Character.isWhitespace(s.charAt(i)) || s.charAt(i) == ',')) {
+                i++;
+            }
+            return i;
+        }
+
+        private int skipString(int i) {
+            for (int j = i + 1; j < s.length(); j++) {
+                char ch = s.charAt(j);
+                if (ch == '\\') {
+                    j++;
+                } else if (ch == '"') {
+                    return j + 1;
+                }
+            }
+            return s.length();
+        }
+
+        private int skipValue(int i) {
+            if (i >= s.length()) {
+                return i;
+            }
+            char first = s.charAt(i);
+            if (first == '"') {
+                return skipString(i);
+            }
+            int depth = 0;
+            int j = i;
+            while (j < s.length()) {
+                char ch = s.charAt(j);
+                if (ch == '"') {
+                    j = skipString(j);
+                    continue;
+                }
+                if (ch == '{' || ch == '[') {
+                    depth++;
+                } else if (ch == '}' || ch == ']') {
+                    if (depth == 0) {
+                        return j;
+                    }
+                    if (--depth == 0) {
+                        return j + 1;
+                    }
+                } else if (ch == ',' && depth == 0) {
+                    return j;
+                }
+                j++;
+            }
+            return j;
+        }
+    }
+
+    /**
+     * Cuts rule text into clauses, keeping the terminating punctuation with its clause.
+     */
+    static final class ClauseScanner {
+
+        private final String s;
+        private int pos;
+
+        ClauseScanner(String s) {
+            this.s = s;
+        }
+
+        String next() {
+            while (pos < s.length()) {
+                int start = pos;
+                while (pos < s.length() && !isClauseEnd(s.charAt(pos))) {
+                    pos++;
+                }
+                int end = Math.min(pos + 1, s.length());
+                pos = end;
+                String clause = s.substring(start, end).trim();
+                if (!clause.isEmpty() && !(clause.length() == 1 && isClauseEnd(clause.charAt(0)))) {
+                    return clause;
+                }
+            }
+            return null;
+        }
+
+        private static boolean isClauseEnd(char ch) {
+            switch (ch) {
+                case '。':
+                case '；':
+                case ';':
+                case '！':
+                case '？':
+                case '!':
+                case '?':
+                case '\n':
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
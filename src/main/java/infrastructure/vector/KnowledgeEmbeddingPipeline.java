@@ -0,0 +1,109 @@
+package com.navigation.system.infrastructure.vector;
+
+import com.navigation.system.infrastructure.config.FAISSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Chunks knowledge base rows and embeds the chunks in batches of FAISSConfig.batchSize.
+ * Chunks are pulled from the streaming chunker one batch at a time, so only the current batch of
+ * texts is handed to the embedder at once.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class KnowledgeEmbeddingPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(KnowledgeEmbeddingPipeline.class);
+
+    private final KnowledgeChunker chunker;
+    private final TextEmbedder embedder;
+    private final int batchSize;
+
+    @Autowired
+    public KnowledgeEmbeddingPipeline(KnowledgeChunker chunker, TextEmbedder embedder, FAISSConfig faissConfig) {
+        this(chunker, embedder, faissConfig.getBatchSize());
+    }
+
+    public KnowledgeEmbeddingPipeline(KnowledgeChunker chunker, TextEmbedder embedder, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch processing size must be greater than 0");
+        }
+        this.chunker = chunker;
+        this.embedder = embedder;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Chunks one knowledge base row without embedding it, for indexes that only need the chunk texts.
+     *
+     * @param knowledgeBaseId row id encoded into the chunk ids
+     * @param venueMapData venue map data
+     * @param ruleText rule text
+     * @return lazy chunk iterator, ids identical to those produced by {@link #embed}
+     */
+    public Iterator<KnowledgeChunk> chunk(long knowledgeBaseId, String venueMapData, String ruleText) {
+        return chunker.chunk(knowledgeBaseId, venueMapData, ruleText);
+    }
+
+    /**
+     * Chunks and embeds one knowledge base row.
+     *
+     * @param knowledgeBaseId row id encoded into the chunk ids
+     * @param venueMapData venue map data
+     * @param ruleText rule text
+     * @return embedded chunks, possibly empty
+     */
+    public EmbeddedChunks embed(long knowledgeBaseId, String venueMapData, String ruleText) {
+        return embed(chunk(knowledgeBaseId, venueMapData, ruleText));
+    }
+
+    /**
+     * Embeds chunks produced earlier, e.g. the subset of a row's chunks that changed.
+     *
+     * @param iterator chunks to embed
+     * @return embedded chunks, possibly empty
+     */
+    public EmbeddedChunks embed(Iterator<KnowledgeChunk> iterator) {
+        long start = System.nanoTime();
+        int dimension = embedder.getDimension();
+        List<KnowledgeChunk> chunks = new ArrayList<>();
+        List<String> batch = new ArrayList<>(Math.min(batchSize, 1024));
+        long[] ids = new long[64];
+        float[] vectors = new float[64 * dimension];
+        int count = 0;
+        while (iterator.hasNext()) {
+            KnowledgeChunk chunk = iterator.next();
+            chunks.add(chunk);
+            batch.add(chunk.getText());
+            if (batch.size() == batchSize || !iterator.hasNext()) {
+                if (count + batch.size() > ids.length) {
+                    int capacity = Math.max(count + batch.size(), ids.length * 2);
+                    ids = Arrays.copyOf(ids, capacity);
+                    vectors = Arrays.copyOf(vectors, capacity * dimension);
+                }
+                float[] embedded = embedder.embedBatch(batch);
+                System.arraycopy(embedded, 0, vectors, count * dimension, batch.size() * dimension);
+                for (int i = 0; i < batch.size(); i++) {
+                    ids[count + i] = chunks.get(count + i).getId();
+                }
+                count += batch.size();
+                batch.clear();
+            }
+        }
+        logger.debug("Embedded {} chunks in {} ms", count, (System.nanoTime() - start) / 1_000_000);
+        return new EmbeddedChunks(chunks, Arrays.copyOf(ids, count), Arrays.copyOf(vectors, count * dimension));
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,143 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.util.Arrays;
+
+/**
+ * Inverts the probe lists of a query batch into per inverted list query groups, so that an IVF index
+ * scans each probed list once for all queries that probe it instead of once per query.
+ * Groups are stored CSR style: the queries probing list c are {@code queries[start(c) .. end(c))}.
+ * Also keeps one result collector per query. Instances are reused per thread.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+final class ListProbeGroups {
+
+    private final TopKCollector probes = new TopKCollector(16);
+    private long[] probeLists = new long[16];
+    private int[] probed = new int[0];
+    private int[] starts = new int[1];
+    private int[] queries = new int[0];
+    private TopKCollector[] results = new TopKCollector[0];
+
+    /**
+     * Selects the nprobe closest centroids of every query and groups the queries by list.
+     *
+     * @param queryVectors queries, row-major, n x dimension
+     * @param n number of queries
+     * @param dimension vector dimension
+     * @param metric similarity metric
+     * @param centroids coarse centroids, row-major, nlist x dimension
+     * @param nlist number of lists
+     * @param nprobe lists probed per query
+     */
+    void build(float[] queryVectors, int n, int dimension, MetricType metric,
+               float[] centroids, int nlist, int nprobe) {
+        int perQuery = Math.min(nprobe, nlist);
+        if (probed.length < n * perQuery) {
+            probed = new int[n * perQuery];
+        }
+        if (starts.length < nlist + 1) {
+            starts = new int[nlist + 1];
+        }
+        Arrays.fill(starts, 0, nlist + 1, 0);
+        // Every query offers all nlist centroids, so each one probes exactly perQuery lists
+        int total = 0;
+        for (int q = 0; q < n; q++) {
+            probes.reset(perQuery);
+            for (int c = 0; c < nlist; c++) {
+                probes.offer(c, metric.toRank(metric.compute(queryVectors, q * dimension, centroids, c * dimension, dimension)));
+            }
+            int count = probes.size();
+            probeLists = probes.drainIds(probeLists);
+            for (int p = 0; p < count; p++) {
+                int list = (int) probeLists[p];
+                probed[total++] = list;
+                starts[list + 1]++;
+            }
+        }
+        for (int c = 0; c < nlist; c++) {
+            starts[c + 1] += starts[c];
+        }
+        if (queries.length < total) {
+            queries = new int[total];
+        }
+        int[] fill = Arrays.copyOf(starts, nlist);
+        for (int i = 0; i < total; i++) {
+            queries[fill[probed[i]]++] = i / perQuery;
+        }
+    }
+
+    /**
+     * @return first position of the queries probing a list
+     */
+    int start(int list) {
+        return starts[list];
+    }
+
+    /**
+     * @return end position (exclusive) of the queries probing a list
+     */
+    int end(int list) {
+        return starts[list + 1];
+    }
+
+    /**
+     * @return query index at a group position
+     */
+    int query(int position) {
+        return queries[position];
+    }
+
+    /**
+     * Resets one collector per query for a new batch.
+     *
+     * @param n number of queries
+     * @param k results per query
+     * @return collectors indexed by query
+     */
+    TopKCollector[] resetResults(int n, int k) {
+        if (results.length < n) {
+            TopKCollector[] grown = Arrays.copyOf(results, n);
+            for (int q = results.length; q < n; q++) {
+                grown[q] = new TopKCollector(k);
+            }
+            results = grown;
+        }
+        for (int q = 0; q < n; q++) {
+            results[q].reset(k);
+        }
+        return results;
+    }
+
+    /**
+     * Drains the per-query collectors into results.
+     *
+     * @param n number of queries
+     * @param metric metric used to convert ranks back into raw scores
+     * @return one result per query
+     */
+    SearchResult[] toResults(int n, MetricType metric) {
+        SearchResult[] out = new SearchResult[n];
+        for (int q = 0; q < n; q++) {
+            out[q] = results[q].toResult(metric);
+        }
+        return out;
+    }
+
+    /**
+     * Result array of empty results, for batches against an empty index.
+     *
+     * @param n number of queries
+     * @return n empty results
+     */
+    static SearchResult[] empty(int n) {
+        SearchResult[] out = new SearchResult[n];
+        Arrays.fill(out, SearchResult.empty());
+        return out;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,78 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.util.Arrays;
+
+/**
+ * Per inverted list deletion bitsets.
+ * Removing a vector only sets its bit; scans skip marked positions until compaction rewrites the list.
+ * Bitsets are allocated lazily so lists without deletions cost nothing. Guarded by the index lock.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+final class ListTombstones {
+
+    private final long[][] bits;
+    private final int[] counts;
+    private long total;
+
+    ListTombstones(int nlist) {
+        this.bits = new long[nlist][];
+        this.counts = new int[nlist];
+    }
+
+    void mark(int list, int position) {
+        long[] words = bits[list];
+        int word = position >>> 6;
+        if (words == null || word >= words.length) {
+            words = words == null ? new long[word + 1] : Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+            bits[list] = words;
+        }
+        long mask = 1L << position;
+        if ((words[word] & mask) == 0) {
+            words[word] |= mask;
+            counts[list]++;
+            total++;
+        }
+    }
+
+    /**
+     * @return deletion bitset of a list, or null when the list has no deletions
+     */
+    long[] bitsOf(int list) {
+        return counts[list] == 0 ? null : bits[list];
+    }
+
+    static boolean isDeleted(long[] words, int position) {
+        int word = position >>> 6;
+        return word < words.length && (words[word] & (1L << position)) != 0;
+    }
+
+    int count(int list) {
+        return counts[list];
+    }
+
+    long total() {
+        return total;
+    }
+
+    void clear(int list) {
+        total -= counts[list];
+        counts[list] = 0;
+        bits[list] = null;
+    }
+
+    long ramBytesUsed() {
+        long bytes = (long) counts.length * Integer.BYTES;
+        for (long[] words : bits) {
+            if (words != null) {
+                bytes += (long) words.length * Long.BYTES;
+            }
+        }
+        return bytes;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,169 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long keys to long values without boxing.
+ * Used by the indexes to locate a vector id inside its inverted list or graph slot.
+ * Not thread-safe; callers guard it with the index lock.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+final class LongLongHashMap {
+
+    /**
+     * Value returned by {@link #get(long)} for missing keys.
+     */
+    static final long MISSING = Long.MIN_VALUE;
+
+    private static final long EMPTY_KEY = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    private boolean hasEmptyKey;
+    private long emptyKeyValue;
+
+    LongLongHashMap() {
+        this(16);
+    }
+
+    LongLongHashMap(int expected) {
+        allocate(tableSizeFor(expected));
+    }
+
+    int size() {
+        return size + (hasEmptyKey ? 1 : 0);
+    }
+
+    long get(long key) {
+        if (key == EMPTY_KEY) {
+            return hasEmptyKey ? emptyKeyValue : MISSING;
+        }
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY_KEY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    /**
+     * @return previous value or {@link #MISSING}
+     */
+    long put(long key, long value) {
+        if (key == EMPTY_KEY) {
+            long previous = hasEmptyKey ? emptyKeyValue : MISSING;
+            hasEmptyKey = true;
+            emptyKeyValue = value;
+            return previous;
+        }
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY_KEY) {
+            if (keys[slot] == key) {
+                long previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return MISSING;
+    }
+
+    /**
+     * @return removed value or {@link #MISSING}
+     */
+    long remove(long key) {
+        if (key == EMPTY_KEY) {
+            long previous = hasEmptyKey ? emptyKeyValue : MISSING;
+            hasEmptyKey = false;
+            return previous;
+        }
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY_KEY) {
+            if (keys[slot] == key) {
+                long previous = values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY_KEY);
+        size = 0;
+        hasEmptyKey = false;
+    }
+
+    /**
+     * Backward-shift deletion keeps probe sequences intact without tombstones.
+     */
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long key = keys[slot];
+            if (key == EMPTY_KEY) {
+                break;
+            }
+            int ideal = mix(key) & mask;
+            if (((slot - ideal) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = key;
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        keys[gap] = EMPTY_KEY;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expected) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR <= expected) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
+
+
+// 内容由AI生成，仅供参考
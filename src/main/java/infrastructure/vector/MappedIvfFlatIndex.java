@@ -0,0 +1,287 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Read-only IVF_FLAT index served directly from a memory-mapped index file.
+ * Only centroids and the list directory live on the Java heap; inverted list data stays in the
+ * OS page cache and distances are computed directly against the mapping with absolute reads, so
+ * all search threads share the mapped segments without copying.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public class MappedIvfFlatIndex implements VectorIndex {
+
+    private final Path file;
+    private final int dimension;
+    private final MetricType metric;
+    private final int nlist;
+    private final long ntotal;
+    private final float[] centroids;
+    private final MappedByteBuffer[] segments;
+    private final int[] listSegments;
+    private final int[] listOffsets;
+    private final int[] listSizes;
+    private final ThreadLocal<SearchScratch> scratch;
+    private volatile int nprobe;
+
+    MappedIvfFlatIndex(Path file, int dimension, MetricType metric, int nlist, int nprobe, long ntotal,
+                       float[] centroids, MappedByteBuffer[] segments, int[] listSegments,
+                       int[] listOffsets, int[] listSizes) {
+        this.file = file;
+        this.dimension = dimension;
+        this.metric = metric;
+        this.nlist = nlist;
+        this.nprobe = Math.max(1, nprobe);
+        this.ntotal = ntotal;
+        this.centroids = centroids;
+        this.segments = segments;
+        this.listSegments = listSegments;
+        this.listOffsets = listOffsets;
+        this.listSizes = listSizes;
+        this.scratch = ThreadLocal.withInitial(SearchScratch::new);
+    }
+
+    @Override
+    public String getIndexType() {
+        return IvfFlatIndex.INDEX_TYPE;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public MetricType getMetric() {
+        return metric;
+    }
+
+    @Override
+    public long size() {
+        return ntotal;
+    }
+
+    @Override
+    public boolean isTrained() {
+        return true;
+    }
+
+    /**
+     * @return backing index file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    public int getNlist() {
+        return nlist;
+    }
+
+    public int getNprobe() {
+        return nprobe;
+    }
+
+    public void setNprobe(int nprobe) {
+        if (nprobe <= 0) {
+            throw new IllegalArgumentException("Number of clusters to probe must be greater than 0");
+        }
+        this.nprobe = nprobe;
+    }
+
+    @Override
+    public void train(float[] vectors, int n) {
+        throw new UnsupportedOperationException("Memory-mapped index is read-only");
+    }
+
+    @Override
+    public void add(long[] ids, float[] vectors) {
+        throw new UnsupportedOperationException("Memory-mapped index is read-only");
+    }
+
+    @Override
+    public int remove(long[] ids) {
+        throw new UnsupportedOperationException("Memory-mapped index is read-only");
+    }
+
+    @Override
+    public long deletedCount() {
+        return 0L;
+    }
+
+    @Override
+    public long compact() {
+        return 0L;
+    }
+
+    /**
+     * Copies the mapped lists into a mutable heap index that keeps the trained centroids,
+     * so incremental updates can be applied without retraining.
+     *
+     * @param batchSize add batch size of the heap index
+     * @return heap IVF_FLAT index with identical content
+     */
+    public IvfFlatIndex toHeapIndex(int batchSize) {
+        long[][] ids = new long[nlist][];
+        float[][] vectors = new float[nlist][];
+        int[] sizes = new int[nlist];
+        for (int c = 0; c < nlist; c++) {
+            int size = listSizes[c];
+            ids[c] = new long[Math.max(1, size)];
+            vectors[c] = new float[Math.max(1, size) * dimension];
+            if (size > 0) {
+                ByteBuffer bytes = segments[listSegments[c]].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+                bytes.position(listOffsets[c]);
+                bytes.asLongBuffer().get(ids[c], 0, size);
+                bytes.position(listOffsets[c] + size * Long.BYTES);
+                bytes.asFloatBuffer().get(vectors[c], 0, size * dimension);
+            }
+            sizes[c] = size;
+        }
+        IvfFlatIndex index = new IvfFlatIndex(dimension, metric, nlist, nprobe, batchSize);
+        index.restore(nlist, centroids.clone(), ids, vectors, sizes);
+        return index;
+    }
+
+    @Override
+    public SearchResult search(float[] query, int k) {
+        return search(query, k, null);
+    }
+
+    /**
+     * Filters like {@link IvfFlatIndex#search(float[], int, VectorFilter)}.
+     */
+    @Override
+    public SearchResult search(float[] query, int k, VectorFilter filter) {
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("Query dimension " + query.length + " does not match index dimension " + dimension);
+        }
+        if (k <= 0 || ntotal == 0) {
+            return SearchResult.empty();
+        }
+        SearchScratch s = scratch.get();
+        int probes = Math.min(nprobe, nlist);
+        int probeCount = s.probes.select(query, metric, centroids, nlist, dimension,
+                filter == null ? probes : nlist, filter != null);
+        long wanted = filter == null ? k : Math.min(k, filter.cardinality());
+
+        s.results.reset(k);
+        for (int p = 0; p < probeCount; p++) {
+            if (p >= probes && s.results.size() >= wanted) {
+                break;
+            }
+            int list = s.probes.list(p);
+            int size = listSizes[list];
+            if (size == 0) {
+                continue;
+            }
+            ByteBuffer bytes = segments[listSegments[list]];
+            int idsOffset = listOffsets[list];
+            int vectorsOffset = idsOffset + size * Long.BYTES;
+            int vectorBytes = dimension * Float.BYTES;
+            for (int i = 0; i < size; i++) {
+                long id = bytes.getLong(idsOffset + i * Long.BYTES);
+                if (filter != null && !filter.accepts(id)) {
+                    continue;
+                }
+                float rank = metric.toRank(metric.compute(query, 0, bytes, vectorsOffset + i * vectorBytes, dimension));
+                if (s.results.accepts(rank)) {
+                    s.results.offer(id, rank);
+                }
+            }
+        }
+        return s.results.toResult(metric);
+    }
+
+    /**
+     * Scans list-major like {@link IvfFlatIndex#searchBatch}, so every probed list is read from the
+     * mapping once per batch.
+     */
+    @Override
+    public SearchResult[] searchBatch(float[] queries, int n, int k) {
+        if (queries == null || (long) n * dimension != queries.length) {
+            throw new IllegalArgumentException("Query array length must equal n * dimension (" + dimension + ")");
+        }
+        if (k <= 0 || ntotal == 0) {
+            return ListProbeGroups.empty(n);
+        }
+        ListProbeGroups groups = scratch.get().groups;
+        groups.build(queries, n, dimension, metric, centroids, nlist, nprobe);
+        TopKCollector[] results = groups.resetResults(n, k);
+        int vectorBytes = dimension * Float.BYTES;
+        for (int list = 0; list < nlist; list++) {
+            int from = groups.start(list);
+            int to = groups.end(list);
+            int size = listSizes[list];
+            if (from == to || size == 0) {
+                continue;
+            }
+            ByteBuffer bytes = segments[listSegments[list]];
+            int idsOffset = listOffsets[list];
+            int vectorsOffset = idsOffset + size * Long.BYTES;
+            for (int i = 0; i < size; i++) {
+                int offset = vectorsOffset + i * vectorBytes;
+                long id = bytes.getLong(idsOffset + i * Long.BYTES);
+                for (int g = from; g < to; g++) {
+                    int q = groups.query(g);
+                    float rank = metric.toRank(metric.compute(queries, q * dimension, bytes, offset, dimension));
+                    if (results[q].accepts(rank)) {
+                        results[q].offer(id, rank);
+                    }
+                }
+            }
+        }
+        return groups.toResults(n, metric);
+    }
+
+    /**
+     * Heap footprint only; list data is held by the OS page cache, not the Java heap.
+     */
+    @Override
+    public long ramBytesUsed() {
+        return (long) centroids.length * Float.BYTES + (long) nlist * 3 * Integer.BYTES;
+    }
+
+    /**
+     * @return total bytes mapped from the index file
+     */
+    public long mappedBytes() {
+        long bytes = 0;
+        for (MappedByteBuffer segment : segments) {
+            bytes += segment.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Hints the OS to fault the mapped pages in ahead of the first queries.
+     */
+    public void preload() {
+        for (MappedByteBuffer segment : segments) {
+            segment.load();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MappedIvfFlatIndex{file=%s, dimension=%d, metric=%s, nlist=%d, nprobe=%d, ntotal=%d}",
+                file, dimension, metric, nlist, nprobe, ntotal);
+    }
+
+    /**
+     * Per-thread reusable search buffers.
+     */
+    private static final class SearchScratch {
+        final QueryProbes probes = new QueryProbes();
+        final TopKCollector results = new TopKCollector(16);
+        final ListProbeGroups groups = new ListProbeGroups();
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,210 @@
+package com.navigation.system.infrastructure.vector;
+
+/**
+ * Product quantizer splitting a vector into m sub-vectors, each encoded by the id of its nearest
+ * codeword in a per-subspace codebook of up to 2^bits entries. With bits <= 8 a code takes m bytes.
+ * Distances to a query are evaluated asymmetrically through precomputed lookup tables.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public class ProductQuantizer {
+
+    private final int dimension;
+    private final int subQuantizers;
+    private final int subDimension;
+    private final int bitsPerCode;
+    private int codebookSize;
+    private float[] codebooks;
+
+    /**
+     * @param dimension vector dimension, must be divisible by subQuantizers
+     * @param subQuantizers number of sub-quantizers (code bytes per vector)
+     * @param bitsPerCode bits per sub-quantizer code, between 1 and 8
+     */
+    public ProductQuantizer(int dimension, int subQuantizers, int bitsPerCode) {
+        if (subQuantizers <= 0 || dimension % subQuantizers != 0) {
+            throw new IllegalArgumentException("Vector dimension must be divisible by the number of sub-quantizers");
+        }
+        if (bitsPerCode < 1 || bitsPerCode > 8) {
+            throw new IllegalArgumentException("Bits per code must be between 1 and 8");
+        }
+        this.dimension = dimension;
+        this.subQuantizers = subQuantizers;
+        this.subDimension = dimension / subQuantizers;
+        this.bitsPerCode = bitsPerCode;
+        this.codebookSize = 1 << bitsPerCode;
+    }
+
+    public int getSubQuantizers() {
+        return subQuantizers;
+    }
+
+    public int getBitsPerCode() {
+        return bitsPerCode;
+    }
+
+    /**
+     * @return number of codewords per sub-quantizer actually trained
+     */
+    public int getCodebookSize() {
+        return codebookSize;
+    }
+
+    /**
+     * @return bytes per encoded vector
+     */
+    public int getCodeSize() {
+        return subQuantizers;
+    }
+
+    /**
+     * @return number of floats in a distance lookup table
+     */
+    public int getTableSize() {
+        return subQuantizers * codebookSize;
+    }
+
+    public boolean isTrained() {
+        return codebooks != null;
+    }
+
+    /**
+     * Trains one L2 codebook per subspace.
+     *
+     * @param data training vectors, row-major
+     * @param n number of training vectors
+     * @param trainer k-means trainer
+     */
+    public void train(float[] data, int n, KMeansTrainer trainer) {
+        int ksub = Math.min(1 << bitsPerCode, n);
+        float[] trained = new float[subQuantizers * ksub * subDimension];
+        float[] sub = new float[n * subDimension];
+        for (int j = 0; j < subQuantizers; j++) {
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(data, i * dimension + j * subDimension, sub, i * subDimension, subDimension);
+            }
+            float[] centroids = trainer.train(sub, n, subDimension, ksub, MetricType.L2);
+            System.arraycopy(centroids, 0, trained, j * ksub * subDimension, ksub * subDimension);
+        }
+        this.codebookSize = ksub;
+        this.codebooks = trained;
+    }
+
+    /**
+     * Encodes one vector.
+     *
+     * @param x vector storage
+     * @param offset vector offset
+     * @param codes code storage
+     * @param codeOffset offset of the m code bytes
+     */
+    public void encode(float[] x, int offset, byte[] codes, int codeOffset) {
+        for (int j = 0; j < subQuantizers; j++) {
+            int best = KMeansTrainer.nearestL2(x, offset + j * subDimension, codebooks, j * codebookSize,
+                    codebookSize, subDimension);
+            codes[codeOffset + j] = (byte) best;
+        }
+    }
+
+    /**
+     * Fills a table with squared L2 distances between each query sub-vector and every codeword.
+     *
+     * @param x query (or query residual) storage
+     * @param offset query offset
+     * @param table output table of {@link #getTableSize()} floats
+     */
+    public void computeL2Table(float[] x, int offset, float[] table) {
+        for (int j = 0; j < subQuantizers; j++) {
+            int base = j * codebookSize;
+            for (int c = 0; c < codebookSize; c++) {
+                table[base + c] = VectorMath.l2Squared(x, offset + j * subDimension,
+                        codebooks, (base + c) * subDimension, subDimension);
+            }
+        }
+    }
+
+    /**
+     * Fills a table with inner products between each query sub-vector and every codeword.
+     *
+     * @param x query storage
+     * @param offset query offset
+     * @param table output table of {@link #getTableSize()} floats
+     */
+    public void computeInnerProductTable(float[] x, int offset, float[] table) {
+        for (int j = 0; j < subQuantizers; j++) {
+            int base = j * codebookSize;
+            for (int c = 0; c < codebookSize; c++) {
+                table[base + c] = VectorMath.dot(x, offset + j * subDimension,
+                        codebooks, (base + c) * subDimension, subDimension);
+            }
+        }
+    }
+
+    /**
+     * Asymmetric distance: sums the table entries selected by a code.
+     *
+     * @param table lookup table
+     * @param codes code storage
+     * @param codeOffset offset of the code
+     * @return approximate distance or inner product
+     */
+    public float lookup(float[] table, byte[] codes, int codeOffset) {
+        float sum = 0f;
+        int base = 0;
+        for (int j = 0; j < subQuantizers; j++) {
+            sum += table[base + (codes[codeOffset + j] & 0xFF)];
+            base += codebookSize;
+        }
+        return sum;
+    }
+
+    /**
+     * Reconstructs the approximation of an encoded vector.
+     *
+     * @param codes code storage
+     * @param codeOffset offset of the code
+     * @param out output vector storage
+     * @param outOffset output offset
+     */
+    public void decode(byte[] codes, int codeOffset, float[] out, int outOffset) {
+        for (int j = 0; j < subQuantizers; j++) {
+            int c = codes[codeOffset + j] & 0xFF;
+            System.arraycopy(codebooks, (j * codebookSize + c) * subDimension, out, outOffset + j * subDimension, subDimension);
+        }
+    }
+
+    /**
+     * @return trained codebooks, m x codebookSize x (dimension / m) floats; not copied
+     */
+    float[] getCodebooks() {
+        return codebooks;
+    }
+
+    /**
+     * Replaces the codebooks with trained ones read from elsewhere, e.g. an index file.
+     *
+     * @param codebookSize codewords per sub-quantizer
+     * @param codebooks m x codebookSize x (dimension / m) floats
+     */
+    void restore(int codebookSize, float[] codebooks) {
+        if (codebookSize < 1 || codebookSize > 1 << bitsPerCode
+                || codebooks.length != subQuantizers * codebookSize * subDimension) {
+            throw new IllegalArgumentException("Codebooks do not match " + subQuantizers + " sub-quantizers of "
+                    + bitsPerCode + " bits");
+        }
+        this.codebookSize = codebookSize;
+        this.codebooks = codebooks;
+    }
+
+    /**
+     * @return heap bytes held by the codebooks
+     */
+    public long ramBytesUsed() {
+        return codebooks == null ? 0L : (long) codebooks.length * Float.BYTES;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
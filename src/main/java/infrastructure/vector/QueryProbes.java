@@ -0,0 +1,58 @@
+package com.navigation.system.infrastructure.vector;
+
+/**
+ * Selects the inverted lists a single query probes, the closest centroids, into a reusable buffer.
+ * Unfiltered searches scan every selected list, so the lists are drained in heap order; filtered
+ * searches may stop early and need them ordered from closest to farthest list.
+ * Instances are reused per thread.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+final class QueryProbes {
+
+    private final TopKCollector heap = new TopKCollector(16);
+    private long[] lists = new long[16];
+    private float[] ranks = new float[16];
+
+    /**
+     * Keeps the given number of centroids closest to the query.
+     *
+     * @param query query vector
+     * @param metric similarity metric
+     * @param centroids coarse centroids, row-major, nlist x dimension
+     * @param nlist number of lists
+     * @param dimension vector dimension
+     * @param count lists to select
+     * @param sorted whether the lists must be ordered from closest to farthest
+     * @return number of selected lists, read through {@link #list(int)}
+     */
+    int select(float[] query, MetricType metric, float[] centroids, int nlist, int dimension, int count, boolean sorted) {
+        heap.reset(count);
+        for (int c = 0; c < nlist; c++) {
+            heap.offer(c, metric.toRank(metric.compute(query, 0, centroids, c * dimension, dimension)));
+        }
+        int size = heap.size();
+        if (!sorted) {
+            lists = heap.drainIds(lists);
+            return size;
+        }
+        if (lists.length < size || ranks.length < size) {
+            lists = new long[size];
+            ranks = new float[size];
+        }
+        return heap.drainSorted(lists, ranks);
+    }
+
+    /**
+     * @param p position among the selected lists
+     * @return inverted list id
+     */
+    int list(int p) {
+        return (int) lists[p];
+    }
+}
+
+
+// 内容由AI生成，仅供参考
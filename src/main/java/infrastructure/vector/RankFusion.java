@@ -0,0 +1,78 @@
+package com.navigation.system.infrastructure.vector;
+
+/**
+ * Reciprocal rank fusion of several rankings over the same id space.
+ * Each list contributes 1 / (rrfK + rank) for every id it contains, with rank starting at 1. Only
+ * positions are used, so vector similarities and BM25 scores can be fused without normalizing
+ * them to a common scale; an id ranked well by either list ends up near the top.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class RankFusion {
+
+    /**
+     * Rank constant from the original reciprocal rank fusion paper.
+     */
+    public static final int DEFAULT_RRF_K = 60;
+
+    private RankFusion() {
+    }
+
+    /**
+     * Fuses rankings with {@link #DEFAULT_RRF_K}.
+     *
+     * @param k number of results
+     * @param rankings rankings ordered from best to worst
+     * @return fused result ordered by descending fusion score
+     */
+    public static SearchResult reciprocalRank(int k, SearchResult... rankings) {
+        return reciprocalRank(k, DEFAULT_RRF_K, rankings);
+    }
+
+    /**
+     * Fuses rankings into one result.
+     *
+     * @param k number of results
+     * @param rrfK rank constant, larger values flatten the advantage of top positions
+     * @param rankings rankings ordered from best to worst
+     * @return fused result ordered by descending fusion score
+     */
+    public static SearchResult reciprocalRank(int k, int rrfK, SearchResult... rankings) {
+        if (rrfK < 0) {
+            throw new IllegalArgumentException("Rank fusion constant must not be negative");
+        }
+        int capacity = 0;
+        for (SearchResult ranking : rankings) {
+            capacity += ranking.size();
+        }
+        if (k <= 0 || capacity == 0) {
+            return SearchResult.empty();
+        }
+        LongLongHashMap slots = new LongLongHashMap(capacity);
+        long[] ids = new long[capacity];
+        float[] scores = new float[capacity];
+        int count = 0;
+        for (SearchResult ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                long id = ranking.getId(rank);
+                long slot = slots.get(id);
+                if (slot == LongLongHashMap.MISSING) {
+                    slot = count++;
+                    slots.put(id, slot);
+                    ids[(int) slot] = id;
+                }
+                scores[(int) slot] += 1f / (rrfK + rank + 1);
+            }
+        }
+        TopKCollector collector = new TopKCollector(Math.min(k, count));
+        for (int i = 0; i < count; i++) {
+            collector.offer(ids[i], scores[i]);
+        }
+        return collector.toResult(MetricType.INNER_PRODUCT);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,108 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Portable distance kernels in plain Java, used when the Vector API is unavailable.
+ * Loops are unrolled by four so the JIT can keep several accumulators in flight.
+ * Buffer operands must be in little-endian order.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class ScalarDistanceKernel implements DistanceKernel {
+
+    static final ScalarDistanceKernel INSTANCE = new ScalarDistanceKernel();
+
+    private ScalarDistanceKernel() {
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int bound = dimension & ~3;
+        for (; i < bound; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < dimension; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float l2Squared(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int bound = dimension & ~3;
+        for (; i < bound; i += 4) {
+            float d0 = a[aOffset + i] - b[bOffset + i];
+            float d1 = a[aOffset + i + 1] - b[bOffset + i + 1];
+            float d2 = a[aOffset + i + 2] - b[bOffset + i + 2];
+            float d3 = a[aOffset + i + 3] - b[bOffset + i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < dimension; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, ByteBuffer b, int bByteOffset, int dimension) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int bound = dimension & ~3;
+        for (; i < bound; i += 4) {
+            int at = bByteOffset + i * Float.BYTES;
+            s0 += a[aOffset + i] * b.getFloat(at);
+            s1 += a[aOffset + i + 1] * b.getFloat(at + 4);
+            s2 += a[aOffset + i + 2] * b.getFloat(at + 8);
+            s3 += a[aOffset + i + 3] * b.getFloat(at + 12);
+        }
+        for (; i < dimension; i++) {
+            s0 += a[aOffset + i] * b.getFloat(bByteOffset + i * Float.BYTES);
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float l2Squared(float[] a, int aOffset, ByteBuffer b, int bByteOffset, int dimension) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int bound = dimension & ~3;
+        for (; i < bound; i += 4) {
+            int at = bByteOffset + i * Float.BYTES;
+            float d0 = a[aOffset + i] - b.getFloat(at);
+            float d1 = a[aOffset + i + 1] - b.getFloat(at + 4);
+            float d2 = a[aOffset + i + 2] - b.getFloat(at + 8);
+            float d3 = a[aOffset + i + 3] - b.getFloat(at + 12);
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < dimension; i++) {
+            float d = a[aOffset + i] - b.getFloat(bByteOffset + i * Float.BYTES);
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
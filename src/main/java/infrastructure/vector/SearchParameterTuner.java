@@ -0,0 +1,317 @@
+package com.navigation.system.infrastructure.vector;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.navigation.system.infrastructure.config.FAISSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunes the search-time parameter of each built index, nprobe for IVF and efSearch for HNSW,
+ * and lowers it while the node is close to its response latency objective.
+ * <ul>
+ *   <li>After a build, held-out queries (midpoints of random corpus pairs, which are not in the
+ *       corpus) are answered exactly by a brute-force scan, and the parameter is raised step by step
+ *       until the index reaches the target recall@k. Small venues end up at a few lists, large
+ *       ones at as many as they need, instead of one global FAISSConfig.nprobe.</li>
+ *   <li>Response latencies reported by the navigation service are smoothed. When they approach
+ *       the objective every tracked index is degraded by halving its tuned value, one step per
+ *       interval, and restored step by step once latency has recovered.</li>
+ * </ul>
+ * Tracked indexes are weakly referenced, so replaced indexes are dropped without unregistering.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class SearchParameterTuner {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchParameterTuner.class);
+
+    private static final int MAX_DEGRADATION_LEVEL = 3;
+    private static final int MAX_EF_SEARCH = 1024;
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final long LEVEL_CHANGE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long QUERY_SEED = 42L;
+
+    private final double targetRecall;
+    private final int sampleQueries;
+    private final int k;
+    private final double latencyObjectiveMs;
+    private final double degradeRatio;
+    private final double recoverRatio;
+    private final Cache<VectorIndex, Tuning> tunings = Caffeine.newBuilder().weakKeys().build();
+    private final Object levelLock = new Object();
+    private volatile int degradationLevel;
+    private double smoothedLatencyMs = Double.NaN;
+    private long lastLevelChange = System.nanoTime() - LEVEL_CHANGE_INTERVAL_NANOS;
+
+    /**
+     * @param faissConfig source of the result count recall is measured at
+     * @param targetRecall recall@k the tuned parameter must reach
+     * @param sampleQueries held-out queries per tuning, 0 disables tuning
+     * @param latencyObjectiveMs navigation response latency objective
+     * @param degradeRatio share of the objective above which search is degraded
+     * @param recoverRatio share of the objective below which degradation is undone
+     */
+    @Autowired
+    public SearchParameterTuner(FAISSConfig faissConfig,
+                                @Value("${navigation.rag.tuning.target-recall:0.95}") double targetRecall,
+                                @Value("${navigation.rag.tuning.sample-queries:200}") int sampleQueries,
+                                @Value("${navigation.realtime.response-latency-threshold:800}") double latencyObjectiveMs,
+                                @Value("${navigation.rag.tuning.degrade-ratio:0.8}") double degradeRatio,
+                                @Value("${navigation.rag.tuning.recover-ratio:0.5}") double recoverRatio) {
+        this(targetRecall, sampleQueries, faissConfig.getSearchK(), latencyObjectiveMs, degradeRatio, recoverRatio);
+    }
+
+    public SearchParameterTuner(double targetRecall, int sampleQueries, int k, double latencyObjectiveMs,
+                                double degradeRatio, double recoverRatio) {
+        if (targetRecall <= 0 || targetRecall > 1 || sampleQueries < 0 || k <= 0 || latencyObjectiveMs <= 0) {
+            throw new IllegalArgumentException("Target recall must be in (0, 1], sample queries non-negative, "
+                    + "k and latency objective greater than 0");
+        }
+        if (recoverRatio <= 0 || recoverRatio >= degradeRatio) {
+            throw new IllegalArgumentException("Recover ratio must be greater than 0 and below the degrade ratio");
+        }
+        this.targetRecall = targetRecall;
+        this.sampleQueries = sampleQueries;
+        this.k = k;
+        this.latencyObjectiveMs = latencyObjectiveMs;
+        this.degradeRatio = degradeRatio;
+        this.recoverRatio = recoverRatio;
+    }
+
+    /**
+     * Picks the smallest search parameter at which the index reaches the target recall, and
+     * tracks the index for latency degradation.
+     *
+     * @param index built index
+     * @param ids ids of the built vectors
+     * @param vectors built vectors, row-major
+     * @return tuned nprobe or efSearch, -1 when the index has no search parameter
+     */
+    public int tune(VectorIndex index, long[] ids, float[] vectors) {
+        int current = searchParameter(index);
+        if (current < 0) {
+            return -1;
+        }
+        int n = ids.length;
+        int topK = Math.min(k, n);
+        if (sampleQueries == 0 || topK == 0) {
+            tunings.put(index, new Tuning(current));
+            return current;
+        }
+        long start = System.nanoTime();
+        int dimension = index.getDimension();
+        float[] queries = heldOutQueries(vectors, n, dimension);
+        int nq = queries.length / dimension;
+        long[][] truth = IndexRecallEvaluator.exactTopK(index.getMetric(), ids, vectors, dimension, queries, nq, topK);
+
+        int chosen = -1;
+        double recall = 0;
+        for (int value : candidates(index, topK)) {
+            setSearchParameter(index, value);
+            chosen = value;
+            recall = IndexRecallEvaluator.recallAtK(index, queries, nq, topK, truth);
+            if (recall >= targetRecall) {
+                break;
+            }
+        }
+        // The tuned value stays on the index until its first search, so the index file saved after the build keeps it
+        tunings.put(index, new Tuning(chosen));
+        if (recall < targetRecall) {
+            logger.warn("{} reaches recall@{} {} at most, below the target {}", index, topK,
+                    String.format("%.4f", recall), targetRecall);
+        }
+        logger.info("Tuned {} over {} held-out queries: {} {} for recall@{} {} in {} ms", index, nq,
+                index instanceof HnswIndex ? "efSearch" : "nprobe", chosen, topK, String.format("%.4f", recall),
+                (System.nanoTime() - start) / 1_000_000);
+        return chosen;
+    }
+
+    /**
+     * Applies the current degradation level to an index before it is searched. Indexes not tuned
+     * here, such as persisted venue indexes, are tracked with their loaded parameter as tuned value.
+     *
+     * @param index index about to be searched
+     */
+    public void track(VectorIndex index) {
+        Tuning tuning = tunings.getIfPresent(index);
+        if (tuning == null) {
+            int current = searchParameter(index);
+            if (current < 0) {
+                return;
+            }
+            tuning = tunings.get(index, key -> new Tuning(current));
+        }
+        int level = degradationLevel;
+        if (tuning.appliedLevel != level) {
+            apply(index, tuning, level);
+        }
+    }
+
+    /**
+     * Carries the tuning of an index over to its copy, such as a rebuilt graph or a heap copy of a
+     * mapped index. The copy inherits the degraded parameter of the original, which would otherwise
+     * become its tuned value when first tracked. The original keeps its entry until it is collected.
+     *
+     * @param from replaced index
+     * @param to index replacing it
+     */
+    public void transfer(VectorIndex from, VectorIndex to) {
+        Tuning tuning = tunings.getIfPresent(from);
+        if (tuning == null || searchParameter(to) < 0) {
+            return;
+        }
+        Tuning moved = new Tuning(tuning.tuned);
+        tunings.put(to, moved);
+        apply(to, moved, degradationLevel);
+    }
+
+    /**
+     * Records a navigation response latency and degrades or restores search when the smoothed
+     * latency crosses the thresholds, at most one step per interval.
+     *
+     * @param latencyMs observed response latency
+     */
+    public void recordResponseLatency(double latencyMs) {
+        if (Double.isNaN(latencyMs) || latencyMs < 0) {
+            return;
+        }
+        int level;
+        double smoothed;
+        synchronized (levelLock) {
+            smoothedLatencyMs = Double.isNaN(smoothedLatencyMs)
+                    ? latencyMs : smoothedLatencyMs + LATENCY_SMOOTHING * (latencyMs - smoothedLatencyMs);
+            smoothed = smoothedLatencyMs;
+            long now = System.nanoTime();
+            level = degradationLevel;
+            if (now - lastLevelChange < LEVEL_CHANGE_INTERVAL_NANOS) {
+                return;
+            }
+            if (smoothed > latencyObjectiveMs * degradeRatio && level < MAX_DEGRADATION_LEVEL) {
+                level++;
+            } else if (smoothed < latencyObjectiveMs * recoverRatio && level > 0) {
+                level--;
+            } else {
+                return;
+            }
+            degradationLevel = level;
+            lastLevelChange = now;
+        }
+        logger.info("Smoothed response latency {} ms against an objective of {} ms, search degradation level {}",
+                String.format("%.1f", smoothed), latencyObjectiveMs, level);
+        int applied = level;
+        tunings.asMap().forEach((index, tuning) -> apply(index, tuning, applied));
+    }
+
+    /**
+     * @return 0 when search runs at the tuned parameters, up to 3 halvings while latency is high
+     */
+    public int getDegradationLevel() {
+        return degradationLevel;
+    }
+
+    /**
+     * @param index tracked index
+     * @return tuned parameter of the index before degradation, -1 when not tracked
+     */
+    public int getTunedValue(VectorIndex index) {
+        Tuning tuning = tunings.getIfPresent(index);
+        return tuning != null ? tuning.tuned : -1;
+    }
+
+    private void apply(VectorIndex index, Tuning tuning, int level) {
+        synchronized (tuning) {
+            // efSearch below k returns fewer than k results, nprobe cannot go below one list
+            int floor = index instanceof HnswIndex ? Math.min(tuning.tuned, k) : 1;
+            setSearchParameter(index, Math.max(floor, tuning.tuned >> level));
+            tuning.appliedLevel = level;
+        }
+    }
+
+    private static List<Integer> doublings(int first, int max) {
+        List<Integer> values = new ArrayList<>();
+        for (int value = first; value < max; value *= 2) {
+            values.add(value);
+        }
+        values.add(max);
+        return values;
+    }
+
+    private List<Integer> candidates(VectorIndex index, int topK) {
+        if (index instanceof HnswIndex) {
+            return doublings(Math.max(topK, 8), Math.max(MAX_EF_SEARCH, topK));
+        }
+        int nlist = index instanceof IvfFlatIndex ? ((IvfFlatIndex) index).getNlist()
+                : index instanceof IvfPqIndex ? ((IvfPqIndex) index).getNlist()
+                : ((MappedIvfFlatIndex) index).getNlist();
+        return doublings(1, nlist);
+    }
+
+    /**
+     * Midpoints of random corpus pairs: close to the data like real queries, but not indexed.
+     */
+    private float[] heldOutQueries(float[] vectors, int n, int dimension) {
+        int nq = Math.min(sampleQueries, n);
+        Random random = new Random(QUERY_SEED);
+        float[] queries = new float[nq * dimension];
+        for (int q = 0; q < nq; q++) {
+            int a = random.nextInt(n) * dimension;
+            int b = random.nextInt(n) * dimension;
+            for (int d = 0; d < dimension; d++) {
+                queries[q * dimension + d] = (vectors[a + d] + vectors[b + d]) * 0.5f;
+            }
+        }
+        return queries;
+    }
+
+    private static int searchParameter(VectorIndex index) {
+        if (index instanceof HnswIndex) {
+            return ((HnswIndex) index).getEfSearch();
+        }
+        if (index instanceof IvfFlatIndex) {
+            return ((IvfFlatIndex) index).getNprobe();
+        }
+        if (index instanceof IvfPqIndex) {
+            return ((IvfPqIndex) index).getNprobe();
+        }
+        if (index instanceof MappedIvfFlatIndex) {
+            return ((MappedIvfFlatIndex) index).getNprobe();
+        }
+        return -1;
+    }
+
+    private static void setSearchParameter(VectorIndex index, int value) {
+        if (index instanceof HnswIndex) {
+            ((HnswIndex) index).setEfSearch(value);
+        } else if (index instanceof IvfFlatIndex) {
+            ((IvfFlatIndex) index).setNprobe(value);
+        } else if (index instanceof IvfPqIndex) {
+            ((IvfPqIndex) index).setNprobe(value);
+        } else if (index instanceof MappedIvfFlatIndex) {
+            ((MappedIvfFlatIndex) index).setNprobe(value);
+        }
+    }
+
+    private static final class Tuning {
+        final int tuned;
+        volatile int appliedLevel;
+
+        Tuning(int tuned) {
+            this.tuned = tuned;
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
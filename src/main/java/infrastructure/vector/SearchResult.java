@@ -0,0 +1,63 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.util.Arrays;
+
+/**
+ * Top-k search result of a single query.
+ * Ids and scores are ordered from most to least similar; scores are raw metric values
+ * (inner product or squared L2 distance).
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public class SearchResult {
+
+    private final long[] ids;
+    private final float[] scores;
+
+    public SearchResult(long[] ids, float[] scores) {
+        if (ids.length != scores.length) {
+            throw new IllegalArgumentException("Ids and scores must have the same length");
+        }
+        this.ids = ids;
+        this.scores = scores;
+    }
+
+    /**
+     * Creates an empty result.
+     *
+     * @return result without hits
+     */
+    public static SearchResult empty() {
+        return new SearchResult(new long[0], new float[0]);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long getId(int rank) {
+        return ids[rank];
+    }
+
+    public float getScore(int rank) {
+        return scores[rank];
+    }
+
+    public long[] getIds() {
+        return ids.clone();
+    }
+
+    public float[] getScores() {
+        return scores.clone();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SearchResult{ids=%s, scores=%s}", Arrays.toString(ids), Arrays.toString(scores));
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,44 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.util.List;
+
+/**
+ * Converts knowledge text into dense vectors for the in-process indexes.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public interface TextEmbedder {
+
+    /**
+     * @return output vector dimension
+     */
+    int getDimension();
+
+    /**
+     * Embeds a single text.
+     *
+     * @param text input text
+     * @return vector of {@link #getDimension()} floats
+     */
+    float[] embed(String text);
+
+    /**
+     * Embeds a batch of texts into one contiguous row-major array.
+     *
+     * @param texts input texts
+     * @return vectors, texts.size() x dimension
+     */
+    default float[] embedBatch(List<String> texts) {
+        int dimension = getDimension();
+        float[] out = new float[texts.size() * dimension];
+        for (int i = 0; i < texts.size(); i++) {
+            System.arraycopy(embed(texts.get(i)), 0, out, i * dimension, dimension);
+        }
+        return out;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,154 @@
+package com.navigation.system.infrastructure.vector;
+
+/**
+ * Bounded min-heap over primitive arrays that keeps the k best candidates of a scan.
+ * The root always holds the worst kept candidate so a new one is rejected with a single compare.
+ * Instances are reusable through {@link #reset(int)} to keep the search path allocation-free.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+final class TopKCollector {
+
+    private long[] ids;
+    private float[] ranks;
+    private int capacity;
+    private int size;
+
+    TopKCollector(int k) {
+        this.ids = new long[Math.max(1, k)];
+        this.ranks = new float[Math.max(1, k)];
+        this.capacity = k;
+    }
+
+    /**
+     * Clears the collector and resizes it for a new k.
+     */
+    void reset(int k) {
+        if (k > ids.length) {
+            ids = new long[k];
+            ranks = new float[k];
+        }
+        capacity = k;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether a candidate with the given rank would currently be accepted.
+     */
+    boolean accepts(float rank) {
+        return size < capacity || rank > ranks[0];
+    }
+
+    /**
+     * Rank of the worst kept candidate, or negative infinity while the heap is not full.
+     */
+    float threshold() {
+        return size < capacity ? Float.NEGATIVE_INFINITY : ranks[0];
+    }
+
+    /**
+     * Offers a candidate; larger rank values are better.
+     */
+    void offer(long id, float rank) {
+        if (capacity == 0) {
+            return;
+        }
+        if (size < capacity) {
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (ranks[parent] <= rank) {
+                    break;
+                }
+                ids[i] = ids[parent];
+                ranks[i] = ranks[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            ranks[i] = rank;
+        } else if (rank > ranks[0]) {
+            siftDown(id, rank);
+        }
+    }
+
+    private void siftDown(long id, float rank) {
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && ranks[right] < ranks[child]) {
+                child = right;
+            }
+            if (rank <= ranks[child]) {
+                break;
+            }
+            ids[i] = ids[child];
+            ranks[i] = ranks[child];
+            i = child;
+        }
+        ids[i] = id;
+        ranks[i] = rank;
+    }
+
+    /**
+     * Copies the kept ids into a buffer in heap order and clears the collector.
+     *
+     * @param buffer reusable buffer, replaced when too small
+     * @return buffer holding {@code size()} ids
+     */
+    long[] drainIds(long[] buffer) {
+        long[] out = buffer.length >= size ? buffer : new long[size];
+        System.arraycopy(ids, 0, out, 0, size);
+        size = 0;
+        return out;
+    }
+
+    /**
+     * Drains the heap into caller buffers ordered from best to worst.
+     *
+     * @param outIds id buffer of at least {@code size()} elements
+     * @param outRanks rank buffer of at least {@code size()} elements
+     * @return number of drained candidates
+     */
+    int drainSorted(long[] outIds, float[] outRanks) {
+        int n = size;
+        for (int pos = n - 1; pos >= 0; pos--) {
+            outIds[pos] = ids[0];
+            outRanks[pos] = ranks[0];
+            long lastId = ids[size - 1];
+            float lastRank = ranks[size - 1];
+            size--;
+            if (size > 0) {
+                siftDown(lastId, lastRank);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Drains the heap into a result ordered from best to worst.
+     *
+     * @param metric metric used to convert ranks back into raw scores
+     * @return sorted search result
+     */
+    SearchResult toResult(MetricType metric) {
+        int n = size;
+        long[] outIds = new long[n];
+        float[] outScores = new float[n];
+        drainSorted(outIds, outScores);
+        for (int i = 0; i < n; i++) {
+            outScores[i] = metric.fromRank(outScores[i]);
+        }
+        return new SearchResult(outIds, outScores);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
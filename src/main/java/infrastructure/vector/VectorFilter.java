@@ -0,0 +1,29 @@
+package com.navigation.system.infrastructure.vector;
+
+/**
+ * Restriction of a vector search to a subset of ids, evaluated inside the index scan before any
+ * distance is computed. Built per query, for example by {@link ChunkAttributeIndex}.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public interface VectorFilter {
+
+    /**
+     * @param id vector id
+     * @return whether the vector may be returned
+     */
+    boolean accepts(long id);
+
+    /**
+     * Upper bound of the number of accepted ids. Searches stop widening beyond their normal
+     * probe budget once they hold this many results.
+     *
+     * @return maximum number of accepted ids
+     */
+    long cardinality();
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,130 @@
+package com.navigation.system.infrastructure.vector;
+
+/**
+ * In-process vector index abstraction.
+ * Vectors are passed as contiguous row-major float arrays (n x dimension) to avoid per-vector objects.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public interface VectorIndex {
+
+    /**
+     * @return index type name as configured in FAISSConfig.indexType
+     */
+    String getIndexType();
+
+    /**
+     * @return vector dimension
+     */
+    int getDimension();
+
+    /**
+     * @return similarity metric of the index
+     */
+    MetricType getMetric();
+
+    /**
+     * @return number of vectors currently searchable
+     */
+    long size();
+
+    /**
+     * @return whether the index has been trained and can accept vectors
+     */
+    boolean isTrained();
+
+    /**
+     * Trains the index structures (e.g. the coarse quantizer) on a sample of vectors.
+     *
+     * @param vectors training vectors, row-major
+     * @param n number of training vectors
+     */
+    void train(float[] vectors, int n);
+
+    /**
+     * Adds vectors with caller supplied ids. Adding an id that is already present replaces its vector.
+     *
+     * @param ids vector ids
+     * @param vectors vectors, row-major, ids.length x dimension
+     */
+    void add(long[] ids, float[] vectors);
+
+    /**
+     * Removes vectors by id. Removed vectors are tombstoned: searches stop returning them at once,
+     * and their memory is reclaimed by {@link #compact()}.
+     *
+     * @param ids vector ids
+     * @return number of ids that were present and removed
+     */
+    int remove(long[] ids);
+
+    /**
+     * @return number of removed vectors still occupying memory
+     */
+    long deletedCount();
+
+    /**
+     * Physically drops removed vectors.
+     *
+     * @return number of vectors reclaimed
+     */
+    long compact();
+
+    /**
+     * Searches the k most similar vectors of a query.
+     *
+     * @param query query vector
+     * @param k number of results
+     * @return top-k result ordered from most to least similar
+     */
+    SearchResult search(float[] query, int k);
+
+    /**
+     * Searches the k most similar vectors among those a filter accepts. The filter is tested
+     * before distances are computed, and the search widens beyond its normal probe budget
+     * (nprobe lists, efSearch candidates) until it holds k accepted vectors or the filter's
+     * cardinality, so restrictive filters do not come back short.
+     *
+     * @param query query vector
+     * @param k number of results
+     * @param filter id filter, null for an unfiltered search
+     * @return top-k accepted vectors ordered from most to least similar
+     */
+    SearchResult search(float[] query, int k, VectorFilter filter);
+
+    /**
+     * Searches the k most similar vectors of every query in a batch.
+     * IVF indexes override this to scan every probed list once for all queries that probe it;
+     * the default runs the queries one by one.
+     *
+     * @param queries query vectors, row-major, n x dimension
+     * @param n number of queries
+     * @param k number of results per query
+     * @return one top-k result per query, in query order
+     */
+    default SearchResult[] searchBatch(float[] queries, int n, int k) {
+        int dimension = getDimension();
+        if (queries == null || (long) n * dimension != queries.length) {
+            throw new IllegalArgumentException("Query array length must equal n * dimension (" + dimension + ")");
+        }
+        SearchResult[] results = new SearchResult[n];
+        float[] query = new float[dimension];
+        for (int q = 0; q < n; q++) {
+            System.arraycopy(queries, q * dimension, query, 0, dimension);
+            results[q] = search(query, k);
+        }
+        return results;
+    }
+
+    /**
+     * Approximate heap footprint of the index, used for capacity planning.
+     *
+     * @return bytes retained by the index
+     */
+    long ramBytesUsed();
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,200 @@
+package com.navigation.system.infrastructure.vector;
+
+import com.navigation.system.infrastructure.config.FAISSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * Creates and builds in-process vector indexes from FAISSConfig.
+ * Central place that translates configuration values into index parameters.
+ * Owns the build executor sized by FAISSConfig.buildThreads, shared by every index it creates
+ * for k-means training, vector assignment and inverted-list construction.
+ * With a SearchParameterTuner, every built index has its nprobe or efSearch tuned to the target
+ * recall before it is returned.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class VectorIndexFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorIndexFactory.class);
+
+    private final FAISSConfig faissConfig;
+    private final BuildExecutor buildExecutor;
+    private final SearchParameterTuner searchParameterTuner;
+    private volatile double lastBuildThroughput;
+
+    public VectorIndexFactory(FAISSConfig faissConfig) {
+        this(faissConfig, null);
+    }
+
+    /**
+     * @param faissConfig index configuration
+     * @param searchParameterTuner tuner of the search parameter of built indexes, null to keep the configured one
+     */
+    @Autowired
+    public VectorIndexFactory(FAISSConfig faissConfig, SearchParameterTuner searchParameterTuner) {
+        faissConfig.validate();
+        this.faissConfig = faissConfig;
+        this.searchParameterTuner = searchParameterTuner;
+        this.buildExecutor = new BuildExecutor(faissConfig.getBuildThreads());
+        if (Boolean.TRUE.equals(faissConfig.getGpuAcceleration())) {
+            logger.warn("GPU acceleration requested but in-process indexes run on CPU only, ignoring");
+        }
+    }
+
+    /**
+     * Creates an empty, untrained index of the configured type.
+     *
+     * @return new index instance
+     * @throws IllegalArgumentException when the configured index type is not supported
+     */
+    public VectorIndex createIndex() {
+        MetricType metric = MetricType.fromConfig(faissConfig.getSimilarityAlgorithm());
+        String indexType = normalizeIndexType(faissConfig.getIndexType());
+        switch (indexType) {
+            case IvfFlatIndex.INDEX_TYPE:
+                return new IvfFlatIndex(faissConfig.getDimensionSize(), metric,
+                        faissConfig.getNlist(), faissConfig.getNprobe(), faissConfig.getBatchSize(),
+                        new KMeansTrainer(buildExecutor));
+            case IvfPqIndex.INDEX_TYPE:
+                return new IvfPqIndex(faissConfig.getDimensionSize(), metric,
+                        faissConfig.getNlist(), faissConfig.getNprobe(), faissConfig.getBatchSize(),
+                        faissConfig.getPqSubQuantizers(), faissConfig.getPqBitsPerCode(),
+                        new KMeansTrainer(buildExecutor));
+            case HnswIndex.INDEX_TYPE:
+                return new HnswIndex(faissConfig.getDimensionSize(), metric, faissConfig.getHnswM(),
+                        faissConfig.getHnswEfConstruction(), faissConfig.getHnswEfSearch(), buildExecutor);
+            default:
+                throw new IllegalArgumentException("Unsupported index type: " + faissConfig.getIndexType());
+        }
+    }
+
+    /**
+     * Creates, trains and fills an index in one step, tunes its search parameter and records the
+     * build throughput.
+     *
+     * @param ids vector ids
+     * @param vectors vectors, row-major
+     * @return populated index
+     */
+    public VectorIndex buildIndex(long[] ids, float[] vectors) {
+        long start = System.nanoTime();
+        VectorIndex index = createIndex();
+        index.train(vectors, ids.length);
+        long trained = System.nanoTime();
+        index.add(ids, vectors);
+        long end = System.nanoTime();
+        lastBuildThroughput = ids.length * 1e9 / Math.max(1L, end - start);
+        logger.info("Built {} over {} vectors with {} threads in {} ms (train {} ms, add {} ms), {} vectors/sec",
+                index, ids.length, buildExecutor.parallelism(), (end - start) / 1_000_000,
+                (trained - start) / 1_000_000, (end - trained) / 1_000_000, String.format("%.0f", lastBuildThroughput));
+        if (searchParameterTuner != null) {
+            // The tuner measures and logs recall against its own exact top-k
+            searchParameterTuner.tune(index, ids, vectors);
+        } else if (index instanceof IvfPqIndex) {
+            reportRecall(index, vectors, ids);
+        }
+        return index;
+    }
+
+    /**
+     * Logs recall@searchK of a compressed index against the exact top-k of a brute-force scan,
+     * sampling at most FAISSConfig.recallSampleQueries corpus vectors as queries. Costs nq full
+     * scans of the corpus but no memory beyond the results.
+     *
+     * @param index compressed index
+     * @param vectors corpus vectors, row-major
+     * @param ids corpus ids
+     * @return measured recall, or -1 when evaluation is disabled
+     */
+    public double reportRecall(VectorIndex index, float[] vectors, long[] ids) {
+        int sampleQueries = faissConfig.getRecallSampleQueries();
+        if (sampleQueries == 0 || ids.length == 0) {
+            return -1;
+        }
+        int dimension = index.getDimension();
+        float[] queries = IndexRecallEvaluator.sampleQueries(vectors, ids.length, dimension, sampleQueries, 42L);
+        int nq = queries.length / dimension;
+        int k = Math.min(faissConfig.getSearchK(), ids.length);
+        long[][] truth = IndexRecallEvaluator.exactTopK(index.getMetric(), ids, vectors, dimension, queries, nq, k);
+        double recall = IndexRecallEvaluator.recallAtK(index, queries, nq, k, truth);
+        logger.info("{} recall@{} vs exact search over {} queries: {}, memory {} bytes",
+                index.getIndexType(), k, nq, String.format("%.4f", recall), index.ramBytesUsed());
+        return recall;
+    }
+
+    /**
+     * Generates the identifier stored in KnowledgeBase.vectorIndex for a built index.
+     *
+     * @param index built index
+     * @return index identifier
+     */
+    public String generateIndexId(VectorIndex index) {
+        return String.format("%s-%d-%d", index.getIndexType().toLowerCase(), index.size(), System.currentTimeMillis());
+    }
+
+    /**
+     * Throughput of the most recent {@link #buildIndex} call, covering training and adding.
+     * Used to size build hosts: compare cloud and edge nodes at the same buildThreads.
+     *
+     * @return vectors indexed per second, 0 before the first build
+     */
+    public double getLastBuildThroughput() {
+        return lastBuildThroughput;
+    }
+
+    /**
+     * @return number of threads used to build indexes
+     */
+    public int getBuildThreads() {
+        return buildExecutor.parallelism();
+    }
+
+    /**
+     * Stops the build threads; indexes created earlier fall back to building on the caller thread.
+     */
+    @PreDestroy
+    public void shutdown() {
+        buildExecutor.close();
+    }
+
+    /**
+     * @return number of results returned when the caller does not specify k
+     */
+    public int getDefaultSearchK() {
+        return faissConfig.getSearchK();
+    }
+
+    /**
+     * Maps FAISS style aliases onto the supported index type names.
+     *
+     * @param indexType configured index type
+     * @return canonical index type
+     */
+    static String normalizeIndexType(String indexType) {
+        if (indexType == null) {
+            return IvfFlatIndex.INDEX_TYPE;
+        }
+        String normalized = indexType.trim().toUpperCase().replace('-', '_');
+        if ("IVF".equals(normalized) || "IVFFLAT".equals(normalized)) {
+            return IvfFlatIndex.INDEX_TYPE;
+        }
+        if ("IVFPQ".equals(normalized)) {
+            return IvfPqIndex.INDEX_TYPE;
+        }
+        if (normalized.startsWith("HNSW")) {
+            return HnswIndex.INDEX_TYPE;
+        }
+        return normalized;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,715 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned binary index file format. Every file starts with a 64 byte header holding magic,
+ * version, index type, metric and dimension followed by type specific fields (little endian).
+ * IVF_FLAT files are laid out for memory mapping:
+ * <pre>
+ * header      nlist, nprobe, ntotal, section offsets
+ * centroids   nlist x dimension float32
+ * directory   nlist x (int64 data offset, int32 size, int32 reserved)
+ * lists       per list: size x int64 ids followed by size x dimension float32 vectors
+ * </pre>
+ * IVF_PQ files are read into the heap, their codes being a fraction of the vectors' size:
+ * <pre>
+ * header      nlist, nprobe, m, bits, codebook size, batch size, ntotal
+ * centroids   nlist x dimension float32
+ * codebooks   m x codebook size x (dimension / m) float32
+ * lists       per list: int32 size, size x int64 ids, size x m code bytes
+ * </pre>
+ * HNSW files hold the graph itself, so loading does not insert the vectors again:
+ * <pre>
+ * header      M, efConstruction, efSearch, node count, entry level, entry slot
+ * nodes       per slot: int64 id, int32 top level, int32 deleted, dimension x float32,
+ *             per level: int32 link count, link count x int32 neighbor slots
+ * </pre>
+ * Files are written to a temporary sibling and atomically renamed so readers never observe a partial file.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class VectorIndexFile {
+
+    /**
+     * File magic, ASCII "NAVI".
+     */
+    public static final int MAGIC = 0x4E415649;
+
+    /**
+     * Current format version.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * File name extension of index files.
+     */
+    public static final String FILE_EXTENSION = ".ivf";
+
+    static final int HEADER_BYTES = 64;
+    static final int DIRECTORY_ENTRY_BYTES = 16;
+    static final int TYPE_IVF_FLAT = 1;
+    static final int TYPE_IVF_PQ = 2;
+    static final int TYPE_HNSW = 3;
+
+    /**
+     * Largest region mapped by one MappedByteBuffer.
+     */
+    static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private VectorIndexFile() {
+    }
+
+    /**
+     * Writes an IVF_FLAT index to disk.
+     *
+     * @param index index to persist
+     * @param target target file
+     * @throws IOException when the file cannot be written
+     */
+    public static void write(IvfFlatIndex index, Path target) throws IOException {
+        write(index, target, index.getNprobe());
+    }
+
+    /**
+     * Writes an IVF_FLAT index to disk with the given nprobe instead of the index's current one.
+     *
+     * @param index index to persist
+     * @param target target file
+     * @param nprobe nprobe stored in the file
+     * @throws IOException when the file cannot be written
+     */
+    public static void write(IvfFlatIndex index, Path target, int nprobe) throws IOException {
+        writeAtomically(target, channel -> {
+            ChannelWriter writer = new ChannelWriter(channel, index.getDimension(), index.getMetric(), nprobe);
+            index.exportTo(writer);
+            writer.finish();
+        });
+    }
+
+    /**
+     * Writes an IVF_PQ index to disk.
+     *
+     * @param index index to persist
+     * @param target target file
+     * @throws IOException when the file cannot be written
+     */
+    public static void write(IvfPqIndex index, Path target) throws IOException {
+        write(index, target, index.getNprobe());
+    }
+
+    /**
+     * Writes an IVF_PQ index to disk with the given nprobe instead of the index's current one.
+     *
+     * @param index index to persist
+     * @param target target file
+     * @param nprobe nprobe stored in the file
+     * @throws IOException when the file cannot be written
+     */
+    public static void write(IvfPqIndex index, Path target, int nprobe) throws IOException {
+        writeAtomically(target, channel -> {
+            PqWriter writer = new PqWriter(channel, index, nprobe);
+            index.exportTo(writer);
+            writer.finish();
+        });
+    }
+
+    /**
+     * Writes an HNSW index to disk.
+     *
+     * @param index index to persist
+     * @param target target file
+     * @throws IOException when the file cannot be written
+     */
+    public static void write(HnswIndex index, Path target) throws IOException {
+        write(index, target, index.getEfSearch());
+    }
+
+    /**
+     * Writes an HNSW index to disk with the given efSearch instead of the index's current one.
+     *
+     * @param index index to persist
+     * @param target target file
+     * @param efSearch efSearch stored in the file
+     * @throws IOException when the file cannot be written
+     */
+    public static void write(HnswIndex index, Path target, int efSearch) throws IOException {
+        writeAtomically(target, channel -> {
+            GraphWriter writer = new GraphWriter(channel, index, efSearch);
+            index.exportTo(writer);
+            writer.finish();
+        });
+    }
+
+    /**
+     * Opens an index file of any type: IVF_FLAT files are memory mapped, IVF_PQ and HNSW files are
+     * read into a mutable heap index.
+     *
+     * @param file index file
+     * @return index with the file's content
+     * @throws IOException when the file cannot be read or is not a valid index file
+     */
+    public static VectorIndex read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ChannelReader reader = new ChannelReader(channel, file);
+            int type = reader.header();
+            switch (type) {
+                case TYPE_IVF_FLAT:
+                    break;
+                case TYPE_IVF_PQ:
+                    return readIvfPq(reader);
+                case TYPE_HNSW:
+                    return readHnsw(reader);
+                default:
+                    throw new IOException("Unsupported index type code " + type + ": " + file);
+            }
+        }
+        return open(file);
+    }
+
+    /**
+     * Opens an index file through memory mapping.
+     *
+     * @param file index file
+     * @return read-only mapped index
+     * @throws IOException when the file cannot be read or is not a valid index file
+     */
+    public static MappedIvfFlatIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) {
+                throw new IOException("Index file too small: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a vector index file: " + file);
+            }
+            int version = header.getInt(4);
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported index file version " + version + ": " + file);
+            }
+            if (header.getInt(8) != TYPE_IVF_FLAT) {
+                throw new IOException("Unsupported index type code " + header.getInt(8) + ": " + file);
+            }
+            int metricCode = header.getInt(12);
+            if (metricCode < 0 || metricCode >= MetricType.values().length) {
+                throw new IOException("Unknown metric code " + metricCode + ": " + file);
+            }
+            MetricType metric = MetricType.values()[metricCode];
+            int dimension = header.getInt(16);
+            int nlist = header.getInt(20);
+            int nprobe = header.getInt(24);
+            long ntotal = header.getLong(32);
+            long centroidsOffset = header.getLong(40);
+            long directoryOffset = header.getLong(48);
+
+            float[] centroids = new float[nlist * dimension];
+            channel.map(FileChannel.MapMode.READ_ONLY, centroidsOffset, (long) centroids.length * Float.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(centroids);
+
+            ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset,
+                    (long) nlist * DIRECTORY_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long[] listOffsets = new long[nlist];
+            int[] listSizes = new int[nlist];
+            for (int c = 0; c < nlist; c++) {
+                listOffsets[c] = directory.getLong(c * DIRECTORY_ENTRY_BYTES);
+                listSizes[c] = directory.getInt(c * DIRECTORY_ENTRY_BYTES + 8);
+            }
+
+            List<MappedByteBuffer> segments = new ArrayList<>();
+            int[] listSegments = new int[nlist];
+            int[] segmentRelativeOffsets = new int[nlist];
+            long segmentStart = -1;
+            long segmentEnd = -1;
+            for (int c = 0; c < nlist; c++) {
+                long listBytes = listSizes[c] * ((long) Long.BYTES + (long) dimension * Float.BYTES);
+                if (listBytes > MAX_SEGMENT_BYTES) {
+                    throw new IOException("Inverted list " + c + " exceeds the maximum mappable size");
+                }
+                long listEnd = listOffsets[c] + listBytes;
+                if (listEnd > fileSize) {
+                    throw new IOException("Index file truncated: " + file);
+                }
+                if (segmentStart < 0 || listEnd - segmentStart > MAX_SEGMENT_BYTES) {
+                    if (segmentStart >= 0) {
+                        segments.add(mapSegment(channel, segmentStart, segmentEnd));
+                    }
+                    segmentStart = listOffsets[c];
+                }
+                segmentEnd = Math.max(segmentEnd, listEnd);
+                listSegments[c] = segments.size();
+                segmentRelativeOffsets[c] = (int) (listOffsets[c] - segmentStart);
+            }
+            if (segmentStart >= 0) {
+                segments.add(mapSegment(channel, segmentStart, segmentEnd));
+            }
+            return new MappedIvfFlatIndex(file, dimension, metric, nlist, nprobe, ntotal, centroids,
+                    segments.toArray(new MappedByteBuffer[0]), listSegments, segmentRelativeOffsets, listSizes);
+        }
+    }
+
+    private static IvfPqIndex readIvfPq(ChannelReader reader) throws IOException {
+        int nlist = reader.getInt();
+        int nprobe = reader.getInt();
+        int subQuantizers = reader.getInt();
+        int bitsPerCode = reader.getInt();
+        int codebookSize = reader.getInt();
+        int batchSize = reader.getInt();
+        reader.skipHeader();
+        IvfPqIndex index;
+        try {
+            index = new IvfPqIndex(reader.dimension, reader.metric, nlist, nprobe, batchSize, subQuantizers, bitsPerCode);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid IVF_PQ parameters in " + reader.file + ": " + e.getMessage(), e);
+        }
+        int codeSize = index.getCodeSize();
+        float[] centroids = reader.getFloats(nlist * reader.dimension);
+        float[] codebooks = reader.getFloats(codebookSize * reader.dimension);
+        long[][] ids = new long[nlist][];
+        byte[][] codes = new byte[nlist][];
+        int[] sizes = new int[nlist];
+        for (int c = 0; c < nlist; c++) {
+            int size = reader.getInt();
+            if (size < 0) {
+                throw new IOException("Invalid list size " + size + ": " + reader.file);
+            }
+            ids[c] = new long[Math.max(1, size)];
+            codes[c] = new byte[Math.max(1, size) * codeSize];
+            reader.getLongs(ids[c], size);
+            reader.getBytes(codes[c], size * codeSize);
+            sizes[c] = size;
+        }
+        try {
+            index.restore(nlist, centroids, codebookSize, codebooks, ids, codes, sizes);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid IVF_PQ codebooks in " + reader.file + ": " + e.getMessage(), e);
+        }
+        return index;
+    }
+
+    private static HnswIndex readHnsw(ChannelReader reader) throws IOException {
+        int m = reader.getInt();
+        int efConstruction = reader.getInt();
+        int efSearch = reader.getInt();
+        int nodeCount = reader.getInt();
+        int entryLevel = reader.getInt();
+        int entrySlot = reader.getInt();
+        reader.skipHeader();
+        HnswIndex index;
+        try {
+            index = new HnswIndex(reader.dimension, reader.metric, m, efConstruction, efSearch);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid HNSW parameters in " + reader.file + ": " + e.getMessage(), e);
+        }
+        for (int slot = 0; slot < nodeCount; slot++) {
+            long id = reader.getLong();
+            int level = reader.getInt();
+            boolean deleted = reader.getInt() != 0;
+            if (level < 0 || level > HnswIndex.MAX_LEVEL) {
+                throw new IOException("Invalid level " + level + " of node " + slot + ": " + reader.file);
+            }
+            float[] vector = reader.getFloats(reader.dimension);
+            int[][] links = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                int count = reader.getInt();
+                if (count < 0 || count > 2 * m) {
+                    throw new IOException("Invalid link count " + count + " of node " + slot + ": " + reader.file);
+                }
+                links[l] = new int[count];
+                for (int i = 0; i < count; i++) {
+                    int neighbor = reader.getInt();
+                    if (neighbor < 0 || neighbor >= nodeCount) {
+                        throw new IOException("Invalid link " + neighbor + " of node " + slot + ": " + reader.file);
+                    }
+                    links[l][i] = neighbor;
+                }
+            }
+            index.restoreNode(id, vector, deleted, links);
+        }
+        if (nodeCount > 0) {
+            if (entrySlot < 0 || entrySlot >= nodeCount) {
+                throw new IOException("Invalid entry point " + entrySlot + ": " + reader.file);
+            }
+            index.restoreEntryPoint(entryLevel, entrySlot);
+        }
+        return index;
+    }
+
+    private static void writeAtomically(Path target, ChannelBody body) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            body.write(channel);
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static MappedByteBuffer mapSegment(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Sink used by {@link IvfFlatIndex#exportTo(IvfListSink)} to stream the index into a file channel.
+     */
+    interface IvfListSink {
+
+        void begin(int nlist, int nprobe, long ntotal, float[] centroids, int[] listSizes) throws IOException;
+
+        void list(long[] ids, float[] vectors, int size) throws IOException;
+    }
+
+    /**
+     * Sink used by {@link IvfPqIndex#exportTo(PqListSink)} to stream the index into a file channel.
+     */
+    interface PqListSink {
+
+        void begin(int nlist, int nprobe, long ntotal, float[] centroids, int codebookSize, float[] codebooks,
+                   int[] listSizes) throws IOException;
+
+        void list(long[] ids, byte[] codes, int size) throws IOException;
+    }
+
+    /**
+     * Sink used by {@link HnswIndex#exportTo(GraphSink)} to stream the graph into a file channel.
+     */
+    interface GraphSink {
+
+        void begin(int nodeCount, int entryLevel, int entrySlot) throws IOException;
+
+        /**
+         * @param vector node vector, or null for a placeholder written as zeros
+         */
+        void node(long id, float[] vector, boolean deleted, int[][] links) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ChannelBody {
+
+        void write(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Buffered sequential writer of little endian values.
+     */
+    private static class ChannelOutput {
+
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        ChannelOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Writes the common header fields; the caller appends its own and pads with {@link #endHeader()}.
+         */
+        void beginHeader(int type, MetricType metric, int dimension) throws IOException {
+            ensureCapacity(HEADER_BYTES);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(type).putInt(metric.ordinal()).putInt(dimension);
+        }
+
+        void endHeader() {
+            while (buffer.position() < HEADER_BYTES) {
+                buffer.put((byte) 0);
+            }
+        }
+
+        void putFloats(float[] values, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                ensureCapacity(Float.BYTES);
+                buffer.putFloat(values[i]);
+            }
+        }
+
+        void putLongs(long[] values, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                ensureCapacity(Long.BYTES);
+                buffer.putLong(values[i]);
+            }
+        }
+
+        void putInt(int value) throws IOException {
+            ensureCapacity(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void finish() throws IOException {
+            flush();
+        }
+
+        void ensureCapacity(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Buffered sequential reader of little endian values, for files read into the heap.
+     */
+    private static final class ChannelReader {
+
+        final FileChannel channel;
+        final Path file;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        MetricType metric;
+        int dimension;
+        private long consumed;
+
+        ChannelReader(FileChannel channel, Path file) {
+            this.channel = channel;
+            this.file = file;
+            buffer.limit(0);
+        }
+
+        /**
+         * Reads and checks the common header fields.
+         *
+         * @return index type code
+         */
+        int header() throws IOException {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Index file too small: " + file);
+            }
+            if (getInt() != MAGIC) {
+                throw new IOException("Not a vector index file: " + file);
+            }
+            int version = getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported index file version " + version + ": " + file);
+            }
+            int type = getInt();
+            int metricCode = getInt();
+            if (metricCode < 0 || metricCode >= MetricType.values().length) {
+                throw new IOException("Unknown metric code " + metricCode + ": " + file);
+            }
+            metric = MetricType.values()[metricCode];
+            dimension = getInt();
+            if (dimension <= 0) {
+                throw new IOException("Invalid dimension " + dimension + ": " + file);
+            }
+            return type;
+        }
+
+        void skipHeader() throws IOException {
+            while (consumed < HEADER_BYTES) {
+                ensure(1);
+                buffer.get();
+                consumed++;
+            }
+        }
+
+        int getInt() throws IOException {
+            ensure(Integer.BYTES);
+            consumed += Integer.BYTES;
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(Long.BYTES);
+            consumed += Long.BYTES;
+            return buffer.getLong();
+        }
+
+        float[] getFloats(int length) throws IOException {
+            if (length < 0 || (long) length * Float.BYTES > channel.size()) {
+                throw new IOException("Index file truncated: " + file);
+            }
+            float[] values = new float[length];
+            for (int i = 0; i < length; i++) {
+                ensure(Float.BYTES);
+                values[i] = buffer.getFloat();
+            }
+            consumed += (long) length * Float.BYTES;
+            return values;
+        }
+
+        void getLongs(long[] values, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                values[i] = getLong();
+            }
+        }
+
+        void getBytes(byte[] values, int length) throws IOException {
+            int read = 0;
+            while (read < length) {
+                ensure(1);
+                int count = Math.min(buffer.remaining(), length - read);
+                buffer.get(values, read, count);
+                read += count;
+            }
+            consumed += length;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Index file truncated: " + file);
+                }
+            }
+            buffer.flip();
+        }
+    }
+
+    private static final class PqWriter extends ChannelOutput implements PqListSink {
+
+        private final IvfPqIndex index;
+        private final int nprobe;
+
+        PqWriter(FileChannel channel, IvfPqIndex index, int nprobe) {
+            super(channel);
+            this.index = index;
+            this.nprobe = nprobe;
+        }
+
+        @Override
+        public void begin(int nlist, int nprobe, long ntotal, float[] centroids, int codebookSize, float[] codebooks,
+                          int[] listSizes) throws IOException {
+            beginHeader(TYPE_IVF_PQ, index.getMetric(), index.getDimension());
+            buffer.putInt(nlist).putInt(this.nprobe).putInt(index.getSubQuantizers()).putInt(index.getBitsPerCode())
+                    .putInt(codebookSize).putInt(index.getBatchSize()).putLong(ntotal);
+            endHeader();
+            putFloats(centroids, centroids.length);
+            putFloats(codebooks, codebooks.length);
+        }
+
+        @Override
+        public void list(long[] ids, byte[] codes, int size) throws IOException {
+            putInt(size);
+            putLongs(ids, size);
+            int length = size * index.getCodeSize();
+            int written = 0;
+            while (written < length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int count = Math.min(buffer.remaining(), length - written);
+                buffer.put(codes, written, count);
+                written += count;
+            }
+        }
+    }
+
+    private static final class GraphWriter extends ChannelOutput implements GraphSink {
+
+        private final HnswIndex index;
+        private final int efSearch;
+        private final float[] zeros;
+
+        GraphWriter(FileChannel channel, HnswIndex index, int efSearch) {
+            super(channel);
+            this.index = index;
+            this.efSearch = efSearch;
+            this.zeros = new float[index.getDimension()];
+        }
+
+        @Override
+        public void begin(int nodeCount, int entryLevel, int entrySlot) throws IOException {
+            beginHeader(TYPE_HNSW, index.getMetric(), index.getDimension());
+            buffer.putInt(index.getM()).putInt(index.getEfConstruction()).putInt(efSearch)
+                    .putInt(nodeCount).putInt(entryLevel).putInt(entrySlot);
+            endHeader();
+        }
+
+        @Override
+        public void node(long id, float[] vector, boolean deleted, int[][] links) throws IOException {
+            ensureCapacity(Long.BYTES + 2 * Integer.BYTES);
+            buffer.putLong(id).putInt(links.length - 1).putInt(deleted ? 1 : 0);
+            putFloats(vector != null ? vector : zeros, zeros.length);
+            for (int[] neighbors : links) {
+                putInt(neighbors.length);
+                for (int neighbor : neighbors) {
+                    putInt(neighbor);
+                }
+            }
+        }
+    }
+
+    private static final class ChannelWriter extends ChannelOutput implements IvfListSink {
+
+        private final int dimension;
+        private final MetricType metric;
+        private final int nprobe;
+
+        ChannelWriter(FileChannel channel, int dimension, MetricType metric, int nprobe) {
+            super(channel);
+            this.dimension = dimension;
+            this.metric = metric;
+            this.nprobe = nprobe;
+        }
+
+        @Override
+        public void begin(int nlist, int nprobe, long ntotal, float[] centroids, int[] listSizes) throws IOException {
+            long centroidsOffset = HEADER_BYTES;
+            long directoryOffset = centroidsOffset + (long) centroids.length * Float.BYTES;
+            long dataOffset = directoryOffset + (long) nlist * DIRECTORY_ENTRY_BYTES;
+
+            buffer.clear();
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(TYPE_IVF_FLAT).putInt(metric.ordinal())
+                    .putInt(dimension).putInt(nlist).putInt(this.nprobe).putInt(0)
+                    .putLong(ntotal).putLong(centroidsOffset).putLong(directoryOffset).putLong(dataOffset);
+            while (buffer.position() < HEADER_BYTES) {
+                buffer.put((byte) 0);
+            }
+            for (float value : centroids) {
+                ensureCapacity(Float.BYTES);
+                buffer.putFloat(value);
+            }
+            long offset = dataOffset;
+            for (int c = 0; c < nlist; c++) {
+                ensureCapacity(DIRECTORY_ENTRY_BYTES);
+                buffer.putLong(offset).putInt(listSizes[c]).putInt(0);
+                offset += listSizes[c] * ((long) Long.BYTES + (long) dimension * Float.BYTES);
+            }
+        }
+
+        @Override
+        public void list(long[] ids, float[] vectors, int size) throws IOException {
+            for (int i = 0; i < size; i++) {
+                ensureCapacity(Long.BYTES);
+                buffer.putLong(ids[i]);
+            }
+            int floats = size * dimension;
+            for (int i = 0; i < floats; i++) {
+                ensureCapacity(Float.BYTES);
+                buffer.putFloat(vectors[i]);
+            }
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
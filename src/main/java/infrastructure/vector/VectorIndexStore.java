@@ -0,0 +1,146 @@
+package com.navigation.system.infrastructure.vector;
+
+import com.navigation.system.infrastructure.config.FAISSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.regex.Pattern;
+
+/**
+ * File system store of vector index files under FAISSConfig.indexFilePath.
+ * Index files are addressed by the index id kept in KnowledgeBase.vectorIndex, so nodes load
+ * indexes from local disk instead of pulling blobs from PostgreSQL: IVF_FLAT through memory
+ * mapping, IVF_PQ and HNSW by reading them into the heap. Indexes tracked by a
+ * {@link SearchParameterTuner} are written with their tuned nprobe or efSearch, not the value
+ * currently lowered by latency degradation.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class VectorIndexStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorIndexStore.class);
+
+    private static final Pattern INDEX_ID_PATTERN = Pattern.compile("[A-Za-z0-9_.-]{1,128}");
+
+    private final Path baseDirectory;
+    private final SearchParameterTuner searchParameterTuner;
+
+    @Autowired
+    public VectorIndexStore(FAISSConfig faissConfig, SearchParameterTuner searchParameterTuner) {
+        this(Paths.get(faissConfig.getIndexFilePath()), searchParameterTuner);
+    }
+
+    public VectorIndexStore(Path baseDirectory) {
+        this(baseDirectory, null);
+    }
+
+    /**
+     * @param baseDirectory directory of the index files
+     * @param searchParameterTuner tuner whose tuned values are persisted, null to persist the current ones
+     */
+    public VectorIndexStore(Path baseDirectory, SearchParameterTuner searchParameterTuner) {
+        this.baseDirectory = baseDirectory;
+        this.searchParameterTuner = searchParameterTuner;
+    }
+
+    /**
+     * Resolves the file of an index id.
+     *
+     * @param indexId index identifier
+     * @return index file path
+     * @throws IllegalArgumentException when the id contains path characters
+     */
+    public Path resolve(String indexId) {
+        if (indexId == null || !INDEX_ID_PATTERN.matcher(indexId).matches() || indexId.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid vector index id: " + indexId);
+        }
+        return baseDirectory.resolve(indexId + VectorIndexFile.FILE_EXTENSION);
+    }
+
+    /**
+     * @param indexId index identifier
+     * @return whether an index file exists for the id
+     */
+    public boolean exists(String indexId) {
+        return Files.isRegularFile(resolve(indexId));
+    }
+
+    /**
+     * @param index index to check
+     * @return whether the index type has an on-disk format
+     */
+    public static boolean isPersistable(VectorIndex index) {
+        return index instanceof IvfFlatIndex || index instanceof IvfPqIndex || index instanceof HnswIndex;
+    }
+
+    /**
+     * Persists an index under its id. Index types without an on-disk format, such as an already
+     * mapped index, are not written.
+     *
+     * @param indexId index identifier
+     * @param index index to persist
+     * @return written file, or null when the index type cannot be persisted
+     * @throws IOException when writing fails
+     */
+    public Path save(String indexId, VectorIndex index) throws IOException {
+        if (!isPersistable(index)) {
+            logger.warn("Index type {} has no file format, vector index {} is kept in memory only",
+                    index.getIndexType(), indexId);
+            return null;
+        }
+        Path file = resolve(indexId);
+        long start = System.nanoTime();
+        int tuned = searchParameterTuner != null ? searchParameterTuner.getTunedValue(index) : -1;
+        if (index instanceof IvfPqIndex) {
+            IvfPqIndex pq = (IvfPqIndex) index;
+            VectorIndexFile.write(pq, file, tuned > 0 ? tuned : pq.getNprobe());
+        } else if (index instanceof HnswIndex) {
+            HnswIndex hnsw = (HnswIndex) index;
+            VectorIndexFile.write(hnsw, file, tuned > 0 ? tuned : hnsw.getEfSearch());
+        } else {
+            IvfFlatIndex ivf = (IvfFlatIndex) index;
+            VectorIndexFile.write(ivf, file, tuned > 0 ? tuned : ivf.getNprobe());
+        }
+        logger.info("Vector index {} written to {} in {} ms", indexId, file, (System.nanoTime() - start) / 1_000_000);
+        return file;
+    }
+
+    /**
+     * Opens a persisted index. IVF_FLAT indexes are memory mapped read-only, IVF_PQ and HNSW
+     * indexes are read into the heap.
+     *
+     * @param indexId index identifier
+     * @return persisted index
+     * @throws IOException when the file is missing or invalid
+     */
+    public VectorIndex open(String indexId) throws IOException {
+        long start = System.nanoTime();
+        VectorIndex index = VectorIndexFile.read(resolve(indexId));
+        logger.info("Vector index {} ({}) opened in {} ms", indexId, index.getIndexType(),
+                (System.nanoTime() - start) / 1_000_000);
+        return index;
+    }
+
+    /**
+     * Deletes a persisted index file if present.
+     *
+     * @param indexId index identifier
+     * @return whether a file was deleted
+     * @throws IOException when deletion fails
+     */
+    public boolean delete(String indexId) throws IOException {
+        return Files.deleteIfExists(resolve(indexId));
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,64 @@
+package com.navigation.system.infrastructure.vector;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Vector arithmetic used by the index implementations.
+ * Distances go through the kernel chosen at startup by {@link DistanceKernels}; the field is a
+ * static final so the JIT inlines the selected implementation.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+final class VectorMath {
+
+    private static final DistanceKernel KERNEL = DistanceKernels.selected();
+
+    private VectorMath() {
+    }
+
+    /**
+     * Inner product of two vectors stored in flat arrays.
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+        return KERNEL.dot(a, aOffset, b, bOffset, dimension);
+    }
+
+    /**
+     * Squared Euclidean distance of two vectors stored in flat arrays.
+     */
+    static float l2Squared(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+        return KERNEL.l2Squared(a, aOffset, b, bOffset, dimension);
+    }
+
+    /**
+     * Inner product of a heap vector and a little-endian vector in a buffer.
+     */
+    static float dot(float[] a, int aOffset, ByteBuffer b, int bByteOffset, int dimension) {
+        return KERNEL.dot(a, aOffset, b, bByteOffset, dimension);
+    }
+
+    /**
+     * Squared Euclidean distance of a heap vector and a little-endian vector in a buffer.
+     */
+    static float l2Squared(float[] a, int aOffset, ByteBuffer b, int bByteOffset, int dimension) {
+        return KERNEL.l2Squared(a, aOffset, b, bByteOffset, dimension);
+    }
+
+    /**
+     * Normalizes a vector in place to unit length, leaving zero vectors untouched.
+     */
+    static void normalize(float[] v, int offset, int dimension) {
+        float norm = (float) Math.sqrt(dot(v, offset, v, offset, dimension));
+        if (norm > 0f) {
+            float inv = 1f / norm;
+            for (int i = 0; i < dimension; i++) {
+                v[offset + i] *= inv;
+            }
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,283 @@
+package com.navigation.system.infrastructure.vector;
+
+import com.navigation.system.infrastructure.config.FAISSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-venue registry of resident vector indexes, one shard per venue.
+ * <ul>
+ *   <li>A venue's index is loaded from the index store on its first query, so nodes
+ *       serving many venues only pay for the venues that are actually queried.</li>
+ *   <li>Resident indexes are kept under FAISSConfig.venueIndexMemoryBudgetMb. When an install
+ *       exceeds the budget, least recently used venues are evicted until the total fits; sizes are
+ *       re-measured at that point so indexes grown by incremental updates are accounted for.</li>
+ *   <li>{@link #publish} replaces a venue's index in a single map write: a query sees either the
+ *       old or the new index, never a mix, and queries already running finish on the old one.</li>
+ * </ul>
+ * Lookups of resident venues take no lock; loads and publishes of one venue are serialized on a
+ * striped lock so a slow lazy load can never overwrite a newer published version.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@Component
+public class VenueIndexRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(VenueIndexRegistry.class);
+
+    private static final int LOAD_STRIPES = 64;
+
+    private final VectorIndexStore store;
+    private final long memoryBudgetBytes;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Object[] loadLocks = new Object[LOAD_STRIPES];
+    private final Object evictionLock = new Object();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Autowired
+    public VenueIndexRegistry(FAISSConfig faissConfig, VectorIndexStore store) {
+        this(store, faissConfig.getVenueIndexMemoryBudgetMb() * 1024L * 1024L);
+    }
+
+    /**
+     * @param store index file store lazy loads are mapped from
+     * @param memoryBudgetBytes resident bytes allowed across all venues
+     */
+    public VenueIndexRegistry(VectorIndexStore store, long memoryBudgetBytes) {
+        if (memoryBudgetBytes <= 0) {
+            throw new IllegalArgumentException("Venue index memory budget must be greater than 0");
+        }
+        this.store = store;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        for (int i = 0; i < LOAD_STRIPES; i++) {
+            loadLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Resolves the index id currently recorded for a venue, typically from its latest knowledge base row.
+     */
+    @FunctionalInterface
+    public interface IndexIdResolver {
+
+        /**
+         * @param venueId venue identifier
+         * @return index id, or null when the venue has no index
+         */
+        String resolve(long venueId);
+    }
+
+    /**
+     * Returns the venue's index, loading it from the index store on first use.
+     *
+     * @param venueId venue identifier
+     * @param resolver resolves the venue's current index id on a miss
+     * @return resident index, or null when the venue has no persisted index
+     * @throws IOException when the index file cannot be read
+     */
+    public VectorIndex get(long venueId, IndexIdResolver resolver) throws IOException {
+        VectorIndex resident = getIfResident(venueId);
+        if (resident != null) {
+            return resident;
+        }
+        synchronized (loadLock(venueId)) {
+            Entry entry = entries.get(venueId);
+            if (entry != null) {
+                entry.lastAccess = System.nanoTime();
+                hits.increment();
+                return entry.index;
+            }
+            misses.increment();
+            String indexId = resolver.resolve(venueId);
+            if (indexId == null || !store.exists(indexId)) {
+                return null;
+            }
+            VectorIndex index = store.open(indexId);
+            install(venueId, indexId, index);
+            return index;
+        }
+    }
+
+    /**
+     * @param venueId venue identifier
+     * @return resident index, or null without loading when the venue is not resident
+     */
+    public VectorIndex getIfResident(long venueId) {
+        Entry entry = entries.get(venueId);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccess = System.nanoTime();
+        hits.increment();
+        return entry.index;
+    }
+
+    /**
+     * Atomically installs a new version of a venue's index, replacing the resident one if any.
+     *
+     * @param venueId venue identifier
+     * @param indexId identifier of the new version
+     * @param index new index
+     * @return index id of the replaced version, or null when the venue was not resident
+     */
+    public String publish(long venueId, String indexId, VectorIndex index) {
+        synchronized (loadLock(venueId)) {
+            Entry previous = install(venueId, indexId, index);
+            if (previous != null) {
+                logger.info("Venue {} vector index swapped from {} to {}", venueId, previous.indexId, indexId);
+                return previous.indexId;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Drops a venue's resident index; the next query loads it again.
+     *
+     * @param venueId venue identifier
+     * @return whether an index was resident
+     */
+    public boolean invalidate(long venueId) {
+        synchronized (loadLock(venueId)) {
+            return entries.remove(venueId) != null;
+        }
+    }
+
+    /**
+     * @param venueId venue identifier
+     * @return id of the resident index version, or null when not resident
+     */
+    public String residentIndexId(long venueId) {
+        Entry entry = entries.get(venueId);
+        return entry != null ? entry.indexId : null;
+    }
+
+    /**
+     * @return number of venues with a resident index
+     */
+    public int residentVenues() {
+        return entries.size();
+    }
+
+    /**
+     * @return resident bytes as measured at the last install or eviction pass
+     */
+    public long residentBytes() {
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            total += entry.bytes;
+        }
+        return total;
+    }
+
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Bytes an index keeps resident: heap structures plus, for mapped indexes, the mapped file.
+     *
+     * @param index index to measure
+     * @return resident bytes
+     */
+    static long residentBytes(VectorIndex index) {
+        long bytes = index.ramBytesUsed();
+        if (index instanceof MappedIvfFlatIndex) {
+            bytes += ((MappedIvfFlatIndex) index).mappedBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VenueIndexRegistry{venues=%d, residentBytes=%d, budgetBytes=%d, hits=%d, misses=%d, evictions=%d}",
+                residentVenues(), residentBytes(), memoryBudgetBytes, getHits(), getMisses(), getEvictions());
+    }
+
+    /**
+     * Installs an entry and evicts other venues while over budget. Caller holds the venue's load lock.
+     */
+    private Entry install(long venueId, String indexId, VectorIndex index) {
+        Entry previous = entries.put(venueId, new Entry(indexId, index, residentBytes(index), System.nanoTime()));
+        evictOverBudget(venueId);
+        return previous;
+    }
+
+    private void evictOverBudget(long protectedVenue) {
+        synchronized (evictionLock) {
+            long total = 0;
+            for (Entry entry : entries.values()) {
+                entry.bytes = residentBytes(entry.index);
+                total += entry.bytes;
+            }
+            while (total > memoryBudgetBytes) {
+                Long victim = null;
+                Entry victimEntry = null;
+                for (Map.Entry<Long, Entry> candidate : entries.entrySet()) {
+                    if (candidate.getKey() == protectedVenue) {
+                        continue;
+                    }
+                    if (victimEntry == null || candidate.getValue().lastAccess < victimEntry.lastAccess) {
+                        victim = candidate.getKey();
+                        victimEntry = candidate.getValue();
+                    }
+                }
+                if (victim == null) {
+                    logger.warn("Vector index of venue {} alone uses {} bytes, above the {} byte budget",
+                            protectedVenue, total, memoryBudgetBytes);
+                    return;
+                }
+                if (entries.remove(victim, victimEntry)) {
+                    total -= victimEntry.bytes;
+                    evictions.increment();
+                    logger.info("Evicted vector index {} of venue {} ({} bytes), resident {} of {} bytes",
+                            victimEntry.indexId, victim, victimEntry.bytes, total, memoryBudgetBytes);
+                }
+            }
+        }
+    }
+
+    private Object loadLock(long venueId) {
+        return loadLocks[(int) ((venueId ^ (venueId >>> 32)) & (LOAD_STRIPES - 1))];
+    }
+
+    private static final class Entry {
+        final String indexId;
+        final VectorIndex index;
+        volatile long bytes;
+        volatile long lastAccess;
+
+        Entry(String indexId, VectorIndex index, long bytes, long lastAccess) {
+            this.indexId = indexId;
+            this.index = index;
+            this.bytes = bytes;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,147 @@
+package com.navigation.system.infrastructure.vector;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * SIMD distance kernels on the JDK 17 incubating Vector API (jdk.incubator.vector).
+ * Each loop keeps two lane-wide accumulators and fuses multiply and add, then reduces the lanes
+ * once and finishes the tail in scalar code. Buffer operands are loaded as little-endian lanes
+ * directly from the buffer, so mapped index segments are scanned without copying.
+ * Compiled only by the jdk17-vector Maven profile and loaded reflectively by {@link DistanceKernels};
+ * the JVM must be started with {@code --add-modules jdk.incubator.vector}.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+final class VectorApiDistanceKernel implements DistanceKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    VectorApiDistanceKernel() {
+        if (SPECIES.vectorBitSize() < 128) {
+            throw new UnsupportedOperationException("Preferred vector size " + SPECIES.vectorBitSize()
+                    + " bits is too narrow for SIMD kernels");
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector-api-" + SPECIES.vectorBitSize();
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+        FloatVector acc0 = FloatVector.zero(SPECIES);
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = dimension - 2 * LANES;
+        for (; i <= bound; i += 2 * LANES) {
+            acc0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), acc0);
+            acc1 = FloatVector.fromArray(SPECIES, a, aOffset + i + LANES)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i + LANES), acc1);
+        }
+        if (i <= dimension - LANES) {
+            acc0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + i), acc0);
+            i += LANES;
+        }
+        float sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < dimension; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float l2Squared(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+        FloatVector acc0 = FloatVector.zero(SPECIES);
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = dimension - 2 * LANES;
+        for (; i <= bound; i += 2 * LANES) {
+            FloatVector d0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+            FloatVector d1 = FloatVector.fromArray(SPECIES, a, aOffset + i + LANES)
+                    .sub(FloatVector.fromArray(SPECIES, b, bOffset + i + LANES));
+            acc0 = d0.fma(d0, acc0);
+            acc1 = d1.fma(d1, acc1);
+        }
+        if (i <= dimension - LANES) {
+            FloatVector d0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+            acc0 = d0.fma(d0, acc0);
+            i += LANES;
+        }
+        float sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < dimension; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, ByteBuffer b, int bByteOffset, int dimension) {
+        FloatVector acc0 = FloatVector.zero(SPECIES);
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = dimension - 2 * LANES;
+        for (; i <= bound; i += 2 * LANES) {
+            int at = bByteOffset + i * Float.BYTES;
+            acc0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromByteBuffer(SPECIES, b, at, ByteOrder.LITTLE_ENDIAN), acc0);
+            acc1 = FloatVector.fromArray(SPECIES, a, aOffset + i + LANES)
+                    .fma(FloatVector.fromByteBuffer(SPECIES, b, at + LANES * Float.BYTES, ByteOrder.LITTLE_ENDIAN), acc1);
+        }
+        if (i <= dimension - LANES) {
+            acc0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromByteBuffer(SPECIES, b, bByteOffset + i * Float.BYTES, ByteOrder.LITTLE_ENDIAN), acc0);
+            i += LANES;
+        }
+        float sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < dimension; i++) {
+            sum += a[aOffset + i] * b.getFloat(bByteOffset + i * Float.BYTES);
+        }
+        return sum;
+    }
+
+    @Override
+    public float l2Squared(float[] a, int aOffset, ByteBuffer b, int bByteOffset, int dimension) {
+        FloatVector acc0 = FloatVector.zero(SPECIES);
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = dimension - 2 * LANES;
+        for (; i <= bound; i += 2 * LANES) {
+            int at = bByteOffset + i * Float.BYTES;
+            FloatVector d0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(FloatVector.fromByteBuffer(SPECIES, b, at, ByteOrder.LITTLE_ENDIAN));
+            FloatVector d1 = FloatVector.fromArray(SPECIES, a, aOffset + i + LANES)
+                    .sub(FloatVector.fromByteBuffer(SPECIES, b, at + LANES * Float.BYTES, ByteOrder.LITTLE_ENDIAN));
+            acc0 = d0.fma(d0, acc0);
+            acc1 = d1.fma(d1, acc1);
+        }
+        if (i <= dimension - LANES) {
+            FloatVector d0 = FloatVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(FloatVector.fromByteBuffer(SPECIES, b, bByteOffset + i * Float.BYTES, ByteOrder.LITTLE_ENDIAN));
+            acc0 = d0.fma(d0, acc0);
+            i += LANES;
+        }
+        float sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < dimension; i++) {
+            float d = a[aOffset + i] - b.getFloat(bByteOffset + i * Float.BYTES);
+            sum += d * d;
+        }
+        return sum;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,162 @@
+package backup;
+
+import com.navigation.system.infrastructure.backup.BackupManifest;
+import com.navigation.system.infrastructure.backup.KnowledgeBackupStore;
+import com.navigation.system.infrastructure.vector.HashingTextEmbedder;
+import com.navigation.system.infrastructure.vector.KnowledgeChunk;
+import com.navigation.system.infrastructure.vector.KnowledgeChunker;
+import com.navigation.system.infrastructure.vector.TextEmbedder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Knowledge backup store test class.
+ * Tests round trips, deduplication across versions, lookup by version and corruption detection.
+ */
+class KnowledgeBackupStoreTest {
+
+    private static final String RULES = "B区晚上十点后关闭。儿童须由成人陪同；No pets allowed!\n";
+
+    private final KnowledgeChunker chunker = new KnowledgeChunker(128, 16);
+    private final CountingEmbedder embedder = new CountingEmbedder(new HashingTextEmbedder(32));
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that a backup restores the same texts and chunk vectors, read by range or by position.
+     */
+    @Test
+    void testRoundTrip() throws IOException {
+        KnowledgeBackupStore store = new KnowledgeBackupStore(directory);
+        String map = venueMap(3000, -1);
+
+        BackupManifest manifest = backup(store, 7L, "v1", map);
+        BackupManifest restored = store.find(manifest.getBackupId()).orElseThrow();
+
+        assertEquals("v1", restored.getVersion());
+        assertEquals(map, store.readVenueMapData(restored));
+        assertEquals(RULES, store.readRuleText(restored));
+        List<KnowledgeChunk> chunks = collect(chunker.chunk(7L, map, RULES));
+        assertEquals(chunks.size(), restored.getChunkCount());
+        float[] vectors = store.readVectors(restored, 10, 20);
+        for (int i = 10; i < 20; i++) {
+            assertEquals(chunks.get(i).getId(), restored.getChunkIds()[i]);
+            float[] expected = embedder.embed(chunks.get(i).getText());
+            for (int d = 0; d < expected.length; d++) {
+                assertEquals(expected[d], vectors[(i - 10) * expected.length + d]);
+            }
+        }
+        float[] scattered = store.readVectors(restored, new int[]{19, 10, 15});
+        int[] positions = {19, 10, 15};
+        for (int i = 0; i < positions.length; i++) {
+            for (int d = 0; d < 32; d++) {
+                assertEquals(vectors[(positions[i] - 10) * 32 + d], scattered[i * 32 + d]);
+            }
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> store.readVectors(restored, new int[]{chunks.size()}));
+    }
+
+    /**
+     * Tests that a backup of a slightly edited version only stores and embeds the changed chunks.
+     */
+    @Test
+    void testUnchangedChunksAreShared() throws IOException {
+        KnowledgeBackupStore store = new KnowledgeBackupStore(directory);
+        BackupManifest first = backup(store, 7L, "v1", venueMap(3000, -1));
+        long chunksAfterFirst = countChunkFiles();
+        int embeddedAfterFirst = embedder.embedded.get();
+
+        BackupManifest second = backup(store, 7L, "v2", venueMap(3000, 1500));
+
+        long written = countChunkFiles() - chunksAfterFirst;
+        assertTrue(written > 0 && written <= 6, "Chunks written for one edited region: " + written);
+        assertEquals(1, embedder.embedded.get() - embeddedAfterFirst);
+        assertEquals(venueMap(3000, -1), store.readVenueMapData(store.findByVersion(7L, "v1").orElseThrow()));
+        assertEquals(venueMap(3000, 1500), store.readVenueMapData(store.findByVersion(7L, "v2").orElseThrow()));
+        assertEquals(second.getBackupId(), store.findByVersion(7L, "v2").orElseThrow().getBackupId());
+        assertNotEquals(first.getBackupId(), second.getBackupId());
+        assertFalse(store.findByVersion(7L, "v3").isPresent());
+        assertFalse(store.find("8-" + first.getCreatedAt()).isPresent());
+    }
+
+    /**
+     * Tests that a damaged chunk fails the restore instead of restoring wrong content.
+     */
+    @Test
+    void testCorruptedChunkIsDetected() throws IOException {
+        KnowledgeBackupStore store = new KnowledgeBackupStore(directory);
+        BackupManifest manifest = backup(store, 7L, "v1", venueMap(100, -1));
+        try (Stream<Path> files = Files.walk(directory.resolve("chunks"))) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                byte[] bytes = Files.readAllBytes(file);
+                bytes[bytes.length - 1] ^= 0x5A;
+                Files.write(file, bytes);
+            }
+        }
+
+        assertThrows(IOException.class, () -> store.readVenueMapData(manifest));
+        assertThrows(IOException.class, () -> store.readVectors(manifest, 0, 1));
+    }
+
+    private BackupManifest backup(KnowledgeBackupStore store, long knowledgeBaseId, String version, String map)
+            throws IOException {
+        return store.backup(knowledgeBaseId, version, "index-" + version, map, RULES,
+                chunker.chunk(knowledgeBaseId, map, RULES), embedder);
+    }
+
+    private long countChunkFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory.resolve("chunks"))) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static String venueMap(int regions, int edited) {
+        StringBuilder map = new StringBuilder("{\"regions\":[");
+        for (int i = 0; i < regions; i++) {
+            map.append(i > 0 ? "," : "").append("{\"name\":\"区域").append(i).append("\",\"floor\":")
+                    .append(i == edited ? 99 : i % 5).append('}');
+        }
+        return map.append("]}").toString();
+    }
+
+    private static List<KnowledgeChunk> collect(Iterator<KnowledgeChunk> iterator) {
+        List<KnowledgeChunk> chunks = new ArrayList<>();
+        iterator.forEachRemaining(chunks::add);
+        return chunks;
+    }
+
+    private static final class CountingEmbedder implements TextEmbedder {
+        final AtomicInteger embedded = new AtomicInteger();
+        private final TextEmbedder delegate;
+
+        CountingEmbedder(TextEmbedder delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int getDimension() {
+            return delegate.getDimension();
+        }
+
+        @Override
+        public float[] embed(String text) {
+            embedded.incrementAndGet();
+            return delegate.embed(text);
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
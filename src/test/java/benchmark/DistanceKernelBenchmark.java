@@ -0,0 +1,115 @@
+package benchmark;
+
+import com.navigation.system.infrastructure.vector.DistanceKernel;
+import com.navigation.system.infrastructure.vector.DistanceKernels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the scalar and Vector API distance kernels at the embedding dimensions we serve.
+ * Each invocation compares the query with the next vector of a corpus that exceeds L1/L2, once from
+ * a heap array and once from a direct little-endian buffer standing in for a mapped index segment.
+ * Run {@code main} on JDK 17+ with the jdk17-vector profile compiled; the vector parameter fails
+ * its setup when the Vector API kernel is unavailable.
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceKernelBenchmark {
+
+    private static final int CORPUS_VECTORS = 4096;
+
+    @Param({"512", "768"})
+    public int dimension;
+
+    @Param({"scalar", "vector"})
+    public String kernelName;
+
+    private DistanceKernel kernel;
+    private float[] query;
+    private float[] corpus;
+    private ByteBuffer segment;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        kernel = "vector".equals(kernelName) ? DistanceKernels.vectorized() : DistanceKernels.scalar();
+        if (kernel == null) {
+            throw new IllegalStateException("Vector API kernel unavailable, run on JDK 17+ with --add-modules jdk.incubator.vector");
+        }
+        Random random = new Random(42L);
+        query = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            query[i] = (float) random.nextGaussian();
+        }
+        corpus = new float[CORPUS_VECTORS * dimension];
+        segment = ByteBuffer.allocateDirect(corpus.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < corpus.length; i++) {
+            corpus[i] = (float) random.nextGaussian();
+            segment.putFloat(i * Float.BYTES, corpus[i]);
+        }
+    }
+
+    @Benchmark
+    public float dotArray() {
+        return kernel.dot(query, 0, corpus, nextVector() * dimension, dimension);
+    }
+
+    @Benchmark
+    public float l2SquaredArray() {
+        return kernel.l2Squared(query, 0, corpus, nextVector() * dimension, dimension);
+    }
+
+    @Benchmark
+    public float dotSegment() {
+        return kernel.dot(query, 0, segment, nextVector() * dimension * Float.BYTES, dimension);
+    }
+
+    @Benchmark
+    public float l2SquaredSegment() {
+        return kernel.l2Squared(query, 0, segment, nextVector() * dimension * Float.BYTES, dimension);
+    }
+
+    private int nextVector() {
+        int vector = next;
+        next = vector + 1 == CORPUS_VECTORS ? 0 : vector + 1;
+        return vector;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(DistanceKernelBenchmark.class.getSimpleName());
+        if (Runtime.version().feature() >= 17) {
+            options.jvmArgsAppend("--add-modules", "jdk.incubator.vector");
+        }
+        new Runner(options.build()).run();
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,346 @@
+package benchmark;
+
+import com.navigation.system.infrastructure.config.FAISSConfig;
+import com.navigation.system.infrastructure.vector.EmbeddedChunks;
+import com.navigation.system.infrastructure.vector.HashingTextEmbedder;
+import com.navigation.system.infrastructure.vector.HnswIndex;
+import com.navigation.system.infrastructure.vector.IndexRecallEvaluator;
+import com.navigation.system.infrastructure.vector.IvfFlatIndex;
+import com.navigation.system.infrastructure.vector.IvfPqIndex;
+import com.navigation.system.infrastructure.vector.KnowledgeChunker;
+import com.navigation.system.infrastructure.vector.KnowledgeEmbeddingPipeline;
+import com.navigation.system.infrastructure.vector.TextEmbedder;
+import com.navigation.system.infrastructure.vector.VectorIndex;
+import com.navigation.system.infrastructure.vector.VectorIndexFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Offline recall and latency benchmark of the in-process retrieval indexes.
+ * Generates synthetic venue knowledge bases (map regions and rule clauses) at a configurable scale,
+ * embeds them with the hashing embedder, and builds every index type through VectorIndexFactory
+ * exactly as the service does. Each index then sweeps its search-time parameter, nprobe for IVF
+ * and efSearch for HNSW, and reports recall@k against an exhaustive scan together with
+ * single-thread QPS and latency percentiles, next to its build time and memory footprint.
+ * Batch QPS runs the same queries through {@code searchBatch} in batches of benchmark.batch-size.
+ * Results are printed and written as CSV to the directory given as the first argument.
+ * Run with {@code mvn -Pbenchmark verify}; scale and parameters come from system properties:
+ * <ul>
+ *   <li>benchmark.chunks (20000), benchmark.venues (4), benchmark.queries (500), benchmark.k (10)</li>
+ *   <li>benchmark.dimension (512), benchmark.nlist (256), benchmark.index-types (IVF_FLAT,IVF_PQ,HNSW)</li>
+ *   <li>benchmark.nprobe (1,2,4,8,16,32,64), benchmark.ef-search (16,32,64,128,256)</li>
+ *   <li>benchmark.min-time-ms (1000) of timed searches per sweep point, benchmark.seed (42)</li>
+ *   <li>benchmark.batch-size (200) queries per {@code searchBatch} call</li>
+ * </ul>
+ *
+ * @author Alex
+ * @version 1.0
+ * @since 2024
+ */
+public final class RetrievalIndexBenchmark {
+
+    private static final String CSV_HEADER =
+            "index_type,vectors,build_ms,ram_bytes,parameter,value,recall_at_k,qps,p50_us,p99_us,batch_qps";
+
+    private static final String[] ZONES = {"A", "B", "C", "D", "E", "F", "G", "H"};
+    private static final String[] CATEGORIES = {"餐饮", "服饰", "数码", "母婴", "运动", "书店", "超市", "影院",
+            "咖啡", "药店", "眼镜", "珠宝", "家居", "玩具", "美妆", "银行"};
+    private static final String[] BRANDS = {"星光", "云杉", "海岸", "北辰", "青禾", "橙子", "鹿角", "白塔",
+            "蓝湾", "麦田", "松果", "远山"};
+    private static final String[] FACILITIES = {"电梯", "扶梯", "洗手间", "母婴室", "服务台", "出口", "停车场", "充电站"};
+    private static final String[] GROUPS = {"儿童", "老人", "残障人士", "会员", "访客", "员工"};
+
+    private static volatile long sink;
+
+    private RetrievalIndexBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int chunks = Integer.getInteger("benchmark.chunks", 20000);
+        int venues = Integer.getInteger("benchmark.venues", 4);
+        int queryCount = Integer.getInteger("benchmark.queries", 500);
+        int k = Integer.getInteger("benchmark.k", 10);
+        int dimension = Integer.getInteger("benchmark.dimension", 512);
+        int nlist = Integer.getInteger("benchmark.nlist", 256);
+        long minTimeMs = Long.getLong("benchmark.min-time-ms", 1000L);
+        int batchSize = Integer.getInteger("benchmark.batch-size", 200);
+        long seed = Long.getLong("benchmark.seed", 42L);
+        String[] indexTypes = System.getProperty("benchmark.index-types", "IVF_FLAT,IVF_PQ,HNSW").split(",");
+        int[] nprobes = parseInts(System.getProperty("benchmark.nprobe", "1,2,4,8,16,32,64"));
+        int[] efSearches = parseInts(System.getProperty("benchmark.ef-search", "16,32,64,128,256"));
+        Path outputDirectory = Paths.get(args.length > 0 ? args[0] : "target/benchmark");
+
+        TextEmbedder embedder = new HashingTextEmbedder(dimension);
+        Random random = new Random(seed);
+        long start = System.nanoTime();
+        EmbeddedChunks[] corpus = generateCorpus(random, embedder, chunks, venues);
+        long[] ids = concatIds(corpus);
+        float[] vectors = concatVectors(corpus, ids.length * dimension);
+        float[] queries = embedder.embedBatch(generateQueries(random, queryCount));
+        System.out.printf(Locale.ROOT, "Corpus: %d chunks over %d venues, dimension %d, %d queries, generated in %d ms%n",
+                ids.length, venues, dimension, queryCount, (System.nanoTime() - start) / 1_000_000);
+
+        // IVF_FLAT probing every list is an exhaustive scan, the ground truth of recall@k
+        FAISSConfig referenceConfig = config(IvfFlatIndex.INDEX_TYPE, dimension, nlist, k);
+        referenceConfig.setNprobe(referenceConfig.getNlist());
+        VectorIndexFactory referenceFactory = new VectorIndexFactory(referenceConfig);
+        VectorIndex reference = referenceFactory.buildIndex(ids, vectors);
+
+        List<String> rows = new ArrayList<>();
+        rows.add(CSV_HEADER);
+        System.out.printf(Locale.ROOT, "%-9s %9s %12s %-10s %6s %10s %10s %9s %9s %10s%n",
+                "index", "build_ms", "ram_bytes", "parameter", "value", "recall@" + k, "qps", "p50_us", "p99_us", "batch_qps");
+        try {
+            for (String indexType : indexTypes) {
+                FAISSConfig config = config(indexType.trim(), dimension, nlist, k);
+                VectorIndexFactory factory = new VectorIndexFactory(config);
+                try {
+                    long buildStart = System.nanoTime();
+                    VectorIndex index = factory.buildIndex(ids, vectors);
+                    long buildMs = (System.nanoTime() - buildStart) / 1_000_000;
+                    boolean hnsw = index instanceof HnswIndex;
+                    for (int value : hnsw ? efSearches : nprobes) {
+                        if (hnsw ? value < k : value > config.getNlist()) {
+                            continue;
+                        }
+                        setSearchParameter(index, value);
+                        double recall = IndexRecallEvaluator.recallAtK(reference, index, queries, queryCount, k);
+                        double[] latency = measure(index, queries, queryCount, k, minTimeMs);
+                        double batchQps = measureBatch(index, queries, queryCount, k, batchSize, minTimeMs);
+                        String parameter = hnsw ? "efSearch" : "nprobe";
+                        System.out.printf(Locale.ROOT, "%-9s %9d %12d %-10s %6d %10.4f %10.0f %9.1f %9.1f %10.0f%n",
+                                index.getIndexType(), buildMs, index.ramBytesUsed(), parameter, value, recall,
+                                latency[0], latency[1], latency[2], batchQps);
+                        rows.add(String.format(Locale.ROOT, "%s,%d,%d,%d,%s,%d,%.4f,%.1f,%.1f,%.1f,%.1f",
+                                index.getIndexType(), index.size(), buildMs, index.ramBytesUsed(), parameter, value,
+                                recall, latency[0], latency[1], latency[2], batchQps));
+                    }
+                } finally {
+                    factory.shutdown();
+                }
+            }
+        } finally {
+            referenceFactory.shutdown();
+        }
+
+        Files.createDirectories(outputDirectory);
+        Path report = outputDirectory.resolve("retrieval-index.csv");
+        Files.write(report, rows, StandardCharsets.UTF_8);
+        System.out.println("Report written to " + report.toAbsolutePath());
+    }
+
+    /**
+     * Runs the queries round-robin for at least the minimum time after one warm-up pass.
+     *
+     * @return QPS, p50 and p99 latency in microseconds
+     */
+    private static double[] measure(VectorIndex index, float[] queries, int nq, int k, long minTimeMs) {
+        int dimension = index.getDimension();
+        float[][] rows = new float[nq][];
+        for (int q = 0; q < nq; q++) {
+            rows[q] = Arrays.copyOfRange(queries, q * dimension, (q + 1) * dimension);
+            sink += index.search(rows[q], k).size();
+        }
+        long[] samples = new long[Math.max(nq, 1024)];
+        int count = 0;
+        long minNanos = minTimeMs * 1_000_000L;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (float[] query : rows) {
+                long before = System.nanoTime();
+                sink += index.search(query, k).size();
+                if (count == samples.length) {
+                    samples = Arrays.copyOf(samples, count * 2);
+                }
+                samples[count++] = System.nanoTime() - before;
+            }
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < minNanos && nq > 0);
+        if (count == 0) {
+            return new double[]{0, 0, 0};
+        }
+        Arrays.sort(samples, 0, count);
+        return new double[]{count * 1e9 / elapsed, samples[count / 2] / 1e3, samples[(int) (count * 0.99)] / 1e3};
+    }
+
+    /**
+     * Runs the queries through searchBatch in consecutive batches for at least the minimum time
+     * after one warm-up pass.
+     *
+     * @return queries answered per second
+     */
+    private static double measureBatch(VectorIndex index, float[] queries, int nq, int k, int batchSize, long minTimeMs) {
+        int dimension = index.getDimension();
+        int batches = (nq + batchSize - 1) / batchSize;
+        float[][] chunks = new float[batches][];
+        for (int b = 0; b < batches; b++) {
+            int from = b * batchSize;
+            int to = Math.min(nq, from + batchSize);
+            chunks[b] = Arrays.copyOfRange(queries, from * dimension, to * dimension);
+            sink += index.searchBatch(chunks[b], to - from, k).length;
+        }
+        long answered = 0;
+        long minNanos = minTimeMs * 1_000_000L;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (float[] chunk : chunks) {
+                int n = chunk.length / dimension;
+                sink += index.searchBatch(chunk, n, k).length;
+                answered += n;
+            }
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < minNanos && nq > 0);
+        return answered == 0 ? 0 : answered * 1e9 / elapsed;
+    }
+
+    private static void setSearchParameter(VectorIndex index, int value) {
+        if (index instanceof HnswIndex) {
+            ((HnswIndex) index).setEfSearch(value);
+        } else if (index instanceof IvfPqIndex) {
+            ((IvfPqIndex) index).setNprobe(value);
+        } else if (index instanceof IvfFlatIndex) {
+            ((IvfFlatIndex) index).setNprobe(value);
+        } else {
+            throw new IllegalArgumentException("No search parameter to sweep on " + index.getIndexType());
+        }
+    }
+
+    private static FAISSConfig config(String indexType, int dimension, int nlist, int k) {
+        FAISSConfig config = new FAISSConfig();
+        config.setIndexType(indexType);
+        config.setDimensionSize(dimension);
+        config.setNlist(nlist);
+        config.setNprobe(1);
+        config.setSearchK(k);
+        config.setBuildThreads(Math.min(64, Runtime.getRuntime().availableProcessors()));
+        // Recall is measured here against the exhaustive scan, not by the factory
+        config.setRecallSampleQueries(0);
+        config.validate();
+        return config;
+    }
+
+    /**
+     * Generates one knowledge base per venue, about 95% map regions and 5% rule clauses.
+     */
+    private static EmbeddedChunks[] generateCorpus(Random random, TextEmbedder embedder, int chunks, int venues) {
+        FAISSConfig defaults = new FAISSConfig();
+        KnowledgeEmbeddingPipeline pipeline = new KnowledgeEmbeddingPipeline(
+                new KnowledgeChunker(defaults.getChunkMaxTokens(), defaults.getChunkOverlapTokens()),
+                embedder, defaults.getBatchSize());
+        EmbeddedChunks[] corpus = new EmbeddedChunks[venues];
+        for (int venue = 0; venue < venues; venue++) {
+            int perVenue = chunks / venues + (venue < chunks % venues ? 1 : 0);
+            int clauses = Math.max(1, perVenue / 20);
+            corpus[venue] = pipeline.embed(venue + 1, venueMap(random, perVenue - clauses), ruleText(random, clauses));
+        }
+        return corpus;
+    }
+
+    private static String venueMap(Random random, int regions) {
+        StringBuilder map = new StringBuilder(regions * 160).append("{\"regions\":[");
+        for (int i = 0; i < regions; i++) {
+            String category = pick(random, CATEGORIES);
+            int open = 8 + random.nextInt(3);
+            map.append(i > 0 ? "," : "")
+                    .append("{\"name\":\"").append(pick(random, BRANDS)).append(category).append(i).append("号店\"")
+                    .append(",\"zone\":\"").append(pick(random, ZONES)).append("区\"")
+                    .append(",\"floor\":").append(1 + random.nextInt(8))
+                    .append(",\"category\":\"").append(category).append('"')
+                    .append(",\"near\":[\"").append(pick(random, FACILITIES)).append("\",\"")
+                    .append(pick(random, FACILITIES)).append("\"]")
+                    .append(",\"hours\":\"").append(open).append(":00-").append(open + 12).append(":00\"")
+                    .append(",\"accessible\":").append(random.nextBoolean())
+                    .append('}');
+        }
+        return map.append("]}").toString();
+    }
+
+    private static String ruleText(Random random, int clauses) {
+        StringBuilder rules = new StringBuilder(clauses * 40);
+        for (int i = 0; i < clauses; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    rules.append(pick(random, ZONES)).append("区").append(1 + random.nextInt(8)).append("楼")
+                            .append(pick(random, CATEGORIES)).append("区域晚上").append(20 + random.nextInt(4))
+                            .append("点后关闭。");
+                    break;
+                case 1:
+                    rules.append(pick(random, FACILITIES)).append("优先供").append(pick(random, GROUPS))
+                            .append("使用；");
+                    break;
+                default:
+                    rules.append(pick(random, GROUPS)).append("进入").append(pick(random, ZONES))
+                            .append("区须由工作人员陪同。");
+                    break;
+            }
+        }
+        return rules.toString();
+    }
+
+    private static List<String> generateQueries(Random random, int count) {
+        List<String> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    queries.add(pick(random, ZONES) + "区" + (1 + random.nextInt(8)) + "楼的"
+                            + pick(random, CATEGORIES) + "店在哪里");
+                    break;
+                case 1:
+                    queries.add(pick(random, BRANDS) + pick(random, CATEGORIES) + "几点关门");
+                    break;
+                default:
+                    queries.add("离" + pick(random, FACILITIES) + "最近的" + pick(random, CATEGORIES) + "店");
+                    break;
+            }
+        }
+        return queries;
+    }
+
+    private static long[] concatIds(EmbeddedChunks[] corpus) {
+        int total = 0;
+        for (EmbeddedChunks chunks : corpus) {
+            total += chunks.size();
+        }
+        long[] ids = new long[total];
+        int offset = 0;
+        for (EmbeddedChunks chunks : corpus) {
+            System.arraycopy(chunks.getIds(), 0, ids, offset, chunks.size());
+            offset += chunks.size();
+        }
+        return ids;
+    }
+
+    private static float[] concatVectors(EmbeddedChunks[] corpus, int length) {
+        float[] vectors = new float[length];
+        int offset = 0;
+        for (EmbeddedChunks chunks : corpus) {
+            float[] part = chunks.getVectors();
+            System.arraycopy(part, 0, vectors, offset, part.length);
+            offset += part.length;
+        }
+        return vectors;
+    }
+
+    private static int[] parseInts(String values) {
+        return Arrays.stream(values.split(",")).map(String::trim).filter(v -> !v.isEmpty())
+                .mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
+
+
+// 内容由AI生成，仅供参考
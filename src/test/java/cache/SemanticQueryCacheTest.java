@@ -0,0 +1,151 @@
+package cache;
+
+import com.navigation.system.infrastructure.cache.CachedQueryResult;
+import com.navigation.system.infrastructure.cache.SemanticQueryCache;
+import com.navigation.system.infrastructure.cache.SharedCacheTier;
+import com.navigation.system.infrastructure.vector.HashingTextEmbedder;
+import com.navigation.system.infrastructure.vector.SearchResult;
+import com.navigation.system.infrastructure.vector.TextEmbedder;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Semantic query cache test class.
+ * Tests exact and near-identical hits, version scoping and the shared tier.
+ */
+class SemanticQueryCacheTest {
+
+    private static final TextEmbedder EMBEDDER = new HashingTextEmbedder(256);
+
+    private final AtomicInteger searches = new AtomicInteger();
+
+    private final SemanticQueryCache.Loader loader = (vector, k) -> {
+        searches.incrementAndGet();
+        return new SearchResult(new long[]{searches.get()}, new float[]{1f});
+    };
+
+    /**
+     * Tests that a repeated query is answered without embedding or searching again.
+     */
+    @Test
+    void testExactHitSkipsEmbedding() {
+        AtomicInteger embeds = new AtomicInteger();
+        TextEmbedder counting = new TextEmbedder() {
+            @Override
+            public int getDimension() {
+                return EMBEDDER.getDimension();
+            }
+
+            @Override
+            public float[] embed(String text) {
+                embeds.incrementAndGet();
+                return EMBEDDER.embed(text);
+            }
+        };
+        SemanticQueryCache cache = newCache(counting, null);
+
+        SearchResult first = cache.get(1, "v1", "Where is gate B", 5, loader);
+        SearchResult second = cache.get(1, "v1", "  where is  gate b? ", 5, loader);
+
+        assertEquals(first.getId(0), second.getId(0));
+        assertEquals(1, searches.get());
+        assertEquals(1, embeds.get());
+        assertEquals(1, cache.getExactHits());
+    }
+
+    /**
+     * Tests that a near-identical query reuses the cached result while unrelated queries, other
+     * venues and other k values do not.
+     */
+    @Test
+    void testNearIdenticalQueryHits() {
+        SemanticQueryCache cache = newCache(EMBEDDER, null);
+
+        cache.get(1, "v1", "toilet near hall 3 ground floor", 5, loader);
+        cache.get(1, "v1", "toilet near hall 3 ground floor please", 5, loader);
+        assertEquals(1, searches.get());
+        assertEquals(1, cache.getSemanticHits());
+
+        cache.get(1, "v1", "opening hours of the food court", 5, loader);
+        cache.get(2, "v1", "toilet near hall 3 ground floor", 5, loader);
+        cache.get(1, "v1", "toilet near hall 3 ground floor", 10, loader);
+        assertEquals(4, searches.get());
+    }
+
+    /**
+     * Tests that a new knowledge version of a venue is never answered from entries of the old one.
+     */
+    @Test
+    void testVersionChangeInvalidates() {
+        SemanticQueryCache cache = newCache(EMBEDDER, null);
+
+        cache.get(1, "v1", "where is gate B", 5, loader);
+        cache.get(2, "v1", "where is gate B", 5, loader);
+        SearchResult updated = cache.get(1, "v2", "where is gate B", 5, loader);
+        assertEquals(3, updated.getId(0));
+        assertEquals(3, searches.get());
+
+        cache.get(2, "v1", "where is gate B", 5, loader);
+        assertEquals(3, searches.get(), "Other venues keep their entries");
+    }
+
+    /**
+     * Tests that a node hits entries written by another node through the shared tier,
+     * and that a failing shared tier degrades to the local tier.
+     */
+    @Test
+    void testSharedTier() {
+        InMemorySharedTier shared = new InMemorySharedTier();
+        newCache(EMBEDDER, shared).get(1, "v1", "where is gate B", 5, loader);
+
+        SemanticQueryCache otherNode = newCache(EMBEDDER, shared);
+        SearchResult result = otherNode.get(1, "v1", "where is gate B", 5, loader);
+        assertEquals(1, result.getId(0));
+        assertEquals(1, searches.get());
+        assertEquals(1, otherNode.getSharedHits());
+
+        shared.failing = true;
+        SemanticQueryCache isolated = newCache(EMBEDDER, shared);
+        isolated.get(1, "v1", "where is gate B", 5, loader);
+        isolated.get(1, "v1", "where is gate B", 5, loader);
+        assertEquals(2, searches.get());
+        assertEquals(1, isolated.getExactHits());
+    }
+
+    private static SemanticQueryCache newCache(TextEmbedder embedder, SharedCacheTier shared) {
+        return new SemanticQueryCache(embedder, shared, true, 0.8f, 12, 1000, Duration.ofMinutes(5));
+    }
+
+    private static final class InMemorySharedTier implements SharedCacheTier {
+        final Map<String, List<CachedQueryResult>> buckets = new HashMap<>();
+        boolean failing;
+
+        @Override
+        public List<List<CachedQueryResult>> multiGet(List<String> keys) {
+            if (failing) {
+                throw new IllegalStateException("Connection refused");
+            }
+            List<List<CachedQueryResult>> values = new ArrayList<>();
+            for (String key : keys) {
+                values.add(buckets.get(key));
+            }
+            return values;
+        }
+
+        @Override
+        public void put(String key, List<CachedQueryResult> bucket, Duration ttl) {
+            buckets.put(key, new ArrayList<>(bucket));
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,158 @@
+package journal;
+
+import com.navigation.system.infrastructure.journal.WriteBehindJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Write-behind journal test class.
+ * Tests batching behind a slow store, back-pressure when the queue is full, failure isolation and flush on close.
+ */
+class WriteBehindJournalTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+    private WriteBehindJournal<Integer> journal;
+
+    @AfterEach
+    void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Tests that appends return without waiting for a slow store and that entries queued meanwhile share batches, in order.
+     */
+    @Test
+    void testAppendsAreBatchedBehindSlowStore() throws Exception {
+        journal = new WriteBehindJournal<>("test", batch -> {
+            Thread.sleep(20);
+            batches.add(new ArrayList<>(batch));
+        }, 1000, 50, meterRegistry);
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            journal.append(i);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) < 100);
+        assertTrue(journal.flush(5000));
+
+        assertTrue(batches.size() <= 6, "batches " + batches.size());
+        assertEquals(range(200), written());
+        assertEquals(200, meterRegistry.get("navigation.journal.written").counter().count());
+        assertEquals(0, meterRegistry.get("navigation.journal.pending").gauge().value());
+    }
+
+    /**
+     * Tests that when the queue is full the appending thread writes its own entry, so nothing is dropped.
+     */
+    @Test
+    void testFullQueueWritesOnCallingThread() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> writers = new CopyOnWriteArrayList<>();
+        journal = new WriteBehindJournal<>("test", batch -> {
+            writers.add(Thread.currentThread().getName());
+            if (batch.get(0) == 0) {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            batches.add(new ArrayList<>(batch));
+        }, 4, 4, meterRegistry);
+
+        journal.append(0);
+        while (writers.isEmpty()) {
+            Thread.sleep(1);
+        }
+        for (int i = 1; i <= 6; i++) {
+            journal.append(i);
+        }
+        assertEquals(4, journal.pending());
+        assertEquals(2, meterRegistry.get("navigation.journal.overflow").counter().count());
+        assertTrue(writers.contains(Thread.currentThread().getName()));
+
+        release.countDown();
+        assertTrue(journal.flush(5000));
+        List<Integer> written = written();
+        written.sort(null);
+        assertEquals(range(7), written);
+    }
+
+    /**
+     * Tests that a failing batch is retried entry by entry and only the bad entry is counted as failed.
+     */
+    @Test
+    void testFailedBatchIsRetriedPerEntry() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        journal = new WriteBehindJournal<>("test", batch -> {
+            if (batch.contains(-1)) {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                batches.add(new ArrayList<>(batch));
+                return;
+            }
+            if (batch.contains(13)) {
+                throw new IllegalStateException("duplicate key");
+            }
+            batches.add(new ArrayList<>(batch));
+        }, 100, 100, meterRegistry);
+
+        journal.append(-1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 10; i < 16; i++) {
+            journal.append(i);
+        }
+        release.countDown();
+        assertTrue(journal.flush(5000));
+
+        assertEquals(List.of(-1, 10, 11, 12, 14, 15), written());
+        assertEquals(1, meterRegistry.get("navigation.journal.failed").counter().count());
+    }
+
+    /**
+     * Tests that closing writes everything still queued and that later appends are written directly.
+     */
+    @Test
+    void testCloseFlushesQueue() {
+        journal = new WriteBehindJournal<>("test", batch -> {
+            Thread.sleep(5);
+            batches.add(new ArrayList<>(batch));
+        }, 1000, 10, meterRegistry);
+        for (int i = 0; i < 100; i++) {
+            journal.append(i);
+        }
+        journal.close();
+        assertEquals(range(100), written());
+
+        journal.append(100);
+        assertEquals(range(101), written());
+    }
+
+    private List<Integer> written() {
+        List<Integer> entries = new ArrayList<>();
+        for (List<Integer> batch : batches) {
+            entries.addAll(batch);
+        }
+        return entries;
+    }
+
+    private static List<Integer> range(int count) {
+        List<Integer> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
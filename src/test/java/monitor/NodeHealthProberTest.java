@@ -0,0 +1,118 @@
+package monitor;
+
+import com.navigation.system.infrastructure.monitor.NodeHealth;
+import com.navigation.system.infrastructure.monitor.NodeHealthProber;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Node health prober test class.
+ * Tests concurrent probing with timeouts, cached status and latency metrics.
+ */
+class NodeHealthProberTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/up/health", exchange -> respond(exchange, 200, "OK"));
+        server.createContext("/broken/health", exchange -> respond(exchange, 503, "maintenance"));
+        server.createContext("/slow/health", exchange -> {
+            try {
+                Thread.sleep(3000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, "late");
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Tests that hanging nodes are probed concurrently and cut off at the probe timeout.
+     */
+    @Test
+    void testProbesRunConcurrentlyWithTimeout() {
+        NodeHealthProber prober = new NodeHealthProber(registry, new String[0], 500, 60);
+        // Warms up the HTTP client so class loading does not count against the timeout
+        prober.probe(List.of(baseUrl + "/up")).join();
+        List<String> nodes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            nodes.add(baseUrl + "/slow");
+        }
+        nodes.add(baseUrl + "/up");
+
+        long start = System.nanoTime();
+        List<NodeHealth> results = prober.probe(nodes).join();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMs < 2000, "Ten hanging nodes took " + elapsedMs + " ms");
+        assertEquals(NodeHealth.OFFLINE, results.get(0).getStatus());
+        assertEquals(NodeHealth.HEALTHY, results.get(10).getStatus(), results.get(10).getDetails());
+    }
+
+    /**
+     * Tests that the snapshot serves cached results with percentiles and that metrics are published.
+     */
+    @Test
+    void testSnapshotAndMetrics() {
+        NodeHealthProber prober = new NodeHealthProber(registry, new String[]{baseUrl + "/up"}, 1000, 60);
+        prober.watch(baseUrl + "/broken");
+        assertEquals(NodeHealth.UNKNOWN, prober.snapshot().get(0).getStatus());
+
+        for (int i = 0; i < 5; i++) {
+            prober.probe(List.of(baseUrl + "/up", baseUrl + "/broken")).join();
+        }
+
+        for (NodeHealth health : prober.snapshot()) {
+            if (health.getUrl().endsWith("/up")) {
+                assertTrue(health.isHealthy());
+                assertEquals("OK", health.getDetails());
+                assertFalse(Double.isNaN(health.getP95Ms()));
+            } else {
+                assertEquals(NodeHealth.UNHEALTHY, health.getStatus());
+                assertEquals(5, health.getConsecutiveFailures());
+            }
+        }
+        assertEquals(1.0, registry.get("navigation.node.health.up").tag("node", baseUrl + "/up").gauge().value());
+        assertEquals(0.0, registry.get("navigation.node.health.up").tag("node", baseUrl + "/broken").gauge().value());
+        assertEquals(5, registry.get("navigation.node.health.latency").tag("node", baseUrl + "/up").timer().count());
+        assertEquals(5.0, registry.get("navigation.node.health.failures").tag("node", baseUrl + "/broken").counter().count());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
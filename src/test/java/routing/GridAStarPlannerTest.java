@@ -0,0 +1,281 @@
+package routing;
+
+import com.navigation.system.infrastructure.routing.GridAStarPlanner;
+import com.navigation.system.infrastructure.routing.GridPath;
+import com.navigation.system.infrastructure.routing.VenueGrid;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Grid A* planner test class.
+ * Tests optimality against Dijkstra with and without temporary obstacles, corner cutting, venue map parsing and large-grid reroutes.
+ */
+class GridAStarPlannerTest {
+
+    private final GridAStarPlanner planner = new GridAStarPlanner();
+
+    /**
+     * Tests that on an empty grid the path is the octile distance and collapses to its turning points.
+     */
+    @Test
+    void testOpenGridPath() {
+        VenueGrid grid = grid(20, 10, 0.5, new int[0][]);
+
+        GridPath path = planner.findPath(grid, grid.cell(0, 0), grid.cell(15, 5), null);
+        assertTrue(path.isFound());
+        assertEquals((10 + 5 * Math.sqrt(2)) * 0.5, path.getLength(), 1e-4);
+        assertEquals(16, path.getCells().length);
+        assertEquals(3, path.waypoints().length);
+        assertEquals(1, planner.findPath(grid, 7, 7, null).getCells().length);
+    }
+
+    /**
+     * Tests that the path lengths equal Dijkstra's on random obstacle grids, including unreachable goals.
+     */
+    @Test
+    void testMatchesDijkstra() {
+        Random random = new Random(11);
+        int width = 60;
+        int height = 45;
+        for (int round = 0; round < 20; round++) {
+            long[] blocked = new long[(width * height + 63) >>> 6];
+            for (int cell = 0; cell < width * height; cell++) {
+                if (random.nextDouble() < 0.3) {
+                    blocked[cell >>> 6] |= 1L << cell;
+                }
+            }
+            VenueGrid grid = new VenueGrid(width, height, 1.0, 0, 0, blocked);
+            for (int q = 0; q < 10; q++) {
+                int start = random.nextInt(width * height);
+                int goal = random.nextInt(width * height);
+                if (grid.isBlocked(start)) {
+                    continue;
+                }
+                double expected = dijkstra(grid, start, goal);
+                GridPath path = planner.findPath(grid, start, goal, null);
+                if (Double.isInfinite(expected)) {
+                    assertFalse(path.isFound());
+                } else {
+                    assertEquals(expected, path.getLength(), 1e-3, "round " + round + " query " + q);
+                    assertPathValid(grid, path, start, goal);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that paths around temporary obstacles equal Dijkstra's on a grid where those cells are permanently blocked.
+     */
+    @Test
+    void testTemporaryObstaclesMatchDijkstra() {
+        Random random = new Random(17);
+        int width = 150;
+        int height = 90;
+        for (int round = 0; round < 20; round++) {
+            long[] blocked = new long[(width * height + 63) >>> 6];
+            for (int cell = 0; cell < width * height; cell++) {
+                if (random.nextDouble() < 0.15) {
+                    blocked[cell >>> 6] |= 1L << cell;
+                }
+            }
+            VenueGrid grid = new VenueGrid(width, height, 1.0, 0, 0, blocked);
+            int[] obstacles = new int[0];
+            for (int i = 0; i < 8; i++) {
+                int[] covered = grid.cellsWithin(random.nextInt(width), random.nextInt(height), 3.0);
+                obstacles = Arrays.copyOf(obstacles, obstacles.length + covered.length);
+                System.arraycopy(covered, 0, obstacles, obstacles.length - covered.length, covered.length);
+            }
+            long[] merged = blocked.clone();
+            for (int cell : obstacles) {
+                merged[cell >>> 6] |= 1L << cell;
+            }
+            VenueGrid reference = new VenueGrid(width, height, 1.0, 0, 0, merged);
+            for (int q = 0; q < 10; q++) {
+                int start = random.nextInt(width * height);
+                int goal = random.nextInt(width * height);
+                if (reference.isBlocked(start)) {
+                    continue;
+                }
+                double expected = dijkstra(reference, start, goal);
+                GridPath path = planner.findPath(grid, start, goal, obstacles);
+                if (Double.isInfinite(expected)) {
+                    assertFalse(path.isFound());
+                } else {
+                    assertEquals(expected, path.getLength(), 1e-3, "round " + round + " query " + q);
+                    assertPathValid(reference, path, start, goal);
+                }
+            }
+            // The next search without obstacles must not see the previous search's ones
+            int start = grid.cell(0, 0);
+            int goal = grid.cell(width - 1, height - 1);
+            if (!grid.isBlocked(start)) {
+                assertEquals(dijkstra(grid, start, goal), planner.findPath(grid, start, goal, null).getLength(), 1e-3);
+            }
+        }
+    }
+
+    /**
+     * Tests that diagonal moves do not squeeze between two blocked cells touching at a corner.
+     */
+    @Test
+    void testNoCornerCutting() {
+        VenueGrid grid = grid(3, 3, 1.0, new int[][]{{1, 0, 1, 0}, {0, 1, 0, 1}});
+
+        GridPath path = planner.findPath(grid, grid.cell(0, 0), grid.cell(1, 1), null);
+        assertFalse(path.isFound());
+    }
+
+    /**
+     * Tests that temporary obstacles force a detour for one search only and that a blocked goal is unreachable.
+     */
+    @Test
+    void testTemporaryObstacles() {
+        // Wall across x = 10 with a single door at y = 5
+        VenueGrid grid = grid(21, 11, 1.0, new int[][]{{10, 0, 10, 4}, {10, 6, 10, 10}});
+        int start = grid.cell(0, 5);
+        int goal = grid.cell(20, 5);
+
+        GridPath direct = planner.findPath(grid, start, goal, null);
+        assertEquals(20.0, direct.getLength(), 1e-4);
+        assertFalse(planner.findPath(grid, start, goal, grid.cellsWithin(10.5, 5.5, 0.4)).isFound());
+        assertEquals(20.0, planner.findPath(grid, start, goal, null).getLength(), 1e-4);
+        assertFalse(planner.findPath(grid, start, grid.cell(10, 0), null).isFound());
+
+        GridPath detour = planner.findPath(grid, start, goal, grid.cellsWithin(5.5, 5.5, 1.0));
+        assertTrue(detour.isFound());
+        assertTrue(detour.getLength() > 20.0);
+        for (int cell : detour.getCells()) {
+            assertNotEquals(grid.cell(5, 5), cell);
+        }
+    }
+
+    /**
+     * Tests reading the grid member of venue map data and mapping between positions and cells.
+     */
+    @Test
+    void testParseVenueMap() {
+        String mapData = "{\"venue\":\"Hall 3\",\"grid\":{\"width\":40,\"height\":20,\"cellSize\":0.5,"
+                + "\"originX\":-5,\"originY\":2,\"blocked\":[[10,0,10,18],[30,19,20,19]]}}";
+
+        VenueGrid grid = VenueGrid.parse(mapData);
+        assertEquals(40, grid.getWidth());
+        assertTrue(grid.isBlocked(grid.cell(10, 18)));
+        assertFalse(grid.isBlocked(grid.cell(10, 19)));
+        assertTrue(grid.isBlocked(grid.cell(25, 19)));
+        assertEquals(grid.cell(2, 4), grid.cellAt(-3.9, 4.1));
+        assertEquals(-3.75, grid.centerX(grid.cell(2, 4)), 1e-9);
+        assertEquals(-1, grid.cellAt(-5.1, 3));
+        assertNull(VenueGrid.parse("{\"venue\":\"Hall 3\"}"));
+        assertThrows(IllegalArgumentException.class, () -> VenueGrid.parse("{\"grid\":{\"width\":0}}"));
+    }
+
+    /**
+     * Tests reroutes on 1000 x 1000 grids: a short detour around an obstacle on an open floor stays
+     * within milliseconds once warmed up, and a maze of walls that has to be crossed end to end is still solved.
+     */
+    @Test
+    void testLargeGridReroute() {
+        int size = 1000;
+        VenueGrid open = grid(size, size, 0.5, new int[0][]);
+        int start = open.cell(5, 5);
+        int goal = open.cell(size - 5, size - 5);
+        int[] obstacles = open.cellsWithin(250, 250, 5.0);
+        for (int i = 0; i < 10; i++) {
+            planner.findPath(open, start, goal, obstacles);
+        }
+        long begin = System.nanoTime();
+        GridPath detour = planner.findPath(open, start, goal, obstacles);
+        long elapsedMs = (System.nanoTime() - begin) / 1_000_000;
+        assertTrue(detour.isFound());
+        assertPathValid(open, detour, start, goal);
+        assertTrue(elapsedMs < 50, "reroute took " + elapsedMs + " ms");
+
+        int[][] walls = new int[9][];
+        for (int i = 0; i < walls.length; i++) {
+            int x = 100 * (i + 1);
+            // Alternate the door between the top and the bottom so the path snakes through every wall
+            walls[i] = i % 2 == 0 ? new int[]{x, 0, x, size - 50} : new int[]{x, 50, x, size - 1};
+        }
+        VenueGrid maze = grid(size, size, 0.5, walls);
+        GridPath path = planner.findPath(maze, start, goal, null);
+        assertTrue(path.isFound());
+        assertPathValid(maze, path, start, goal);
+        assertTrue(path.getLength() > 9 * (size - 50) * 0.5);
+    }
+
+    private static VenueGrid grid(int width, int height, double cellSize, int[][] blockedRects) {
+        long[] blocked = new long[(width * height + 63) >>> 6];
+        for (int[] rect : blockedRects) {
+            for (int y = rect[1]; y <= rect[3]; y++) {
+                for (int x = Math.min(rect[0], rect[2]); x <= Math.max(rect[0], rect[2]); x++) {
+                    int cell = y * width + x;
+                    blocked[cell >>> 6] |= 1L << cell;
+                }
+            }
+        }
+        return new VenueGrid(width, height, cellSize, 0, 0, blocked);
+    }
+
+    private static void assertPathValid(VenueGrid grid, GridPath path, int start, int goal) {
+        int[] cells = path.getCells();
+        assertEquals(start, cells[0]);
+        assertEquals(goal, cells[cells.length - 1]);
+        int width = grid.getWidth();
+        for (int i = 1; i < cells.length; i++) {
+            assertFalse(grid.isBlocked(cells[i]));
+            int dx = Math.abs(cells[i] % width - cells[i - 1] % width);
+            int dy = Math.abs(cells[i] / width - cells[i - 1] / width);
+            assertTrue(dx <= 1 && dy <= 1 && dx + dy > 0, "cells " + cells[i - 1] + " and " + cells[i] + " are not adjacent");
+        }
+    }
+
+    /**
+     * Reference Dijkstra over the same moves as the planner.
+     */
+    private static double dijkstra(VenueGrid grid, int start, int goal) {
+        int width = grid.getWidth();
+        int height = grid.getHeight();
+        double[] dist = new double[grid.cellCount()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[start] = 0;
+        PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        queue.add(new double[]{0, start});
+        while (!queue.isEmpty()) {
+            double[] top = queue.poll();
+            int cell = (int) top[1];
+            if (top[0] > dist[cell]) {
+                continue;
+            }
+            int cx = cell % width;
+            int cy = cell / width;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    int nx = cx + dx;
+                    int ny = cy + dy;
+                    if ((dx == 0 && dy == 0) || nx < 0 || ny < 0 || nx >= width || ny >= height) {
+                        continue;
+                    }
+                    int next = ny * width + nx;
+                    if (grid.isBlocked(next) || (dx != 0 && dy != 0
+                            && (grid.isBlocked(cy * width + nx) || grid.isBlocked(ny * width + cx)))) {
+                        continue;
+                    }
+                    double d = dist[cell] + (dx != 0 && dy != 0 ? Math.sqrt(2) : 1);
+                    if (d < dist[next]) {
+                        dist[next] = d;
+                        queue.add(new double[]{d, next});
+                    }
+                }
+            }
+        }
+        return dist[goal];
+    }
+}
+
+
+// 内容由AI生成，仅供参考
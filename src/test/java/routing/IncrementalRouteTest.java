@@ -0,0 +1,180 @@
+package routing;
+
+import com.navigation.system.infrastructure.routing.GridAStarPlanner;
+import com.navigation.system.infrastructure.routing.GridPath;
+import com.navigation.system.infrastructure.routing.IncrementalRoute;
+import com.navigation.system.infrastructure.routing.VenueGrid;
+import com.navigation.system.infrastructure.routing.VenueRoutingGraph;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Incremental route test class.
+ * Tests path reuse, replanning on obstacles touching the path, obstacle accumulation and expiry,
+ * and equivalence with planning from scratch.
+ */
+class IncrementalRouteTest {
+
+    private final GridAStarPlanner planner = new GridAStarPlanner();
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Tests that an obstacle away from the path keeps the remaining path, while one on it triggers a detour.
+     */
+    @Test
+    void testReuseAndReplan() {
+        VenueRoutingGraph graph = VenueRoutingGraph.build(emptyGrid(40, 20), 4);
+        VenueGrid grid = graph.getGrid();
+        IncrementalRoute route = route();
+        int goal = grid.cell(35, 10);
+
+        GridPath first = route.update(graph, grid.cell(5, 10), goal, null);
+        assertEquals(30, first.getLength(), 1e-6);
+        assertEquals(1, route.getReplans());
+
+        int current = grid.cell(10, 10);
+        GridPath reused = route.update(graph, current, goal, new int[]{grid.cell(20, 2)});
+        assertEquals(1, route.getReuses());
+        assertEquals(current, reused.getCells()[0]);
+        assertEquals(goal, reused.getCells()[reused.getCells().length - 1]);
+        assertEquals(25, reused.getLength(), 1e-6);
+        assertEquals(0, reused.getExpanded());
+
+        GridPath detour = route.update(graph, current, goal, new int[]{grid.cell(20, 10)});
+        assertEquals(2, route.getReplans());
+        assertTrue(detour.getLength() > 25);
+        for (int cell : detour.getCells()) {
+            assertNotEquals(grid.cell(20, 10), cell);
+        }
+    }
+
+    /**
+     * Tests that earlier obstacles keep blocking later reroutes until they expire, and that expiry restores the shorter path.
+     */
+    @Test
+    void testObstaclesAccumulateAndExpire() {
+        VenueRoutingGraph graph = VenueRoutingGraph.build(emptyGrid(30, 30), 4);
+        VenueGrid grid = graph.getGrid();
+        IncrementalRoute route = route();
+        int start = grid.cell(2, 15);
+        int goal = grid.cell(27, 15);
+        int[] wallA = column(grid, 10, 0, 20);
+        int[] wallB = column(grid, 20, 10, 29);
+
+        route.update(graph, start, goal, wallA);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        GridPath both = route.update(graph, start, goal, wallB);
+        assertEquals(planner.findPath(graph, start, goal, concat(wallA, wallB)).getLength(), both.getLength(), 1e-6);
+        assertEquals(wallA.length + wallB.length, route.obstacleCells().length);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(40));
+        GridPath afterExpiry = route.update(graph, start, goal, null);
+        assertEquals(wallB.length, route.obstacleCells().length);
+        assertEquals(planner.findPath(graph, start, goal, wallB).getLength(), afterExpiry.getLength(), 1e-6);
+        assertTrue(afterExpiry.getLength() < both.getLength());
+    }
+
+    /**
+     * Tests that an obstacle whose corner a diagonal step of the path cuts triggers a replan.
+     */
+    @Test
+    void testCornerCutReplans() {
+        VenueRoutingGraph graph = VenueRoutingGraph.build(emptyGrid(20, 20), 2);
+        VenueGrid grid = graph.getGrid();
+        IncrementalRoute route = route();
+        int start = grid.cell(2, 2);
+        int goal = grid.cell(12, 12);
+
+        GridPath diagonal = route.update(graph, start, goal, null);
+        int[] cells = diagonal.getCells();
+        int from = -1;
+        for (int i = 0; i + 1 < cells.length; i++) {
+            if (cells[i] % 20 != cells[i + 1] % 20 && cells[i] / 20 != cells[i + 1] / 20) {
+                from = i;
+                break;
+            }
+        }
+        assertTrue(from >= 0);
+        int corner = grid.cell(cells[from + 1] % 20, cells[from] / 20);
+
+        GridPath replanned = route.update(graph, start, goal, new int[]{corner});
+        assertEquals(2, route.getReplans());
+        assertEquals(planner.findPath(graph, start, goal, new int[]{corner}).getLength(), replanned.getLength(), 1e-6);
+    }
+
+    /**
+     * Tests on random grids that a walk with obstacles reported along the way always gets paths as short as
+     * planning from scratch around all live obstacles.
+     */
+    @Test
+    void testMatchesPlanningFromScratch() {
+        Random random = new Random(31);
+        int width = 60;
+        int height = 40;
+        for (int round = 0; round < 10; round++) {
+            VenueRoutingGraph graph = VenueRoutingGraph.build(randomGrid(random, width, height, 0.2), 4);
+            VenueGrid grid = graph.getGrid();
+            IncrementalRoute route = route();
+            int current = random.nextInt(grid.cellCount());
+            int goal = random.nextInt(grid.cellCount());
+            for (int step = 0; step < 40; step++) {
+                int[] reported = new int[random.nextInt(4)];
+                for (int i = 0; i < reported.length; i++) {
+                    reported[i] = random.nextInt(grid.cellCount());
+                }
+                clock.addAndGet(TimeUnit.SECONDS.toNanos(random.nextInt(5)));
+                GridPath incremental = route.update(graph, current, goal, reported);
+                GridPath scratch = planner.findPath(graph, current, goal, route.obstacleCells());
+                assertEquals(scratch.isFound(), incremental.isFound(), "round " + round + " step " + step);
+                if (!scratch.isFound()) {
+                    break;
+                }
+                assertEquals(scratch.getLength(), incremental.getLength(), 1e-3, "round " + round + " step " + step);
+                int[] cells = incremental.getCells();
+                current = cells[Math.min(cells.length - 1, 1 + random.nextInt(3))];
+            }
+        }
+    }
+
+    private IncrementalRoute route() {
+        return new IncrementalRoute(planner, Duration.ofMinutes(1), clock::get);
+    }
+
+    private static int[] column(VenueGrid grid, int x, int fromY, int toY) {
+        int[] cells = new int[toY - fromY + 1];
+        for (int y = fromY; y <= toY; y++) {
+            cells[y - fromY] = grid.cell(x, y);
+        }
+        return cells;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] cells = new int[a.length + b.length];
+        System.arraycopy(a, 0, cells, 0, a.length);
+        System.arraycopy(b, 0, cells, a.length, b.length);
+        return cells;
+    }
+
+    private static VenueGrid emptyGrid(int width, int height) {
+        return new VenueGrid(width, height, 1.0, 0, 0, new long[(width * height + 63) >>> 6]);
+    }
+
+    private static VenueGrid randomGrid(Random random, int width, int height, double density) {
+        long[] blocked = new long[(width * height + 63) >>> 6];
+        for (int cell = 0; cell < width * height; cell++) {
+            if (random.nextDouble() < density) {
+                blocked[cell >>> 6] |= 1L << cell;
+            }
+        }
+        return new VenueGrid(width, height, 1.0, 0, 0, blocked);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,197 @@
+package routing;
+
+import com.navigation.system.infrastructure.routing.GridAStarPlanner;
+import com.navigation.system.infrastructure.routing.GridPath;
+import com.navigation.system.infrastructure.routing.RoutingGraphFile;
+import com.navigation.system.infrastructure.routing.VenueGrid;
+import com.navigation.system.infrastructure.routing.VenueRoutingGraph;
+import com.navigation.system.infrastructure.routing.VenueRoutingRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Venue routing graph test class.
+ * Tests landmark-guided search optimality, component detection, the file format and the per-venue registry.
+ */
+class VenueRoutingGraphTest {
+
+    private final GridAStarPlanner planner = new GridAStarPlanner();
+
+    /**
+     * Tests that landmark-guided paths are as short as plain A* paths on random obstacle grids,
+     * including starts inside obstacles and unreachable goals.
+     */
+    @Test
+    void testMatchesPlainSearch() {
+        Random random = new Random(23);
+        int width = 70;
+        int height = 50;
+        for (int round = 0; round < 15; round++) {
+            VenueGrid grid = randomGrid(random, width, height, 0.3);
+            VenueRoutingGraph graph = VenueRoutingGraph.build(grid, 6);
+            for (int q = 0; q < 20; q++) {
+                int start = random.nextInt(width * height);
+                int goal = random.nextInt(width * height);
+                GridPath plain = planner.findPath(grid, start, goal, null);
+                GridPath guided = planner.findPath(graph, start, goal, null);
+                assertEquals(plain.isFound(), guided.isFound(), "round " + round + " query " + q);
+                if (plain.isFound()) {
+                    assertEquals(plain.getLength(), guided.getLength(), 1e-3, "round " + round + " query " + q);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that cells separated by a wall are answered without searching and that lower bounds never exceed the walking distance.
+     */
+    @Test
+    void testDisconnectedComponents() {
+        VenueGrid grid = grid(30, 20, new int[][]{{15, 0, 15, 19}});
+        VenueRoutingGraph graph = VenueRoutingGraph.build(grid, 4);
+        int left = grid.cell(2, 10);
+        int right = grid.cell(28, 10);
+
+        GridPath path = planner.findPath(graph, left, right, null);
+        assertFalse(path.isFound());
+        assertEquals(0, path.getExpanded());
+        assertEquals(Float.POSITIVE_INFINITY, graph.lowerBound(left, right));
+
+        int goal = grid.cell(12, 18);
+        GridPath reachable = planner.findPath(graph, left, goal, null);
+        assertTrue(reachable.isFound());
+        assertTrue(graph.lowerBound(left, goal) * grid.getCellSize() <= reachable.getLength() + 1e-3);
+    }
+
+    /**
+     * Tests that a graph read back from its file answers queries exactly like the built one, and that corrupt files are rejected.
+     */
+    @Test
+    void testFileRoundTrip(@TempDir Path directory) throws IOException {
+        VenueGrid grid = randomGrid(new Random(5), 90, 40, 0.25);
+        VenueRoutingGraph built = VenueRoutingGraph.build(grid, 5);
+        Path file = directory.resolve("venue-1" + RoutingGraphFile.FILE_EXTENSION);
+        RoutingGraphFile.write(built, file);
+
+        VenueRoutingGraph read = RoutingGraphFile.read(file);
+        assertArrayEquals(built.getLandmarks(), read.getLandmarks());
+        assertEquals(grid.getCellSize(), read.getGrid().getCellSize());
+        Random random = new Random(6);
+        for (int q = 0; q < 200; q++) {
+            int cell = random.nextInt(grid.cellCount());
+            int goal = random.nextInt(grid.cellCount());
+            assertEquals(grid.isBlocked(cell), read.getGrid().isBlocked(cell));
+            assertEquals(built.lowerBound(cell, goal), read.lowerBound(cell, goal));
+        }
+
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 2));
+        assertThrows(IOException.class, () -> RoutingGraphFile.read(file));
+        bytes[0] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> RoutingGraphFile.read(file));
+    }
+
+    /**
+     * Tests that the registry reuses the persisted graph of an unchanged map, replaces it on a changed map
+     * and remembers venues without a grid.
+     */
+    @Test
+    void testRegistryPersistsPerMapVersion(@TempDir Path directory) throws IOException {
+        String mapV1 = "{\"grid\":{\"width\":40,\"height\":20,\"blocked\":[[10,0,10,15]]}}";
+        String mapV2 = "{\"grid\":{\"width\":40,\"height\":20,\"blocked\":[[10,4,10,19]]}}";
+        VenueRoutingRegistry registry = new VenueRoutingRegistry(directory, 4);
+
+        VenueRoutingGraph first = registry.get(7L, id -> mapV1);
+        assertNotNull(first);
+        assertSame(first, registry.get(7L, id -> fail("resident venue must not be resolved again")));
+        assertEquals(1, routeFiles(directory));
+
+        VenueRoutingRegistry restarted = new VenueRoutingRegistry(directory, 4);
+        VenueRoutingGraph reloaded = restarted.get(7L, id -> mapV1);
+        assertArrayEquals(first.getLandmarks(), reloaded.getLandmarks());
+
+        VenueRoutingGraph second = restarted.publish(7L, mapV2);
+        assertTrue(second.getGrid().isBlocked(second.getGrid().cell(10, 19)));
+        assertEquals(1, routeFiles(directory));
+        assertTrue(Files.exists(restarted.resolve(7L, second.getGrid())));
+
+        assertNull(restarted.get(8L, id -> "{\"venue\":\"Hall 2\"}"));
+        assertNull(restarted.get(9L, id -> "{\"grid\":{\"width\":0}}"));
+        assertThrows(IllegalArgumentException.class, () -> restarted.publish(9L, "{\"grid\":{\"width\":0}}"));
+    }
+
+    /**
+     * Tests that on a 1000 x 1000 maze with an obstacle in one of its doors the landmark-guided reroute
+     * matches the plain one, expands fewer jump points and answers within a millisecond budget once warmed up.
+     */
+    @Test
+    void testMazeReroute() {
+        int size = 1000;
+        int[][] walls = new int[9][];
+        for (int i = 0; i < walls.length; i++) {
+            int x = 100 * (i + 1);
+            walls[i] = i % 2 == 0 ? new int[]{x, 0, x, size - 50} : new int[]{x, 50, x, size - 1};
+        }
+        VenueGrid maze = grid(size, size, walls);
+        VenueRoutingGraph graph = VenueRoutingGraph.build(maze, 8);
+        int start = maze.cell(5, 5);
+        int goal = maze.cell(size - 5, size - 5);
+        int[] obstacles = maze.cellsWithin(250, 487, 3.0);
+
+        GridPath plain = planner.findPath(maze, start, goal, obstacles);
+        for (int i = 0; i < 20; i++) {
+            planner.findPath(graph, start, goal, obstacles);
+        }
+        long begin = System.nanoTime();
+        GridPath guided = planner.findPath(graph, start, goal, obstacles);
+        long elapsedMs = (System.nanoTime() - begin) / 1_000_000;
+
+        assertTrue(guided.isFound());
+        assertEquals(plain.getLength(), guided.getLength(), 1e-2);
+        assertTrue(guided.getExpanded() < plain.getExpanded(),
+                "guided expanded " + guided.getExpanded() + ", plain " + plain.getExpanded());
+        assertTrue(elapsedMs < 20, "reroute took " + elapsedMs + " ms");
+    }
+
+    private static long routeFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(RoutingGraphFile.FILE_EXTENSION)).count();
+        }
+    }
+
+    private static VenueGrid randomGrid(Random random, int width, int height, double density) {
+        long[] blocked = new long[(width * height + 63) >>> 6];
+        for (int cell = 0; cell < width * height; cell++) {
+            if (random.nextDouble() < density) {
+                blocked[cell >>> 6] |= 1L << cell;
+            }
+        }
+        return new VenueGrid(width, height, 1.0, 0, 0, blocked);
+    }
+
+    private static VenueGrid grid(int width, int height, int[][] blockedRects) {
+        long[] blocked = new long[(width * height + 63) >>> 6];
+        for (int[] rect : blockedRects) {
+            for (int y = rect[1]; y <= rect[3]; y++) {
+                for (int x = rect[0]; x <= rect[2]; x++) {
+                    int cell = y * width + x;
+                    blocked[cell >>> 6] |= 1L << cell;
+                }
+            }
+        }
+        return new VenueGrid(width, height, 0.5, 0, 0, blocked);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,177 @@
+package session;
+
+import com.navigation.system.infrastructure.session.SessionRegistry;
+import com.navigation.system.infrastructure.session.SessionRegistry.Admission;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Session registry test class.
+ * Tests lock-free admission under contention, idle expiry on the timing wheel and expiry cost at scale.
+ */
+class SessionRegistryTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Tests that concurrent admissions never exceed the capacity, duplicates are rejected and removal frees a slot.
+     */
+    @Test
+    void testConcurrentAdmission() throws Exception {
+        SessionRegistry<String> registry = new SessionRegistry<>(500, Duration.ofMinutes(30), Duration.ofSeconds(1));
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        AtomicInteger admitted = new AtomicInteger();
+        AtomicInteger full = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(2000);
+        for (int i = 0; i < 2000; i++) {
+            String id = "session-" + i;
+            executor.execute(() -> {
+                Admission admission = registry.admit(id, id);
+                (admission == Admission.ADMITTED ? admitted : full).incrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(500, admitted.get());
+        assertEquals(1500, full.get());
+        assertEquals(500, registry.size());
+        assertEquals(500, registry.sessionIds().size());
+
+        String first = registry.sessionIds().get(0);
+        assertEquals(Admission.FULL, registry.admit("late", "late"));
+        assertEquals(first, registry.remove(first));
+        assertNull(registry.remove(first));
+        assertEquals(Admission.DUPLICATE, registry.admit(registry.sessionIds().get(0), "again"));
+        assertEquals(Admission.ADMITTED, registry.admit("late", "late"));
+        assertEquals(500, registry.size());
+    }
+
+    /**
+     * Tests that idle sessions expire after the timeout while touched ones stay, and closed ones are not reported.
+     */
+    @Test
+    void testIdleExpiry() {
+        SessionRegistry<String> registry = registry(10, Duration.ofSeconds(60));
+        registry.admit("idle", "idle");
+        registry.admit("busy", "busy");
+        registry.admit("closed", "closed");
+        registry.remove("closed");
+
+        List<String> expired = new ArrayList<>();
+        for (int second = 1; second <= 59; second++) {
+            clock.addAndGet(SECOND);
+            registry.touch("busy");
+            registry.expire((id, session) -> expired.add(id));
+        }
+        assertTrue(expired.isEmpty());
+
+        clock.addAndGet(SECOND);
+        registry.expire((id, session) -> expired.add(id));
+        assertEquals(List.of("idle"), expired);
+        assertNull(registry.get("idle"));
+        assertEquals("busy", registry.get("busy"));
+
+        clock.addAndGet(60 * SECOND);
+        registry.expire((id, session) -> expired.add(id));
+        assertEquals(List.of("idle", "busy"), expired);
+        assertEquals(0, registry.size());
+    }
+
+    /**
+     * Tests against a brute-force model that random admissions, touches, removals and expiry passes
+     * expire exactly the sessions idle for the timeout, including timeouts spanning several wheel levels.
+     */
+    @Test
+    void testMatchesBruteForce() {
+        Random random = new Random(25);
+        for (long timeoutSeconds : new long[]{3, 100, 5000, 300_000}) {
+            SessionRegistry<Integer> registry = registry(1_000_000, Duration.ofSeconds(timeoutSeconds));
+            Map<Integer, Long> lastAccess = new HashMap<>();
+            int nextId = 0;
+            for (int step = 0; step < 3000; step++) {
+                clock.addAndGet(SECOND * random.nextInt((int) Math.min(timeoutSeconds, 500)));
+                int action = random.nextInt(4);
+                if (action == 0 || lastAccess.isEmpty()) {
+                    registry.admit("s" + nextId, nextId);
+                    lastAccess.put(nextId++, clock.get());
+                } else {
+                    int id = new ArrayList<>(lastAccess.keySet()).get(random.nextInt(lastAccess.size()));
+                    if (action == 1) {
+                        assertEquals(id, registry.remove("s" + id));
+                        lastAccess.remove(id);
+                    } else {
+                        assertEquals(id, registry.touch("s" + id));
+                        lastAccess.put(id, clock.get());
+                    }
+                }
+
+                Set<Integer> expired = new HashSet<>();
+                registry.expire((sessionId, session) -> assertTrue(expired.add(session)));
+                Set<Integer> expected = new HashSet<>();
+                lastAccess.entrySet().removeIf(entry -> {
+                    boolean idle = clock.get() - entry.getValue() >= timeoutSeconds * SECOND;
+                    if (idle) {
+                        expected.add(entry.getKey());
+                    }
+                    return idle;
+                });
+                assertEquals(expected, expired, "timeout " + timeoutSeconds + " step " + step);
+                assertEquals(lastAccess.size(), registry.size());
+            }
+        }
+    }
+
+    /**
+     * Tests that an expiry pass over many sessions only pays for the sessions that are due.
+     */
+    @Test
+    void testExpiryCostAtScale() {
+        SessionRegistry<Integer> registry = registry(100_000, Duration.ofMinutes(30));
+        for (int i = 0; i < 100_000; i++) {
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+            assertEquals(Admission.ADMITTED, registry.admit("s" + i, i));
+        }
+        clock.set(TimeUnit.MINUTES.toNanos(30) + TimeUnit.MILLISECONDS.toNanos(10) * 50_000);
+
+        AtomicInteger expired = new AtomicInteger();
+        for (int i = 0; i < 20; i++) {
+            registry.expire((id, session) -> expired.incrementAndGet());
+        }
+        long begin = System.nanoTime();
+        clock.addAndGet(SECOND);
+        int due = registry.expire((id, session) -> expired.incrementAndGet());
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        assertEquals(100, due);
+        assertEquals(50_100, expired.get());
+        assertEquals(49_900, registry.size());
+        assertTrue(elapsedMs < 50, "expiry pass took " + elapsedMs + " ms");
+    }
+
+    private <S> SessionRegistry<S> registry(int capacity, Duration idleTimeout) {
+        return new SessionRegistry<>(capacity, idleTimeout, Duration.ofSeconds(1), clock::get);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
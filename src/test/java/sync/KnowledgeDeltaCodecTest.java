@@ -0,0 +1,155 @@
+package sync;
+
+import com.navigation.system.infrastructure.sync.KnowledgeDelta;
+import com.navigation.system.infrastructure.sync.KnowledgeDeltaCodec;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Knowledge delta codec test class.
+ * Tests round trips across frame boundaries, compression, corruption detection and header limits.
+ */
+class KnowledgeDeltaCodecTest {
+
+    private static final int MAX_DIMENSION = 64;
+    private static final int MAX_CHUNKS = 1000;
+
+    /**
+     * Tests that a delta with multi-frame text and vector sections decodes to the same content.
+     */
+    @Test
+    void testRoundTrip() throws IOException {
+        KnowledgeDelta delta = newDelta(500, 64);
+        StringBuilder map = new StringBuilder("{\"regions\":[");
+        for (int i = 0; i < 20000; i++) {
+            map.append("{\"name\":\"A区").append(i).append("\",\"floor\":").append(i % 5).append("},");
+        }
+        delta.setVenueMapData(map.append("{}]}").toString());
+        delta.setRemovedIds(new long[]{3L, 1L << 33});
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = KnowledgeDeltaCodec.write(delta, out);
+        KnowledgeDelta decoded = read(out.toByteArray());
+
+        assertEquals(out.size(), written);
+        long raw = delta.getVenueMapData().getBytes(StandardCharsets.UTF_8).length + delta.getVectors().length * 4L;
+        assertTrue(written < raw / 2, "Repetitive map data is compressed");
+        assertEquals(delta.getKnowledgeBaseId(), decoded.getKnowledgeBaseId());
+        assertEquals("cloud", decoded.getSourceNode());
+        assertEquals("cloud:1", decoded.getBaseVersion());
+        assertEquals("cloud:2", decoded.getTargetVersion());
+        assertFalse(decoded.isFull());
+        assertEquals(delta.getVenueMapData(), decoded.getVenueMapData());
+        assertNull(decoded.getRuleText());
+        assertArrayEquals(delta.getChunkIds(), decoded.getChunkIds());
+        assertArrayEquals(delta.getContentHashes(), decoded.getContentHashes());
+        assertArrayEquals(delta.getVectors(), decoded.getVectors());
+        assertArrayEquals(delta.getRemovedIds(), decoded.getRemovedIds());
+    }
+
+    /**
+     * Tests that flipped bits and truncated payloads are rejected.
+     */
+    @Test
+    void testCorruptionDetected() throws IOException {
+        KnowledgeDelta delta = newDelta(50, 32);
+        delta.setRuleText("B区晚上十点后关闭。儿童须由成人陪同。");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        KnowledgeDeltaCodec.write(delta, out);
+        byte[] payload = out.toByteArray();
+
+        byte[] flipped = payload.clone();
+        flipped[flipped.length / 2] ^= 0x10;
+        assertThrows(IOException.class, () -> read(flipped));
+
+        byte[] truncated = Arrays.copyOf(payload, payload.length - 5);
+        assertThrows(IOException.class, () -> read(truncated));
+    }
+
+    /**
+     * Tests that a frame whose zlib header asks for a preset dictionary is rejected instead of
+     * inflating to zero bytes forever.
+     */
+    @Test
+    void testPresetDictionaryFrameRejected() throws IOException {
+        byte[] fields = new byte[64];
+        Deflater deflater = new Deflater();
+        deflater.setDictionary(new byte[]{1, 2, 3});
+        deflater.setInput(fields);
+        deflater.finish();
+        byte[] compressed = new byte[256];
+        int length = deflater.deflate(compressed);
+        deflater.end();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(KnowledgeDeltaCodec.MAGIC);
+        data.writeByte(KnowledgeDeltaCodec.FORMAT_VERSION);
+        data.writeByte(1);
+        data.writeInt(fields.length);
+        data.writeInt(length);
+        data.write(compressed, 0, length);
+        data.flush();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(3),
+                () -> assertThrows(IOException.class, () -> read(out.toByteArray())));
+    }
+
+    /**
+     * Tests that headers claiming more chunks or a larger dimension than accepted are rejected.
+     */
+    @Test
+    void testHeaderLimitsEnforced() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        KnowledgeDeltaCodec.write(newDelta(50, 32), out);
+        byte[] payload = out.toByteArray();
+
+        assertEquals(50, read(payload).getChunkIds().length);
+        assertThrows(IOException.class,
+                () -> KnowledgeDeltaCodec.read(new ByteArrayInputStream(payload), 16, MAX_CHUNKS));
+        assertThrows(IOException.class,
+                () -> KnowledgeDeltaCodec.read(new ByteArrayInputStream(payload), MAX_DIMENSION, 49));
+    }
+
+    private static KnowledgeDelta read(byte[] payload) throws IOException {
+        return KnowledgeDeltaCodec.read(new ByteArrayInputStream(payload), MAX_DIMENSION, MAX_CHUNKS);
+    }
+
+    private static KnowledgeDelta newDelta(int chunks, int dimension) {
+        Random random = new Random(42);
+        KnowledgeDelta delta = new KnowledgeDelta();
+        delta.setKnowledgeBaseId(9L);
+        delta.setSourceNode("cloud");
+        delta.setBaseVersion("cloud:1");
+        delta.setTargetVersion("cloud:2");
+        delta.setDimension(dimension);
+        long[] ids = new long[chunks];
+        long[] hashes = new long[chunks];
+        float[] vectors = new float[chunks * dimension];
+        for (int i = 0; i < chunks; i++) {
+            ids[i] = (9L << 32) | i;
+            hashes[i] = random.nextLong();
+        }
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (float) random.nextGaussian();
+        }
+        delta.setChunkIds(ids);
+        delta.setContentHashes(hashes);
+        delta.setVectors(vectors);
+        return delta;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
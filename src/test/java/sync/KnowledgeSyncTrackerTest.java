@@ -0,0 +1,105 @@
+package sync;
+
+import com.navigation.system.infrastructure.sync.ChunkManifest;
+import com.navigation.system.infrastructure.sync.KnowledgeDelta;
+import com.navigation.system.infrastructure.sync.KnowledgeSyncTracker;
+import com.navigation.system.infrastructure.sync.VersionVector;
+import com.navigation.system.infrastructure.vector.HashingTextEmbedder;
+import com.navigation.system.infrastructure.vector.KnowledgeChunker;
+import com.navigation.system.infrastructure.vector.TextEmbedder;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Knowledge sync tracker test class.
+ * Tests version vectors, manifest diffs and delta planning and application between two nodes.
+ */
+class KnowledgeSyncTrackerTest {
+
+    private static final TextEmbedder EMBEDDER = new HashingTextEmbedder(64);
+    private static final KnowledgeChunker CHUNKER = new KnowledgeChunker(128, 16);
+    private static final String EDGE = "http://edge-1";
+
+    private static final String MAP_DATA = "{\"regions\":[{\"name\":\"A区\",\"floor\":1},{\"name\":\"B区\",\"floor\":2}]}";
+    private static final String RULES = "B区晚上十点后关闭。儿童须由成人陪同。No pets allowed.";
+
+    /**
+     * Tests version vector ordering and its text encoding.
+     */
+    @Test
+    void testVersionVector() {
+        VersionVector cloud = VersionVector.empty().increment("cloud");
+        VersionVector both = cloud.increment("edge");
+        VersionVector forked = cloud.increment("cloud");
+
+        assertEquals(VersionVector.Ordering.BEFORE, cloud.compare(both));
+        assertEquals(VersionVector.Ordering.AFTER, both.compare(cloud));
+        assertEquals(VersionVector.Ordering.CONCURRENT, both.compare(forked));
+        assertEquals(VersionVector.Ordering.EQUAL, both.merge(forked).compare(forked.merge(both)));
+        assertEquals(both, VersionVector.parse(both.encode()));
+        assertEquals("cloud:1,edge:1", both.encode());
+        assertThrows(IllegalArgumentException.class, () -> cloud.increment("a:b"));
+    }
+
+    /**
+     * Tests that an unknown peer gets a full delta and a known one only the changed chunks and fields.
+     */
+    @Test
+    void testDeltaCarriesOnlyChanges() {
+        KnowledgeSyncTracker cloud = new KnowledgeSyncTracker("cloud");
+        cloud.recordLocalChange(1L, MAP_DATA, RULES, CHUNKER.chunk(1L, MAP_DATA, RULES));
+
+        KnowledgeDelta full = cloud.planDelta(EDGE, 1L, MAP_DATA, RULES, CHUNKER.chunk(1L, MAP_DATA, RULES), EMBEDDER);
+        assertTrue(full.isFull());
+        assertEquals(cloud.current(1L).size(), full.getChunkIds().length);
+        assertEquals(full.getChunkIds().length * EMBEDDER.getDimension(), full.getVectors().length);
+        cloud.acknowledge(EDGE);
+
+        String rules = "B区晚上十一点后关闭。儿童须由成人陪同。No pets allowed.";
+        cloud.recordLocalChange(1L, MAP_DATA, rules, CHUNKER.chunk(1L, MAP_DATA, rules));
+        KnowledgeDelta partial = cloud.planDelta(EDGE, 1L, MAP_DATA, rules, CHUNKER.chunk(1L, MAP_DATA, rules), EMBEDDER);
+
+        assertFalse(partial.isFull());
+        assertEquals("cloud:1", partial.getBaseVersion());
+        assertEquals("cloud:2", partial.getTargetVersion());
+        assertEquals(1, partial.getChunkIds().length);
+        assertEquals(1, partial.getRemovedIds().length);
+        assertNull(partial.getVenueMapData());
+        assertEquals(rules, partial.getRuleText());
+
+        cloud.reject(EDGE);
+        assertTrue(cloud.planDelta(EDGE, 1L, MAP_DATA, rules, CHUNKER.chunk(1L, MAP_DATA, rules), EMBEDDER).isFull());
+    }
+
+    /**
+     * Tests that applied deltas leave the receiver with the sender's manifest and that a delta
+     * planned against another base is refused.
+     */
+    @Test
+    void testApplyAndConflict() {
+        KnowledgeSyncTracker cloud = new KnowledgeSyncTracker("cloud");
+        KnowledgeSyncTracker edge = new KnowledgeSyncTracker("edge");
+        cloud.recordLocalChange(1L, MAP_DATA, RULES, CHUNKER.chunk(1L, MAP_DATA, RULES));
+
+        KnowledgeDelta full = cloud.planDelta(EDGE, 1L, MAP_DATA, RULES, CHUNKER.chunk(1L, MAP_DATA, RULES), EMBEDDER);
+        edge.checkApplicable(full);
+        edge.recordRemoteDelta(full);
+        cloud.acknowledge(EDGE);
+
+        String map = "{\"regions\":[{\"name\":\"A区\",\"floor\":1},{\"name\":\"C区\",\"floor\":3}]}";
+        cloud.recordLocalChange(1L, map, RULES, CHUNKER.chunk(1L, map, RULES));
+        KnowledgeDelta partial = cloud.planDelta(EDGE, 1L, map, RULES, CHUNKER.chunk(1L, map, RULES), EMBEDDER);
+        edge.checkApplicable(partial);
+        ChunkManifest applied = edge.recordRemoteDelta(partial);
+
+        assertEquals(cloud.current(1L).getVersion(), applied.getVersion());
+        assertTrue(cloud.current(1L).diff(applied).isEmpty());
+
+        edge.recordLocalChange(1L, map, RULES, CHUNKER.chunk(1L, map, RULES));
+        assertThrows(IllegalStateException.class, () -> edge.checkApplicable(partial));
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,160 @@
+package sync;
+
+import com.navigation.system.infrastructure.sync.NodeSyncDispatcher;
+import com.navigation.system.infrastructure.sync.SyncStatusStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Node sync dispatcher test class.
+ * Tests concurrent fan-out, retries with backoff, coalescing and batched status writes.
+ */
+class NodeSyncDispatcherTest {
+
+    private final RecordingStatusStore statusStore = new RecordingStatusStore();
+    private NodeSyncDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    /**
+     * Tests that slow nodes are synced concurrently, so the fan-out takes about one node's time.
+     */
+    @Test
+    void testFanOutRunsNodesConcurrently() throws Exception {
+        dispatcher = newDispatcher(nodes(20), 3);
+        CountDownLatch delivered = new CountDownLatch(20);
+
+        long start = System.nanoTime();
+        int queued = dispatcher.dispatch(7L, (node, id) -> {
+            Thread.sleep(200);
+            delivered.countDown();
+            return true;
+        });
+        assertEquals(20, queued);
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+
+        assertTrue(statusStore.synced.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(7L), statusStore.calls.get("SYNCED"));
+    }
+
+    /**
+     * Tests that a failing node is retried until it accepts, without holding back the others.
+     */
+    @Test
+    void testFailedDeliveryIsRetried() throws Exception {
+        dispatcher = newDispatcher(new String[]{"http://edge-1", "http://edge-2"}, 5);
+        Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+        dispatcher.dispatch(3L, (node, id) -> {
+            int attempt = attempts.computeIfAbsent(node, n -> new AtomicInteger()).incrementAndGet();
+            if (node.endsWith("2") && attempt < 3) {
+                throw new IllegalStateException("Connection refused");
+            }
+            return true;
+        });
+
+        assertTrue(statusStore.synced.await(5, TimeUnit.SECONDS));
+        assertEquals(1, attempts.get("http://edge-1").get());
+        assertEquals(3, attempts.get("http://edge-2").get());
+        assertNull(statusStore.calls.get("FAILED"));
+    }
+
+    /**
+     * Tests that a node that keeps failing marks the row failed after the retry budget.
+     */
+    @Test
+    void testExhaustedRetriesMarkFailed() throws Exception {
+        dispatcher = newDispatcher(new String[]{"http://edge-1", "http://edge-2"}, 3);
+        AtomicInteger attempts = new AtomicInteger();
+
+        dispatcher.dispatch(5L, (node, id) -> !node.endsWith("2") || attempts.incrementAndGet() < 0);
+
+        assertTrue(statusStore.failed.await(5, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+        assertEquals(List.of(5L), statusStore.calls.get("FAILED"));
+    }
+
+    /**
+     * Tests that a row already waiting for a node is not queued for it again.
+     */
+    @Test
+    void testQueuedRowIsCoalesced() throws Exception {
+        dispatcher = newDispatcher(new String[]{"http://edge-1"}, 3);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger deliveries = new AtomicInteger();
+        NodeSyncDispatcher.Transport blocking = (node, id) -> {
+            deliveries.incrementAndGet();
+            return release.await(5, TimeUnit.SECONDS);
+        };
+
+        assertEquals(1, dispatcher.dispatch(1L, blocking));
+        // Wait until the first delivery is in flight so the next one is queued behind it
+        while (deliveries.get() == 0) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, dispatcher.dispatch(1L, blocking));
+        assertEquals(0, dispatcher.dispatch(1L, blocking));
+        release.countDown();
+
+        assertTrue(statusStore.synced.await(5, TimeUnit.SECONDS));
+        assertEquals(2, deliveries.get());
+    }
+
+    private NodeSyncDispatcher newDispatcher(String[] nodes, int maxAttempts) {
+        return new NodeSyncDispatcher(statusStore, nodes, 64, 16, maxAttempts, 10, 40, 0);
+    }
+
+    private static String[] nodes(int count) {
+        String[] nodes = new String[count];
+        for (int i = 0; i < count; i++) {
+            nodes[i] = "http://edge-" + i;
+        }
+        return nodes;
+    }
+
+    private static final class RecordingStatusStore implements SyncStatusStore {
+        final Map<String, List<Long>> calls = new ConcurrentHashMap<>();
+        final CountDownLatch synced = new CountDownLatch(1);
+        final CountDownLatch failed = new CountDownLatch(1);
+
+        @Override
+        public void markSyncing(List<Long> knowledgeBaseIds) {
+            record("SYNCING", knowledgeBaseIds);
+        }
+
+        @Override
+        public void markSynced(List<Long> knowledgeBaseIds) {
+            record("SYNCED", knowledgeBaseIds);
+            synced.countDown();
+        }
+
+        @Override
+        public void markFailed(List<Long> knowledgeBaseIds) {
+            record("FAILED", knowledgeBaseIds);
+            failed.countDown();
+        }
+
+        private void record(String status, List<Long> knowledgeBaseIds) {
+            calls.computeIfAbsent(status, s -> new CopyOnWriteArrayList<>()).addAll(knowledgeBaseIds);
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
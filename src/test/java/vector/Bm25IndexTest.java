@@ -0,0 +1,96 @@
+package vector;
+
+import com.navigation.system.infrastructure.vector.Bm25Index;
+import com.navigation.system.infrastructure.vector.RankFusion;
+import com.navigation.system.infrastructure.vector.SearchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BM25 keyword index test class.
+ * Tests exact code matching, CJK matching, replacement and removal, and reciprocal rank fusion.
+ */
+class Bm25IndexTest {
+
+    private static final long[] IDS = {11L, 12L, 13L, 14L};
+
+    private static final String[] TEXTS = {
+            "Room A3-05 is next to gate G7 on the third floor.",
+            "Room A3-06 is the lost and found office.",
+            "吸烟区位于B2停车场出口。",
+            "Pets are not allowed in room B1-02 or the food court."
+    };
+
+    /**
+     * Tests that room numbers and gate codes match as whole terms and rank the right chunk first.
+     */
+    @Test
+    void testExactCodeMatch() {
+        Bm25Index index = buildIndex();
+
+        SearchResult result = index.search("A3-05 entrance", 3);
+        assertEquals(11L, result.getId(0));
+        assertEquals(1, result.size(), "A3-06 must not match A3-05");
+        assertEquals(11L, index.search("G7", 3).getId(0));
+        assertEquals(0, index.search("", 3).size());
+    }
+
+    /**
+     * Tests that CJK queries match through bigrams.
+     */
+    @Test
+    void testCjkMatch() {
+        Bm25Index index = buildIndex();
+
+        SearchResult result = index.search("吸烟区在哪里", 2);
+        assertEquals(13L, result.getId(0));
+        assertEquals(1, result.size());
+    }
+
+    /**
+     * Tests that re-adding an id replaces its text and that removals survive compaction.
+     */
+    @Test
+    void testReplaceAndRemove() {
+        Bm25Index index = buildIndex();
+
+        index.add(new long[]{12L}, Arrays.asList("Room C4-01 is the first aid station."));
+        assertEquals(0, index.search("A3-06", 3).size());
+        assertEquals(12L, index.search("c4-01", 3).getId(0));
+        assertEquals(4, index.size());
+
+        assertEquals(2, index.remove(new long[]{11L, 14L, 99L}));
+        assertEquals(2, index.size());
+        assertEquals(0, index.search("A3-05", 3).size());
+        assertEquals(13L, index.search("B2 吸烟", 3).getId(0));
+        assertEquals(12L, index.search("first aid", 3).getId(0));
+    }
+
+    /**
+     * Tests that an id ranked by both lists wins fusion and that scores follow 1 / (60 + rank).
+     */
+    @Test
+    void testReciprocalRankFusion() {
+        SearchResult keyword = new SearchResult(new long[]{1L, 2L}, new float[]{9f, 3f});
+        SearchResult vector = new SearchResult(new long[]{3L, 2L, 4L}, new float[]{0.9f, 0.8f, 0.7f});
+
+        SearchResult fused = RankFusion.reciprocalRank(3, keyword, vector);
+        assertEquals(3, fused.size());
+        assertEquals(2L, fused.getId(0));
+        assertEquals(1f / 62 + 1f / 62, fused.getScore(0), 1e-6f);
+        assertEquals(1f / 61, fused.getScore(1), 1e-6f);
+        assertEquals(0, RankFusion.reciprocalRank(3).size());
+    }
+
+    private static Bm25Index buildIndex() {
+        Bm25Index index = new Bm25Index();
+        index.add(IDS, Arrays.asList(TEXTS));
+        return index;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,141 @@
+package vector;
+
+import com.navigation.system.infrastructure.vector.AttributeFilter;
+import com.navigation.system.infrastructure.vector.ChunkAttributeIndex;
+import com.navigation.system.infrastructure.vector.IvfFlatIndex;
+import com.navigation.system.infrastructure.vector.KnowledgeChunk;
+import com.navigation.system.infrastructure.vector.KnowledgeChunker;
+import com.navigation.system.infrastructure.vector.MetricType;
+import com.navigation.system.infrastructure.vector.SearchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Chunk attribute index test class.
+ * Tests attribute extraction from chunk text, filter compilation, removal with compaction and pre-filtered search.
+ */
+class ChunkAttributeIndexTest {
+
+    private static final String MAP_DATA = "{\"regions\":["
+            + "{\"name\":\"A区\",\"floor\":1},"
+            + "{\"name\":\"停车场\",\"floor\":\"B1\"},"
+            + "{\"name\":\"服务台\",\"zone\":\"c\",\"accessible\":true},"
+            + "{\"name\":\"Food court\",\"floor\":3}]}";
+
+    private static final String RULES = "2F B区无障碍卫生间全天开放。3楼禁止吸烟。Wheelchairs are available at the north gate.";
+
+    /**
+     * Tests that floors, basements, zones, accessibility and sources are extracted and AND-ed.
+     */
+    @Test
+    void testAttributeExtraction() {
+        List<KnowledgeChunk> chunks = chunks(7L, MAP_DATA, RULES);
+        ChunkAttributeIndex index = new ChunkAttributeIndex();
+        index.add(chunks.iterator());
+
+        assertEquals(chunks.size(), index.size());
+        assertEquals(chunks.size(), index.count(AttributeFilter.any().ofKnowledgeBase(7L)));
+        assertEquals(0, index.count(AttributeFilter.any().ofKnowledgeBase(8L)));
+        assertEquals(1, index.count(AttributeFilter.any().onFloor(-1)));
+        assertEquals(2, index.count(AttributeFilter.any().onFloor(3)));
+        assertEquals(1, index.count(AttributeFilter.any().onFloor(3).from(KnowledgeChunk.Source.RULE_CLAUSE)));
+        assertEquals(1, index.count(AttributeFilter.any().inZone("C区")));
+        assertEquals(1, index.count(AttributeFilter.any().inZone("b").onFloor(2).accessibleOnly()));
+        assertEquals(3, index.count(AttributeFilter.any().accessibleOnly()));
+        assertEquals(0, index.count(AttributeFilter.any().onFloor(9)));
+    }
+
+    /**
+     * Tests that removed and replaced chunks stop matching, also after the bitmaps are compacted.
+     */
+    @Test
+    void testRemoveAndCompact() {
+        List<KnowledgeChunk> chunks = chunks(7L, MAP_DATA, RULES);
+        ChunkAttributeIndex index = new ChunkAttributeIndex();
+        index.add(chunks.iterator());
+
+        long[] removed = new long[chunks.size() / 2];
+        for (int i = 0; i < removed.length; i++) {
+            removed[i] = chunks.get(i).getId();
+        }
+        assertEquals(removed.length, index.remove(removed));
+        assertEquals(0, index.remove(removed));
+        assertEquals(chunks.size() - removed.length, index.size());
+        assertEquals(0, index.count(AttributeFilter.any().onFloor(-1)));
+        assertEquals(0, index.count(AttributeFilter.any().inZone("C")));
+        assertEquals(2, index.count(AttributeFilter.any().onFloor(3)));
+
+        index.add(chunks.iterator());
+        assertEquals(chunks.size(), index.size());
+        assertEquals(1, index.count(AttributeFilter.any().onFloor(-1).ofKnowledgeBase(7L)));
+        assertEquals(2, index.count(AttributeFilter.any().onFloor(3)));
+    }
+
+    /**
+     * Tests that a filtered search returns k matching chunks even though the nearest unfiltered
+     * neighbours almost never match, and that a filter matching nothing skips the search.
+     */
+    @Test
+    void testFilteredSearchReturnsK() {
+        int dimension = 16;
+        List<KnowledgeChunk> chunks = new ArrayList<>();
+        for (int floor = 1; floor <= 40; floor++) {
+            StringBuilder rules = new StringBuilder();
+            for (int room = 0; room < 25; room++) {
+                rules.append(floor).append("楼第").append(room).append("号房间。");
+            }
+            chunks.addAll(chunks(1L, null, rules.toString()));
+        }
+        long[] ids = new long[chunks.size()];
+        float[] vectors = new float[chunks.size() * dimension];
+        Random random = new Random(3);
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = chunks.get(i).getId();
+            for (int j = 0; j < dimension; j++) {
+                vectors[i * dimension + j] = (float) random.nextGaussian();
+            }
+        }
+        IvfFlatIndex vectorIndex = new IvfFlatIndex(dimension, MetricType.L2, 16, 2, 256);
+        vectorIndex.train(vectors, ids.length);
+        vectorIndex.add(ids, vectors);
+        ChunkAttributeIndex index = new ChunkAttributeIndex();
+        index.add(chunks.iterator());
+
+        float[] query = new float[dimension];
+        AttributeFilter filter = AttributeFilter.any().onFloor(17);
+        SearchResult result = index.search(filter, vectorFilter -> vectorIndex.search(query, 10, vectorFilter));
+        assertEquals(10, result.size());
+        for (int i = 0; i < result.size(); i++) {
+            assertTrue(chunkOf(chunks, result.getId(i)).getText().startsWith("17楼"));
+        }
+        SearchResult none = index.search(AttributeFilter.any().onFloor(41), vectorFilter -> {
+            throw new AssertionError("search must be skipped");
+        });
+        assertEquals(0, none.size());
+    }
+
+    private static KnowledgeChunk chunkOf(List<KnowledgeChunk> chunks, long id) {
+        for (KnowledgeChunk chunk : chunks) {
+            if (chunk.getId() == id) {
+                return chunk;
+            }
+        }
+        throw new AssertionError("unknown chunk " + id);
+    }
+
+    private static List<KnowledgeChunk> chunks(long knowledgeBaseId, String mapData, String rules) {
+        List<KnowledgeChunk> chunks = new ArrayList<>();
+        Iterator<KnowledgeChunk> iterator = new KnowledgeChunker(128, 16).chunk(knowledgeBaseId, mapData, rules);
+        iterator.forEachRemaining(chunks::add);
+        return chunks;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
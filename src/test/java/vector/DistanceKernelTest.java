@@ -0,0 +1,79 @@
+package vector;
+
+import com.navigation.system.infrastructure.vector.DistanceKernel;
+import com.navigation.system.infrastructure.vector.DistanceKernels;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Distance kernel test class.
+ * Tests that every kernel agrees with a double precision reference on arrays and off-heap buffers.
+ */
+class DistanceKernelTest {
+
+    private static final int[] DIMENSIONS = {1, 3, 4, 7, 8, 15, 16, 17, 31, 64, 100, 512, 768, 771};
+
+    /**
+     * Tests the scalar kernel against a double precision reference.
+     */
+    @Test
+    void testScalarKernelMatchesReference() {
+        assertKernelMatchesReference(DistanceKernels.scalar());
+    }
+
+    /**
+     * Tests the Vector API kernel when the running JVM provides it.
+     */
+    @Test
+    void testVectorizedKernelMatchesReference() {
+        DistanceKernel kernel = DistanceKernels.vectorized();
+        assumeTrue(kernel != null, "Vector API kernel unavailable on this JVM");
+        assertKernelMatchesReference(kernel);
+    }
+
+    /**
+     * Tests that a kernel is always selected and is one of the available implementations.
+     */
+    @Test
+    void testSelectedKernelIsAvailable() {
+        DistanceKernel selected = DistanceKernels.selected();
+        assertNotNull(selected);
+        assertTrue(selected == DistanceKernels.scalar() || selected == DistanceKernels.vectorized());
+    }
+
+    private static void assertKernelMatchesReference(DistanceKernel kernel) {
+        Random random = new Random(5L);
+        for (int dimension : DIMENSIONS) {
+            int aOffset = 3;
+            int bOffset = 5;
+            float[] a = new float[aOffset + dimension];
+            float[] b = new float[bOffset + dimension];
+            ByteBuffer buffer = ByteBuffer.allocateDirect((bOffset + dimension) * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            double dot = 0;
+            double l2 = 0;
+            for (int i = 0; i < dimension; i++) {
+                a[aOffset + i] = (float) random.nextGaussian();
+                b[bOffset + i] = (float) random.nextGaussian();
+                buffer.putFloat((bOffset + i) * Float.BYTES, b[bOffset + i]);
+                dot += (double) a[aOffset + i] * b[bOffset + i];
+                double d = (double) a[aOffset + i] - b[bOffset + i];
+                l2 += d * d;
+            }
+            double tolerance = 1e-4 * Math.max(1, dimension);
+            String context = kernel.name() + " dimension " + dimension;
+            assertEquals(dot, kernel.dot(a, aOffset, b, bOffset, dimension), tolerance, context);
+            assertEquals(l2, kernel.l2Squared(a, aOffset, b, bOffset, dimension), tolerance, context);
+            assertEquals(dot, kernel.dot(a, aOffset, buffer, bOffset * Float.BYTES, dimension), tolerance, context);
+            assertEquals(l2, kernel.l2Squared(a, aOffset, buffer, bOffset * Float.BYTES, dimension), tolerance, context);
+        }
+    }
+}
+
+
+// 内容由AI生成，仅供参考
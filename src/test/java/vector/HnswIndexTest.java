@@ -0,0 +1,196 @@
+package vector;
+
+import com.navigation.system.infrastructure.vector.HnswIndex;
+import com.navigation.system.infrastructure.vector.IndexRecallEvaluator;
+import com.navigation.system.infrastructure.vector.IvfFlatIndex;
+import com.navigation.system.infrastructure.vector.MetricType;
+import com.navigation.system.infrastructure.vector.SearchResult;
+import com.navigation.system.infrastructure.vector.VectorFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HNSW vector index test class.
+ * Tests graph recall against exhaustive search, rebuilding without deleted nodes and concurrent insert/search behaviour.
+ */
+class HnswIndexTest {
+
+    private static final int DIMENSION = 32;
+    private static final int VECTOR_COUNT = 3000;
+
+    private float[] vectors;
+    private long[] ids;
+
+    /**
+     * Test setup.
+     * Generates a reproducible random corpus.
+     */
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(7);
+        vectors = new float[VECTOR_COUNT * DIMENSION];
+        ids = new long[VECTOR_COUNT];
+        for (int i = 0; i < VECTOR_COUNT; i++) {
+            ids[i] = 5000L + i;
+            for (int j = 0; j < DIMENSION; j++) {
+                vectors[i * DIMENSION + j] = (float) random.nextGaussian();
+            }
+        }
+    }
+
+    /**
+     * Tests recall@10 against an exhaustive IVF_FLAT scan (nprobe = nlist).
+     */
+    @Test
+    void testRecallAgainstExhaustiveSearch() {
+        for (MetricType metric : MetricType.values()) {
+            IvfFlatIndex exact = new IvfFlatIndex(DIMENSION, metric, 1, 1, 512);
+            exact.train(vectors, VECTOR_COUNT);
+            exact.add(ids, vectors);
+            HnswIndex hnsw = new HnswIndex(DIMENSION, metric, 16, 100, 64);
+            hnsw.add(ids, vectors);
+
+            assertEquals(VECTOR_COUNT, hnsw.size());
+            float[] queries = IndexRecallEvaluator.sampleQueries(vectors, VECTOR_COUNT, DIMENSION, 100, 3L);
+            double recall = IndexRecallEvaluator.recallAtK(exact, hnsw, queries, 100, 10);
+            assertTrue(recall > 0.9, metric + " recall@10 too low: " + recall);
+        }
+    }
+
+    /**
+     * Tests that a filter accepting one node in a hundred still yields k accepted results close to
+     * the exhaustive filtered top-k, and that a tiny filter returns every node it accepts.
+     */
+    @Test
+    void testFilteredSearchExpandsThroughRejectedNodes() {
+        HnswIndex hnsw = new HnswIndex(DIMENSION, MetricType.L2, 16, 100, 32);
+        hnsw.add(ids, vectors);
+        IvfFlatIndex exact = new IvfFlatIndex(DIMENSION, MetricType.L2, 1, 1, 512);
+        exact.train(vectors, VECTOR_COUNT);
+        exact.add(ids, vectors);
+        VectorFilter sparse = stepFilter(100, VECTOR_COUNT / 100);
+
+        float[] queries = IndexRecallEvaluator.sampleQueries(vectors, VECTOR_COUNT, DIMENSION, 20, 5L);
+        int hits = 0;
+        for (int q = 0; q < 20; q++) {
+            float[] query = Arrays.copyOfRange(queries, q * DIMENSION, (q + 1) * DIMENSION);
+            SearchResult result = hnsw.search(query, 10, sparse);
+            assertEquals(10, result.size());
+            List<Long> expected = new ArrayList<>();
+            for (long id : exact.search(query, 10, sparse).getIds()) {
+                expected.add(id);
+            }
+            for (int i = 0; i < result.size(); i++) {
+                assertTrue(sparse.accepts(result.getId(i)));
+                hits += expected.contains(result.getId(i)) ? 1 : 0;
+            }
+        }
+        assertTrue(hits >= 180, "filtered recall@10 too low: " + hits / 200.0);
+        assertEquals(2, hnsw.search(Arrays.copyOf(queries, DIMENSION), 10, stepFilter(1500, 2)).size());
+    }
+
+    /**
+     * Tests that rebuilding drops deleted nodes, keeps the live ones searchable and keeps recall.
+     */
+    @Test
+    void testRebuildDropsDeletedNodes() {
+        HnswIndex hnsw = new HnswIndex(DIMENSION, MetricType.L2, 16, 100, 64);
+        hnsw.add(ids, vectors);
+        long[] removed = Arrays.copyOf(ids, VECTOR_COUNT / 2);
+        assertEquals(removed.length, hnsw.remove(removed));
+        assertEquals(removed.length, hnsw.deletedCount());
+        assertEquals(0, hnsw.compact());
+
+        HnswIndex rebuilt = hnsw.rebuild();
+        assertEquals(VECTOR_COUNT - removed.length, rebuilt.size());
+        assertEquals(0, rebuilt.deletedCount());
+        assertTrue(rebuilt.ramBytesUsed() < hnsw.ramBytesUsed());
+        assertEquals(hnsw.getEfSearch(), rebuilt.getEfSearch());
+
+        float[] live = Arrays.copyOfRange(vectors, removed.length * DIMENSION, VECTOR_COUNT * DIMENSION);
+        IvfFlatIndex exact = new IvfFlatIndex(DIMENSION, MetricType.L2, 1, 1, 512);
+        exact.train(live, VECTOR_COUNT - removed.length);
+        exact.add(Arrays.copyOfRange(ids, removed.length, VECTOR_COUNT), live);
+        float[] queries = IndexRecallEvaluator.sampleQueries(live, VECTOR_COUNT - removed.length, DIMENSION, 100, 3L);
+        double recall = IndexRecallEvaluator.recallAtK(exact, rebuilt, queries, 100, 10);
+        assertTrue(recall > 0.9, "recall@10 after rebuild too low: " + recall);
+    }
+
+    private static VectorFilter stepFilter(int step, long cardinality) {
+        return new VectorFilter() {
+            @Override
+            public boolean accepts(long id) {
+                return (id - 5000L) % step == 0;
+            }
+
+            @Override
+            public long cardinality() {
+                return cardinality;
+            }
+        };
+    }
+
+    /**
+     * Tests that concurrent inserts from several threads keep every vector reachable while searches run.
+     */
+    @Test
+    void testConcurrentInsertAndSearch() throws Exception {
+        HnswIndex hnsw = new HnswIndex(DIMENSION, MetricType.L2, 12, 80, 48);
+        int threads = 4;
+        int perThread = VECTOR_COUNT / threads;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int from = t * perThread;
+                futures.add(executor.submit(() -> {
+                    for (int i = from; i < from + perThread; i += 50) {
+                        int n = Math.min(50, from + perThread - i);
+                        long[] batchIds = new long[n];
+                        float[] batch = new float[n * DIMENSION];
+                        System.arraycopy(ids, i, batchIds, 0, n);
+                        System.arraycopy(vectors, i * DIMENSION, batch, 0, n * DIMENSION);
+                        hnsw.add(batchIds, batch);
+                    }
+                }));
+            }
+            futures.add(executor.submit(() -> {
+                float[] query = new float[DIMENSION];
+                for (int q = 0; q < 500; q++) {
+                    System.arraycopy(vectors, (q % VECTOR_COUNT) * DIMENSION, query, 0, DIMENSION);
+                    assertTrue(hnsw.search(query, 5).size() <= 5);
+                }
+            }));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals((long) threads * perThread, hnsw.size());
+        int hits = 0;
+        float[] query = new float[DIMENSION];
+        for (int q = 0; q < 200; q++) {
+            System.arraycopy(vectors, q * DIMENSION, query, 0, DIMENSION);
+            SearchResult result = hnsw.search(query, 1);
+            if (result.size() == 1 && result.getId(0) == ids[q]) {
+                hits++;
+            }
+        }
+        assertTrue(hits >= 190, "Stored vectors should find themselves, hits: " + hits);
+    }
+}
+
+
+// 内容由AI生成，仅供参考
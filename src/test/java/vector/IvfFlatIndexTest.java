@@ -0,0 +1,333 @@
+package vector;
+
+import com.navigation.system.infrastructure.vector.BuildExecutor;
+import com.navigation.system.infrastructure.vector.IndexRecallEvaluator;
+import com.navigation.system.infrastructure.vector.IvfFlatIndex;
+import com.navigation.system.infrastructure.vector.IvfPqIndex;
+import com.navigation.system.infrastructure.vector.KMeansTrainer;
+import com.navigation.system.infrastructure.vector.MappedIvfFlatIndex;
+import com.navigation.system.infrastructure.vector.MetricType;
+import com.navigation.system.infrastructure.vector.SearchResult;
+import com.navigation.system.infrastructure.vector.VectorFilter;
+import com.navigation.system.infrastructure.vector.VectorIndex;
+import com.navigation.system.infrastructure.vector.VectorIndexFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * IVF_FLAT vector index test class.
+ * Tests training, insertion and top-k retrieval of the in-process index.
+ */
+class IvfFlatIndexTest {
+
+    private static final int DIMENSION = 32;
+    private static final int VECTOR_COUNT = 2000;
+    private static final int NLIST = 16;
+
+    private float[] vectors;
+    private long[] ids;
+
+    /**
+     * Test setup.
+     * Generates a reproducible random corpus.
+     */
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(42);
+        vectors = new float[VECTOR_COUNT * DIMENSION];
+        ids = new long[VECTOR_COUNT];
+        for (int i = 0; i < VECTOR_COUNT; i++) {
+            ids[i] = 1000L + i;
+            for (int j = 0; j < DIMENSION; j++) {
+                vectors[i * DIMENSION + j] = (float) random.nextGaussian();
+            }
+        }
+    }
+
+    /**
+     * Tests that a stored vector is its own nearest neighbour under L2.
+     */
+    @Test
+    void testExactMatchIsTopResult() {
+        IvfFlatIndex index = new IvfFlatIndex(DIMENSION, MetricType.L2, NLIST, 4, 256);
+        index.train(vectors, VECTOR_COUNT);
+        index.add(ids, vectors);
+
+        assertEquals(VECTOR_COUNT, index.size());
+        for (int q = 0; q < 50; q++) {
+            float[] query = new float[DIMENSION];
+            System.arraycopy(vectors, q * DIMENSION, query, 0, DIMENSION);
+            SearchResult result = index.search(query, 5);
+            assertEquals(5, result.size(), "Search should return k results");
+            assertEquals(ids[q], result.getId(0), "Query vector should be its own nearest neighbour");
+            assertEquals(0f, result.getScore(0), 1e-5f, "Self distance should be zero");
+        }
+    }
+
+    /**
+     * Tests that results are ordered from most to least similar.
+     */
+    @Test
+    void testResultsAreOrdered() {
+        IvfFlatIndex index = new IvfFlatIndex(DIMENSION, MetricType.INNER_PRODUCT, NLIST, NLIST, 100);
+        index.train(vectors, VECTOR_COUNT);
+        index.add(ids, vectors);
+
+        SearchResult result = index.search(new float[DIMENSION], 1);
+        assertEquals(1, result.size());
+
+        float[] query = new float[DIMENSION];
+        query[0] = 1f;
+        result = index.search(query, 20);
+        for (int i = 1; i < result.size(); i++) {
+            assertTrue(result.getScore(i - 1) >= result.getScore(i), "Inner product scores should be descending");
+        }
+    }
+
+    /**
+     * Tests that nlist is reduced when fewer vectors than clusters are available.
+     */
+    @Test
+    void testSmallCorpusReducesNlist() {
+        float[] firstThree = new float[3 * DIMENSION];
+        System.arraycopy(vectors, 0, firstThree, 0, firstThree.length);
+
+        IvfFlatIndex index = new IvfFlatIndex(DIMENSION, MetricType.L2, NLIST, 4, 10);
+        index.train(firstThree, 3);
+        assertEquals(3, index.getNlist());
+        index.add(new long[]{1L, 2L, 3L}, firstThree);
+        assertEquals(3, index.search(new float[DIMENSION], 10).size());
+    }
+
+    /**
+     * Tests that a persisted index mapped from disk returns the same results as the heap index.
+     */
+    @Test
+    void testMappedIndexMatchesHeapIndex(@TempDir Path tempDir) throws IOException {
+        IvfFlatIndex index = new IvfFlatIndex(DIMENSION, MetricType.L2, NLIST, 4, 256);
+        index.train(vectors, VECTOR_COUNT);
+        index.add(ids, vectors);
+
+        Path file = tempDir.resolve("venue" + VectorIndexFile.FILE_EXTENSION);
+        VectorIndexFile.write(index, file);
+        assertTrue(Files.size(file) > (long) VECTOR_COUNT * DIMENSION * Float.BYTES);
+
+        MappedIvfFlatIndex mapped = VectorIndexFile.open(file);
+        assertEquals(index.size(), mapped.size());
+        assertEquals(index.getNlist(), mapped.getNlist());
+        for (int q = 0; q < 20; q++) {
+            float[] query = new float[DIMENSION];
+            System.arraycopy(vectors, q * DIMENSION, query, 0, DIMENSION);
+            SearchResult expected = index.search(query, 10);
+            SearchResult actual = mapped.search(query, 10);
+            assertArrayEquals(expected.getIds(), actual.getIds(), "Mapped index should return identical ids");
+            assertArrayEquals(expected.getScores(), actual.getScores(), 1e-6f);
+        }
+    }
+
+    /**
+     * Tests that files with a foreign header are rejected.
+     */
+    @Test
+    void testOpenRejectsInvalidFile(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("broken" + VectorIndexFile.FILE_EXTENSION);
+        Files.write(file, new byte[128]);
+        assertThrows(IOException.class, () -> VectorIndexFile.open(file));
+    }
+
+    /**
+     * Tests that IVF_PQ keeps reasonable recall against IVF_FLAT with a fraction of the memory.
+     */
+    @Test
+    void testPqRecallAgainstFlat() {
+        for (MetricType metric : MetricType.values()) {
+            IvfFlatIndex flat = new IvfFlatIndex(DIMENSION, metric, NLIST, 4, 256);
+            flat.train(vectors, VECTOR_COUNT);
+            flat.add(ids, vectors);
+            IvfPqIndex pq = new IvfPqIndex(DIMENSION, metric, NLIST, 4, 256, 8, 8);
+            pq.train(vectors, VECTOR_COUNT);
+            pq.add(ids, vectors);
+
+            assertEquals(VECTOR_COUNT, pq.size());
+            float[] queries = IndexRecallEvaluator.sampleQueries(vectors, VECTOR_COUNT, DIMENSION, 100, 7L);
+            double recall = IndexRecallEvaluator.recallAtK(flat, pq, queries, 100, 10);
+            assertTrue(recall > 0.4, metric + " recall@10 too low: " + recall);
+            assertTrue(pq.ramBytesUsed() < flat.ramBytesUsed() / 2, "PQ codes should be much smaller than raw vectors");
+        }
+    }
+
+    /**
+     * Tests that removed vectors disappear from results, re-added ids replace their vector,
+     * and compaction plus a round trip through the index file keep the live content.
+     */
+    @Test
+    void testRemoveUpsertAndCompact(@TempDir Path tempDir) throws IOException {
+        IvfFlatIndex index = new IvfFlatIndex(DIMENSION, MetricType.L2, NLIST, NLIST, 256);
+        index.train(vectors, VECTOR_COUNT);
+        index.add(ids, vectors);
+
+        float[] query = new float[DIMENSION];
+        System.arraycopy(vectors, 0, query, 0, DIMENSION);
+        assertEquals(ids[0], index.search(query, 1).getId(0));
+
+        assertEquals(2, index.remove(new long[]{ids[0], ids[1], -1L}));
+        assertEquals(VECTOR_COUNT - 2, index.size());
+        assertEquals(2, index.deletedCount());
+        assertNotEquals(ids[0], index.search(query, 1).getId(0));
+
+        float[] moved = new float[DIMENSION];
+        System.arraycopy(vectors, 5 * DIMENSION, moved, 0, DIMENSION);
+        index.add(new long[]{ids[0]}, moved);
+        assertEquals(VECTOR_COUNT - 1, index.size());
+        SearchResult replaced = index.search(moved, 2);
+        assertTrue(replaced.getId(0) == ids[0] || replaced.getId(1) == ids[0]);
+
+        assertEquals(2, index.compact());
+        assertEquals(0, index.deletedCount());
+        assertEquals(VECTOR_COUNT - 1, index.size());
+
+        Path file = tempDir.resolve("compacted" + VectorIndexFile.FILE_EXTENSION);
+        VectorIndexFile.write(index, file);
+        IvfFlatIndex reloaded = VectorIndexFile.open(file).toHeapIndex(256);
+        assertEquals(index.size(), reloaded.size());
+        assertEquals(1, reloaded.remove(new long[]{ids[0]}));
+        assertNotEquals(ids[0], reloaded.search(moved, 1).getId(0));
+    }
+
+    /**
+     * Tests that a multi-threaded build is reproducible and indexes the same content as a sequential one.
+     */
+    @Test
+    void testParallelBuildMatchesSequential() {
+        try (BuildExecutor executor = new BuildExecutor(4)) {
+            float[] first = new KMeansTrainer(executor).train(vectors, VECTOR_COUNT, DIMENSION, NLIST, MetricType.L2);
+            float[] second = new KMeansTrainer(executor).train(vectors, VECTOR_COUNT, DIMENSION, NLIST, MetricType.L2);
+            assertArrayEquals(first, second, "Slice merge order must not depend on scheduling");
+
+            IvfFlatIndex sequential = new IvfFlatIndex(DIMENSION, MetricType.L2, NLIST, NLIST, 256);
+            sequential.train(vectors, VECTOR_COUNT);
+            sequential.add(ids, vectors);
+            IvfFlatIndex parallel = new IvfFlatIndex(DIMENSION, MetricType.L2, NLIST, NLIST, 256,
+                    new KMeansTrainer(executor));
+            parallel.train(vectors, VECTOR_COUNT);
+            parallel.add(ids, vectors);
+
+            assertEquals(sequential.size(), parallel.size());
+            float[] queries = IndexRecallEvaluator.sampleQueries(vectors, VECTOR_COUNT, DIMENSION, 50, 11L);
+            assertEquals(1.0, IndexRecallEvaluator.recallAtK(sequential, parallel, queries, 50, 10), 1e-9);
+
+            IvfPqIndex pq = new IvfPqIndex(DIMENSION, MetricType.L2, NLIST, 4, 256, 8, 8, new KMeansTrainer(executor));
+            pq.train(vectors, VECTOR_COUNT);
+            pq.add(ids, vectors);
+            pq.add(new long[]{ids[3], ids[3]}, Arrays.copyOf(vectors, 2 * DIMENSION));
+            assertEquals(VECTOR_COUNT, pq.size());
+            assertEquals(2, pq.deletedCount());
+        }
+    }
+
+    /**
+     * Tests that batched list-major search returns exactly the per-query results of every IVF index.
+     */
+    @Test
+    void testSearchBatchMatchesSingleQueries(@TempDir Path tempDir) throws IOException {
+        int n = 40;
+        float[] queries = IndexRecallEvaluator.sampleQueries(vectors, VECTOR_COUNT, DIMENSION, n, 13L);
+        for (MetricType metric : MetricType.values()) {
+            IvfFlatIndex flat = new IvfFlatIndex(DIMENSION, metric, NLIST, 4, 256);
+            flat.train(vectors, VECTOR_COUNT);
+            flat.add(ids, vectors);
+            flat.remove(new long[]{ids[0], ids[7]});
+            IvfPqIndex pq = new IvfPqIndex(DIMENSION, metric, NLIST, 4, 256, 8, 8);
+            pq.train(vectors, VECTOR_COUNT);
+            pq.add(ids, vectors);
+            Path file = tempDir.resolve(metric + VectorIndexFile.FILE_EXTENSION);
+            VectorIndexFile.write(flat, file);
+
+            assertBatchMatches(flat, queries, n);
+            assertBatchMatches(pq, queries, n);
+            assertBatchMatches(VectorIndexFile.open(file), queries, n);
+        }
+        IvfFlatIndex empty = new IvfFlatIndex(DIMENSION, MetricType.L2, NLIST, 4, 256);
+        assertEquals(0, empty.searchBatch(queries, n, 10)[n - 1].size());
+        assertThrows(IllegalArgumentException.class, () -> empty.searchBatch(queries, n + 1, 10));
+    }
+
+    private static void assertBatchMatches(VectorIndex index, float[] queries, int n) {
+        SearchResult[] batch = index.searchBatch(queries, n, 10);
+        assertEquals(n, batch.length);
+        for (int q = 0; q < n; q++) {
+            SearchResult single = index.search(Arrays.copyOfRange(queries, q * DIMENSION, (q + 1) * DIMENSION), 10);
+            assertArrayEquals(single.getIds(), batch[q].getIds(), index + " query " + q);
+            assertArrayEquals(single.getScores(), batch[q].getScores(), 1e-6f);
+        }
+    }
+
+    /**
+     * Tests that a filter accepting one vector in a hundred still yields k accepted results,
+     * where post-filtering the nprobe lists comes back short, and that a tiny filter returns all it accepts.
+     */
+    @Test
+    void testFilteredSearchWidensProbes(@TempDir Path tempDir) throws IOException {
+        IvfFlatIndex flat = new IvfFlatIndex(DIMENSION, MetricType.L2, NLIST, 2, 256);
+        flat.train(vectors, VECTOR_COUNT);
+        flat.add(ids, vectors);
+        IvfPqIndex pq = new IvfPqIndex(DIMENSION, MetricType.L2, NLIST, 2, 256, 8, 8);
+        pq.train(vectors, VECTOR_COUNT);
+        pq.add(ids, vectors);
+        Path file = tempDir.resolve("filtered" + VectorIndexFile.FILE_EXTENSION);
+        VectorIndexFile.write(flat, file);
+        float[] query = Arrays.copyOfRange(vectors, 0, DIMENSION);
+        VectorFilter sparse = idFilter(100, VECTOR_COUNT / 100);
+
+        int postFiltered = 0;
+        for (long id : flat.search(query, 10).getIds()) {
+            postFiltered += sparse.accepts(id) ? 1 : 0;
+        }
+        assertTrue(postFiltered < 10);
+        for (VectorIndex index : new VectorIndex[]{flat, pq, VectorIndexFile.open(file)}) {
+            SearchResult result = index.search(query, 10, sparse);
+            assertEquals(10, result.size(), index.toString());
+            assertEquals(ids[0], result.getId(0));
+            for (int i = 0; i < result.size(); i++) {
+                assertTrue(sparse.accepts(result.getId(i)));
+            }
+            assertEquals(3, index.search(query, 10, idFilter(700, 3)).size(), index.toString());
+            assertArrayEquals(index.search(query, 10).getIds(), index.search(query, 10, null).getIds());
+        }
+    }
+
+    private static VectorFilter idFilter(int step, long cardinality) {
+        return new VectorFilter() {
+            @Override
+            public boolean accepts(long id) {
+                return (id - 1000L) % step == 0;
+            }
+
+            @Override
+            public long cardinality() {
+                return cardinality;
+            }
+        };
+    }
+
+    /**
+     * Tests that adding before training is rejected.
+     */
+    @Test
+    void testAddBeforeTrainFails() {
+        IvfFlatIndex index = new IvfFlatIndex(DIMENSION, MetricType.L2, NLIST, 4, 10);
+        assertThrows(IllegalStateException.class, () -> index.add(new long[]{1L}, new float[DIMENSION]));
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,96 @@
+package vector;
+
+import com.navigation.system.infrastructure.vector.EmbeddedChunks;
+import com.navigation.system.infrastructure.vector.HashingTextEmbedder;
+import com.navigation.system.infrastructure.vector.KnowledgeChunk;
+import com.navigation.system.infrastructure.vector.KnowledgeChunker;
+import com.navigation.system.infrastructure.vector.KnowledgeEmbeddingPipeline;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Knowledge chunker test class.
+ * Tests map region, rule clause and token window chunking and chunk id stability.
+ */
+class KnowledgeChunkerTest {
+
+    private static final String MAP_DATA = "{\"venue\":\"Central Mall\","
+            + "\"regions\":[{\"name\":\"A区\",\"floor\":1},{\"name\":\"B区\",\"exits\":[\"north\",\"south\"]}],"
+            + "\"elevators\":{\"count\":4}}";
+
+    private static final String RULES = "B区晚上十点后关闭。儿童须由成人陪同；No pets allowed!\n";
+
+    /**
+     * Tests that JSON members and array elements become separate regions and rules split into clauses.
+     */
+    @Test
+    void testRegionsAndClauses() {
+        List<KnowledgeChunk> chunks = collect(new KnowledgeChunker(128, 16).chunk(7L, MAP_DATA, RULES));
+
+        List<String> texts = new ArrayList<>();
+        for (KnowledgeChunk chunk : chunks) {
+            texts.add(chunk.getText());
+            assertEquals(7L, KnowledgeChunk.knowledgeBaseIdOf(chunk.getId()));
+        }
+        assertEquals("venue: \"Central Mall\"", texts.get(0));
+        assertEquals("regions: {\"name\":\"A区\",\"floor\":1}", texts.get(1));
+        assertEquals("regions: {\"name\":\"B区\",\"exits\":[\"north\",\"south\"]}", texts.get(2));
+        assertEquals("elevators: {\"count\":4}", texts.get(3));
+        assertEquals("B区晚上十点后关闭。", texts.get(4));
+        assertEquals("儿童须由成人陪同；", texts.get(5));
+        assertEquals("No pets allowed!", texts.get(6));
+        assertEquals(7, chunks.size());
+        assertEquals(KnowledgeChunk.Source.RULE_CLAUSE, chunks.get(4).getSource());
+        assertEquals(0, chunks.get(4).getOrdinal());
+    }
+
+    /**
+     * Tests that long clauses are split into overlapping token windows.
+     */
+    @Test
+    void testTokenWindowsOverlap() {
+        StringBuilder clause = new StringBuilder();
+        for (int i = 0; i < 22; i++) {
+            clause.append("w").append(i).append(' ');
+        }
+        List<KnowledgeChunk> chunks = collect(new KnowledgeChunker(10, 3).chunk(1L, null, clause.toString()));
+
+        assertEquals(3, chunks.size());
+        assertTrue(chunks.get(0).getText().startsWith("w0 ") && chunks.get(0).getText().endsWith("w9"));
+        assertTrue(chunks.get(1).getText().startsWith("w7 ") && chunks.get(1).getText().endsWith("w16"));
+        assertTrue(chunks.get(2).getText().startsWith("w14 ") && chunks.get(2).getText().endsWith("w21"));
+    }
+
+    /**
+     * Tests that chunk ids depend on content only and that the pipeline embeds every chunk.
+     */
+    @Test
+    void testStableIdsAndBatchedEmbedding() {
+        KnowledgeChunker chunker = new KnowledgeChunker(128, 16);
+        List<KnowledgeChunk> original = collect(chunker.chunk(3L, MAP_DATA, RULES));
+        List<KnowledgeChunk> edited = collect(chunker.chunk(3L, MAP_DATA, "新增规则。" + RULES));
+        assertEquals(original.get(4).getId(), edited.get(5).getId(), "Unchanged clause should keep its id");
+
+        KnowledgeEmbeddingPipeline pipeline = new KnowledgeEmbeddingPipeline(chunker, new HashingTextEmbedder(64), 2);
+        EmbeddedChunks embedded = pipeline.embed(3L, MAP_DATA, RULES);
+        assertEquals(original.size(), embedded.size());
+        assertEquals(embedded.size() * 64, embedded.getVectors().length);
+        for (int i = 0; i < embedded.size(); i++) {
+            assertEquals(original.get(i).getId(), embedded.getIds()[i]);
+        }
+    }
+
+    private static List<KnowledgeChunk> collect(Iterator<KnowledgeChunk> iterator) {
+        List<KnowledgeChunk> chunks = new ArrayList<>();
+        iterator.forEachRemaining(chunks::add);
+        return chunks;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,168 @@
+package vector;
+
+import com.navigation.system.infrastructure.vector.HnswIndex;
+import com.navigation.system.infrastructure.vector.IndexRecallEvaluator;
+import com.navigation.system.infrastructure.vector.IvfFlatIndex;
+import com.navigation.system.infrastructure.vector.MappedIvfFlatIndex;
+import com.navigation.system.infrastructure.vector.MetricType;
+import com.navigation.system.infrastructure.vector.SearchParameterTuner;
+import com.navigation.system.infrastructure.vector.VectorIndexStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Search parameter tuner test class.
+ * Tests recall-driven nprobe tuning, latency-driven degradation and recovery, and that the tuned
+ * value survives rebuilds, heap copies and reloads made while degraded.
+ */
+class SearchParameterTunerTest {
+
+    private static final int DIMENSION = 32;
+    private static final int VECTOR_COUNT = 4000;
+    private static final int NLIST = 64;
+
+    private float[] vectors;
+    private long[] ids;
+
+    /**
+     * Test setup.
+     * Generates a reproducible clustered corpus.
+     */
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(42);
+        float[] centers = new float[20 * DIMENSION];
+        for (int i = 0; i < centers.length; i++) {
+            centers[i] = (float) random.nextGaussian() * 4;
+        }
+        vectors = new float[VECTOR_COUNT * DIMENSION];
+        ids = new long[VECTOR_COUNT];
+        for (int i = 0; i < VECTOR_COUNT; i++) {
+            ids[i] = 1000L + i;
+            int center = random.nextInt(20);
+            for (int j = 0; j < DIMENSION; j++) {
+                vectors[i * DIMENSION + j] = centers[center * DIMENSION + j] + (float) random.nextGaussian();
+            }
+        }
+    }
+
+    /**
+     * Tests that tuning picks fewer lists than a full scan while still reaching the target recall.
+     */
+    @Test
+    void testTunedNprobeReachesTargetRecall() {
+        IvfFlatIndex index = newIndex();
+        SearchParameterTuner tuner = new SearchParameterTuner(0.9, 100, 10, 800, 0.8, 0.5);
+
+        int nprobe = tuner.tune(index, ids, vectors);
+
+        assertTrue(nprobe >= 1 && nprobe < NLIST, "Tuned nprobe: " + nprobe);
+        assertEquals(nprobe, index.getNprobe());
+        assertEquals(nprobe, tuner.getTunedValue(index));
+        IvfFlatIndex exact = newIndex();
+        float[] queries = IndexRecallEvaluator.sampleQueries(vectors, VECTOR_COUNT, DIMENSION, 100, 7L);
+        assertTrue(IndexRecallEvaluator.recallAtK(exact, index, queries, 100, 10) >= 0.85);
+        if (nprobe > 1) {
+            index.setNprobe(nprobe / 2);
+            assertTrue(IndexRecallEvaluator.recallAtK(exact, index, queries, 100, 10)
+                    < IndexRecallEvaluator.recallAtK(exact, exact, queries, 100, 10));
+        }
+    }
+
+    /**
+     * Tests that high latency halves nprobe of tracked indexes and low latency restores it.
+     */
+    @Test
+    void testLatencyDegradesAndRestores() throws InterruptedException {
+        IvfFlatIndex index = newIndex();
+        index.setNprobe(16);
+        SearchParameterTuner tuner = new SearchParameterTuner(0.9, 0, 10, 800, 0.8, 0.5);
+        tuner.track(index);
+
+        tuner.recordResponseLatency(900);
+        assertEquals(1, tuner.getDegradationLevel());
+        assertEquals(8, index.getNprobe());
+
+        // A second step within the interval is held back
+        tuner.recordResponseLatency(950);
+        assertEquals(1, tuner.getDegradationLevel());
+
+        IvfFlatIndex loaded = newIndex();
+        loaded.setNprobe(12);
+        tuner.track(loaded);
+        assertEquals(6, loaded.getNprobe());
+
+        for (int i = 0; i < 20; i++) {
+            tuner.recordResponseLatency(100);
+        }
+        Thread.sleep(1100);
+        tuner.recordResponseLatency(100);
+        assertEquals(0, tuner.getDegradationLevel());
+        assertEquals(16, index.getNprobe());
+        assertEquals(12, loaded.getNprobe());
+    }
+
+    /**
+     * Tests that indexes rebuilt, persisted and reloaded while degraded return to the original tuned
+     * value once latency recovers, instead of taking the degraded value as their new tuned value.
+     */
+    @Test
+    void testTunedValueSurvivesRebuildAndReload(@TempDir Path tempDir) throws Exception {
+        SearchParameterTuner tuner = new SearchParameterTuner(0.9, 0, 10, 800, 0.8, 0.5);
+        VectorIndexStore store = new VectorIndexStore(tempDir, tuner);
+        IvfFlatIndex index = newIndex();
+        index.setNprobe(16);
+        HnswIndex graph = new HnswIndex(DIMENSION, MetricType.L2, 16, 64, 64);
+        graph.add(Arrays.copyOf(ids, 500), Arrays.copyOf(vectors, 500 * DIMENSION));
+        tuner.track(index);
+        tuner.track(graph);
+
+        tuner.recordResponseLatency(900);
+        assertEquals(8, index.getNprobe());
+        assertEquals(32, graph.getEfSearch());
+
+        HnswIndex rebuilt = graph.rebuild();
+        tuner.transfer(graph, rebuilt);
+        assertEquals(64, tuner.getTunedValue(rebuilt));
+        assertEquals(32, rebuilt.getEfSearch());
+
+        // Files keep the tuned value, so a reloaded index is not tracked at the degraded one
+        store.save("ivf", index);
+        store.save("hnsw", rebuilt);
+        assertEquals(64, ((HnswIndex) store.open("hnsw")).getEfSearch());
+        MappedIvfFlatIndex mapped = (MappedIvfFlatIndex) store.open("ivf");
+        assertEquals(16, mapped.getNprobe());
+        tuner.track(mapped);
+        assertEquals(8, mapped.getNprobe());
+        IvfFlatIndex heap = mapped.toHeapIndex(256);
+        tuner.transfer(mapped, heap);
+        assertEquals(16, tuner.getTunedValue(heap));
+
+        for (int i = 0; i < 20; i++) {
+            tuner.recordResponseLatency(100);
+        }
+        Thread.sleep(1100);
+        tuner.recordResponseLatency(100);
+        assertEquals(0, tuner.getDegradationLevel());
+        assertEquals(tuner.getTunedValue(rebuilt), rebuilt.getEfSearch());
+        assertEquals(tuner.getTunedValue(heap), heap.getNprobe());
+        assertEquals(16, heap.getNprobe());
+    }
+
+    private IvfFlatIndex newIndex() {
+        IvfFlatIndex index = new IvfFlatIndex(DIMENSION, MetricType.L2, NLIST, NLIST, 256);
+        index.train(vectors, VECTOR_COUNT);
+        index.add(ids, vectors);
+        return index;
+    }
+}
+
+
+// 内容由AI生成，仅供参考
@@ -0,0 +1,185 @@
+package vector;
+
+import com.navigation.system.infrastructure.vector.HnswIndex;
+import com.navigation.system.infrastructure.vector.IvfFlatIndex;
+import com.navigation.system.infrastructure.vector.IvfPqIndex;
+import com.navigation.system.infrastructure.vector.MappedIvfFlatIndex;
+import com.navigation.system.infrastructure.vector.MetricType;
+import com.navigation.system.infrastructure.vector.VectorIndex;
+import com.navigation.system.infrastructure.vector.VectorIndexStore;
+import com.navigation.system.infrastructure.vector.VenueIndexRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Venue index registry test class.
+ * Tests lazy loading, budget driven LRU eviction, reloading of every index type and hot swapping of per-venue indexes.
+ */
+class VenueIndexRegistryTest {
+
+    private static final int DIMENSION = 16;
+    private static final int VECTOR_COUNT = 500;
+
+    @TempDir
+    Path tempDir;
+
+    private VectorIndexStore store;
+    private long indexBytes;
+
+    /**
+     * Test setup.
+     * Persists one index file per venue 1-3.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new VectorIndexStore(tempDir);
+        for (long venue = 1; venue <= 3; venue++) {
+            store.save(indexId(venue), buildIndex(venue));
+        }
+        MappedIvfFlatIndex mapped = (MappedIvfFlatIndex) store.open(indexId(1));
+        indexBytes = mapped.ramBytesUsed() + mapped.mappedBytes();
+    }
+
+    /**
+     * Tests that a venue is mapped on first use only and unknown venues resolve to null.
+     */
+    @Test
+    void testLazyLoadOnce() throws IOException {
+        VenueIndexRegistry registry = new VenueIndexRegistry(store, 10 * indexBytes);
+        AtomicInteger resolves = new AtomicInteger();
+        VenueIndexRegistry.IndexIdResolver resolver = venue -> {
+            resolves.incrementAndGet();
+            return venue <= 3 ? indexId(venue) : null;
+        };
+
+        assertNull(registry.getIfResident(1));
+        VectorIndex first = registry.get(1, resolver);
+        assertNotNull(first);
+        assertSame(first, registry.get(1, resolver));
+        assertEquals(1, resolves.get());
+        assertEquals(1, registry.getMisses());
+        assertEquals(1, registry.getHits());
+        assertNull(registry.get(99, resolver));
+        assertEquals(1, registry.residentVenues());
+    }
+
+    /**
+     * Tests that the least recently used venue is evicted once the budget is exceeded.
+     */
+    @Test
+    void testEvictsLeastRecentlyUsedOverBudget() throws IOException {
+        VenueIndexRegistry registry = new VenueIndexRegistry(store, 2 * indexBytes + indexBytes / 2);
+        VenueIndexRegistry.IndexIdResolver resolver = VenueIndexRegistryTest::indexId;
+
+        registry.get(1, resolver);
+        registry.get(2, resolver);
+        registry.get(1, resolver);
+        registry.get(3, resolver);
+
+        assertEquals(2, registry.residentVenues());
+        assertNotNull(registry.getIfResident(1));
+        assertNull(registry.getIfResident(2), "Venue 2 was least recently used");
+        assertNotNull(registry.getIfResident(3));
+        assertEquals(1, registry.getEvictions());
+        assertTrue(registry.residentBytes() <= registry.getMemoryBudgetBytes());
+    }
+
+    /**
+     * Tests that publishing a new version replaces the resident index without reloading.
+     */
+    @Test
+    void testPublishHotSwapsVersion() throws IOException {
+        VenueIndexRegistry registry = new VenueIndexRegistry(store, 10 * indexBytes);
+        VectorIndex loaded = registry.get(1, VenueIndexRegistryTest::indexId);
+        IvfFlatIndex rebuilt = buildIndex(7);
+
+        assertEquals(indexId(1), registry.publish(1, "venue-1-v2", rebuilt));
+        assertEquals("venue-1-v2", registry.residentIndexId(1));
+        assertSame(rebuilt, registry.get(1, venue -> fail("Resident venue must not be resolved")));
+        assertNotSame(loaded, registry.getIfResident(1));
+        assertTrue(registry.invalidate(1));
+        assertNull(registry.getIfResident(1));
+    }
+
+    /**
+     * Tests that IVF_PQ and HNSW indexes are persisted and reloaded after eviction with identical
+     * results, removed vectors staying removed and the reloaded index accepting new vectors.
+     */
+    @Test
+    void testReloadsPqAndHnswAfterEviction() throws IOException {
+        float[] vectors = randomVectors(8, VECTOR_COUNT);
+        long[] ids = new long[VECTOR_COUNT];
+        for (int i = 0; i < VECTOR_COUNT; i++) {
+            ids[i] = i;
+        }
+        IvfPqIndex pq = new IvfPqIndex(DIMENSION, MetricType.L2, 8, 3, 128, 4, 6);
+        pq.train(vectors, VECTOR_COUNT);
+        HnswIndex hnsw = new HnswIndex(DIMENSION, MetricType.INNER_PRODUCT, 8, 64, 32);
+        VectorIndex[] indexes = {pq, hnsw};
+        for (int v = 0; v < indexes.length; v++) {
+            indexes[v].add(ids, vectors);
+            assertEquals(3, indexes[v].remove(new long[]{5, 6, 7}));
+            store.save("venue-" + (10 + v), indexes[v]);
+        }
+
+        VenueIndexRegistry registry = new VenueIndexRegistry(store, 1);
+        float[] queries = randomVectors(9, 20);
+        float[] query = new float[DIMENSION];
+        for (int v = 0; v < indexes.length; v++) {
+            registry.get(10 + v, VenueIndexRegistryTest::indexId);
+        }
+        assertNull(registry.getIfResident(10), "Venue 10 was evicted to stay in budget");
+        for (int v = 0; v < indexes.length; v++) {
+            VectorIndex reloaded = registry.get(10 + v, VenueIndexRegistryTest::indexId);
+            assertNotNull(reloaded);
+            assertEquals(indexes[v].getIndexType(), reloaded.getIndexType());
+            assertEquals(VECTOR_COUNT - 3, reloaded.size());
+            for (int q = 0; q < 20; q++) {
+                System.arraycopy(queries, q * DIMENSION, query, 0, DIMENSION);
+                assertArrayEquals(indexes[v].search(query, 10).getIds(), reloaded.search(query, 10).getIds());
+            }
+            System.arraycopy(vectors, 5 * DIMENSION, query, 0, DIMENSION);
+            for (long id : reloaded.search(query, VECTOR_COUNT).getIds()) {
+                assertTrue(id < 5 || id > 7, "Removed id " + id + " returned");
+            }
+            reloaded.add(new long[]{VECTOR_COUNT}, query);
+            assertEquals(VECTOR_COUNT - 2, reloaded.size());
+        }
+    }
+
+    private static String indexId(long venueId) {
+        return "venue-" + venueId;
+    }
+
+    private static IvfFlatIndex buildIndex(long seed) {
+        float[] vectors = randomVectors(seed, VECTOR_COUNT);
+        long[] ids = new long[VECTOR_COUNT];
+        for (int i = 0; i < VECTOR_COUNT; i++) {
+            ids[i] = i;
+        }
+        IvfFlatIndex index = new IvfFlatIndex(DIMENSION, MetricType.L2, 8, 2, 128);
+        index.train(vectors, VECTOR_COUNT);
+        index.add(ids, vectors);
+        return index;
+    }
+
+    private static float[] randomVectors(long seed, int n) {
+        Random random = new Random(seed);
+        float[] vectors = new float[n * DIMENSION];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = (float) random.nextGaussian();
+        }
+        return vectors;
+    }
+}
+
+
+// 内容由AI生成，仅供参考